@@ -0,0 +1,44 @@
+package com.pm.analyticsservice.controller;
+
+import com.pm.analyticsservice.directory.PatientDirectory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/analytics/patients")
+public class PatientDirectoryController {
+
+    private final PatientDirectory patientDirectory;
+
+    public PatientDirectoryController(PatientDirectory patientDirectory) {
+        this.patientDirectory = patientDirectory;
+    }
+
+    @GetMapping("/count")
+    public ResponseEntity<Map<String, Integer>> count() {
+        return ResponseEntity.ok(Map.of("count", patientDirectory.size()));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<PatientDirectory.PatientView> getPatient(@PathVariable UUID id) {
+        return ResponseEntity.of(patientDirectory.find(id));
+    }
+
+    @GetMapping("/cohorts/birth-year")
+    public ResponseEntity<SortedMap<Integer, Long>> cohortByBirthYear() {
+        return ResponseEntity.ok(patientDirectory.cohortByBirthYear());
+    }
+
+    @GetMapping("/registrations/daily")
+    public ResponseEntity<SortedMap<LocalDate, Long>> registrationsPerDay() {
+        return ResponseEntity.ok(patientDirectory.registrationsPerDay());
+    }
+}
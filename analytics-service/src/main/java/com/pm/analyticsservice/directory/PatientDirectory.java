@@ -0,0 +1,286 @@
+package com.pm.analyticsservice.directory;
+
+import org.springframework.stereotype.Component;
+import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory, column oriented view of all patients, built from the patient topic.
+ * Strings are dictionary encoded, ids are packed as two longs and every column is a primitive array,
+ * so aggregates are tight loops over int arrays instead of walks over objects.
+ * One writer (the Kafka listener) and any number of readers are supported. Deleted rows and strings no row refers
+ * to any more are reclaimed by rebuilding the columns once they outnumber the live rows, so memory stays within a
+ * small multiple of the live patients.
+ */
+@Component
+public class PatientDirectory {
+
+    static final int UNKNOWN_DATE = Integer.MIN_VALUE;
+    private static final int NO_VALUE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private UuidIndex index = new UuidIndex(INITIAL_CAPACITY);
+    private StringDictionary names = new StringDictionary();
+    private StringDictionary emails = new StringDictionary();
+    private StringDictionary addresses = new StringDictionary();
+    private BitSet live = new BitSet();
+
+    private int[] nameCodes = new int[INITIAL_CAPACITY];
+    private int[] emailCodes = new int[INITIAL_CAPACITY];
+    private int[] addressCodes = new int[INITIAL_CAPACITY];
+    private int[] birthEpochDays = new int[INITIAL_CAPACITY];
+    private int[] registeredEpochDays = new int[INITIAL_CAPACITY];
+    private int rows;
+    private int liveRows;
+
+    public void apply(PatientEvent event) {
+        UUID id = UUID.fromString(event.getPatientId());
+        PatientEventType type = event.getType();
+        if (type == PatientEventType.PATIENT_EVENT_TYPE_UNSPECIFIED) {
+            // schema version 1 events only knew PATIENT_CREATED
+            type = PatientEventType.PATIENT_CREATED;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (type == PatientEventType.PATIENT_DELETED) {
+                delete(id);
+            } else {
+                upsert(id, event);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(UUID id) {
+        lock.writeLock().lock();
+        try {
+            delete(id);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Optional<PatientView> find(UUID id) {
+        lock.readLock().lock();
+        try {
+            int row = index.get(id);
+            if (row < 0 || !live.get(row)) {
+                return Optional.empty();
+            }
+            return Optional.of(new PatientView(id,
+                    decode(names, nameCodes[row]),
+                    decode(emails, emailCodes[row]),
+                    decode(addresses, addressCodes[row]),
+                    toDate(birthEpochDays[row]),
+                    toDate(registeredEpochDays[row])));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveRows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Rows held including deleted ones not yet compacted away
+    public int rows() {
+        lock.readLock().lock();
+        try {
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public SortedMap<Integer, Long> cohortByBirthYear() {
+        lock.readLock().lock();
+        try {
+            return countBy(birthEpochDays, true);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public SortedMap<LocalDate, Long> registrationsPerDay() {
+        lock.readLock().lock();
+        try {
+            SortedMap<Integer, Long> byDay = countBy(registeredEpochDays, false);
+            SortedMap<LocalDate, Long> result = new TreeMap<>();
+            byDay.forEach((day, count) -> result.put(LocalDate.ofEpochDay(day), count));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Counts live rows per day (or per year) with a dense counter array over the observed range
+    private SortedMap<Integer, Long> countBy(int[] epochDays, boolean byYear) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            int day = epochDays[row];
+            if (day == UNKNOWN_DATE) continue;
+            int key = byYear ? yearOfEpochDay(day) : day;
+            if (key < min) min = key;
+            if (key > max) max = key;
+        }
+        SortedMap<Integer, Long> result = new TreeMap<>();
+        if (min > max) {
+            return result;
+        }
+
+        long[] counts = new long[max - min + 1];
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            int day = epochDays[row];
+            if (day == UNKNOWN_DATE) continue;
+            counts[(byYear ? yearOfEpochDay(day) : day) - min]++;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                result.put(min + i, counts[i]);
+            }
+        }
+        return result;
+    }
+
+    private void upsert(UUID id, PatientEvent event) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int row = index.get(msb, lsb);
+        if (row < 0) {
+            row = rows++;
+            ensureCapacity(rows);
+            index.put(msb, lsb, row);
+        }
+        nameCodes[row] = encode(names, event.getName());
+        emailCodes[row] = encode(emails, event.getEmail());
+        addressCodes[row] = encode(addresses, event.getAddress());
+        birthEpochDays[row] = event.hasDateOfBirthEpochDay() ? event.getDateOfBirthEpochDay() : UNKNOWN_DATE;
+        registeredEpochDays[row] = event.hasRegisteredDateEpochDay()
+                ? event.getRegisteredDateEpochDay() : UNKNOWN_DATE;
+        if (!live.get(row)) {
+            live.set(row);
+            liveRows++;
+        }
+    }
+
+    private void delete(UUID id) {
+        int row = index.get(id);
+        if (row >= 0 && live.get(row)) {
+            live.clear(row);
+            liveRows--;
+        }
+    }
+
+    // Deleted rows stay in the index and updates leave their old strings in the dictionaries; once either is more
+    // than twice the live rows everything is rebuilt from the live rows, which keeps the cost amortized O(1) per event
+    private void compactIfNeeded() {
+        int bound = 2 * Math.max(liveRows, INITIAL_CAPACITY);
+        if (rows > bound || names.size() > bound || emails.size() > bound || addresses.size() > bound) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        int capacity = Math.max(INITIAL_CAPACITY, liveRows);
+        UuidIndex newIndex = new UuidIndex(capacity);
+        StringDictionary newNames = new StringDictionary(capacity);
+        StringDictionary newEmails = new StringDictionary(capacity);
+        StringDictionary newAddresses = new StringDictionary(capacity);
+        int[] newNameCodes = new int[capacity];
+        int[] newEmailCodes = new int[capacity];
+        int[] newAddressCodes = new int[capacity];
+        int[] newBirthEpochDays = new int[capacity];
+        int[] newRegisteredEpochDays = new int[capacity];
+        int[] next = {0};
+        index.forEach((msb, lsb, row) -> {
+            if (!live.get(row)) {
+                return;
+            }
+            int newRow = next[0]++;
+            newIndex.put(msb, lsb, newRow);
+            newNameCodes[newRow] = recode(names, newNames, nameCodes[row]);
+            newEmailCodes[newRow] = recode(emails, newEmails, emailCodes[row]);
+            newAddressCodes[newRow] = recode(addresses, newAddresses, addressCodes[row]);
+            newBirthEpochDays[newRow] = birthEpochDays[row];
+            newRegisteredEpochDays[newRow] = registeredEpochDays[row];
+        });
+
+        index = newIndex;
+        names = newNames;
+        emails = newEmails;
+        addresses = newAddresses;
+        nameCodes = newNameCodes;
+        emailCodes = newEmailCodes;
+        addressCodes = newAddressCodes;
+        birthEpochDays = newBirthEpochDays;
+        registeredEpochDays = newRegisteredEpochDays;
+        rows = next[0];
+        live = new BitSet(capacity);
+        live.set(0, rows);
+    }
+
+    private static int recode(StringDictionary from, StringDictionary to, int code) {
+        return code == NO_VALUE ? NO_VALUE : to.encode(from.decode(code));
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= nameCodes.length) {
+            return;
+        }
+        int capacity = Math.max(required, nameCodes.length * 2);
+        nameCodes = Arrays.copyOf(nameCodes, capacity);
+        emailCodes = Arrays.copyOf(emailCodes, capacity);
+        addressCodes = Arrays.copyOf(addressCodes, capacity);
+        birthEpochDays = Arrays.copyOf(birthEpochDays, capacity);
+        registeredEpochDays = Arrays.copyOf(registeredEpochDays, capacity);
+    }
+
+    private static int encode(StringDictionary dictionary, String value) {
+        return value.isEmpty() ? NO_VALUE : dictionary.encode(value);
+    }
+
+    private static String decode(StringDictionary dictionary, int code) {
+        return code == NO_VALUE ? null : dictionary.decode(code);
+    }
+
+    private static LocalDate toDate(int epochDay) {
+        return epochDay == UNKNOWN_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    // Proleptic Gregorian year of an epoch day without allocating a LocalDate
+    static int yearOfEpochDay(int epochDay) {
+        long z = epochDay + 719_468L;
+        long era = (z >= 0 ? z : z - 146_096) / 146_097;
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long year = yearOfEra + era * 400;
+        return (int) (shiftedMonth >= 10 ? year + 1 : year);
+    }
+
+    public record PatientView(UUID id, String name, String email, String address,
+                              LocalDate dateOfBirth, LocalDate registeredDate) {
+    }
+}
@@ -0,0 +1,77 @@
+package com.pm.analyticsservice.directory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dictionary encoding for strings: every distinct value is stored once and referenced by an int code.
+ * The lookup table is an open-addressing array of codes, so no boxed keys or entry objects are allocated.
+ * Not thread-safe, callers guard it.
+ */
+public class StringDictionary {
+
+    private static final int EMPTY = -1;
+
+    private final List<String> values = new ArrayList<>();
+    private int[] table;
+    private int mask;
+
+    public StringDictionary() {
+        this(1024);
+    }
+
+    public StringDictionary(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+    }
+
+    public int encode(String value) {
+        int slot = mix(value.hashCode()) & mask;
+        while (true) {
+            int code = table[slot];
+            if (code == EMPTY) {
+                code = values.size();
+                values.add(value);
+                table[slot] = code;
+                if (values.size() * 2 > table.length) {
+                    rehash();
+                }
+                return code;
+            }
+            if (values.get(code).equals(value)) {
+                return code;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public String decode(int code) {
+        return values.get(code);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        Arrays.fill(newTable, EMPTY);
+        int newMask = newTable.length - 1;
+        for (int code = 0; code < values.size(); code++) {
+            int slot = mix(values.get(code).hashCode()) & newMask;
+            while (newTable[slot] != EMPTY) {
+                slot = (slot + 1) & newMask;
+            }
+            newTable[slot] = code;
+        }
+        table = newTable;
+        mask = newMask;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,106 @@
+package com.pm.analyticsservice.directory;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Open-addressing map from a UUID, packed as its two longs, to an int row number.
+ * Keys live side by side in one long array and are never removed; deleted rows are tracked by the caller,
+ * which drops them by building a new index.
+ * Not thread-safe, callers guard it.
+ */
+public class UuidIndex {
+
+    private static final int EMPTY = -1;
+
+    private long[] keys;
+    private int[] rows;
+    private int mask;
+    private int size;
+
+    public UuidIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public int get(long mostSignificantBits, long leastSignificantBits) {
+        int slot = slot(mostSignificantBits, leastSignificantBits, mask);
+        while (true) {
+            int row = rows[slot];
+            if (row == EMPTY) {
+                return EMPTY;
+            }
+            if (keys[2 * slot] == mostSignificantBits && keys[2 * slot + 1] == leastSignificantBits) {
+                return row;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int get(UUID id) {
+        return get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    public void put(long mostSignificantBits, long leastSignificantBits, int row) {
+        if ((size + 1) * 2 > rows.length) {
+            grow();
+        }
+        insert(mostSignificantBits, leastSignificantBits, row);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < rows.length; slot++) {
+            if (rows[slot] != EMPTY) {
+                consumer.accept(keys[2 * slot], keys[2 * slot + 1], rows[slot]);
+            }
+        }
+    }
+
+    private void insert(long mostSignificantBits, long leastSignificantBits, int row) {
+        int slot = slot(mostSignificantBits, leastSignificantBits, mask);
+        while (rows[slot] != EMPTY) {
+            if (keys[2 * slot] == mostSignificantBits && keys[2 * slot + 1] == leastSignificantBits) {
+                rows[slot] = row;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[2 * slot] = mostSignificantBits;
+        keys[2 * slot + 1] = leastSignificantBits;
+        rows[slot] = row;
+        size++;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldRows = rows;
+        allocate(oldRows.length * 2);
+        size = 0;
+        for (int slot = 0; slot < oldRows.length; slot++) {
+            if (oldRows[slot] != EMPTY) {
+                insert(oldKeys[2 * slot], oldKeys[2 * slot + 1], oldRows[slot]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * 2];
+        rows = new int[capacity];
+        Arrays.fill(rows, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private static int slot(long mostSignificantBits, long leastSignificantBits, int mask) {
+        long hash = (mostSignificantBits ^ leastSignificantBits) * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long mostSignificantBits, long leastSignificantBits, int row);
+    }
+}
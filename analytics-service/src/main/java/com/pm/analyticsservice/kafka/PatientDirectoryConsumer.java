@@ -0,0 +1,75 @@
+package com.pm.analyticsservice.kafka;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pm.analyticsservice.directory.PatientDirectory;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Service;
+import patient.events.PatientEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rebuilds the {@link PatientDirectory} by replaying the patient topic from the beginning on every start. The
+ * directory is local to this instance, so it consumes in a group of its own and gets every partition. A partition
+ * assigned again (a rebalance of that group) continues after the last record this instance applied from it, one
+ * it never read from is replayed from the beginning. Records are keyed by patient id, so the topic can be
+ * compacted; a null value (tombstone) removes the patient.
+ */
+@Service
+public class PatientDirectoryConsumer implements ConsumerSeekAware {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientDirectoryConsumer.class);
+
+    private final PatientDirectory patientDirectory;
+    // offset of the next record to apply, per partition this instance has read from
+    private final Map<TopicPartition, Long> positions = new ConcurrentHashMap<>();
+
+    public PatientDirectoryConsumer(PatientDirectory patientDirectory) {
+        this.patientDirectory = patientDirectory;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        List<TopicPartition> unseen = new ArrayList<>();
+        for (TopicPartition partition : assignments.keySet()) {
+            Long position = positions.get(partition);
+            if (position == null) {
+                unseen.add(partition);
+            } else {
+                callback.seek(partition.topic(), partition.partition(), position);
+            }
+        }
+        if (!unseen.isEmpty()) {
+            callback.seekToBeginning(unseen);
+        }
+    }
+
+    @KafkaListener(topics = "patient", groupId = "analytics-service-directory-${random.uuid}")
+    public void consumeEvent(ConsumerRecord<String, byte[]> record) {
+        apply(record);
+        positions.put(new TopicPartition(record.topic(), record.partition()), record.offset() + 1);
+    }
+
+    private void apply(ConsumerRecord<String, byte[]> record) {
+        if (record.value() == null) {
+            if (record.key() != null) {
+                patientDirectory.remove(UUID.fromString(record.key()));
+            }
+            return;
+        }
+        try {
+            patientDirectory.apply(PatientEvent.parseFrom(record.value()));
+        } catch (InvalidProtocolBufferException | IllegalArgumentException e) {
+            log.error("Skipping patient event at offset {}: {}", record.offset(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.pm.analyticsservice;
+
+import com.pm.analyticsservice.directory.PatientDirectory;
+import com.pm.analyticsservice.kafka.PatientDirectoryConsumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.listener.ConsumerSeekAware.ConsumerSeekCallback;
+import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientDirectoryConsumerUnitTest {
+
+    private static final TopicPartition P0 = new TopicPartition("patient", 0);
+    private static final TopicPartition P1 = new TopicPartition("patient", 1);
+
+    @Mock
+    private ConsumerSeekCallback callback;
+
+    @Test
+    @DisplayName("A partition is replayed on its first assignment and resumes after the last applied record when it comes back")
+    void shouldResumeReassignedPartition() {
+        PatientDirectory directory = new PatientDirectory();
+        PatientDirectoryConsumer consumer = new PatientDirectoryConsumer(directory);
+        UUID id = UUID.randomUUID();
+
+        consumer.onPartitionsAssigned(Map.of(P0, 42L), callback);
+        verify(callback).seekToBeginning(List.of(P0));
+        consumer.consumeEvent(new ConsumerRecord<>("patient", 0, 0, id.toString(), created(id, "Anna")));
+        consumer.consumeEvent(new ConsumerRecord<>("patient", 0, 1, id.toString(), created(id, "Anna Maria")));
+
+        // revoked and handed back, the group's committed position may be anywhere
+        consumer.onPartitionsRevoked(List.of(P0));
+        consumer.onPartitionsAssigned(Map.of(P0, 50L, P1, 7L), callback);
+        verify(callback).seek("patient", 0, 2);
+        verify(callback).seekToBeginning(List.of(P1));
+        verifyNoMoreInteractions(callback);
+        assertEquals("Anna Maria", directory.find(id).orElseThrow().name());
+    }
+
+    @Test
+    @DisplayName("Events update the directory, tombstones and unreadable values are handled")
+    void shouldApplyRecords() {
+        PatientDirectory directory = new PatientDirectory();
+        PatientDirectoryConsumer consumer = new PatientDirectoryConsumer(directory);
+        UUID id = UUID.randomUUID();
+        consumer.consumeEvent(new ConsumerRecord<>("patient", 0, 0, id.toString(), created(id, "Anna")));
+        assertEquals("Anna", directory.find(id).orElseThrow().name());
+
+        consumer.consumeEvent(new ConsumerRecord<>("patient", 0, 1, id.toString(), new byte[]{(byte) 0xff}));
+        assertEquals(1, directory.size());
+
+        consumer.consumeEvent(new ConsumerRecord<>("patient", 0, 2, id.toString(), null));
+        assertTrue(directory.find(id).isEmpty());
+    }
+
+    private static byte[] created(UUID id, String name) {
+        return PatientEvent.newBuilder()
+                .setPatientId(id.toString())
+                .setType(PatientEventType.PATIENT_CREATED)
+                .setName(name)
+                .build().toByteArray();
+    }
+}
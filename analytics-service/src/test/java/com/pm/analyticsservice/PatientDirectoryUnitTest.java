@@ -0,0 +1,139 @@
+package com.pm.analyticsservice;
+
+import com.pm.analyticsservice.directory.PatientDirectory;
+import com.pm.analyticsservice.directory.PatientDirectory.PatientView;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientDirectoryUnitTest {
+
+    @Test
+    @DisplayName("Created, updated and deleted patients are reflected by find and size")
+    void shouldApplyEvents() {
+        PatientDirectory directory = new PatientDirectory();
+        UUID id = UUID.randomUUID();
+
+        directory.apply(event(id, PatientEventType.PATIENT_CREATED, "Anna", LocalDate.of(1990, 2, 28)));
+        directory.apply(event(id, PatientEventType.PATIENT_UPDATED, "Anna Smith", LocalDate.of(1990, 3, 1)));
+
+        PatientView view = directory.find(id).orElseThrow();
+        assertEquals("Anna Smith", view.name());
+        assertEquals("anna smith@mail.com", view.email());
+        assertEquals(LocalDate.of(1990, 3, 1), view.dateOfBirth());
+        assertEquals(LocalDate.of(2024, 1, 1), view.registeredDate());
+        assertEquals(1, directory.size());
+
+        directory.apply(event(id, PatientEventType.PATIENT_DELETED, "", null));
+        assertTrue(directory.find(id).isEmpty());
+        assertEquals(0, directory.size());
+
+        directory.apply(event(id, PatientEventType.PATIENT_CREATED, "Anna", null));
+        assertEquals("Anna", directory.find(id).orElseThrow().name());
+        assertNull(directory.find(id).orElseThrow().dateOfBirth());
+        assertEquals(1, directory.size());
+    }
+
+    @Test
+    @DisplayName("Birth year cohorts match LocalDate around leap days, year ends and before 1970")
+    void shouldCountBirthYearsLikeLocalDate() {
+        PatientDirectory directory = new PatientDirectory();
+        List<LocalDate> dates = new ArrayList<>();
+        for (int year : new int[]{-401, -400, -1, 0, 1, 1600, 1700, 1899, 1900, 1969, 1970, 1999, 2000, 2024, 2100}) {
+            LocalDate start = LocalDate.of(year, 1, 1);
+            dates.add(start);
+            dates.add(start.minusDays(1));
+            dates.add(LocalDate.of(year, 2, 28));
+            dates.add(LocalDate.of(year, 3, 1));
+            dates.add(LocalDate.of(year, 12, 31));
+            if (start.isLeapYear()) {
+                dates.add(LocalDate.of(year, 2, 29));
+            }
+        }
+        for (long day = -800_000; day <= 800_000; day += 997) {
+            dates.add(LocalDate.ofEpochDay(day));
+        }
+
+        SortedMap<Integer, Long> expected = new TreeMap<>();
+        for (LocalDate date : dates) {
+            directory.apply(event(UUID.randomUUID(), PatientEventType.PATIENT_CREATED, "P", date));
+            expected.merge(date.getYear(), 1L, Long::sum);
+        }
+
+        assertEquals(expected, directory.cohortByBirthYear());
+    }
+
+    @Test
+    @DisplayName("Registrations are counted per day of live patients only")
+    void shouldCountRegistrationsPerDay() {
+        PatientDirectory directory = new PatientDirectory();
+        UUID deleted = UUID.randomUUID();
+        directory.apply(event(UUID.randomUUID(), PatientEventType.PATIENT_CREATED, "A", null));
+        directory.apply(event(UUID.randomUUID(), PatientEventType.PATIENT_CREATED, "B", null));
+        directory.apply(event(deleted, PatientEventType.PATIENT_CREATED, "C", null));
+        directory.remove(deleted);
+
+        assertEquals(Map.of(LocalDate.of(2024, 1, 1), 2L), directory.registrationsPerDay());
+    }
+
+    @Test
+    @DisplayName("Deleted rows and replaced strings are compacted away, live patients stay readable")
+    void shouldCompactDeletedRows() {
+        PatientDirectory directory = new PatientDirectory();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            directory.apply(event(id, PatientEventType.PATIENT_CREATED, "Patient " + i, LocalDate.of(1980, 1, 1)));
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 10 != 0) {
+                directory.remove(ids.get(i));
+            }
+        }
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < ids.size(); i += 10) {
+                directory.apply(event(ids.get(i), PatientEventType.PATIENT_UPDATED, "Patient " + i + " r" + round,
+                        LocalDate.of(1980, 1, 1)));
+            }
+        }
+
+        assertEquals(1000, directory.size());
+        assertTrue(directory.rows() <= 2048, "rows " + directory.rows());
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 10 == 0) {
+                assertEquals("Patient " + i + " r19", directory.find(ids.get(i)).orElseThrow().name());
+            } else {
+                assertTrue(directory.find(ids.get(i)).isEmpty());
+            }
+        }
+        assertEquals(Map.of(1980, 1000L), directory.cohortByBirthYear());
+    }
+
+    private static PatientEvent event(UUID id, PatientEventType type, String name, LocalDate dateOfBirth) {
+        PatientEvent.Builder event = PatientEvent.newBuilder()
+                .setPatientId(id.toString())
+                .setType(type);
+        if (type != PatientEventType.PATIENT_DELETED) {
+            event.setName(name)
+                    .setEmail(name.toLowerCase() + "@mail.com")
+                    .setAddress("Main Street 1")
+                    .setRegisteredDateEpochDay((int) LocalDate.of(2024, 1, 1).toEpochDay());
+            if (dateOfBirth != null) {
+                event.setDateOfBirthEpochDay((int) dateOfBirth.toEpochDay());
+            }
+        }
+        return event.build();
+    }
+}
@@ -0,0 +1,60 @@
+package com.pm.analyticsservice;
+
+import com.pm.analyticsservice.directory.StringDictionary;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StringDictionaryUnitTest {
+
+    @Test
+    @DisplayName("Equal strings get the same code, distinct strings distinct codes")
+    void shouldEncodeEachValueOnce() {
+        StringDictionary dictionary = new StringDictionary(16);
+
+        int anna = dictionary.encode("Anna");
+        int bob = dictionary.encode("Bob");
+
+        assertNotEquals(anna, bob);
+        assertEquals(anna, dictionary.encode(new String("Anna")));
+        assertEquals("Anna", dictionary.decode(anna));
+        assertEquals("Bob", dictionary.decode(bob));
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    @DisplayName("Strings with the same hash code are told apart, before and after the table grows")
+    void shouldResolveCollisionsAcrossResize() {
+        // "Aa" and "BB" share a hash code, so every combination of them collides
+        List<String> colliding = new ArrayList<>();
+        for (int bits = 0; bits < 256; bits++) {
+            StringBuilder value = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                value.append((bits & (1 << i)) == 0 ? "Aa" : "BB");
+            }
+            colliding.add(value.toString());
+        }
+        assertEquals(1, colliding.stream().mapToInt(String::hashCode).distinct().count());
+
+        StringDictionary dictionary = new StringDictionary(16);
+        List<Integer> codes = new ArrayList<>();
+        for (String value : colliding) {
+            codes.add(dictionary.encode(value));
+        }
+        for (int i = 0; i < 5000; i++) {
+            dictionary.encode("value-" + i);
+        }
+
+        assertEquals(256 + 5000, dictionary.size());
+        for (int i = 0; i < colliding.size(); i++) {
+            assertEquals(codes.get(i), dictionary.encode(colliding.get(i)));
+            assertEquals(colliding.get(i), dictionary.decode(codes.get(i)));
+        }
+        assertEquals("value-4999", dictionary.decode(dictionary.encode("value-4999")));
+        assertEquals(256 + 5000, dictionary.size());
+    }
+}
@@ -0,0 +1,69 @@
+package com.pm.analyticsservice;
+
+import com.pm.analyticsservice.directory.UuidIndex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UuidIndexUnitTest {
+
+    @Test
+    @DisplayName("Put, overwrite and get, unknown ids are -1")
+    void shouldMapIdsToRows() {
+        UuidIndex index = new UuidIndex(16);
+        UUID id = UUID.randomUUID();
+
+        index.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), 7);
+        assertEquals(7, index.get(id));
+
+        index.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), 9);
+        assertEquals(9, index.get(id));
+        assertEquals(1, index.size());
+        assertEquals(-1, index.get(UUID.randomUUID()));
+    }
+
+    @Test
+    @DisplayName("Ids hashing to the same slot are all found, before and after the index grows")
+    void shouldResolveCollisionsAcrossResize() {
+        UuidIndex index = new UuidIndex(16);
+        // msb ^ lsb is 0 for all of them, so they share one slot
+        for (int i = 0; i < 200; i++) {
+            index.put(i, i, i);
+        }
+        Map<UUID, Integer> random = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            UUID id = UUID.randomUUID();
+            random.put(id, 200 + i);
+            index.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), 200 + i);
+        }
+
+        assertEquals(5200, index.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, index.get(i, i));
+        }
+        random.forEach((id, row) -> assertEquals(row, index.get(id)));
+        assertEquals(-1, index.get(200, 200));
+    }
+
+    @Test
+    @DisplayName("forEach visits every entry once")
+    void shouldVisitEveryEntry() {
+        UuidIndex index = new UuidIndex(16);
+        Map<UUID, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            UUID id = UUID.randomUUID();
+            expected.put(id, i);
+            index.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), i);
+        }
+
+        Map<UUID, Integer> visited = new HashMap<>();
+        index.forEach((msb, lsb, row) -> assertNull(visited.put(new UUID(msb, lsb), row)));
+
+        assertEquals(expected, visited);
+    }
+}
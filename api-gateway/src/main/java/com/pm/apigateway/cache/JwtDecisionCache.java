@@ -0,0 +1,66 @@
+package com.pm.apigateway.cache;
+
+import com.pm.apigateway.util.JwtUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens auth-service recently accepted, kept so JwtValidation can still let them through while
+ * auth-service is unreachable. An entry lives for the configured TTL but never past the token's own expiry.
+ * Only a SHA-256 of the token is kept.
+ */
+@Component
+public class JwtDecisionCache {
+
+    private final long ttlNanos;
+    private final int maxSize;
+    private final ConcurrentHashMap<String, Long> validUntilNanos = new ConcurrentHashMap<>();
+
+    public JwtDecisionCache(@Value("${auth.validation.cache.ttl:5m}") Duration ttl,
+                            @Value("${auth.validation.cache.max-size:100000}") int maxSize) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxSize = maxSize;
+    }
+
+    public void remember(String authorization) {
+        long now = System.nanoTime();
+        long validFor = ttlNanos;
+        Long expiresAt = JwtUtil.expiresAt(authorization);
+        if (expiresAt != null) {
+            long untilExpiry = TimeUnit.SECONDS.toMillis(expiresAt) - System.currentTimeMillis();
+            validFor = Math.min(validFor, TimeUnit.MILLISECONDS.toNanos(untilExpiry));
+        }
+        if (validFor <= 0) {
+            return;
+        }
+        if (validUntilNanos.size() >= maxSize) {
+            validUntilNanos.values().removeIf(validUntil -> validUntil - now <= 0);
+            if (validUntilNanos.size() >= maxSize) {
+                validUntilNanos.clear();
+            }
+        }
+        validUntilNanos.put(hash(authorization), now + validFor);
+    }
+
+    public boolean isValid(String authorization) {
+        Long validUntil = validUntilNanos.get(hash(authorization));
+        return validUntil != null && validUntil - System.nanoTime() > 0;
+    }
+
+    private static String hash(String authorization) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(authorization.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
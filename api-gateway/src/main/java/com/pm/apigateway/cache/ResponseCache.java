@@ -0,0 +1,129 @@
+package com.pm.apigateway.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Size bounded LRU of upstream GET responses. Bodies are copied into direct buffers by default, so a large
+ * cache does not grow the heap; {@code gateway.cache.max-size} bounds the sum of the stored bodies and
+ * entries expire after the TTL of the route that stored them.
+ * <p>
+ * Every invalidation bumps a generation. A response fetched while an invalidation happened is not stored,
+ * it may already be stale.
+ */
+@Component
+public class ResponseCache {
+
+    public record Key(String routeId, String principal, String path, String accept, String acceptEncoding) {
+    }
+
+    public record Entry(int status, HttpHeaders headers, ByteBuffer body, long storedAtNanos, long expiresAtNanos) {
+
+        public ByteBuffer body() {
+            return body.asReadOnlyBuffer();
+        }
+
+        public int size() {
+            return body.capacity();
+        }
+    }
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final boolean offHeap;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes;
+    private long generation;
+
+    public ResponseCache(@Value("${gateway.cache.max-size:64MB}") DataSize maxSize,
+                         @Value("${gateway.cache.max-entry-size:4MB}") DataSize maxEntrySize,
+                         @Value("${gateway.cache.off-heap:true}") boolean offHeap) {
+        this.maxBytes = maxSize.toBytes();
+        this.maxEntryBytes = Math.min(maxEntrySize.toBytes(), maxBytes);
+        this.offHeap = offHeap;
+    }
+
+    public long maxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAtNanos() - System.nanoTime() <= 0) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Stores a copy of {@code body} unless the cache was invalidated since {@code generation} was read.
+     */
+    public Entry put(Key key, int status, HttpHeaders headers, byte[] body, long ttlNanos, long generation) {
+        if (body.length > maxEntryBytes) {
+            return null;
+        }
+        ByteBuffer copy = offHeap ? ByteBuffer.allocateDirect(body.length) : ByteBuffer.allocate(body.length);
+        copy.put(body).flip();
+        long now = System.nanoTime();
+        Entry entry = new Entry(status, HttpHeaders.readOnlyHttpHeaders(headers), copy, now, now + ttlNanos);
+
+        synchronized (this) {
+            if (this.generation != generation) {
+                return null;
+            }
+            remove(key);
+            entries.put(key, entry);
+            usedBytes += entry.size();
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (usedBytes > maxBytes && eldest.hasNext()) {
+                usedBytes -= eldest.next().getValue().size();
+                eldest.remove();
+            }
+        }
+        return entry;
+    }
+
+    public synchronized int invalidate(Predicate<Key> predicate) {
+        generation++;
+        int removed = 0;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            if (predicate.test(entry.getKey())) {
+                usedBytes -= entry.getValue().size();
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.size();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.pm.apigateway.filter;
+
+import com.pm.apigateway.ratelimit.AdaptiveConcurrencyLimiter;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.SignalType;
+
+import java.util.List;
+
+/**
+ * Sheds load with 503 once a route has more requests in flight than its {@link AdaptiveConcurrencyLimiter}
+ * allows. Upstream 429/502/503/504 responses and errors count as overload, so the limit backs off before
+ * the backend's pools are exhausted.
+ */
+@Component
+public class ConcurrencyLimitGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<ConcurrencyLimitGatewayFilterFactory.Config> {
+
+    public static final String LIMIT_HEADER = "X-Concurrency-Limit";
+
+    private static final List<Integer> OVERLOAD_STATUSES = List.of(429, 502, 503, 504);
+
+    public ConcurrencyLimitGatewayFilterFactory() {
+        super(Config.class);
+    }
+
+    public static class Config {
+        private int initialLimit = 20;
+        private int minLimit = 2;
+        private int maxLimit = 200;
+        private double backoffRatio = 0.9;
+        private double latencyTolerance = 2.0;
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public double getBackoffRatio() {
+            return backoffRatio;
+        }
+
+        public void setBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+        }
+
+        public double getLatencyTolerance() {
+            return latencyTolerance;
+        }
+
+        public void setLatencyTolerance(double latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+        }
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config.getInitialLimit(),
+                config.getMinLimit(), config.getMaxLimit(), config.getBackoffRatio(), config.getLatencyTolerance());
+        return (exchange, chain) -> {
+            if (!limiter.tryAcquire()) {
+                exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                exchange.getResponse().getHeaders().set("Retry-After", "1");
+                exchange.getResponse().getHeaders().set(LIMIT_HEADER, Integer.toString(limiter.getLimit()));
+                return exchange.getResponse().setComplete();
+            }
+            long start = System.nanoTime();
+            return chain.filter(exchange).doFinally(signal -> {
+                HttpStatusCode status = exchange.getResponse().getStatusCode();
+                if (signal == SignalType.CANCEL) {
+                    limiter.onIgnore();
+                } else if (signal == SignalType.ON_ERROR
+                        || (status != null && OVERLOAD_STATUSES.contains(status.value()))) {
+                    limiter.onOverload();
+                } else {
+                    limiter.onSuccess(System.nanoTime() - start);
+                }
+            });
+        };
+    }
+}
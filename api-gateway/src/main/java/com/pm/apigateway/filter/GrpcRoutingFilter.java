@@ -0,0 +1,112 @@
+package com.pm.apigateway.filter;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.isAlreadyRouted;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.setAlreadyRouted;
+
+/**
+ * Proxies routes with an {@code h2c://} uri to plaintext gRPC backends. The default routing filter only
+ * speaks HTTP/2 over TLS, so these routes get their own prior-knowledge HTTP/2 client and the backend
+ * trailers (grpc-status, grpc-message) are copied onto the downstream response.
+ */
+@Component
+public class GrpcRoutingFilter implements GlobalFilter, Ordered {
+
+    private static final String SCHEME = "h2c";
+    private static final List<String> TRAILERS = List.of("grpc-status", "grpc-message", "grpc-status-details-bin");
+    private static final Set<String> HOP_BY_HOP_HEADERS = Set.of(
+            "host", "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade");
+
+    private final HttpClient httpClient = HttpClient.create().protocol(HttpProtocol.H2C);
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI url = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
+        if (isAlreadyRouted(exchange) || !SCHEME.equalsIgnoreCase(url.getScheme())) {
+            return chain.filter(exchange);
+        }
+        setAlreadyRouted(exchange);
+
+        ServerHttpRequest request = exchange.getRequest();
+        ServerHttpResponse response = exchange.getResponse();
+        NettyDataBufferFactory bufferFactory = (NettyDataBufferFactory) response.bufferFactory();
+        String target = "http://" + url.getRawAuthority() + url.getRawPath();
+
+        return httpClient
+                .headers(headers -> request.getHeaders().forEach((name, values) -> {
+                    if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) {
+                        headers.add(name, values);
+                    }
+                }))
+                .post()
+                .uri(target)
+                .send((outboundRequest, outbound) ->
+                        outbound.send(request.getBody().map(NettyDataBufferFactory::toByteBuf)))
+                .responseConnection((backendResponse, connection) -> {
+                    response.setStatusCode(HttpStatusCode.valueOf(backendResponse.status().code()));
+                    HttpHeaders headers = response.getHeaders();
+                    // a trailers-only backend response (errors) carries the status in its headers, it has to
+                    // move to the trailers because the downstream response always sends headers and body first
+                    AtomicReference<io.netty.handler.codec.http.HttpHeaders> trailers = new AtomicReference<>();
+                    io.netty.handler.codec.http.HttpHeaders statusInHeaders = new DefaultHttpHeaders();
+                    backendResponse.responseHeaders().forEach(header -> {
+                        if (TRAILERS.contains(header.getKey().toLowerCase())) {
+                            statusInHeaders.add(header.getKey(), header.getValue());
+                        } else {
+                            headers.add(header.getKey(), header.getValue());
+                        }
+                    });
+                    headers.set(HttpHeaders.TRAILER, String.join(", ", TRAILERS));
+                    if (!statusInHeaders.isEmpty()) {
+                        trailers.set(statusInHeaders);
+                    }
+
+                    HttpServerResponse nativeResponse = ServerHttpResponseDecorator.getNativeResponse(response);
+                    nativeResponse.trailerHeaders(downstream -> {
+                        io.netty.handler.codec.http.HttpHeaders upstream = trailers.get();
+                        if (upstream != null) {
+                            upstream.forEach(trailer -> downstream.set(trailer.getKey(), trailer.getValue()));
+                        }
+                    });
+
+                    Flux<DataBuffer> body = connection.inbound().receive().retain()
+                            .<DataBuffer>map(bufferFactory::wrap)
+                            .concatWith(backendResponse.trailerHeaders()
+                                    .filter(upstream -> !upstream.isEmpty())
+                                    .doOnNext(trailers::set)
+                                    .then(Mono.empty()));
+                    return response.writeWith(body);
+                })
+                .then();
+    }
+
+    @Override
+    public int getOrder() {
+        return NettyRoutingFilter.ORDER - 1;
+    }
+}
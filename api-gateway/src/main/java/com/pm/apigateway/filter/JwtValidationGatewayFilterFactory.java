@@ -1,39 +1,134 @@
 package com.pm.apigateway.filter;
 
+import com.pm.apigateway.cache.JwtDecisionCache;
+import com.pm.apigateway.jwks.LocalJwtVerifier;
+import com.pm.apigateway.revocation.TokenDenylist;
+import com.pm.apigateway.util.JwtUtil;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
+/**
+ * Verifies RS256/EdDSA bearer tokens locally against auth-service's published keys ({@link LocalJwtVerifier}).
+ * Anything that cannot be decided locally (HMAC tokens, a key not fetched yet) is validated with auth-service.
+ * That call goes through the "auth" circuit breaker and
+ * bulkhead and has a timeout; when auth-service cannot answer, tokens it accepted recently are still let
+ * through from {@link JwtDecisionCache} and everything else gets 503 right away. Tokens on the revocation
+ * denylist are rejected before any of that.
+ */
 @Component
 public class JwtValidationGatewayFilterFactory extends
         AbstractGatewayFilterFactory<Object> {
 
+    private static final Logger log = LoggerFactory.getLogger(JwtValidationGatewayFilterFactory.class);
+
+    // ahead of the response writing filters, so RoleAuthorization and filters that decorate the response
+    // (ResponseCache) run after it
+    public static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 3;
+
     private final WebClient webClient;
+    private final JwtDecisionCache decisionCache;
+    private final TokenDenylist denylist;
+    private final LocalJwtVerifier localVerifier;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final Duration timeout;
 
     public JwtValidationGatewayFilterFactory(WebClient.Builder webClientBuilder,
-                                             @Value("${auth.service.url}") String authServiceUrl) {
+                                             @Value("${auth.service.url}") String authServiceUrl,
+                                             @Value("${auth.service.timeout:2s}") Duration timeout,
+                                             JwtDecisionCache decisionCache,
+                                             TokenDenylist denylist,
+                                             LocalJwtVerifier localVerifier,
+                                             CircuitBreakerRegistry circuitBreakerRegistry,
+                                             BulkheadRegistry bulkheadRegistry) {
         this.webClient = webClientBuilder.baseUrl(authServiceUrl).build();
+        this.timeout = timeout;
+        this.decisionCache = decisionCache;
+        this.denylist = denylist;
+        this.localVerifier = localVerifier;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("auth");
+        this.bulkhead = bulkheadRegistry.bulkhead("auth");
     }
 
     @Override
     public GatewayFilter apply(Object config) {
-        return ((exchange, chain) -> {
+        return new OrderedGatewayFilter((exchange, chain) -> {
             String token = exchange.getRequest().getHeaders().getFirst("Authorization");
 
-            if (token == null || !token.startsWith("Bearer ")) {
+            if (token == null || !token.startsWith("Bearer ") || denylist.isRevoked(JwtUtil.tokenId(token))) {
+                exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+                return exchange.getResponse().setComplete();
+            }
+
+            LocalJwtVerifier.Result local = localVerifier.verify(token.substring(7));
+            if (local == LocalJwtVerifier.Result.VALID) {
+                return chain.filter(exchange);
+            }
+            if (local == LocalJwtVerifier.Result.INVALID) {
                 exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
                 return exchange.getResponse().setComplete();
             }
 
-            return webClient.get()
-                    .uri("/validate")
-                    .header("Authorization", token)
-                    .retrieve()
-                    .toBodilessEntity()
-                    .then(chain.filter(exchange));
-        });
+            return validate(token).flatMap(decision -> switch (decision) {
+                case VALID -> chain.filter(exchange);
+                case REJECTED -> {
+                    exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+                    yield exchange.getResponse().setComplete();
+                }
+                case UNAVAILABLE -> {
+                    exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                    exchange.getResponse().getHeaders().set("Retry-After", "1");
+                    yield exchange.getResponse().setComplete();
+                }
+            });
+        }, ORDER);
+    }
+
+    // Any 4xx of auth-service rejects the token, whatever the status; only a missing answer is UNAVAILABLE
+    private Mono<Decision> validate(String token) {
+        return webClient.get()
+                .uri("/validate")
+                .header("Authorization", token)
+                .retrieve()
+                .toBodilessEntity()
+                .timeout(timeout)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .doOnNext(response -> decisionCache.remember(token))
+                .thenReturn(Decision.VALID)
+                .onErrorResume(e -> {
+                    if (e instanceof WebClientResponseException response
+                            && response.getStatusCode().is4xxClientError()) {
+                        return Mono.just(Decision.REJECTED);
+                    }
+                    boolean cached = decisionCache.isValid(token);
+                    log.warn("auth-service unavailable ({}), {}", e.toString(),
+                            cached ? "serving cached decision" : "rejecting request");
+                    return Mono.just(cached ? Decision.VALID : Decision.UNAVAILABLE);
+                });
+    }
+
+    private enum Decision {
+        VALID,
+        REJECTED,
+        UNAVAILABLE
     }
 }
@@ -0,0 +1,296 @@
+package com.pm.apigateway.filter;
+
+import com.pm.apigateway.cache.ResponseCache;
+import com.pm.apigateway.util.JwtUtil;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Serves repeated GETs of a route from {@link ResponseCache}, keyed per route, JWT subject, path and
+ * query, Accept and Accept-Encoding. Concurrent misses for the same key are coalesced: one request goes
+ * upstream, the others wait for its response. Cached responses still answer If-None-Match with 304.
+ * A response marked {@code no-cache} is only stored with an ETag and is revalidated upstream with
+ * If-None-Match on every use; a 304 is answered from the cache, anything else replaces the entry.
+ * Has to run after JwtValidation, the subject is read from an already validated token, and after
+ * RoleAuthorization.
+ */
+@Component
+public class ResponseCacheGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<ResponseCacheGatewayFilterFactory.Config> {
+
+    public static final String CACHE_HEADER = "X-Cache";
+    // after JwtValidation and RoleAuthorization, before NettyWriteResponseFilter so the decorated response is
+    // the one written to. Also ahead of the route's RequestRateLimiter and ConcurrencyLimit on purpose: a hit
+    // never reaches the backend, so it takes no token and no concurrency slot, and its near zero latency would
+    // skew the limiter. Misses and revalidations go down the chain through both
+    public static final int ORDER = RoleAuthorizationGatewayFilterFactory.ORDER + 1;
+
+    private static final Set<String> NOT_STORED_HEADERS = Set.of(
+            HttpHeaders.CONTENT_LENGTH, HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CONNECTION,
+            HttpHeaders.SET_COOKIE, HttpHeaders.DATE);
+
+    private final ResponseCache cache;
+    private final ConcurrentHashMap<ResponseCache.Key, Sinks.One<Optional<ResponseCache.Entry>>> inFlight =
+            new ConcurrentHashMap<>();
+
+    public ResponseCacheGatewayFilterFactory(ResponseCache cache) {
+        super(Config.class);
+        this.cache = cache;
+    }
+
+    public static class Config {
+        private Duration ttl = Duration.ofSeconds(30);
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("ttl");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        long ttlNanos = config.getTtl().toNanos();
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (request.getMethod() != HttpMethod.GET || noCache(request.getHeaders())) {
+                return chain.filter(exchange);
+            }
+            ResponseCache.Key key = key(exchange);
+            if (key == null) {
+                return chain.filter(exchange);
+            }
+
+            ResponseCache.Entry hit = cache.get(key);
+            if (hit != null && !mustRevalidate(hit.headers())) {
+                return write(exchange, hit, "HIT");
+            }
+            if (hit != null) {
+                return revalidate(exchange, chain, key, hit, ttlNanos);
+            }
+
+            Sinks.One<Optional<ResponseCache.Entry>> flight = Sinks.one();
+            Sinks.One<Optional<ResponseCache.Entry>> leader = inFlight.putIfAbsent(key, flight);
+            if (leader != null) {
+                return leader.asMono().flatMap(entry -> entry.isPresent()
+                        ? write(exchange, entry.get(), "HIT")
+                        : chain.filter(exchange));
+            }
+
+            long generation = cache.generation();
+            ServerHttpResponse capturing = new CapturingResponse(exchange, null,
+                    body -> complete(key, flight, store(exchange, key, body, ttlNanos, generation)));
+            exchange.getResponse().getHeaders().set(CACHE_HEADER, "MISS");
+            return chain.filter(exchange.mutate().response(capturing).build())
+                    .doFinally(signal -> complete(key, flight, null));
+        }, ORDER);
+    }
+
+    // Asks upstream whether the entry is still current; not coalesced, a 304 is cheap for the service
+    private Mono<Void> revalidate(ServerWebExchange exchange, GatewayFilterChain chain, ResponseCache.Key key,
+                                  ResponseCache.Entry entry, long ttlNanos) {
+        long generation = cache.generation();
+        ServerHttpRequest conditional = exchange.getRequest().mutate()
+                .headers(headers -> headers.setIfNoneMatch(entry.headers().getETag()))
+                .build();
+        ServerHttpResponse capturing = new CapturingResponse(exchange, entry,
+                body -> store(exchange, key, body, ttlNanos, generation));
+        exchange.getResponse().getHeaders().set(CACHE_HEADER, "MISS");
+        return chain.filter(exchange.mutate().request(conditional).response(capturing).build());
+    }
+
+    private ResponseCache.Entry store(ServerWebExchange exchange, ResponseCache.Key key, byte[] body,
+                                      long ttlNanos, long generation) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpStatusCode status = response.getStatusCode();
+        if (status == null || status.value() != HttpStatus.OK.value() || noStore(response.getHeaders())
+                || mustRevalidate(response.getHeaders()) && response.getHeaders().getETag() == null) {
+            return null;
+        }
+        return cache.put(key, status.value(), storedHeaders(response.getHeaders()), body, ttlNanos, generation);
+    }
+
+    private void complete(ResponseCache.Key key, Sinks.One<Optional<ResponseCache.Entry>> flight,
+                          ResponseCache.Entry entry) {
+        if (flight.tryEmitValue(Optional.ofNullable(entry)).isSuccess()) {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private ResponseCache.Key key(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        String principal = JwtUtil.subject(exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+        if (route == null || principal == null) {
+            return null;
+        }
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        return new ResponseCache.Key(route.getId(), principal,
+                exchange.getRequest().getURI().getRawPath() + "?" + exchange.getRequest().getURI().getRawQuery(),
+                String.valueOf(headers.getFirst(HttpHeaders.ACCEPT)),
+                String.valueOf(headers.getFirst(HttpHeaders.ACCEPT_ENCODING)));
+    }
+
+    private static Mono<Void> write(ServerWebExchange exchange, ResponseCache.Entry entry, String cacheStatus) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.putAll(entry.headers());
+        headers.set(CACHE_HEADER, cacheStatus);
+        headers.set(HttpHeaders.AGE, Long.toString(
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - entry.storedAtNanos())));
+
+        String eTag = entry.headers().getETag();
+        if (eTag != null && matches(exchange.getRequest().getHeaders().getIfNoneMatch(), eTag)) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            headers.remove(HttpHeaders.CONTENT_TYPE);
+            headers.remove(HttpHeaders.CONTENT_ENCODING);
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatusCode.valueOf(entry.status()));
+        headers.setContentLength(entry.size());
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(entry.body())));
+    }
+
+    private static boolean matches(List<String> ifNoneMatch, String eTag) {
+        String opaque = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+        for (String candidate : ifNoneMatch) {
+            if (candidate.equals("*") || candidate.equals(opaque) || candidate.equals("W/" + opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean noCache(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        return cacheControl != null && (cacheControl.contains("no-cache") || cacheControl.contains("no-store"));
+    }
+
+    private static boolean mustRevalidate(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        return cacheControl != null && cacheControl.contains("no-cache");
+    }
+
+    private static boolean noStore(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        return cacheControl != null && (cacheControl.contains("no-store") || cacheControl.contains("private"));
+    }
+
+    private static HttpHeaders storedHeaders(HttpHeaders headers) {
+        HttpHeaders stored = new HttpHeaders();
+        headers.forEach((name, values) -> {
+            if (NOT_STORED_HEADERS.stream().noneMatch(name::equalsIgnoreCase) && !name.equalsIgnoreCase(CACHE_HEADER)) {
+                stored.put(name, List.copyOf(values));
+            }
+        });
+        return stored;
+    }
+
+    /**
+     * Streams the upstream body to the client unchanged and keeps a copy of it, up to the cache's entry
+     * limit, for the completion callback. When revalidating, an upstream 304 is answered with the entry.
+     */
+    private final class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private final ServerWebExchange exchange;
+        private final ResponseCache.Entry revalidated;
+        private final Consumer<byte[]> onComplete;
+
+        CapturingResponse(ServerWebExchange exchange, ResponseCache.Entry revalidated, Consumer<byte[]> onComplete) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+            this.revalidated = revalidated;
+            this.onComplete = onComplete;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatusCode status = getStatusCode();
+            if (revalidated != null && status != null && status.value() == HttpStatus.NOT_MODIFIED.value()) {
+                return Flux.from(body).doOnNext(DataBufferUtils::release)
+                        .then(Mono.defer(() -> write(revalidated)));
+            }
+            long limit = cache.maxEntryBytes();
+            ByteArrayOutputStream[] copy = {new ByteArrayOutputStream()};
+            Flux<DataBuffer> teed = Flux.<DataBuffer>from(body)
+                    .doOnNext(buffer -> {
+                        if (copy[0] == null) {
+                            return;
+                        }
+                        if (copy[0].size() + buffer.readableByteCount() > limit) {
+                            copy[0] = null;
+                            return;
+                        }
+                        try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+                            chunks.forEachRemaining(chunk -> {
+                                byte[] bytes = new byte[chunk.remaining()];
+                                chunk.get(bytes);
+                                copy[0].write(bytes, 0, bytes.length);
+                            });
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (copy[0] != null) {
+                            onComplete.accept(copy[0].toByteArray());
+                        }
+                    });
+            return super.writeWith(teed);
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            HttpStatusCode status = getStatusCode();
+            if (revalidated != null && status != null && status.value() == HttpStatus.NOT_MODIFIED.value()) {
+                return write(revalidated);
+            }
+            return super.setComplete();
+        }
+
+        private Mono<Void> write(ResponseCache.Entry entry) {
+            getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+            getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+            return ResponseCacheGatewayFilterFactory.write(exchange, entry, "REVALIDATED");
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            // streamed responses (server-sent events, Arrow exports) are passed through and not cached
+            return super.writeAndFlushWith(body);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.pm.apigateway.filter;
+
+import com.pm.apigateway.util.JwtUtil;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Rejects requests whose token's {@code role} claim is not allowed on the route with 403, before they reach
+ * the service. {@code roles} applies to every method, {@code read-roles} (GET, HEAD, OPTIONS) and
+ * {@code write-roles} (everything else) override it. Several roles are given comma separated
+ * ({@code read-roles: ADMIN,USER}), the shortcut {@code RoleAuthorization=ADMIN} takes a single one.
+ * The rule is compiled into sets once per route when the route is built. Has to run after JwtValidation,
+ * the claim is read from an already validated token.
+ */
+@Component
+public class RoleAuthorizationGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<RoleAuthorizationGatewayFilterFactory.Config> {
+
+    // between JwtValidation and ResponseCache, a cached response must not reach a role that may not see it
+    public static final int ORDER = JwtValidationGatewayFilterFactory.ORDER + 1;
+
+    private static final Set<HttpMethod> READ_METHODS = Set.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS);
+
+    public RoleAuthorizationGatewayFilterFactory() {
+        super(Config.class);
+    }
+
+    public static class Config {
+        private List<String> roles = List.of();
+        private List<String> readRoles;
+        private List<String> writeRoles;
+
+        public List<String> getRoles() {
+            return roles;
+        }
+
+        public void setRoles(List<String> roles) {
+            this.roles = roles;
+        }
+
+        public List<String> getReadRoles() {
+            return readRoles;
+        }
+
+        public void setReadRoles(List<String> readRoles) {
+            this.readRoles = readRoles;
+        }
+
+        public List<String> getWriteRoles() {
+            return writeRoles;
+        }
+
+        public void setWriteRoles(List<String> writeRoles) {
+            this.writeRoles = writeRoles;
+        }
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("roles");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        Set<String> readRoles = compile(config.getReadRoles() != null ? config.getReadRoles() : config.getRoles());
+        Set<String> writeRoles = compile(config.getWriteRoles() != null ? config.getWriteRoles() : config.getRoles());
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            Set<String> allowed = READ_METHODS.contains(exchange.getRequest().getMethod()) ? readRoles : writeRoles;
+            String role = JwtUtil.role(exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+            if (role == null || !allowed.contains(role)) {
+                exchange.getResponse().setStatusCode(HttpStatus.FORBIDDEN);
+                return exchange.getResponse().setComplete();
+            }
+            return chain.filter(exchange);
+        }, ORDER);
+    }
+
+    // route args are bound as given, "ADMIN,USER" stays one element
+    private static Set<String> compile(List<String> roles) {
+        return roles.stream()
+                .flatMap(role -> Arrays.stream(role.split(",")))
+                .map(String::trim)
+                .filter(role -> !role.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
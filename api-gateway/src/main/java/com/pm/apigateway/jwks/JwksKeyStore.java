@@ -0,0 +1,100 @@
+package com.pm.apigateway.jwks;
+
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * auth-service's public token keys by kid, fetched from its JWK set in the background: on a fixed schedule
+ * and, at most once per {@code auth.jwks.min-refresh-interval}, when a token names a kid that is not known yet.
+ * A failed fetch keeps the previous keys.
+ */
+@Component
+public class JwksKeyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(JwksKeyStore.class);
+
+    private final boolean enabled;
+    private final WebClient webClient;
+    private final String path;
+    private final Duration timeout;
+    private final long minRefreshIntervalNanos;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile Map<String, PublicKey> keys = Map.of();
+    private volatile long lastRefreshNanos = System.nanoTime() - Long.MAX_VALUE / 2;
+
+    public JwksKeyStore(WebClient.Builder webClientBuilder,
+                        @Value("${auth.service.url}") String authServiceUrl,
+                        @Value("${auth.jwks.enabled:true}") boolean enabled,
+                        @Value("${auth.jwks.path:/.well-known/jwks.json}") String path,
+                        @Value("${auth.service.timeout:2s}") Duration timeout,
+                        @Value("${auth.jwks.min-refresh-interval:30s}") Duration minRefreshInterval) {
+        this.webClient = webClientBuilder.baseUrl(authServiceUrl).build();
+        this.enabled = enabled;
+        this.path = path;
+        this.timeout = timeout;
+        this.minRefreshIntervalNanos = minRefreshInterval.toNanos();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The public key for {@code kid}, or null; an unknown kid schedules a refresh, a new key pair is picked up
+     * with the first token signed by it.
+     */
+    public PublicKey key(String kid) {
+        PublicKey key = keys.get(kid);
+        if (key == null && System.nanoTime() - lastRefreshNanos > minRefreshIntervalNanos) {
+            refresh();
+        }
+        return key;
+    }
+
+    @Scheduled(fixedDelayString = "${auth.jwks.refresh-interval-ms:300000}")
+    public void refresh() {
+        if (!enabled || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        lastRefreshNanos = System.nanoTime();
+        webClient.get()
+                .uri(path)
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(timeout)
+                .doFinally(signal -> refreshing.set(false))
+                .subscribe(this::update, e -> log.warn("Could not fetch the JWK set of auth-service: {}", e.toString()));
+    }
+
+    private void update(String json) {
+        try {
+            JwkSet jwkSet = Jwks.setParser().build().parse(json);
+            Map<String, PublicKey> fetched = new HashMap<>();
+            for (Jwk<?> jwk : jwkSet.getKeys()) {
+                if (jwk.getId() != null && jwk.toKey() instanceof PublicKey publicKey) {
+                    fetched.put(jwk.getId(), publicKey);
+                }
+            }
+            if (!fetched.keySet().equals(keys.keySet())) {
+                log.info("JWK set of auth-service changed, kids {}", fetched.keySet());
+            }
+            keys = Map.copyOf(fetched);
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed JWK set of auth-service: {}", e.toString());
+        }
+    }
+}
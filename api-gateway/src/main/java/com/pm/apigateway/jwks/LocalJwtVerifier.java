@@ -0,0 +1,69 @@
+package com.pm.apigateway.jwks;
+
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
+import org.springframework.stereotype.Component;
+
+import java.security.Key;
+import java.security.PublicKey;
+
+/**
+ * Verifies RS256/EdDSA access tokens with the keys from {@link JwksKeyStore}, without calling auth-service.
+ * HMAC tokens and tokens signed with a key the gateway does not know (yet) are left to auth-service.
+ */
+@Component
+public class LocalJwtVerifier {
+
+    public enum Result {
+        VALID,
+        INVALID,
+        UNDECIDED
+    }
+
+    private final JwksKeyStore keyStore;
+    private final JwtParser parser;
+
+    public LocalJwtVerifier(JwksKeyStore keyStore) {
+        this.keyStore = keyStore;
+        this.parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(JwsHeader header) {
+                        // the shared secret never reaches the gateway
+                        if (header.getKeyId() == null || header.getAlgorithm() == null
+                                || header.getAlgorithm().startsWith("HS")) {
+                            throw new UnknownKeyException();
+                        }
+                        PublicKey key = keyStore.key(header.getKeyId());
+                        if (key == null) {
+                            throw new UnknownKeyException();
+                        }
+                        return key;
+                    }
+                })
+                .build();
+    }
+
+    public Result verify(String token) {
+        if (!keyStore.isEnabled()) {
+            return Result.UNDECIDED;
+        }
+        try {
+            parser.parseSignedClaims(token);
+            return Result.VALID;
+        } catch (UnknownKeyException e) {
+            return Result.UNDECIDED;
+        } catch (JwtException | IllegalArgumentException e) {
+            return Result.INVALID;
+        }
+    }
+
+    private static final class UnknownKeyException extends JwtException {
+        UnknownKeyException() {
+            super("No local key for this token");
+        }
+    }
+}
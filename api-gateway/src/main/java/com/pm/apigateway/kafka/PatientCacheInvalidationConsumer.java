@@ -0,0 +1,54 @@
+package com.pm.apigateway.kafka;
+
+import com.pm.apigateway.cache.ResponseCache;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Drops cached patient reads when the patient topic reports a change. Records are keyed by patient id:
+ * responses for that patient and every response that is not about one specific patient (lists, searches)
+ * are removed. Each gateway instance consumes in its own group, so every instance sees every event.
+ * <p>
+ * The group starts at the latest offset, so events published before its partitions are assigned (at startup,
+ * or while a rebalance has them revoked) are never seen. The whole cache is dropped on every assignment to
+ * cover that gap; a response stored while unassigned is still served at most for the route's ResponseCache TTL,
+ * and no-cache responses are revalidated upstream on every use anyway.
+ */
+@Service
+public class PatientCacheInvalidationConsumer implements ConsumerSeekAware {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientCacheInvalidationConsumer.class);
+
+    private static final Pattern UUID_IN_PATH =
+            Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final ResponseCache responseCache;
+
+    public PatientCacheInvalidationConsumer(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        int removed = responseCache.invalidate(key -> true);
+        log.debug("Patient topic partitions {} assigned, dropped {} cached responses", assignments.keySet(), removed);
+    }
+
+    @KafkaListener(topics = "patient", groupId = "api-gateway-cache-${random.uuid}",
+            properties = "auto.offset.reset=latest")
+    public void consumeEvent(ConsumerRecord<String, byte[]> record) {
+        String patientId = record.key();
+        int removed = responseCache.invalidate(key -> patientId == null
+                || key.path().contains(patientId)
+                || !UUID_IN_PATH.matcher(key.path()).find());
+        log.debug("Patient {} changed, dropped {} cached responses", patientId, removed);
+    }
+}
@@ -0,0 +1,41 @@
+package com.pm.apigateway.kafka;
+
+import com.pm.apigateway.revocation.TokenDenylist;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Feeds access token revocations published by auth-service into the gateway's denylist. Records are keyed by
+ * jti with the token's expiry in epoch seconds as value. Every instance reads the whole topic in its own group
+ * from the beginning, so a fresh gateway knows every revoked token that is still alive.
+ */
+@Service
+public class TokenRevocationConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationConsumer.class);
+
+    private final TokenDenylist denylist;
+
+    public TokenRevocationConsumer(TokenDenylist denylist) {
+        this.denylist = denylist;
+    }
+
+    @KafkaListener(topics = "token-revocations", groupId = "api-gateway-revocations-${random.uuid}",
+            properties = "auto.offset.reset=earliest")
+    public void consumeRevocation(ConsumerRecord<String, byte[]> record) {
+        if (record.key() == null || record.value() == null) {
+            log.warn("Ignoring malformed token revocation {}", record);
+            return;
+        }
+        try {
+            denylist.revoke(record.key(), Long.parseLong(new String(record.value(), StandardCharsets.UTF_8)));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed token revocation {}", record);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.pm.apigateway.ratelimit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gradient concurrency limit driven by latency. Every completed request feeds two moving averages of its
+ * latency, a short-term one over the last few requests and a long-term one over about a hundred. While the
+ * short-term average stays within {@code latencyTolerance} times the long-term one the limit grows by about
+ * the square root of itself (the queue the backend may build); beyond that it shrinks in proportion, to at most
+ * half. Both averages follow every sample, so a route mixing fast and slow requests settles at its mean instead
+ * of treating each slow one as congestion, and a lasting shift in latency becomes the new normal. Overload
+ * reported by the backend multiplies the limit by {@code backoffRatio}. Requests over the limit are rejected
+ * at once, so queueing happens at the client instead of in the backend's thread and DB pools.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double LONG_TERM_WEIGHT = 0.01;
+    private static final double SHORT_TERM_WEIGHT = 0.2;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private double longTermNanos;
+    private double shortTermNanos;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double backoffRatio, double latencyTolerance) {
+        if (minLimit < 1 || maxLimit < minLimit || backoffRatio <= 0 || backoffRatio >= 1 || latencyTolerance <= 1) {
+            throw new IllegalArgumentException("Invalid concurrency limit settings");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void onSuccess(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (longTermNanos == 0) {
+                longTermNanos = latencyNanos;
+                shortTermNanos = latencyNanos;
+            } else {
+                longTermNanos += (latencyNanos - longTermNanos) * LONG_TERM_WEIGHT;
+                shortTermNanos += (latencyNanos - shortTermNanos) * SHORT_TERM_WEIGHT;
+            }
+            double gradient = shortTermNanos > 0
+                    ? Math.clamp(latencyTolerance * longTermNanos / shortTermNanos, MIN_GRADIENT, 1.0)
+                    : 1.0;
+            // only grow while the limit is actually used, an idle route keeps its limit
+            if (gradient == 1.0 && current * 2 < limit) {
+                return;
+            }
+            double target = limit * gradient + Math.sqrt(limit);
+            limit = Math.clamp(limit * (1 - SMOOTHING) + target * SMOOTHING, minLimit, maxLimit);
+        }
+    }
+
+    public void onOverload() {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            decrease();
+        }
+    }
+
+    // cancelled requests say nothing about the backend
+    public void onIgnore() {
+        inFlight.decrementAndGet();
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,149 @@
+package com.pm.apigateway.ratelimit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RateLimiter for the built-in RequestRateLimiter filter that keeps its buckets in memory instead of Redis:
+ * one {@link TokenBucket} per route and user, and one per route shared by all users. Limits are per gateway
+ * instance. Route args use the {@code in-memory-rate-limiter.} prefix, routes without them get the defaults.
+ */
+@Component
+public class InMemoryRateLimiter extends AbstractRateLimiter<InMemoryRateLimiter.Config> {
+
+    public static final String CONFIGURATION_PROPERTY_NAME = "in-memory-rate-limiter";
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    public static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+    public static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+
+    // full buckets behave like new ones, so they are dropped once this many users are tracked, at most once per
+    // PRUNE_INTERVAL_NANOS since every pass walks all of them
+    private static final int MAX_TRACKED_USERS = 100_000;
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Config defaultConfig;
+    private final ConcurrentHashMap<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, TokenBucket> routeBuckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastPrune = new AtomicLong(System.nanoTime() - PRUNE_INTERVAL_NANOS);
+
+    public InMemoryRateLimiter(ConfigurationService configurationService,
+                               @Value("${gateway.rate-limit.replenish-rate:20}") int replenishRate,
+                               @Value("${gateway.rate-limit.burst-capacity:40}") int burstCapacity,
+                               @Value("${gateway.rate-limit.route-replenish-rate:500}") int routeReplenishRate,
+                               @Value("${gateway.rate-limit.route-burst-capacity:1000}") int routeBurstCapacity) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.defaultConfig = new Config();
+        defaultConfig.setReplenishRate(replenishRate);
+        defaultConfig.setBurstCapacity(burstCapacity);
+        defaultConfig.setRouteReplenishRate(routeReplenishRate);
+        defaultConfig.setRouteBurstCapacity(routeBurstCapacity);
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        Config config = effective(getConfig().get(routeId));
+        if (userBuckets.size() > MAX_TRACKED_USERS) {
+            prune();
+        }
+
+        TokenBucket user = userBuckets.computeIfAbsent(routeId + '\n' + id,
+                key -> new TokenBucket(config.getReplenishRate(), config.getBurstCapacity()));
+        long remaining = user.tryAcquire();
+        if (remaining >= 0) {
+            TokenBucket route = routeBuckets.computeIfAbsent(routeId,
+                    key -> new TokenBucket(config.getRouteReplenishRate(), config.getRouteBurstCapacity()));
+            long routeRemaining = route.tryAcquire();
+            if (routeRemaining < 0) {
+                // the request is not sent, so it does not count against the user
+                user.refund();
+                remaining = routeRemaining;
+            }
+        }
+        return Mono.just(new Response(remaining >= 0, headers(config, remaining)));
+    }
+
+    private void prune() {
+        long now = System.nanoTime();
+        long last = lastPrune.get();
+        if (now - last >= PRUNE_INTERVAL_NANOS && lastPrune.compareAndSet(last, now)) {
+            userBuckets.values().removeIf(TokenBucket::isFull);
+        }
+    }
+
+    private Config effective(Config routeConfig) {
+        if (routeConfig == null) {
+            return defaultConfig;
+        }
+        Config config = new Config();
+        config.setReplenishRate(orDefault(routeConfig.getReplenishRate(), defaultConfig.getReplenishRate()));
+        config.setBurstCapacity(orDefault(routeConfig.getBurstCapacity(), defaultConfig.getBurstCapacity()));
+        config.setRouteReplenishRate(orDefault(routeConfig.getRouteReplenishRate(), defaultConfig.getRouteReplenishRate()));
+        config.setRouteBurstCapacity(orDefault(routeConfig.getRouteBurstCapacity(), defaultConfig.getRouteBurstCapacity()));
+        return config;
+    }
+
+    private static int orDefault(int value, int defaultValue) {
+        return value > 0 ? value : defaultValue;
+    }
+
+    private static Map<String, String> headers(Config config, long remaining) {
+        if (remaining >= 0) {
+            return Map.of(REMAINING_HEADER, Long.toString(remaining),
+                    REPLENISH_RATE_HEADER, Integer.toString(config.getReplenishRate()),
+                    BURST_CAPACITY_HEADER, Integer.toString(config.getBurstCapacity()));
+        }
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(-remaining + 999_999_999));
+        return Map.of(REMAINING_HEADER, "0",
+                REPLENISH_RATE_HEADER, Integer.toString(config.getReplenishRate()),
+                BURST_CAPACITY_HEADER, Integer.toString(config.getBurstCapacity()),
+                "Retry-After", Long.toString(retryAfterSeconds));
+    }
+
+    // values left at 0 on a route fall back to the gateway.rate-limit defaults
+    public static class Config {
+        private int replenishRate;
+        private int burstCapacity;
+        private int routeReplenishRate;
+        private int routeBurstCapacity;
+
+        public int getReplenishRate() {
+            return replenishRate;
+        }
+
+        public void setReplenishRate(int replenishRate) {
+            this.replenishRate = replenishRate;
+        }
+
+        public int getBurstCapacity() {
+            return burstCapacity;
+        }
+
+        public void setBurstCapacity(int burstCapacity) {
+            this.burstCapacity = burstCapacity;
+        }
+
+        public int getRouteReplenishRate() {
+            return routeReplenishRate;
+        }
+
+        public void setRouteReplenishRate(int routeReplenishRate) {
+            this.routeReplenishRate = routeReplenishRate;
+        }
+
+        public int getRouteBurstCapacity() {
+            return routeBurstCapacity;
+        }
+
+        public void setRouteBurstCapacity(int routeBurstCapacity) {
+            this.routeBurstCapacity = routeBurstCapacity;
+        }
+    }
+}
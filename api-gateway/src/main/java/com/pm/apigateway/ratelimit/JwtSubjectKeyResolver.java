@@ -0,0 +1,20 @@
+package com.pm.apigateway.ratelimit;
+
+import com.pm.apigateway.util.JwtUtil;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Rate limits per user: the key is the subject of the (already validated) JWT.
+ */
+@Component
+public class JwtSubjectKeyResolver implements KeyResolver {
+
+    @Override
+    public Mono<String> resolve(ServerWebExchange exchange) {
+        return Mono.justOrEmpty(JwtUtil.subject(exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION)));
+    }
+}
@@ -0,0 +1,56 @@
+package com.pm.apigateway.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in its GCRA form: instead of a token count and a refill timestamp it keeps one
+ * "theoretical arrival time" that advances by one emission interval per accepted request. A request fits
+ * while that time is at most {@code burstCapacity} intervals ahead of now, which is the same as a bucket of
+ * {@code burstCapacity} tokens refilled at {@code replenishRate} per second. One CAS per request, no lock.
+ */
+public final class TokenBucket {
+
+    private final long emissionIntervalNanos;
+    private final long capacityNanos;
+    private final AtomicLong theoreticalArrival;
+
+    public TokenBucket(int replenishRate, int burstCapacity) {
+        if (replenishRate <= 0 || burstCapacity <= 0) {
+            throw new IllegalArgumentException("replenishRate and burstCapacity must be positive");
+        }
+        this.emissionIntervalNanos = TimeUnit.SECONDS.toNanos(1) / replenishRate;
+        this.capacityNanos = emissionIntervalNanos * burstCapacity;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes one token. Returns the tokens left (>= 0) when granted, otherwise the negated nanoseconds until
+     * the next token is available.
+     */
+    public long tryAcquire() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + emissionIntervalNanos;
+            long ahead = next - now;
+            if (ahead > capacityNanos) {
+                return -(ahead - capacityNanos);
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return (capacityNanos - ahead) / emissionIntervalNanos;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token granted by {@link #tryAcquire()} for a request that was rejected elsewhere.
+     */
+    public void refund() {
+        theoreticalArrival.addAndGet(-emissionIntervalNanos);
+    }
+
+    public boolean isFull() {
+        return theoreticalArrival.get() - System.nanoTime() <= 0;
+    }
+}
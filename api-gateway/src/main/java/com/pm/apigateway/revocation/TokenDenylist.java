@@ -0,0 +1,57 @@
+package com.pm.apigateway.revocation;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Revoked access tokens by jti until they expire on their own. The hot path is a Bloom filter probe, only its
+ * (rare) positives look at the exact set. Expired entries are pruned and the filter rebuilt periodically, so
+ * both stay as small as the number of revoked tokens that are still alive.
+ */
+@Component
+public class TokenDenylist {
+
+    private final int expectedEntries;
+    private final double falsePositiveRate;
+    private final ConcurrentHashMap<String, Long> expiresAtByJti = new ConcurrentHashMap<>();
+    private volatile BloomFilter filter;
+
+    public TokenDenylist(@Value("${gateway.revocation.expected-entries:100000}") int expectedEntries,
+                         @Value("${gateway.revocation.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+    }
+
+    // synchronized with rebuilds, an add must not land in a filter that is about to be replaced
+    public synchronized void revoke(String jti, long expiresAtEpochSecond) {
+        if (expiresAtEpochSecond <= Instant.now().getEpochSecond()) {
+            return;
+        }
+        expiresAtByJti.merge(jti, expiresAtEpochSecond, Math::max);
+        filter.add(jti);
+    }
+
+    public boolean isRevoked(String jti) {
+        return jti != null && filter.mightContain(jti) && expiresAtByJti.containsKey(jti);
+    }
+
+    public int size() {
+        return expiresAtByJti.size();
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.revocation.prune-interval-ms:60000}")
+    public synchronized void prune() {
+        long now = Instant.now().getEpochSecond();
+        if (!expiresAtByJti.values().removeIf(expiresAt -> expiresAt <= now)) {
+            return;
+        }
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedEntries, expiresAtByJti.size() * 2), falsePositiveRate);
+        expiresAtByJti.keySet().forEach(rebuilt::add);
+        filter = rebuilt;
+    }
+}
@@ -0,0 +1,62 @@
+package com.pm.apigateway.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Base64;
+
+public final class JwtUtil {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private JwtUtil() {
+    }
+
+    /**
+     * Subject of a bearer token, or null. The token is only decoded, callers must run after JwtValidation.
+     */
+    public static String subject(String authorization) {
+        JsonNode subject = claim(authorization, "sub");
+        return subject == null ? null : subject.asText();
+    }
+
+    /**
+     * {@code role} claim of a bearer token, or null. Decoded only, like {@link #subject}.
+     */
+    public static String role(String authorization) {
+        JsonNode role = claim(authorization, "role");
+        return role == null || !role.isTextual() ? null : role.asText();
+    }
+
+    /**
+     * jti of a bearer token, or null. Decoded only, like {@link #subject}.
+     */
+    public static String tokenId(String authorization) {
+        JsonNode tokenId = claim(authorization, "jti");
+        return tokenId == null ? null : tokenId.asText();
+    }
+
+    /**
+     * Expiry of a bearer token in epoch seconds, or null when it has none. Decoded only, like {@link #subject}.
+     */
+    public static Long expiresAt(String authorization) {
+        JsonNode expiresAt = claim(authorization, "exp");
+        return expiresAt == null || !expiresAt.canConvertToLong() ? null : expiresAt.asLong();
+    }
+
+    private static JsonNode claim(String authorization, String name) {
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return null;
+        }
+        String[] parts = authorization.substring(7).split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.readTree(Base64.getUrlDecoder().decode(parts[1])).get(name);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.pm.apigateway;
+
+import com.pm.apigateway.ratelimit.AdaptiveConcurrencyLimiter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveConcurrencyLimiterUnitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    @DisplayName("Requests over the limit are rejected until one completes")
+    void shouldRejectOverLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(3, 1, 10, 0.9, 2.0);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(3, limiter.getInFlight());
+
+        limiter.onIgnore();
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("The limit grows while requests stay fast and the limit is used")
+    void shouldGrowWhileLatencyIsSteady() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100, 0.9, 2.0);
+
+        run(limiter, 200, i -> FAST);
+
+        assertEquals(100, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("A route mixing fast and slow requests keeps its limit instead of collapsing")
+    void shouldNotCollapseOnMixedLatencies() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 2, 100, 0.9, 2.0);
+
+        run(limiter, 2000, i -> i % 3 == 0 ? SLOW : FAST);
+
+        assertTrue(limiter.getLimit() >= 20, "limit " + limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("Latency rising above the long-term average shrinks the limit, a lasting shift is recovered from")
+    void shouldBackOffOnRisingLatency() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(50, 2, 100, 0.9, 2.0);
+        run(limiter, 100, i -> FAST);
+        int before = limiter.getLimit();
+
+        run(limiter, 20, i -> SLOW);
+        int congested = limiter.getLimit();
+        assertTrue(congested < before / 2, before + " -> " + congested);
+
+        run(limiter, 2000, i -> SLOW);
+        assertEquals(100, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("Overload multiplies the limit by the backoff ratio down to the minimum")
+    void shouldBackOffOnOverload() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100, 0.5, 2.0);
+
+        assertTrue(limiter.tryAcquire());
+        limiter.onOverload();
+        assertEquals(5, limiter.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onOverload();
+        }
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    @DisplayName("An idle route keeps its limit")
+    void shouldNotGrowWhenIdle() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 2, 100, 0.9, 2.0);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess(FAST);
+        }
+
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("Invalid settings are rejected")
+    void shouldRejectInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(10, 0, 100, 0.9, 2.0));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(10, 2, 1, 0.9, 2.0));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(10, 2, 100, 1.0, 2.0));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(10, 2, 100, 0.9, 1.0));
+    }
+
+    // Keeps the limit fully used: acquires every free slot, then completes one request per sample
+    private static void run(AdaptiveConcurrencyLimiter limiter, int samples, IntToLongFunction latency) {
+        for (int i = 0; i < samples; i++) {
+            while (limiter.tryAcquire()) {
+                // fill up to the limit
+            }
+            limiter.onSuccess(latency.applyAsLong(i));
+        }
+        while (limiter.getInFlight() > 0) {
+            limiter.onIgnore();
+        }
+    }
+}
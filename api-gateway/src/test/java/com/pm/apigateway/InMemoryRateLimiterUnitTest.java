@@ -0,0 +1,46 @@
+package com.pm.apigateway;
+
+import com.pm.apigateway.ratelimit.InMemoryRateLimiter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryRateLimiterUnitTest {
+
+    @Test
+    @DisplayName("A request the route bucket rejects does not spend the user's token")
+    void shouldNotChargeUserForRouteRejection() throws Exception {
+        // one token per user per second, the route refills every 100 ms
+        InMemoryRateLimiter limiter = new InMemoryRateLimiter(null, 1, 2, 10, 2);
+
+        assertTrue(allow(limiter, "alice").isAllowed());
+        assertTrue(allow(limiter, "bob").isAllowed());
+        RateLimiter.Response rejected = allow(limiter, "alice");
+        assertFalse(rejected.isAllowed());
+        assertEquals("0", rejected.getHeaders().get(InMemoryRateLimiter.REMAINING_HEADER));
+
+        Thread.sleep(150);
+
+        RateLimiter.Response retried = allow(limiter, "alice");
+        assertTrue(retried.isAllowed());
+        assertEquals("0", retried.getHeaders().get(InMemoryRateLimiter.REMAINING_HEADER));
+        assertFalse(allow(limiter, "alice").isAllowed());
+    }
+
+    @Test
+    @DisplayName("A user over the limit is rejected without touching the route bucket")
+    void shouldRejectUserBeforeRoute() {
+        InMemoryRateLimiter limiter = new InMemoryRateLimiter(null, 1, 1, 1, 2);
+
+        assertTrue(allow(limiter, "alice").isAllowed());
+        assertFalse(allow(limiter, "alice").isAllowed());
+
+        assertTrue(allow(limiter, "bob").isAllowed());
+    }
+
+    private static RateLimiter.Response allow(InMemoryRateLimiter limiter, String user) {
+        return limiter.isAllowed("patient-service-route", user).block();
+    }
+}
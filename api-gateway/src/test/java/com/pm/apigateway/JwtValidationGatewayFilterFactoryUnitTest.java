@@ -0,0 +1,108 @@
+package com.pm.apigateway;
+
+import com.pm.apigateway.cache.JwtDecisionCache;
+import com.pm.apigateway.filter.JwtValidationGatewayFilterFactory;
+import com.pm.apigateway.jwks.LocalJwtVerifier;
+import com.pm.apigateway.kafka.TokenRevocationConsumer;
+import com.pm.apigateway.revocation.TokenDenylist;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class JwtValidationGatewayFilterFactoryUnitTest {
+
+    private static final String TOKEN = "Bearer e30." + Base64.getUrlEncoder().withoutPadding()
+            .encodeToString("{\"jti\":\"token-1\",\"sub\":\"alice\"}".getBytes(StandardCharsets.UTF_8)) + ".signature";
+
+    @Mock
+    private LocalJwtVerifier localVerifier;
+
+    private TokenDenylist denylist;
+    private GatewayFilter filter;
+    private final AtomicBoolean forwarded = new AtomicBoolean();
+    private final GatewayFilterChain chain = exchange -> {
+        forwarded.set(true);
+        return Mono.empty();
+    };
+
+    @BeforeEach
+    void setUp() {
+        denylist = new TokenDenylist(1000, 0.01);
+        filter = filter(WebClient.builder());
+    }
+
+    private GatewayFilter filter(WebClient.Builder webClientBuilder) {
+        return new JwtValidationGatewayFilterFactory(webClientBuilder, "http://auth-service", Duration.ofSeconds(1),
+                new JwtDecisionCache(Duration.ofMinutes(5), 1000), denylist, localVerifier,
+                CircuitBreakerRegistry.ofDefaults(), BulkheadRegistry.ofDefaults()).apply(new Object());
+    }
+
+    private MockServerWebExchange request() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/patients").header("Authorization", TOKEN));
+    }
+
+    @Test
+    @DisplayName("A token verified locally is forwarded")
+    void shouldForwardValidToken() {
+        when(localVerifier.verify(anyString())).thenReturn(LocalJwtVerifier.Result.VALID);
+        MockServerWebExchange exchange = request();
+
+        filter.filter(exchange, chain).block();
+
+        assertTrue(forwarded.get());
+    }
+
+    @Test
+    @DisplayName("A token whose jti was revoked through the token-revocations topic is rejected before verification")
+    void shouldRejectRevokedToken() {
+        long expiresAt = Instant.now().plusSeconds(600).getEpochSecond();
+        new TokenRevocationConsumer(denylist).consumeRevocation(new ConsumerRecord<>("token-revocations", 0, 0,
+                "token-1", Long.toString(expiresAt).getBytes(StandardCharsets.UTF_8)));
+        MockServerWebExchange exchange = request();
+
+        filter.filter(exchange, chain).block();
+
+        assertEquals(HttpStatus.UNAUTHORIZED, exchange.getResponse().getStatusCode());
+        assertFalse(forwarded.get());
+        verifyNoInteractions(localVerifier);
+    }
+
+    @Test
+    @DisplayName("A 4xx other than 401 from auth-service for a token it has to decide is answered with 401")
+    void shouldRejectTokenOnAnyClientError() {
+        when(localVerifier.verify(anyString())).thenReturn(LocalJwtVerifier.Result.UNDECIDED);
+        GatewayFilter remote = filter(WebClient.builder().exchangeFunction(request ->
+                Mono.just(ClientResponse.create(HttpStatus.FORBIDDEN).build())));
+        MockServerWebExchange exchange = request();
+
+        remote.filter(exchange, chain).block();
+
+        assertEquals(HttpStatus.UNAUTHORIZED, exchange.getResponse().getStatusCode());
+        assertFalse(forwarded.get());
+    }
+}
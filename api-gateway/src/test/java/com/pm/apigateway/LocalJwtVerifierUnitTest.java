@@ -0,0 +1,136 @@
+package com.pm.apigateway;
+
+import com.pm.apigateway.jwks.JwksKeyStore;
+import com.pm.apigateway.jwks.LocalJwtVerifier;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.PublicJwk;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalJwtVerifierUnitTest {
+
+    private static final KeyPair OLD = Jwts.SIG.RS256.keyPair().build();
+    private static final KeyPair NEW = Jwts.SIG.RS256.keyPair().build();
+    private static final KeyPair ED = Jwks.CRV.Ed25519.keyPair().build();
+
+    // the JWK set auth-service currently publishes, and how often it was fetched
+    private final AtomicReference<String> published = new AtomicReference<>(jwks(Map.of()));
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private JwksKeyStore keyStore(Duration minRefreshInterval) {
+        WebClient.Builder webClient = WebClient.builder().exchangeFunction(request -> {
+            fetches.incrementAndGet();
+            return Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .body(published.get())
+                    .build());
+        });
+        return new JwksKeyStore(webClient, "http://auth-service", true, "/.well-known/jwks.json",
+                Duration.ofSeconds(1), minRefreshInterval);
+    }
+
+    private static String jwks(Map<String, KeyPair> keys) {
+        StringJoiner json = new StringJoiner(",", "{\"keys\":[", "]}");
+        keys.forEach((kid, pair) -> json.add(Jwks.json((PublicJwk<?>) Jwks.builder().key(pair.getPublic()).id(kid).build())));
+        return json.toString();
+    }
+
+    private static String token(String kid, PrivateKey key) {
+        return Jwts.builder().header().keyId(kid).and().subject("user@test.com")
+                .expiration(Date.from(Instant.now().plusSeconds(60)))
+                .signWith(key).compact();
+    }
+
+    @Test
+    @DisplayName("During a rotation tokens of the old and the new key verify locally, a dropped key goes to auth-service")
+    void shouldVerifyBothKeysDuringRotation() {
+        published.set(jwks(Map.of("old", OLD, "new", NEW)));
+        JwksKeyStore keyStore = keyStore(Duration.ofSeconds(30));
+        keyStore.refresh();
+        LocalJwtVerifier verifier = new LocalJwtVerifier(keyStore);
+        String oldToken = token("old", OLD.getPrivate());
+
+        assertEquals(LocalJwtVerifier.Result.VALID, verifier.verify(oldToken));
+        assertEquals(LocalJwtVerifier.Result.VALID, verifier.verify(token("new", NEW.getPrivate())));
+
+        published.set(jwks(Map.of("new", NEW)));
+        keyStore.refresh();
+        assertEquals(LocalJwtVerifier.Result.UNDECIDED, verifier.verify(oldToken));
+    }
+
+    @Test
+    @DisplayName("An unknown kid is left to auth-service and fetches the JWK set at most once per interval")
+    void shouldRefreshOnUnknownKid() {
+        JwksKeyStore keyStore = keyStore(Duration.ofSeconds(30));
+        keyStore.refresh();
+        LocalJwtVerifier verifier = new LocalJwtVerifier(keyStore);
+        published.set(jwks(Map.of("new", NEW)));
+        String token = token("new", NEW.getPrivate());
+
+        assertEquals(LocalJwtVerifier.Result.UNDECIDED, verifier.verify(token));
+        assertEquals(1, fetches.get());
+
+        JwksKeyStore eager = keyStore(Duration.ZERO);
+        LocalJwtVerifier eagerVerifier = new LocalJwtVerifier(eager);
+        assertEquals(LocalJwtVerifier.Result.UNDECIDED, eagerVerifier.verify(token("unknown", OLD.getPrivate())));
+        assertEquals(LocalJwtVerifier.Result.VALID, eagerVerifier.verify(token));
+    }
+
+    @Test
+    @DisplayName("A token whose algorithm does not fit the key behind its kid is invalid, HMAC tokens are undecided")
+    void shouldRejectAlgorithmKeyMismatch() {
+        published.set(jwks(Map.of("rsa", NEW, "ed", ED)));
+        JwksKeyStore keyStore = keyStore(Duration.ofSeconds(30));
+        keyStore.refresh();
+        LocalJwtVerifier verifier = new LocalJwtVerifier(keyStore);
+
+        assertEquals(LocalJwtVerifier.Result.INVALID, verifier.verify(token("ed", NEW.getPrivate())));
+        assertEquals(LocalJwtVerifier.Result.INVALID, verifier.verify(token("rsa", ED.getPrivate())));
+        String hmacWithPublicKey = Jwts.builder().header().keyId("rsa").and().subject("attacker@test.com")
+                .signWith(Keys.hmacShaKeyFor(NEW.getPublic().getEncoded())).compact();
+        assertEquals(LocalJwtVerifier.Result.UNDECIDED, verifier.verify(hmacWithPublicKey));
+    }
+
+    @Test
+    @DisplayName("A token signed by another key under a known kid is invalid")
+    void shouldRejectWrongSignature() {
+        published.set(jwks(Map.of("new", NEW)));
+        JwksKeyStore keyStore = keyStore(Duration.ofSeconds(30));
+        keyStore.refresh();
+
+        assertEquals(LocalJwtVerifier.Result.INVALID, new LocalJwtVerifier(keyStore).verify(token("new", OLD.getPrivate())));
+    }
+
+    @Test
+    @DisplayName("A malformed JWK set keeps the keys fetched before")
+    void shouldKeepKeysOnMalformedJwks() {
+        published.set(jwks(Map.of("new", NEW)));
+        JwksKeyStore keyStore = keyStore(Duration.ofSeconds(30));
+        keyStore.refresh();
+
+        published.set("{\"keys\":");
+        keyStore.refresh();
+
+        assertNotNull(keyStore.key("new"));
+    }
+}
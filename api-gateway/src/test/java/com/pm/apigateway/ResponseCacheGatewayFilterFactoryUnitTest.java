@@ -0,0 +1,115 @@
+package com.pm.apigateway;
+
+import com.pm.apigateway.cache.ResponseCache;
+import com.pm.apigateway.filter.ResponseCacheGatewayFilterFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+public class ResponseCacheGatewayFilterFactoryUnitTest {
+
+    private static final String TOKEN = "Bearer e30." + Base64.getUrlEncoder().withoutPadding()
+            .encodeToString("{\"sub\":\"alice\"}".getBytes(StandardCharsets.UTF_8)) + ".signature";
+
+    private GatewayFilter filter;
+    private final List<String> upstreamIfNoneMatch = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ResponseCache cache = new ResponseCache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), false);
+        filter = new ResponseCacheGatewayFilterFactory(cache).apply(new ResponseCacheGatewayFilterFactory.Config());
+    }
+
+    @Test
+    @DisplayName("A cacheable response is served from the cache without going upstream")
+    void shouldServeHit() {
+        MockServerWebExchange first = get();
+        filter.filter(first, upstream(HttpStatus.OK, "max-age=60", null, "patients")).block();
+        MockServerWebExchange second = get();
+        filter.filter(second, exchange -> fail("no upstream call expected")).block();
+
+        assertEquals("MISS", first.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_HEADER));
+        assertEquals("HIT", second.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_HEADER));
+        assertEquals("patients", second.getResponse().getBodyAsString().block());
+    }
+
+    @Test
+    @DisplayName("A no-cache response is revalidated on every use, a 304 is answered from the cache")
+    void shouldRevalidateNoCacheResponse() {
+        filter.filter(get(), upstream(HttpStatus.OK, "no-cache", "\"1\"", "version 1")).block();
+
+        MockServerWebExchange revalidated = get();
+        filter.filter(revalidated, upstream(HttpStatus.NOT_MODIFIED, "no-cache", "\"1\"", "")).block();
+        assertEquals(List.of("\"1\""), upstreamIfNoneMatch.subList(1, 2));
+        assertEquals(HttpStatus.OK, revalidated.getResponse().getStatusCode());
+        assertEquals("REVALIDATED",
+                revalidated.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_HEADER));
+        assertEquals("version 1", revalidated.getResponse().getBodyAsString().block());
+
+        MockServerWebExchange changed = get();
+        filter.filter(changed, upstream(HttpStatus.OK, "no-cache", "\"2\"", "version 2")).block();
+        assertEquals("version 2", changed.getResponse().getBodyAsString().block());
+
+        filter.filter(get(), upstream(HttpStatus.NOT_MODIFIED, "no-cache", "\"2\"", "")).block();
+        assertEquals("\"2\"", upstreamIfNoneMatch.get(3));
+    }
+
+    @Test
+    @DisplayName("A no-cache response without an ETag and a no-store response are not stored")
+    void shouldNotStoreUnvalidatableResponses() {
+        filter.filter(get(), upstream(HttpStatus.OK, "no-cache", null, "patients")).block();
+        MockServerWebExchange second = get();
+        filter.filter(second, upstream(HttpStatus.OK, "no-store", null, "patients")).block();
+        MockServerWebExchange third = get();
+        filter.filter(third, upstream(HttpStatus.OK, "max-age=60", null, "patients")).block();
+
+        assertEquals(List.of("", "", ""), upstreamIfNoneMatch);
+        assertEquals("MISS", second.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_HEADER));
+        assertEquals("MISS", third.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_HEADER));
+    }
+
+    private MockServerWebExchange get() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/patients")
+                .header(HttpHeaders.AUTHORIZATION, TOKEN));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async()
+                .id("patients")
+                .uri("http://patient-service:4000")
+                .predicate(e -> true)
+                .build());
+        return exchange;
+    }
+
+    // Answers like NettyWriteResponseFilter does: status and headers first, then the body through writeWith
+    private GatewayFilterChain upstream(HttpStatus status, String cacheControl, String eTag, String body) {
+        return exchange -> {
+            upstreamIfNoneMatch.add(String.join(",", exchange.getRequest().getHeaders().getIfNoneMatch()));
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(status);
+            response.getHeaders().setCacheControl(cacheControl);
+            if (eTag != null) {
+                response.getHeaders().setETag(eTag);
+            }
+            return response.writeWith(body.isEmpty() ? Flux.empty()
+                    : Mono.just(response.bufferFactory().wrap(body.getBytes(StandardCharsets.UTF_8))));
+        };
+    }
+}
@@ -0,0 +1,99 @@
+package com.pm.apigateway;
+
+import com.pm.apigateway.ratelimit.TokenBucket;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketUnitTest {
+
+    @Test
+    @DisplayName("A full bucket grants its burst capacity, then reports the wait for the next token")
+    void shouldGrantBurstThenReject() {
+        TokenBucket bucket = new TokenBucket(1, 5);
+        assertTrue(bucket.isFull());
+
+        for (int left = 4; left >= 0; left--) {
+            assertEquals(left, bucket.tryAcquire());
+        }
+        long rejected = bucket.tryAcquire();
+
+        assertTrue(rejected < 0);
+        assertTrue(-rejected <= TimeUnit.SECONDS.toNanos(1));
+        assertFalse(bucket.isFull());
+    }
+
+    @Test
+    @DisplayName("Tokens come back at the replenish rate")
+    void shouldRefill() throws Exception {
+        TokenBucket bucket = new TokenBucket(100, 2);
+        bucket.tryAcquire();
+        bucket.tryAcquire();
+        assertTrue(bucket.tryAcquire() < 0);
+
+        Thread.sleep(30);
+
+        assertTrue(bucket.tryAcquire() >= 0);
+        assertTrue(bucket.tryAcquire() >= 0);
+        assertTrue(bucket.tryAcquire() < 0);
+    }
+
+    @Test
+    @DisplayName("Concurrent callers never get more than the burst capacity plus what was replenished")
+    void shouldNotOvergrantUnderContention() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        long start = System.nanoTime();
+        try {
+            List<Future<Integer>> granted = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                granted.add(executor.submit(() -> {
+                    int count = 0;
+                    for (int i = 0; i < 50; i++) {
+                        if (bucket.tryAcquire() >= 0) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> future : granted) {
+                total += future.get(10, TimeUnit.SECONDS);
+            }
+            long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+
+            assertTrue(total >= 100 && total <= 101 + elapsedSeconds, "granted " + total);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("A refunded token can be taken again")
+    void shouldGrantRefundedToken() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+        assertEquals(1, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+
+        bucket.refund();
+
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() < 0);
+    }
+
+    @Test
+    @DisplayName("Rates and capacities must be positive")
+    void shouldRejectInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(10, 0));
+    }
+}
@@ -0,0 +1,73 @@
+package com.pm.apigateway;
+
+import com.pm.apigateway.revocation.BloomFilter;
+import com.pm.apigateway.revocation.TokenDenylist;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenDenylistUnitTest {
+
+    private static long inSeconds(long seconds) {
+        return Instant.now().getEpochSecond() + seconds;
+    }
+
+    @Test
+    @DisplayName("A revoked jti is reported until it is pruned, other jtis never are")
+    void shouldReportRevokedJti() {
+        TokenDenylist denylist = new TokenDenylist(1000, 0.01);
+
+        denylist.revoke("revoked", inSeconds(600));
+
+        assertTrue(denylist.isRevoked("revoked"));
+        assertFalse(denylist.isRevoked("other"));
+        assertFalse(denylist.isRevoked(null));
+        assertEquals(1, denylist.size());
+    }
+
+    @Test
+    @DisplayName("Revocations of tokens that already expired are not kept")
+    void shouldIgnoreExpiredRevocation() {
+        TokenDenylist denylist = new TokenDenylist(1000, 0.01);
+
+        denylist.revoke("expired", inSeconds(-1));
+
+        assertFalse(denylist.isRevoked("expired"));
+        assertEquals(0, denylist.size());
+    }
+
+    @Test
+    @DisplayName("Pruning drops expired entries and keeps the live ones revoked")
+    void shouldPruneExpiredEntries() throws InterruptedException {
+        TokenDenylist denylist = new TokenDenylist(1000, 0.01);
+        denylist.revoke("short", inSeconds(1));
+        denylist.revoke("long", inSeconds(600));
+
+        Thread.sleep(2100);
+        denylist.prune();
+
+        assertEquals(1, denylist.size());
+        assertFalse(denylist.isRevoked("short"));
+        assertTrue(denylist.isRevoked("long"));
+    }
+
+    @Test
+    @DisplayName("The Bloom filter has no false negatives and stays near its false positive rate")
+    void shouldKeepFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("jti-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("jti-" + i));
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+}
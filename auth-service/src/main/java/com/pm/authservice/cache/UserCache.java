@@ -0,0 +1,60 @@
+package com.pm.authservice.cache;
+
+import com.pm.authservice.model.UserCredentials;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU of user credentials by email, so a login storm does not turn into one users query per attempt. Entries
+ * are immutable {@link UserCredentials}, safe to share between concurrent logins. They expire after the TTL,
+ * which bounds how long another instance's change stays invisible here; changes made through
+ * {@link com.pm.authservice.service.UserService} replace or evict the entry immediately.
+ */
+@Component
+public class UserCache {
+
+    private record Entry(UserCredentials user, long expiresAtNanos) {
+    }
+
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+
+    public UserCache(@Value("${auth.user-cache.max-size:10000}") int maxSize,
+                     @Value("${auth.user-cache.ttl:5m}") Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized UserCredentials get(String email) {
+        Entry entry = entries.get(email);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtNanos() - System.nanoTime() <= 0) {
+            entries.remove(email);
+            return null;
+        }
+        return entry.user();
+    }
+
+    public synchronized void put(UserCredentials user) {
+        entries.put(user.email(), new Entry(user, System.nanoTime() + ttlNanos));
+    }
+
+    public synchronized void evict(String email) {
+        entries.remove(email);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -2,38 +2,86 @@ package com.pm.authservice.controller;
 
 import com.pm.authservice.dto.LoginRequestDTO;
 import com.pm.authservice.dto.LoginResponseDTO;
+import com.pm.authservice.dto.RefreshRequestDTO;
 import com.pm.authservice.service.AuthService;
+import com.pm.authservice.service.TokenService;
+import com.pm.authservice.util.JwtKeyRing;
+import com.pm.authservice.util.TokenClaims;
 import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 public class AuthController {
 
     private final AuthService authService;
+    private final TokenService tokenService;
 
-    public AuthController(AuthService authService) {
+    private final JwtKeyRing keyRing;
+
+    public AuthController(AuthService authService, TokenService tokenService, JwtKeyRing keyRing) {
         this.authService = authService;
+        this.tokenService = tokenService;
+        this.keyRing = keyRing;
     }
 
+    // completes on the password hashing executor, the Tomcat thread is released while BCrypt runs
     @Operation(summary = "generate a token for logined user")
     @PostMapping("/login")
-    public ResponseEntity<LoginResponseDTO> login(
+    public CompletableFuture<ResponseEntity<LoginResponseDTO>> login(
             @RequestBody LoginRequestDTO loginRequestDTO) {
 
-        Optional<String> tokenOptional = authService.authenticate(loginRequestDTO);
+        CompletableFuture<Optional<LoginResponseDTO>> token;
+        try {
+            token = authService.authenticate(loginRequestDTO);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build());
+        }
+
+        return token.thenApply(tokenOptional -> tokenOptional.isEmpty()
+                ? ResponseEntity.status(401).<LoginResponseDTO>build()
+                : ResponseEntity.ok(tokenOptional.get()));
+    }
+
+    @Operation(summary = "exchange a refresh token for new access and refresh tokens")
+    @PostMapping("/refresh")
+    public ResponseEntity<LoginResponseDTO> refresh(
+            @RequestBody RefreshRequestDTO refreshRequestDTO) {
 
-        if(tokenOptional.isEmpty()) {
+        if (refreshRequestDTO.getRefreshToken() == null || refreshRequestDTO.getRefreshToken().isBlank()) {
             return ResponseEntity.status(401).build();
         }
-        return ResponseEntity.ok(new LoginResponseDTO(tokenOptional.get()));
+        return tokenService.refresh(refreshRequestDTO.getRefreshToken())
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(401).build());
     }
 
+    @Operation(summary = "revoke the access token and the refresh token family of a session")
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @RequestBody(required = false) RefreshRequestDTO refreshRequestDTO) {
+
+        String accessToken = authHeader != null && authHeader.startsWith("Bearer ") ? authHeader.substring(7) : null;
+        tokenService.logout(accessToken, refreshRequestDTO == null ? null : refreshRequestDTO.getRefreshToken());
+        return ResponseEntity.noContent().build();
+    }
+
+    // the claims let callers cache the decision until expiresAt and forward subject and role
     @Operation(summary = "validate a token for user")
     @GetMapping("/validate")
-    public ResponseEntity<Void> validateToken(
+    public ResponseEntity<TokenClaims> validateToken(
             @RequestHeader("Authorization") String authHeader){
 
         //Authorization: Bearer <token>
@@ -42,7 +90,16 @@ public class AuthController {
         }
 
         return authService.validateToken(authHeader.substring(7))
-                ? ResponseEntity.ok().build()
-                : ResponseEntity.status(401).build();
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(401).build());
+    }
+
+    // verifiers refresh on a schedule and on an unknown kid, so a short max-age is enough
+    @Operation(summary = "public keys for verifying access tokens (RS256/EdDSA signing only)")
+    @GetMapping(value = "/.well-known/jwks.json", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(5)).cachePublic())
+                .body(keyRing.jwkSetJson());
     }
 }
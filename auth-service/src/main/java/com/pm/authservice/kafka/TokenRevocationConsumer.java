@@ -0,0 +1,38 @@
+package com.pm.authservice.kafka;
+
+import com.pm.authservice.revocation.RevokedTokens;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps this instance's revoked tokens in sync with revocations made on other instances. Every instance reads
+ * the whole topic in its own group from the beginning, entries that already expired are skipped.
+ */
+@Service
+public class TokenRevocationConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationConsumer.class);
+
+    private final RevokedTokens revokedTokens;
+
+    public TokenRevocationConsumer(RevokedTokens revokedTokens) {
+        this.revokedTokens = revokedTokens;
+    }
+
+    @KafkaListener(topics = TokenRevocationProducer.TOPIC, groupId = "auth-service-revocations-${random.uuid}",
+            properties = "auto.offset.reset=earliest")
+    public void consumeRevocation(ConsumerRecord<String, String> record) {
+        if (record.key() == null || record.value() == null) {
+            log.warn("Ignoring malformed token revocation {}", record);
+            return;
+        }
+        try {
+            revokedTokens.revoke(record.key(), Long.parseLong(record.value()));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed token revocation {}", record);
+        }
+    }
+}
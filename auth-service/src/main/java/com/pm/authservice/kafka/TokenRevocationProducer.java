@@ -0,0 +1,37 @@
+package com.pm.authservice.kafka;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Publishes revoked access tokens to every validator (auth-service instances and the gateway). Records are
+ * keyed by jti, the value is the token's expiry in epoch seconds.
+ */
+@Service
+public class TokenRevocationProducer {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationProducer.class);
+    public static final String TOPIC = "token-revocations";
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    public TokenRevocationProducer(KafkaTemplate<String, String> kafkaTemplate) {
+        this.kafkaTemplate = kafkaTemplate;
+    }
+
+    // the revocation is already stored and applied locally, a failed publish only delays the other validators
+    public void publish(String jti, long expiresAtEpochSecond) {
+        try {
+            kafkaTemplate.send(TOPIC, jti, Long.toString(expiresAtEpochSecond))
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            log.error("Could not publish revocation of token {}", jti, e);
+                        }
+                    });
+        } catch (Exception e) {
+            log.error("Could not publish revocation of token {}", jti, e);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.pm.authservice.model;
+
+import java.util.UUID;
+
+/**
+ * Immutable copy of what login and token issuing need from a {@link User}. This is what
+ * {@link com.pm.authservice.cache.UserCache} holds and hands to concurrent logins, never the managed entity.
+ */
+public record UserCredentials(UUID id, String email, String role, String passwordHash) {
+
+    public static UserCredentials of(User user) {
+        return new UserCredentials(user.getId(), user.getEmail(), user.getRole(), user.getPassword());
+    }
+
+    public UserCredentials withPasswordHash(String passwordHash) {
+        return new UserCredentials(id, email, role, passwordHash);
+    }
+}
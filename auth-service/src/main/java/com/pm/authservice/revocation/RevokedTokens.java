@@ -0,0 +1,57 @@
+package com.pm.authservice.revocation;
+
+import com.pm.authservice.repository.RevokedTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Revoked access tokens by jti, held in memory so /validate checks them without a lookup. The revoked_tokens
+ * table stays the durable record: it is loaded at startup, and revocations made on other instances arrive
+ * through the token-revocations topic. Entries are dropped once their tokens have expired.
+ */
+@Component
+public class RevokedTokens implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RevokedTokens.class);
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final ConcurrentHashMap<String, Long> expiresAtByJti = new ConcurrentHashMap<>();
+
+    public RevokedTokens(RevokedTokenRepository revokedTokenRepository) {
+        this.revokedTokenRepository = revokedTokenRepository;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        revokedTokenRepository.findByExpiresAtAfter(Instant.now())
+                .forEach(token -> revoke(token.getJti(), token.getExpiresAt().getEpochSecond()));
+        log.info("Loaded {} revoked access tokens", expiresAtByJti.size());
+    }
+
+    public void revoke(String jti, long expiresAtEpochSecond) {
+        if (expiresAtEpochSecond <= Instant.now().getEpochSecond()) {
+            return;
+        }
+        expiresAtByJti.merge(jti, expiresAtEpochSecond, Math::max);
+    }
+
+    public boolean isRevoked(String jti) {
+        return jti != null && expiresAtByJti.containsKey(jti);
+    }
+
+    public int size() {
+        return expiresAtByJti.size();
+    }
+
+    @Scheduled(fixedDelayString = "${auth.revocation.prune-interval-ms:60000}")
+    public void prune() {
+        long now = Instant.now().getEpochSecond();
+        expiresAtByJti.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+}
@@ -1,41 +1,69 @@
 package com.pm.authservice.service;
 
+import com.pm.authservice.config.SecurityConfig;
 import com.pm.authservice.dto.LoginRequestDTO;
-import com.pm.authservice.model.User;
-import com.pm.authservice.util.JwtUtil;
-import io.jsonwebtoken.JwtException;
+import com.pm.authservice.dto.LoginResponseDTO;
+import com.pm.authservice.model.UserCredentials;
+import com.pm.authservice.util.TokenClaims;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 @Service
 public class AuthService {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthService.class);
+
     private final UserService userService;
     private final PasswordEncoder passwordEncoder;
-    private final JwtUtil jwtUtil;
+    private final TokenService tokenService;
+    private final ExecutorService passwordHashingExecutor;
 
-    public AuthService(UserService userService, PasswordEncoder passwordEncoder, JwtUtil jwtUtil) {
+    public AuthService(UserService userService, PasswordEncoder passwordEncoder, TokenService tokenService,
+                       @Qualifier(SecurityConfig.PASSWORD_HASHING_EXECUTOR) ExecutorService passwordHashingExecutor) {
         this.userService = userService;
         this.passwordEncoder = passwordEncoder;
-        this.jwtUtil = jwtUtil;
+        this.tokenService = tokenService;
+        this.passwordHashingExecutor = passwordHashingExecutor;
     }
 
-    public Optional<String> authenticate(LoginRequestDTO loginRequestDTO) {
-        Optional<String> token = userService
-                .findByEmail(loginRequestDTO.getEmail())
-                .filter(u1 -> passwordEncoder.matches(loginRequestDTO.getPassword(),u1.getPassword()))
-                .map(u->jwtUtil.generateToken(u.getEmail(), u.getRole()));
-        return token;
+    /**
+     * Checks the password on the hashing executor. Throws RejectedExecutionException right away when the
+     * executor's queue is full.
+     */
+    public CompletableFuture<Optional<LoginResponseDTO>> authenticate(LoginRequestDTO loginRequestDTO) {
+        Optional<UserCredentials> user = userService.findByEmail(loginRequestDTO.getEmail());
+        if (user.isEmpty()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return CompletableFuture.supplyAsync(() -> user
+                .filter(u1 -> passwordEncoder.matches(loginRequestDTO.getPassword(), u1.passwordHash()))
+                .map(u -> {
+                    rehashIfNeeded(u, loginRequestDTO.getPassword());
+                    return tokenService.issue(u);
+                }), passwordHashingExecutor);
     }
 
-    public boolean validateToken(String token) {
-        try{
-            jwtUtil.validateToken(token);
-            return true;
-        }catch (JwtException e){
-            return false;
+    // the plain password is only available during login, so that is when hashes move to the configured strength
+    private void rehashIfNeeded(UserCredentials user, String password) {
+        if (!passwordEncoder.upgradeEncoding(user.passwordHash())) {
+            return;
+        }
+        try {
+            userService.updatePasswordHash(user, passwordEncoder.encode(password));
+        } catch (RuntimeException e) {
+            userService.evict(user.email());
+            log.warn("Could not re-hash password of {}", user.email(), e);
         }
     }
+
+    public Optional<TokenClaims> validateToken(String token) {
+        return tokenService.validate(token);
+    }
 }
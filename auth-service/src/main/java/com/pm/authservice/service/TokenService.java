@@ -0,0 +1,149 @@
+package com.pm.authservice.service;
+
+import com.pm.authservice.dto.LoginResponseDTO;
+import com.pm.authservice.kafka.TokenRevocationProducer;
+import com.pm.authservice.model.RefreshToken;
+import com.pm.authservice.model.RevokedToken;
+import com.pm.authservice.model.UserCredentials;
+import com.pm.authservice.repository.RefreshTokenRepository;
+import com.pm.authservice.repository.RevokedTokenRepository;
+import com.pm.authservice.revocation.RevokedTokens;
+import com.pm.authservice.util.JwtUtil;
+import com.pm.authservice.util.TokenClaims;
+import io.jsonwebtoken.JwtException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Access tokens are short lived JWTs checked without any lookup; refresh tokens are random, stored hashed and
+ * rotated on every use. Logging out revokes the refresh token family and the access token: its jti is stored
+ * until the token expires and published to every instance's {@link RevokedTokens} and the gateway's denylist.
+ */
+@Service
+public class TokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenService.class);
+
+    private final JwtUtil jwtUtil;
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UserService userService;
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final RevokedTokens revokedTokens;
+    private final TokenRevocationProducer revocationProducer;
+    private final Duration refreshTokenTtl;
+    private final SecureRandom random = new SecureRandom();
+
+    public TokenService(JwtUtil jwtUtil, RefreshTokenRepository refreshTokenRepository, UserService userService,
+                        RevokedTokenRepository revokedTokenRepository, RevokedTokens revokedTokens,
+                        TokenRevocationProducer revocationProducer,
+                        @Value("${jwt.refresh-token-ttl:14d}") Duration refreshTokenTtl) {
+        this.jwtUtil = jwtUtil;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.userService = userService;
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.revokedTokens = revokedTokens;
+        this.revocationProducer = revocationProducer;
+        this.refreshTokenTtl = refreshTokenTtl;
+    }
+
+    public LoginResponseDTO issue(UserCredentials user) {
+        return issue(user, UUID.randomUUID());
+    }
+
+    public Optional<LoginResponseDTO> refresh(String refreshToken) {
+        Optional<RefreshToken> stored = refreshTokenRepository.findByTokenHash(hash(refreshToken));
+        if (stored.isEmpty() || stored.get().getExpiresAt().isBefore(Instant.now())) {
+            return Optional.empty();
+        }
+        RefreshToken token = stored.get();
+        if (refreshTokenRepository.markUsed(token.getId()) == 0) {
+            // a used token presented again means it leaked, nothing of that family may be refreshed any more
+            refreshTokenRepository.revokeFamily(token.getFamilyId());
+            log.warn("Refresh token reuse for {}, revoked its token family", token.getEmail());
+            return Optional.empty();
+        }
+        return userService.findByEmail(token.getEmail())
+                .map(user -> issue(user, token.getFamilyId()));
+    }
+
+    public Optional<TokenClaims> validate(String accessToken) {
+        try {
+            TokenClaims claims = jwtUtil.validateToken(accessToken);
+            return revokedTokens.isRevoked(claims.tokenId()) ? Optional.empty() : Optional.of(claims);
+        } catch (JwtException e) {
+            return Optional.empty();
+        }
+    }
+
+    public void logout(String accessToken, String refreshToken) {
+        if (refreshToken != null) {
+            refreshTokenRepository.findByTokenHash(hash(refreshToken))
+                    .ifPresent(token -> refreshTokenRepository.revokeFamily(token.getFamilyId()));
+        }
+        if (accessToken != null) {
+            try {
+                TokenClaims claims = jwtUtil.validateToken(accessToken);
+                revoke(claims.tokenId(), claims.expiresAt().getEpochSecond());
+            } catch (JwtException e) {
+                // already invalid, nothing to revoke
+            }
+        }
+    }
+
+    public void revoke(String jti, long expiresAtEpochSecond) {
+        if (jti == null || expiresAtEpochSecond <= Instant.now().getEpochSecond()) {
+            return;
+        }
+        revokedTokenRepository.save(new RevokedToken(jti, Instant.ofEpochSecond(expiresAtEpochSecond)));
+        revokedTokens.revoke(jti, expiresAtEpochSecond);
+        revocationProducer.publish(jti, expiresAtEpochSecond);
+    }
+
+    @Scheduled(cron = "${jwt.refresh-token-cleanup-cron:0 15 3 * * *}")
+    public void deleteExpiredRefreshTokens() {
+        Instant now = Instant.now();
+        int deleted = refreshTokenRepository.deleteExpired(now);
+        int revocations = revokedTokenRepository.deleteExpired(now);
+        log.info("Deleted {} expired refresh tokens and {} revocations of expired access tokens", deleted, revocations);
+    }
+
+    private LoginResponseDTO issue(UserCredentials user, UUID familyId) {
+        byte[] secret = new byte[32];
+        random.nextBytes(secret);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+
+        RefreshToken stored = new RefreshToken();
+        stored.setId(UUID.randomUUID());
+        stored.setTokenHash(hash(refreshToken));
+        stored.setFamilyId(familyId);
+        stored.setEmail(user.email());
+        stored.setExpiresAt(Instant.now().plus(refreshTokenTtl));
+        refreshTokenRepository.save(stored);
+
+        return new LoginResponseDTO(jwtUtil.generateToken(user.email(), user.role()), refreshToken,
+                jwtUtil.getAccessTokenTtl().toSeconds());
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.pm.authservice.service;
 
-import com.pm.authservice.model.User;
+import com.pm.authservice.cache.UserCache;
+import com.pm.authservice.model.UserCredentials;
 import com.pm.authservice.repository.UserRepository;
 import org.springframework.stereotype.Service;
 
@@ -10,12 +11,37 @@ import java.util.Optional;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final UserCache userCache;
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, UserCache userCache) {
         this.userRepository = userRepository;
+        this.userCache = userCache;
     }
 
-    public Optional<User> findByEmail(String email) {
-        return userRepository.findByEmail(email);
+    public Optional<UserCredentials> findByEmail(String email) {
+        UserCredentials cached = userCache.get(email);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<UserCredentials> user = userRepository.findByEmail(email).map(UserCredentials::of);
+        user.ifPresent(userCache::put);
+        return user;
+    }
+
+    /**
+     * Replaces the password hash of {@code user} unless it changed since {@code user} was read. The cached entry
+     * is replaced with the new hash, or evicted when the row had changed.
+     */
+    public boolean updatePasswordHash(UserCredentials user, String passwordHash) {
+        if (userRepository.updatePasswordHash(user.id(), user.passwordHash(), passwordHash) == 0) {
+            userCache.evict(user.email());
+            return false;
+        }
+        userCache.put(user.withPasswordHash(passwordHash));
+        return true;
+    }
+
+    public void evict(String email) {
+        userCache.evict(email);
     }
 }
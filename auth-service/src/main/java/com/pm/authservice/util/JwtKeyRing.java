@@ -0,0 +1,242 @@
+package com.pm.authservice.util;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.PublicJwk;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.StringJoiner;
+
+/**
+ * Signing and verification keys by kid.
+ * <p>
+ * With {@code jwt.algorithm=HS256} (the default) keys are HMAC secrets: {@code jwt.keys} ({@code kid:base64,...}),
+ * a properties file ({@code kid=base64} per line, re-read when it changes) and the legacy {@code jwt.secret},
+ * which is kid {@value #LEGACY_KID} and also verifies tokens issued without a kid. New tokens are signed with
+ * {@code jwt.active-kid}. To rotate, add the new key, switch the active kid and drop the old key once the
+ * tokens it signed have expired.
+ * <p>
+ * With {@code RS256} or {@code EdDSA} tokens are signed with the private key in {@code jwt.private-key-file}
+ * and anyone can verify them with the public keys published as a JWK set. {@code jwt.keys} and the key ring
+ * file then hold base64 X.509 public keys of retired key pairs that are still accepted and published.
+ * {@code jwt.secret}, if set, keeps verifying HMAC tokens issued before the switch.
+ */
+@Component
+public class JwtKeyRing {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtKeyRing.class);
+    public static final String LEGACY_KID = "default";
+
+    private final String legacySecret;
+    private final List<String> configuredKeys;
+    private final Path keyRingFile;
+    private final SignatureAlgorithm algorithm;
+    private final String activeKid;
+    private final Key signingKey;
+    private final PublicKey activePublicKey;
+
+    private volatile Map<String, Key> keys;
+    private volatile FileTime loadedFileVersion;
+
+    public JwtKeyRing(@Value("${jwt.secret:}") String legacySecret,
+                      @Value("${jwt.keys:}") List<String> configuredKeys,
+                      @Value("${jwt.key-ring-file:}") String keyRingFile,
+                      @Value("${jwt.active-kid:" + LEGACY_KID + "}") String activeKid,
+                      @Value("${jwt.algorithm:HS256}") String algorithm,
+                      @Value("${jwt.private-key-file:}") String privateKeyFile,
+                      @Value("${jwt.public-key-file:}") String publicKeyFile) {
+        this.legacySecret = legacySecret;
+        this.configuredKeys = configuredKeys;
+        this.keyRingFile = keyRingFile.isBlank() ? null : Path.of(keyRingFile);
+        this.algorithm = switch (algorithm) {
+            case "HS256" -> null;
+            case "RS256" -> Jwts.SIG.RS256;
+            case "EdDSA" -> Jwts.SIG.EdDSA;
+            default -> throw new IllegalArgumentException("jwt.algorithm must be HS256, RS256 or EdDSA");
+        };
+        this.keys = load();
+
+        if (this.algorithm == null) {
+            this.activeKid = activeKid;
+            this.signingKey = keys.get(activeKid);
+            this.activePublicKey = null;
+            if (signingKey == null) {
+                throw new IllegalStateException("No JWT key with the active kid " + activeKid);
+            }
+            return;
+        }
+
+        KeyPair pair;
+        if (privateKeyFile.isBlank()) {
+            // fine for a single instance in development; tokens do not survive a restart
+            log.warn("jwt.private-key-file is not set, signing with a generated {} key pair", algorithm);
+            pair = this.algorithm.keyPair().build();
+        } else {
+            pair = new KeyPair(publicKey(readPem(publicKeyFile)), privateKey(readPem(privateKeyFile)));
+        }
+        this.signingKey = pair.getPrivate();
+        this.activePublicKey = pair.getPublic();
+        // a kid that names the key itself when none is configured, the same on every instance sharing it
+        this.activeKid = activeKid.equals(LEGACY_KID)
+                ? Jwks.builder().key(activePublicKey).build().thumbprint().toString()
+                : activeKid;
+        this.keys = withActiveKey(keys);
+    }
+
+    public String activeKid() {
+        return activeKid;
+    }
+
+    public Key activeKey() {
+        return algorithm == null ? keys.get(activeKid) : signingKey;
+    }
+
+    /**
+     * The algorithm new tokens are signed with, null for HMAC (jjwt picks HS256/384/512 by key size).
+     */
+    public SignatureAlgorithm algorithm() {
+        return algorithm;
+    }
+
+    // null kid: a token from before kids were issued
+    public Key key(String kid) {
+        return keys.get(kid == null ? LEGACY_KID : kid);
+    }
+
+    /**
+     * Public keys as a JWK set document, empty for HMAC keys which must never leave the service.
+     */
+    public String jwkSetJson() {
+        StringJoiner json = new StringJoiner(",", "{\"keys\":[", "]}");
+        keys.forEach((kid, key) -> {
+            if (key instanceof PublicKey publicKey) {
+                json.add(Jwks.json((PublicJwk<?>) Jwks.builder().key(publicKey).id(kid).build()));
+            }
+        });
+        return json.toString();
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.key-ring-reload-interval-ms:30000}")
+    public void reloadIfChanged() {
+        if (keyRingFile == null) {
+            return;
+        }
+        try {
+            FileTime version = Files.getLastModifiedTime(keyRingFile);
+            if (version.equals(loadedFileVersion)) {
+                return;
+            }
+            Map<String, Key> reloaded = withActiveKey(load());
+            if (!reloaded.containsKey(activeKid)) {
+                log.error("Key ring {} no longer contains the active kid {}, keeping the previous keys", keyRingFile, activeKid);
+                return;
+            }
+            keys = reloaded;
+            log.info("Reloaded JWT key ring {}, kids {}", keyRingFile, reloaded.keySet());
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not reload JWT key ring {}", keyRingFile, e);
+        }
+    }
+
+    private Map<String, Key> withActiveKey(Map<String, Key> loaded) {
+        if (activePublicKey == null) {
+            return loaded;
+        }
+        Map<String, Key> withActive = new HashMap<>(loaded);
+        withActive.put(activeKid, activePublicKey);
+        return Map.copyOf(withActive);
+    }
+
+    private Map<String, Key> load() {
+        Map<String, Key> loaded = new HashMap<>();
+        if (!legacySecret.isBlank()) {
+            loaded.put(LEGACY_KID, hmacKey(legacySecret));
+        }
+        for (String entry : configuredKeys) {
+            int separator = entry.indexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("jwt.keys entries are kid:base64-key");
+            }
+            loaded.put(entry.substring(0, separator).trim(), verificationKey(entry.substring(separator + 1).trim()));
+        }
+        if (keyRingFile != null) {
+            try (Reader reader = Files.newBufferedReader(keyRingFile, StandardCharsets.UTF_8)) {
+                FileTime version = Files.getLastModifiedTime(keyRingFile);
+                Properties properties = new Properties();
+                properties.load(reader);
+                properties.forEach((kid, key) -> loaded.put(kid.toString(), verificationKey(key.toString())));
+                loadedFileVersion = version;
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read JWT key ring " + keyRingFile, e);
+            }
+        }
+        return Map.copyOf(loaded);
+    }
+
+    private Key verificationKey(String base64) {
+        return algorithm == null ? hmacKey(base64) : publicKey(Base64.getMimeDecoder().decode(base64));
+    }
+
+    private static Key hmacKey(String base64Secret) {
+        return Keys.hmacShaKeyFor(Base64.getDecoder().decode(base64Secret.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private PublicKey publicKey(byte[] x509) {
+        try {
+            return keyFactory().generatePublic(new X509EncodedKeySpec(x509));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Not a " + algorithm.getId() + " public key", e);
+        }
+    }
+
+    private PrivateKey privateKey(byte[] pkcs8) {
+        try {
+            return keyFactory().generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Not a " + algorithm.getId() + " private key", e);
+        }
+    }
+
+    private KeyFactory keyFactory() throws GeneralSecurityException {
+        // "EdDSA" takes Ed25519 and Ed448 keys alike
+        return KeyFactory.getInstance(algorithm == Jwts.SIG.EdDSA ? "EdDSA" : "RSA");
+    }
+
+    // openssl genpkey / openssl pkey -pubout output: PKCS#8 and X.509 DER between PEM armor lines
+    private static byte[] readPem(String file) {
+        if (file.isBlank()) {
+            throw new IllegalStateException("jwt.private-key-file needs jwt.public-key-file");
+        }
+        try {
+            String pem = Files.readString(Path.of(file), StandardCharsets.US_ASCII);
+            return Base64.getMimeDecoder().decode(pem.replaceAll("-----[A-Z ]+-----", ""));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + file, e);
+        }
+    }
+}
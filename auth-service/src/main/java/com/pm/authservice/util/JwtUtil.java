@@ -1,47 +1,78 @@
 package com.pm.authservice.util;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.security.SignatureAlgorithm;
 import io.jsonwebtoken.security.SignatureException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.SecretKey;
-import java.nio.charset.StandardCharsets;
 import java.security.Key;
-import java.util.Base64;
+import java.security.PrivateKey;
+import java.time.Duration;
 import java.util.Date;
+import java.util.UUID;
 
 @Component
 public class JwtUtil {
 
-    private final Key secretKey;
+    private final JwtKeyRing keyRing;
+    private final Duration accessTokenTtl;
+    // thread safe and immutable, built once; the kid in the header picks the verification key
+    private final JwtParser parser;
 
-    public JwtUtil(@Value("${jwt.secret}") String secret) {
-        byte[] bytes = Base64.getDecoder().decode(secret
-                .getBytes(StandardCharsets.UTF_8));
-        this.secretKey = Keys.hmacShaKeyFor(bytes);
+    public JwtUtil(JwtKeyRing keyRing,
+                   @Value("${jwt.access-token-ttl:15m}") Duration accessTokenTtl) {
+        this.keyRing = keyRing;
+        this.accessTokenTtl = accessTokenTtl;
+        this.parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(JwsHeader header) {
+                        Key key = keyRing.key(header.getKeyId());
+                        if (key == null) {
+                            throw new JwtException("Unknown JWT key id " + header.getKeyId());
+                        }
+                        return key;
+                    }
+                })
+                .build();
     }
 
+    public Duration getAccessTokenTtl() {
+        return accessTokenTtl;
+    }
+
+    // short lived, the jti is what a revocation names
     public String generateToken(String email, String role) {
-        return Jwts.builder()
+        long now = System.currentTimeMillis();
+        JwtBuilder builder = Jwts.builder()
+                .header().keyId(keyRing.activeKid()).and()
+                .id(UUID.randomUUID().toString())
                 .subject(email)
                 .claim("role", role)
-                .issuedAt(new Date())
-                .expiration(new Date(System.currentTimeMillis()+1000*60*60*10)) //+10 hours
-                .signWith(secretKey)
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + accessTokenTtl.toMillis()));
+        SignatureAlgorithm algorithm = keyRing.algorithm();
+        return (algorithm == null
+                ? builder.signWith(keyRing.activeKey())
+                : builder.signWith((PrivateKey) keyRing.activeKey(), algorithm))
                 .compact();
     }
 
-    public void validateToken(String token) {
+    public TokenClaims validateToken(String token) {
         try{
-            Jwts.parser().verifyWith((SecretKey) secretKey)
-                    .build()
-                    .parseSignedClaims(token);
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            return new TokenClaims(claims.getId(), claims.getSubject(), claims.get("role", String.class),
+                    claims.getExpiration() == null ? null : claims.getExpiration().toInstant());
         }catch (SignatureException e){
             throw new JwtException("Invalid JWT signature");
-        }catch (JwtException e){
+        }catch (JwtException | IllegalArgumentException e){
             throw new JwtException("Invalid JWT");
         }
     }
@@ -0,0 +1,10 @@
+package com.pm.authservice.util;
+
+import java.time.Instant;
+
+/**
+ * What a verified access token says, returned by /validate so callers can cache the decision until
+ * {@code expiresAt} and forward subject and role.
+ */
+public record TokenClaims(String tokenId, String subject, String role, Instant expiresAt) {
+}
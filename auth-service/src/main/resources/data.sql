@@ -17,4 +17,20 @@ SELECT '223e4567-e89b-12d3-a456-426614174006', 'testuser@test.com',
        OR email = 'testuser@test.com'
 );
 
+-- Rotating refresh tokens, only SHA-256 hashes of the tokens are stored
+CREATE TABLE IF NOT EXISTS refresh_tokens (
+    id UUID PRIMARY KEY,
+    token_hash VARCHAR(64) UNIQUE NOT NULL,
+    family_id UUID NOT NULL,
+    email VARCHAR(255) NOT NULL,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    used BOOLEAN NOT NULL,
+    revoked BOOLEAN NOT NULL
+);
+CREATE INDEX IF NOT EXISTS refresh_tokens_family_idx ON refresh_tokens (family_id);
 
+-- Access tokens revoked by a logout, by jti, until they expire
+CREATE TABLE IF NOT EXISTS revoked_tokens (
+    jti VARCHAR(64) PRIMARY KEY,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
@@ -0,0 +1,141 @@
+package com.pm.authservice;
+
+import com.pm.authservice.util.JwtKeyRing;
+import com.pm.authservice.util.JwtUtil;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JwtKeyRingUnitTest {
+
+    private static final String KEY_1 = secret(1);
+    private static final String KEY_2 = secret(2);
+
+    @TempDir
+    Path dir;
+
+    private static String secret(int fill) {
+        byte[] secret = new byte[32];
+        Arrays.fill(secret, (byte) fill);
+        return Base64.getEncoder().encodeToString(secret);
+    }
+
+    private static JwtKeyRing hmacRing(List<String> keys, String activeKid) {
+        return new JwtKeyRing("", keys, "", activeKid, "HS256", "", "");
+    }
+
+    private static JwtUtil jwtUtil(JwtKeyRing keyRing) {
+        return new JwtUtil(keyRing, Duration.ofMinutes(15));
+    }
+
+    @Test
+    @DisplayName("While both keys are in the ring, tokens signed with the old and the new active kid validate")
+    void shouldAcceptOldAndNewKeyDuringRotation() {
+        String oldToken = jwtUtil(hmacRing(List.of("k1:" + KEY_1), "k1")).generateToken("user@test.com", "ADMIN");
+
+        JwtUtil rotated = jwtUtil(hmacRing(List.of("k1:" + KEY_1, "k2:" + KEY_2), "k2"));
+        String newToken = rotated.generateToken("user@test.com", "ADMIN");
+
+        assertEquals("user@test.com", rotated.validateToken(oldToken).subject());
+        assertEquals("user@test.com", rotated.validateToken(newToken).subject());
+        assertThrows(JwtException.class, () -> jwtUtil(hmacRing(List.of("k2:" + KEY_2), "k2")).validateToken(oldToken));
+    }
+
+    @Test
+    @DisplayName("A token naming a kid that is not in the ring is rejected, one without a kid uses jwt.secret")
+    void shouldRejectUnknownKid() {
+        JwtUtil jwtUtil = jwtUtil(new JwtKeyRing(KEY_1, List.of(), "", JwtKeyRing.LEGACY_KID, "HS256", "", ""));
+        String unknownKid = Jwts.builder().header().keyId("retired").and().subject("user@test.com")
+                .expiration(Date.from(Instant.now().plusSeconds(60)))
+                .signWith(Keys.hmacShaKeyFor(Base64.getDecoder().decode(KEY_1))).compact();
+        String noKid = Jwts.builder().subject("user@test.com")
+                .expiration(Date.from(Instant.now().plusSeconds(60)))
+                .signWith(Keys.hmacShaKeyFor(Base64.getDecoder().decode(KEY_1))).compact();
+
+        assertThrows(JwtException.class, () -> jwtUtil.validateToken(unknownKid));
+        assertEquals("user@test.com", jwtUtil.validateToken(noKid).subject());
+    }
+
+    @Test
+    @DisplayName("An HS256 token keyed with the published RSA public key is rejected")
+    void shouldRejectAlgorithmConfusion() {
+        JwtKeyRing keyRing = new JwtKeyRing("", List.of(), "", JwtKeyRing.LEGACY_KID, "RS256", "", "");
+        JwtUtil jwtUtil = jwtUtil(keyRing);
+        PublicKey publicKey = (PublicKey) keyRing.key(keyRing.activeKid());
+        String forged = Jwts.builder().header().keyId(keyRing.activeKid()).and().subject("attacker@test.com")
+                .expiration(Date.from(Instant.now().plusSeconds(60)))
+                .signWith(Keys.hmacShaKeyFor(publicKey.getEncoded())).compact();
+
+        assertEquals("user@test.com", jwtUtil.validateToken(jwtUtil.generateToken("user@test.com", "ADMIN")).subject());
+        assertThrows(JwtException.class, () -> jwtUtil.validateToken(forged));
+    }
+
+    @Test
+    @DisplayName("A retired public key of another key type is refused when the ring is built")
+    void shouldRejectKeyOfOtherType() {
+        KeyPair rsa = Jwts.SIG.RS256.keyPair().build();
+        String retired = "old:" + Base64.getEncoder().encodeToString(rsa.getPublic().getEncoded());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new JwtKeyRing("", List.of(retired), "", JwtKeyRing.LEGACY_KID, "EdDSA", "", ""));
+    }
+
+    @Test
+    @DisplayName("Retired public keys keep verifying their tokens and are published next to the active key")
+    void shouldVerifyRetiredPublicKey() {
+        KeyPair retired = Jwts.SIG.EdDSA.keyPair().build();
+        JwtKeyRing keyRing = new JwtKeyRing("", List.of("old:" + Base64.getEncoder()
+                .encodeToString(retired.getPublic().getEncoded())), "", "new", "EdDSA", "", "");
+        String oldToken = Jwts.builder().header().keyId("old").and().subject("user@test.com")
+                .expiration(Date.from(Instant.now().plusSeconds(60)))
+                .signWith(retired.getPrivate(), Jwts.SIG.EdDSA).compact();
+
+        assertEquals("user@test.com", jwtUtil(keyRing).validateToken(oldToken).subject());
+        String jwks = keyRing.jwkSetJson();
+        assertTrue(jwks.contains("\"kid\":\"old\""));
+        assertTrue(jwks.contains("\"kid\":\"new\""));
+        assertFalse(jwks.contains("\"d\""));
+    }
+
+    @Test
+    @DisplayName("HMAC secrets are never published")
+    void shouldNotPublishHmacKeys() {
+        assertEquals("{\"keys\":[]}", hmacRing(List.of("k1:" + KEY_1), "k1").jwkSetJson());
+    }
+
+    @Test
+    @DisplayName("A changed key ring file is picked up, one without the active kid is ignored")
+    void shouldReloadKeyRingFile() throws Exception {
+        Path file = dir.resolve("keys.properties");
+        Files.writeString(file, "k1=" + KEY_1 + "\n");
+        JwtKeyRing keyRing = new JwtKeyRing("", List.of(), file.toString(), "k1", "HS256", "", "");
+        assertNull(keyRing.key("k2"));
+
+        Files.writeString(file, "k1=" + KEY_1 + "\nk2=" + KEY_2 + "\n");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(10)));
+        keyRing.reloadIfChanged();
+        assertNotNull(keyRing.key("k2"));
+
+        Files.writeString(file, "k2=" + KEY_2 + "\n");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(20)));
+        keyRing.reloadIfChanged();
+        assertNotNull(keyRing.key("k1"));
+    }
+}
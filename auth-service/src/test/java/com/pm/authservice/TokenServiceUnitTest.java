@@ -0,0 +1,158 @@
+package com.pm.authservice;
+
+import com.pm.authservice.dto.LoginResponseDTO;
+import com.pm.authservice.kafka.TokenRevocationConsumer;
+import com.pm.authservice.kafka.TokenRevocationProducer;
+import com.pm.authservice.model.RefreshToken;
+import com.pm.authservice.model.RevokedToken;
+import com.pm.authservice.model.UserCredentials;
+import com.pm.authservice.repository.RefreshTokenRepository;
+import com.pm.authservice.repository.RevokedTokenRepository;
+import com.pm.authservice.revocation.RevokedTokens;
+import com.pm.authservice.service.TokenService;
+import com.pm.authservice.service.UserService;
+import com.pm.authservice.util.JwtKeyRing;
+import com.pm.authservice.util.JwtUtil;
+import com.pm.authservice.util.TokenClaims;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TokenServiceUnitTest {
+
+    @Mock
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Mock
+    private RevokedTokenRepository revokedTokenRepository;
+
+    @Mock
+    private TokenRevocationProducer revocationProducer;
+
+    @Mock
+    private UserService userService;
+
+    private RevokedTokens revokedTokens;
+    private TokenService tokenService;
+    private UserCredentials user;
+
+    @BeforeEach
+    void setUp() {
+        JwtUtil jwtUtil = new JwtUtil(new JwtKeyRing(Base64.getEncoder().encodeToString(new byte[32]), List.of(), "",
+                JwtKeyRing.LEGACY_KID, "HS256", "", ""), Duration.ofMinutes(15));
+        revokedTokens = new RevokedTokens(revokedTokenRepository);
+        tokenService = new TokenService(jwtUtil, refreshTokenRepository, userService, revokedTokenRepository,
+                revokedTokens, revocationProducer, Duration.ofDays(14));
+        user = new UserCredentials(UUID.randomUUID(), "user@test.com", "ADMIN", "hash");
+    }
+
+    // the refresh token as stored by issue, looked up by its hash from then on
+    private RefreshToken issued() {
+        ArgumentCaptor<RefreshToken> stored = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository, atLeastOnce()).save(stored.capture());
+        RefreshToken token = stored.getValue();
+        when(refreshTokenRepository.findByTokenHash(token.getTokenHash())).thenReturn(Optional.of(token));
+        return token;
+    }
+
+    @Test
+    @DisplayName("A refresh uses up the presented token and issues a new one in the same family")
+    void shouldRotateRefreshToken() {
+        LoginResponseDTO login = tokenService.issue(user);
+        RefreshToken first = issued();
+        when(refreshTokenRepository.markUsed(first.getId())).thenReturn(1);
+        when(userService.findByEmail("user@test.com")).thenReturn(Optional.of(user));
+
+        LoginResponseDTO refreshed = tokenService.refresh(login.getRefreshToken()).orElseThrow();
+
+        ArgumentCaptor<RefreshToken> stored = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository, times(2)).save(stored.capture());
+        RefreshToken second = stored.getAllValues().get(1);
+        assertNotEquals(login.getRefreshToken(), refreshed.getRefreshToken());
+        assertNotEquals(first.getTokenHash(), second.getTokenHash());
+        assertEquals(first.getFamilyId(), second.getFamilyId());
+        assertTrue(tokenService.validate(refreshed.getToken()).isPresent());
+        verify(refreshTokenRepository, never()).revokeFamily(any());
+    }
+
+    @Test
+    @DisplayName("A refresh token presented again after it was used revokes its whole family")
+    void shouldRevokeFamilyOnReuse() {
+        LoginResponseDTO login = tokenService.issue(user);
+        RefreshToken token = issued();
+        when(refreshTokenRepository.markUsed(token.getId())).thenReturn(0);
+
+        Optional<LoginResponseDTO> refreshed = tokenService.refresh(login.getRefreshToken());
+
+        assertTrue(refreshed.isEmpty());
+        verify(refreshTokenRepository).revokeFamily(token.getFamilyId());
+        verify(refreshTokenRepository, times(1)).save(any());
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    @DisplayName("Logging out stores and publishes the access token's jti, validate rejects it without a lookup")
+    void shouldRejectRevokedToken() {
+        LoginResponseDTO login = tokenService.issue(user);
+        RefreshToken token = issued();
+        TokenClaims claims = tokenService.validate(login.getToken()).orElseThrow();
+
+        tokenService.logout(login.getToken(), login.getRefreshToken());
+
+        ArgumentCaptor<RevokedToken> revoked = ArgumentCaptor.forClass(RevokedToken.class);
+        verify(revokedTokenRepository).save(revoked.capture());
+        assertEquals(claims.tokenId(), revoked.getValue().getJti());
+        assertEquals(claims.expiresAt(), revoked.getValue().getExpiresAt());
+        verify(revocationProducer).publish(claims.tokenId(), claims.expiresAt().getEpochSecond());
+        verify(refreshTokenRepository).revokeFamily(token.getFamilyId());
+
+        assertTrue(tokenService.validate(login.getToken()).isEmpty());
+        verifyNoMoreInteractions(revokedTokenRepository);
+    }
+
+    @Test
+    @DisplayName("Revocations stored before a start and those of other instances are rejected by validate")
+    void shouldLoadAndReceiveRevocations() {
+        LoginResponseDTO stored = tokenService.issue(user);
+        LoginResponseDTO published = tokenService.issue(user);
+        LoginResponseDTO live = tokenService.issue(user);
+        TokenClaims storedClaims = tokenService.validate(stored.getToken()).orElseThrow();
+        TokenClaims publishedClaims = tokenService.validate(published.getToken()).orElseThrow();
+        when(revokedTokenRepository.findByExpiresAtAfter(any()))
+                .thenReturn(List.of(new RevokedToken(storedClaims.tokenId(), storedClaims.expiresAt())));
+
+        revokedTokens.afterPropertiesSet();
+        new TokenRevocationConsumer(revokedTokens).consumeRevocation(new ConsumerRecord<>("token-revocations", 0, 0,
+                publishedClaims.tokenId(), Long.toString(publishedClaims.expiresAt().getEpochSecond())));
+
+        assertTrue(tokenService.validate(stored.getToken()).isEmpty());
+        assertTrue(tokenService.validate(published.getToken()).isEmpty());
+        assertTrue(tokenService.validate(live.getToken()).isPresent());
+        assertEquals(2, revokedTokens.size());
+    }
+
+    @Test
+    @DisplayName("Tokens that already expired are not revoked, they are rejected anyway")
+    void shouldNotRevokeExpiredToken() {
+        tokenService.revoke("expired", Instant.now().minusSeconds(1).getEpochSecond());
+
+        verifyNoInteractions(revokedTokenRepository, revocationProducer);
+    }
+}
@@ -0,0 +1,81 @@
+package com.pm.authservice;
+
+import com.pm.authservice.cache.UserCache;
+import com.pm.authservice.model.User;
+import com.pm.authservice.model.UserCredentials;
+import com.pm.authservice.repository.UserRepository;
+import com.pm.authservice.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UserServiceUnitTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private UserService userService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        userService = new UserService(userRepository, new UserCache(100, Duration.ofMinutes(5)));
+        user = new User();
+        user.setId(UUID.randomUUID());
+        user.setEmail("user@test.com");
+        user.setRole("ADMIN");
+        user.setPassword("old-hash");
+    }
+
+    @Test
+    @DisplayName("Users are read once and cached as a copy, later changes to the entity do not leak into the cache")
+    void shouldCacheImmutableCopy() {
+        when(userRepository.findByEmail("user@test.com")).thenReturn(Optional.of(user));
+
+        UserCredentials first = userService.findByEmail("user@test.com").orElseThrow();
+        user.setPassword("changed-on-the-entity");
+        UserCredentials second = userService.findByEmail("user@test.com").orElseThrow();
+
+        assertEquals(new UserCredentials(user.getId(), "user@test.com", "ADMIN", "old-hash"), first);
+        assertEquals(first, second);
+        verify(userRepository, times(1)).findByEmail("user@test.com");
+    }
+
+    @Test
+    @DisplayName("A re-hash replaces the cached entry with the new hash")
+    void shouldReplaceCachedEntryOnRehash() {
+        when(userRepository.findByEmail("user@test.com")).thenReturn(Optional.of(user));
+        UserCredentials cached = userService.findByEmail("user@test.com").orElseThrow();
+        when(userRepository.updatePasswordHash(user.getId(), "old-hash", "new-hash")).thenReturn(1);
+
+        assertTrue(userService.updatePasswordHash(cached, "new-hash"));
+
+        assertEquals("new-hash", userService.findByEmail("user@test.com").orElseThrow().passwordHash());
+        assertEquals("old-hash", cached.passwordHash());
+        verify(userRepository, times(1)).findByEmail("user@test.com");
+    }
+
+    @Test
+    @DisplayName("A re-hash of a row changed in the meantime is dropped and the entry is read again")
+    void shouldEvictWhenRowChanged() {
+        when(userRepository.findByEmail("user@test.com")).thenReturn(Optional.of(user));
+        UserCredentials cached = userService.findByEmail("user@test.com").orElseThrow();
+        when(userRepository.updatePasswordHash(user.getId(), "old-hash", "new-hash")).thenReturn(0);
+
+        assertFalse(userService.updatePasswordHash(cached, "new-hash"));
+        userService.findByEmail("user@test.com");
+
+        verify(userRepository, times(2)).findByEmail("user@test.com");
+    }
+}
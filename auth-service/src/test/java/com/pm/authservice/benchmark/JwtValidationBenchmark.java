@@ -0,0 +1,82 @@
+package com.pm.authservice.benchmark;
+
+import com.pm.authservice.util.JwtKeyRing;
+import com.pm.authservice.util.JwtUtil;
+import com.pm.authservice.util.TokenClaims;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParserBuilder;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.SecretKey;
+import java.security.Key;
+import java.security.PublicKey;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access token validations per second on one core: a parser built for every call, as JwtUtil used to do,
+ * against the parser JwtUtil builds once with a kid-indexed key ring, per signing algorithm. Not part of the
+ * test run, start it from main with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Threads(1)
+@Fork(1)
+public class JwtValidationBenchmark {
+
+    @Param({"HS256", "RS256", "EdDSA"})
+    public String algorithm;
+
+    private Key key;
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        String secret = Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+        JwtKeyRing keyRing = new JwtKeyRing(secret, List.of(), "", JwtKeyRing.LEGACY_KID, algorithm, "", "");
+        key = keyRing.key(keyRing.activeKid());
+        jwtUtil = new JwtUtil(keyRing, Duration.ofMinutes(15));
+        token = jwtUtil.generateToken("bench@test.com", "ADMIN");
+    }
+
+    @Benchmark
+    public Claims parserPerCall() {
+        JwtParserBuilder parser = key instanceof SecretKey secretKey
+                ? Jwts.parser().verifyWith(secretKey)
+                : Jwts.parser().verifyWith((PublicKey) key);
+        return parser.build().parseSignedClaims(token).getPayload();
+    }
+
+    @Benchmark
+    public TokenClaims sharedParser() {
+        return jwtUtil.validateToken(token);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtValidationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,113 @@
+package com.pm.authservice.benchmark;
+
+import com.pm.authservice.cache.UserCache;
+import com.pm.authservice.config.SecurityConfig;
+import com.pm.authservice.dto.LoginRequestDTO;
+import com.pm.authservice.dto.LoginResponseDTO;
+import com.pm.authservice.model.User;
+import com.pm.authservice.repository.RefreshTokenRepository;
+import com.pm.authservice.repository.UserRepository;
+import com.pm.authservice.service.AuthService;
+import com.pm.authservice.service.TokenService;
+import com.pm.authservice.service.UserService;
+import com.pm.authservice.util.JwtKeyRing;
+import com.pm.authservice.util.JwtUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Successful logins per second on one core: user lookup from the cache, BCrypt check on a single hashing
+ * thread, token signing and refresh token generation (stored in a no-op repository), per BCrypt strength.
+ * Multiply by the core count for the capacity of an instance. Not part of the test run, start it from main
+ * with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Threads(1)
+@Fork(1)
+public class LoginBenchmark {
+
+    private static final String PASSWORD = "password123";
+
+    @Param({"8", "10", "12"})
+    public int strength;
+
+    private AuthService authService;
+    private ExecutorService executor;
+    private LoginRequestDTO request;
+
+    @Setup
+    public void setUp() {
+        SecurityConfig securityConfig = new SecurityConfig();
+        PasswordEncoder passwordEncoder = securityConfig.passwordEncoder(strength);
+        executor = securityConfig.passwordHashingExecutor(1, 16);
+
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setEmail("bench@test.com");
+        user.setRole("ADMIN");
+        user.setPassword(passwordEncoder.encode(PASSWORD));
+
+        UserRepository repository = (UserRepository) Proxy.newProxyInstance(
+                UserRepository.class.getClassLoader(), new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> method.getName().equals("findByEmail") ? Optional.of(user) : null);
+        RefreshTokenRepository refreshTokens = (RefreshTokenRepository) Proxy.newProxyInstance(
+                RefreshTokenRepository.class.getClassLoader(), new Class<?>[]{RefreshTokenRepository.class},
+                (proxy, method, args) -> method.getName().equals("save") ? args[0] : null);
+        UserService userService = new UserService(repository, new UserCache(1000, Duration.ofMinutes(5)));
+
+        byte[] secret = new byte[32];
+        JwtUtil jwtUtil = new JwtUtil(new JwtKeyRing(Base64.getEncoder().encodeToString(secret), List.of(), "",
+                JwtKeyRing.LEGACY_KID, "HS256", "", ""), Duration.ofMinutes(15));
+        TokenService tokenService = new TokenService(jwtUtil, refreshTokens, userService,
+                null, null, null, Duration.ofDays(14));
+        authService = new AuthService(userService, passwordEncoder, tokenService, executor);
+
+        request = new LoginRequestDTO();
+        request.setEmail(user.getEmail());
+        request.setPassword(PASSWORD);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public Optional<LoginResponseDTO> login() {
+        return authService.authenticate(request).join();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LoginBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
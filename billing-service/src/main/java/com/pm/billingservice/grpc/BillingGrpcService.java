@@ -2,26 +2,55 @@ package com.pm.billingservice.grpc;
 
 import billing.BillingResponse;
 import billing.BillingServiceGrpc;
+import com.pm.billingservice.idempotency.IdempotencyKeyReusedException;
+import com.pm.billingservice.idempotency.IdempotencyStore;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import net.devh.boot.grpc.server.service.GrpcService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.time.Duration;
 
 @GrpcService
 public class BillingGrpcService extends BillingServiceGrpc.BillingServiceImplBase {
     private static final Logger log = LoggerFactory.getLogger(BillingGrpcService.class);
 
+    private final IdempotencyStore<BillingResponse> idempotencyStore;
+
+    public BillingGrpcService(
+            @Value("${idempotency.max-entries:10000}") int maxEntries,
+            @Value("${idempotency.ttl-seconds:86400}") long ttlSeconds) {
+        this.idempotencyStore = new IdempotencyStore<>(maxEntries, Duration.ofSeconds(ttlSeconds));
+    }
+
     @Override
     public void createBillingAccount(billing.BillingRequest billingRequest,
                                      StreamObserver<BillingResponse> responseObserver) {
 
+        String idempotencyKey = billingRequest.getIdempotencyKey();
+        BillingResponse response;
+        try {
+            response = idempotencyKey.isEmpty()
+                    ? createAccount(billingRequest)
+                    : idempotencyStore.execute(idempotencyKey, billingRequest.toByteArray(),
+                            () -> createAccount(billingRequest));
+        } catch (IdempotencyKeyReusedException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
+    }
+
+    private BillingResponse createAccount(billing.BillingRequest billingRequest) {
         log.info("Creating Billing Account: {}", billingRequest.toString());
 
-        BillingResponse response = BillingResponse.newBuilder()
+        return BillingResponse.newBuilder()
                 .setAccountId("123456")
                 .setStatus("ACTIVE")
                 .build();
-        responseObserver.onNext(response);
-        responseObserver.onCompleted();
     }
 }
@@ -0,0 +1,119 @@
+package com.pm.billingservice.idempotency;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, TTL-evicted store of results keyed by a client supplied idempotency key.
+ * Concurrent calls with the same key share a single execution; failed executions
+ * are not remembered so the client can retry them. A key is bound to a digest of the
+ * request it was first used with, reusing it for another request is rejected with
+ * {@link IdempotencyKeyReusedException}. Executions still running are never evicted,
+ * so the bound can be exceeded by the number of them.
+ */
+public class IdempotencyStore<V> {
+
+    private final Map<String, Entry<V>> entries = new LinkedHashMap<>();
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Clock clock;
+
+    public IdempotencyStore(int maxEntries, Duration ttl) {
+        this(maxEntries, ttl, Clock.systemUTC());
+    }
+
+    public IdempotencyStore(int maxEntries, Duration ttl, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+    }
+
+    public V execute(String key, byte[] request, Supplier<V> action) {
+        byte[] digest = digest(request);
+        CompletableFuture<V> future;
+        boolean owner = false;
+
+        synchronized (entries) {
+            long now = clock.millis();
+            Entry<V> entry = entries.get(key);
+            if (entry == null || (entry.expiresAt <= now && entry.result.isDone())) {
+                entries.remove(key);
+                evict(now);
+                entry = new Entry<>(new CompletableFuture<>(), digest, now + ttlMillis);
+                entries.put(key, entry);
+                owner = true;
+            } else if (!MessageDigest.isEqual(entry.request, digest)) {
+                throw new IdempotencyKeyReusedException(key);
+            }
+            future = entry.result;
+        }
+
+        if (owner) {
+            try {
+                future.complete(action.get());
+            } catch (Throwable e) {
+                synchronized (entries) {
+                    entries.remove(key);
+                }
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Entries are kept in insertion order, so expired ones are at the head. Running executions are
+    // skipped: dropping one would let a retry run the action a second time.
+    private void evict(long now) {
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry<V> entry = iterator.next();
+            if (!entry.result.isDone()) {
+                continue;
+            }
+            if (entry.expiresAt > now && entries.size() < maxEntries) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    private static byte[] digest(byte[] request) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(request);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Entry<V>(CompletableFuture<V> result, byte[] request, long expiresAt) {
+    }
+}
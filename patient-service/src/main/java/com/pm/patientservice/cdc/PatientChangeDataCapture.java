@@ -0,0 +1,318 @@
+package com.pm.patientservice.cdc;
+
+import com.pm.patientservice.mapper.IsoFormat;
+import com.pm.patientservice.mapper.PatientEventMapper;
+import com.pm.patientservice.model.Patient;
+import org.postgresql.PGConnection;
+import org.postgresql.PGProperty;
+import org.postgresql.replication.LogSequenceNumber;
+import org.postgresql.replication.PGReplicationStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Tails the Postgres logical replication stream of the patient table and publishes
+ * {@link PatientEvent}s to the patient topic. Events are sent per committed transaction in
+ * batches and the replication slot is only advanced after Kafka acknowledged the batch,
+ * so delivery is at-least-once and survives restarts.
+ */
+@Component
+@ConditionalOnExpression("'${patient.events.source:SERVICE}'.toUpperCase() != 'SERVICE'")
+public class PatientChangeDataCapture implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientChangeDataCapture.class);
+    private static final String TOPIC = "patient";
+    private static final String TABLE = "patient";
+    private static final long POSTGRES_EPOCH_SECONDS = 946_684_800L;
+    // slot, publication and schema names go into DDL, which takes no bind parameters
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z0-9_]+");
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String slotName;
+    private final String publicationName;
+    private final String schema;
+    private final int batchSize;
+    private final long retryBackoffMillis;
+
+    private volatile boolean running;
+    private volatile Connection replicationConnection;
+    private Thread worker;
+
+    public PatientChangeDataCapture(KafkaTemplate<String, byte[]> kafkaTemplate,
+                                    DataSourceProperties dataSourceProperties,
+                                    @Value("${patient.cdc.slot-name:patient_cdc}") String slotName,
+                                    @Value("${patient.cdc.publication-name:patient_cdc}") String publicationName,
+                                    @Value("${patient.cdc.schema:public}") String schema,
+                                    @Value("${patient.cdc.batch-size:500}") int batchSize,
+                                    @Value("${patient.cdc.retry-backoff-ms:5000}") long retryBackoffMillis) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.url = dataSourceProperties.determineUrl();
+        this.username = dataSourceProperties.determineUsername();
+        this.password = dataSourceProperties.determinePassword();
+        this.slotName = identifier("patient.cdc.slot-name", slotName);
+        this.publicationName = identifier("patient.cdc.publication-name", publicationName);
+        this.schema = identifier("patient.cdc.schema", schema);
+        this.batchSize = batchSize;
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    private static String identifier(String property, String value) {
+        if (value == null || !IDENTIFIER.matcher(value).matches()) {
+            throw new IllegalArgumentException(property + " must match " + IDENTIFIER + ", was '" + value + "'");
+        }
+        return value;
+    }
+
+    // The publication only holds schema.patient, a patient table of another schema must not slip through either
+    public static boolean isPatientTable(PgOutputDecoder.Relation relation, String schema) {
+        return schema.equals(relation.namespace()) && TABLE.equals(relation.name());
+    }
+
+    public static PatientEvent toEvent(PgOutputDecoder.RowChange change, Instant occurredAt) {
+        return switch (change.kind()) {
+            case INSERT -> PatientEventMapper.toEvent(
+                    toPatient(change.newValues()), PatientEventType.PATIENT_CREATED, occurredAt);
+            case UPDATE -> PatientEventMapper.toUpdatedEvent(
+                    toPatient(change.newValues()), changedFields(change), occurredAt);
+            case DELETE -> PatientEventMapper.toDeletedEvent(
+                    UUID.fromString(change.oldValues().get("id")), occurredAt);
+        };
+    }
+
+    private static Patient toPatient(Map<String, String> row) {
+        return new Patient.Builder()
+                .id(UUID.fromString(row.get("id")))
+                .name(row.get("name"))
+                .email(row.get("email"))
+                .address(row.get("address"))
+                .dateOfBirth(parseDate(row.get("date_of_birth")))
+                .registeredDate(parseDate(row.get("registered_date")))
+                .build();
+    }
+
+    // The old row is only sent with REPLICA IDENTITY FULL, otherwise the mask stays empty
+    private static List<String> changedFields(PgOutputDecoder.RowChange change) {
+        List<String> changed = new ArrayList<>();
+        Map<String, String> before = change.oldValues();
+        if (before.isEmpty()) {
+            return changed;
+        }
+        Map<String, String> after = change.newValues();
+        if (!Objects.equals(before.get("name"), after.get("name"))) changed.add("name");
+        if (!Objects.equals(before.get("email"), after.get("email"))) changed.add("email");
+        if (!Objects.equals(before.get("address"), after.get("address"))) changed.add("address");
+        if (!Objects.equals(before.get("date_of_birth"), after.get("date_of_birth"))) {
+            changed.add("date_of_birth_epoch_day");
+        }
+        if (!Objects.equals(before.get("registered_date"), after.get("registered_date"))) {
+            changed.add("registered_date_epoch_day");
+        }
+        return changed;
+    }
+
+    private static LocalDate parseDate(String value) {
+        return value == null ? null : IsoFormat.parseDate(value);
+    }
+
+    private void captureLoop() {
+        while (running) {
+            try {
+                ensurePublicationAndSlot();
+                stream();
+            } catch (Exception e) {
+                if (running) {
+                    log.error("Patient change data capture failed, retrying in {} ms", retryBackoffMillis, e);
+                    sleep(retryBackoffMillis);
+                }
+            } finally {
+                closeReplicationConnection();
+            }
+        }
+    }
+
+    private void ensurePublicationAndSlot() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, username, password)) {
+            if (!exists(connection, "select 1 from pg_publication where pubname = ?", publicationName)) {
+                try (Statement statement = connection.createStatement()) {
+                    // through the root, so a range partitioned patient table still publishes its rows as patient
+                    statement.execute("CREATE PUBLICATION " + publicationName + " FOR TABLE " + schema + "." + TABLE
+                            + " WITH (publish_via_partition_root = true)");
+                }
+                log.info("Created publication {} for table {}.{}", publicationName, schema, TABLE);
+            }
+            if (!exists(connection, "select 1 from pg_replication_slots where slot_name = ?", slotName)) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "select pg_create_logical_replication_slot(?, 'pgoutput')")) {
+                    statement.setString(1, slotName);
+                    statement.execute();
+                }
+                log.info("Created logical replication slot {}", slotName);
+            }
+        }
+    }
+
+    private static boolean exists(Connection connection, String sql, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private void stream() throws Exception {
+        Properties properties = new Properties();
+        PGProperty.USER.set(properties, username);
+        PGProperty.PASSWORD.set(properties, password);
+        PGProperty.ASSUME_MIN_SERVER_VERSION.set(properties, "10");
+        PGProperty.REPLICATION.set(properties, "database");
+        PGProperty.PREFER_QUERY_MODE.set(properties, "simple");
+        replicationConnection = DriverManager.getConnection(url, properties);
+
+        PGReplicationStream stream = replicationConnection.unwrap(PGConnection.class)
+                .getReplicationAPI()
+                .replicationStream()
+                .logical()
+                .withSlotName(slotName)
+                .withSlotOption("proto_version", 1)
+                .withSlotOption("publication_names", publicationName)
+                .withStatusInterval(10, TimeUnit.SECONDS)
+                .start();
+        log.info("Streaming changes of table {}.{} from slot {}", schema, TABLE, slotName);
+
+        PgOutputDecoder decoder = new PgOutputDecoder();
+        List<PgOutputDecoder.RowChange> transaction = new ArrayList<>();
+        List<PatientEvent> committed = new ArrayList<>();
+        long committedLsn = 0;
+
+        while (running) {
+            ByteBuffer message = stream.readPending();
+            if (message == null) {
+                if (!committed.isEmpty()) {
+                    publish(committed, stream, committedLsn);
+                }
+                TimeUnit.MILLISECONDS.sleep(10);
+                continue;
+            }
+
+            switch (decoder.decode(message)) {
+                case PgOutputDecoder.Begin begin -> transaction.clear();
+                case PgOutputDecoder.RowChange change when isPatientTable(change.relation(), schema) ->
+                        transaction.add(change);
+                case PgOutputDecoder.Commit commit -> {
+                    Instant occurredAt = Instant.ofEpochSecond(POSTGRES_EPOCH_SECONDS)
+                            .plusNanos(TimeUnit.MICROSECONDS.toNanos(commit.commitTimestampMicros()));
+                    for (PgOutputDecoder.RowChange change : transaction) {
+                        committed.add(toEvent(change, occurredAt));
+                    }
+                    transaction.clear();
+                    committedLsn = commit.endLsn();
+                    if (committed.size() >= batchSize) {
+                        publish(committed, stream, committedLsn);
+                    } else if (committed.isEmpty()) {
+                        acknowledge(stream, committedLsn);
+                    }
+                }
+                default -> {
+                    // relation, type, origin and truncate messages carry no row data for us
+                }
+            }
+        }
+    }
+
+    private void publish(List<PatientEvent> events, PGReplicationStream stream, long lsn) throws Exception {
+        List<CompletableFuture<SendResult<String, byte[]>>> results = new ArrayList<>(events.size());
+        for (PatientEvent event : events) {
+            results.add(kafkaTemplate.send(TOPIC, event.getPatientId(), event.toByteArray()));
+        }
+        kafkaTemplate.flush();
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        log.debug("Published {} captured patient events up to LSN {}", events.size(), LogSequenceNumber.valueOf(lsn));
+        events.clear();
+        acknowledge(stream, lsn);
+    }
+
+    private static void acknowledge(PGReplicationStream stream, long lsn) throws SQLException {
+        LogSequenceNumber position = LogSequenceNumber.valueOf(lsn);
+        stream.setAppliedLSN(position);
+        stream.setFlushedLSN(position);
+        stream.forceUpdateStatus();
+    }
+
+    private void closeReplicationConnection() {
+        Connection connection = replicationConnection;
+        replicationConnection = null;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("Could not close replication connection", e);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        worker = new Thread(this::captureLoop, "patient-cdc");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,137 @@
+package com.pm.patientservice.cdc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes messages of the built-in {@code pgoutput} logical decoding plugin (protocol version 1).
+ * Relation messages are remembered so that later row messages can be resolved to column names.
+ * Column values are returned in their text representation.
+ */
+public class PgOutputDecoder {
+
+    private final Map<Integer, Relation> relations = new HashMap<>();
+
+    public Message decode(ByteBuffer buffer) {
+        char type = (char) buffer.get();
+        return switch (type) {
+            case 'B' -> {
+                buffer.getLong(); // final LSN of the transaction
+                buffer.getLong(); // commit timestamp
+                yield new Begin(buffer.getInt());
+            }
+            case 'C' -> {
+                buffer.get(); // flags
+                buffer.getLong(); // LSN of the commit
+                long endLsn = buffer.getLong();
+                yield new Commit(endLsn, buffer.getLong());
+            }
+            case 'R' -> decodeRelation(buffer);
+            case 'I' -> {
+                Relation relation = relation(buffer.getInt());
+                buffer.get(); // 'N'
+                yield new RowChange(RowChange.Kind.INSERT, relation, Map.of(), readTuple(buffer, relation));
+            }
+            case 'U' -> {
+                Relation relation = relation(buffer.getInt());
+                Map<String, String> oldValues = Map.of();
+                char tupleType = (char) buffer.get();
+                if (tupleType == 'K' || tupleType == 'O') {
+                    oldValues = readTuple(buffer, relation);
+                    buffer.get(); // 'N'
+                }
+                yield new RowChange(RowChange.Kind.UPDATE, relation, oldValues, readTuple(buffer, relation));
+            }
+            case 'D' -> {
+                Relation relation = relation(buffer.getInt());
+                buffer.get(); // 'K' or 'O'
+                yield new RowChange(RowChange.Kind.DELETE, relation, readTuple(buffer, relation), Map.of());
+            }
+            default -> new Ignored(type);
+        };
+    }
+
+    private Relation decodeRelation(ByteBuffer buffer) {
+        int id = buffer.getInt();
+        String namespace = readString(buffer);
+        String name = readString(buffer);
+        buffer.get(); // replica identity setting
+        short columnCount = buffer.getShort();
+        List<String> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            buffer.get(); // flags, 1 marks a key column
+            columns.add(readString(buffer));
+            buffer.getInt(); // type oid
+            buffer.getInt(); // type modifier
+        }
+        Relation relation = new Relation(id, namespace, name, Collections.unmodifiableList(columns));
+        relations.put(id, relation);
+        return relation;
+    }
+
+    private Relation relation(int id) {
+        Relation relation = relations.get(id);
+        if (relation == null) {
+            throw new IllegalStateException("Row message for unknown relation " + id);
+        }
+        return relation;
+    }
+
+    private static Map<String, String> readTuple(ByteBuffer buffer, Relation relation) {
+        short columnCount = buffer.getShort();
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < columnCount; i++) {
+            char kind = (char) buffer.get();
+            switch (kind) {
+                case 'n' -> values.put(relation.columns().get(i), null);
+                case 'u' -> {
+                    // unchanged TOASTed value, not sent by the server
+                }
+                case 't', 'b' -> {
+                    byte[] bytes = new byte[buffer.getInt()];
+                    buffer.get(bytes);
+                    values.put(relation.columns().get(i), new String(bytes, StandardCharsets.UTF_8));
+                }
+                default -> throw new IllegalStateException("Unknown tuple data kind " + kind);
+            }
+        }
+        return values;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int start = buffer.position();
+        while (buffer.get() != 0) {
+            // scan up to the terminating zero byte
+        }
+        byte[] bytes = new byte[buffer.position() - start - 1];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public sealed interface Message permits Begin, Commit, Relation, RowChange, Ignored {
+    }
+
+    public record Begin(int xid) implements Message {
+    }
+
+    // the commit timestamp counts microseconds since 2000-01-01, the Postgres epoch
+    public record Commit(long endLsn, long commitTimestampMicros) implements Message {
+    }
+
+    public record Relation(int id, String namespace, String name, List<String> columns) implements Message {
+    }
+
+    public record RowChange(Kind kind, Relation relation, Map<String, String> oldValues,
+                            Map<String, String> newValues) implements Message {
+        public enum Kind {INSERT, UPDATE, DELETE}
+    }
+
+    public record Ignored(char type) implements Message {
+    }
+}
@@ -0,0 +1,20 @@
+package com.pm.patientservice.config;
+
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.idempotency.IdempotencyStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class IdempotencyConfig {
+
+    @Bean
+    public IdempotencyStore<PatientResponseDTO> patientIdempotencyStore(
+            @Value("${idempotency.max-entries:10000}") int maxEntries,
+            @Value("${idempotency.ttl-seconds:86400}") long ttlSeconds) {
+        return new IdempotencyStore<>(maxEntries, Duration.ofSeconds(ttlSeconds));
+    }
+}
@@ -0,0 +1,128 @@
+package com.pm.patientservice.config;
+
+import com.google.protobuf.CodedOutputStream;
+import com.pm.patientservice.dto.PatientRequestDTO;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.mapper.PatientProtoMapper;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import patient.api.ErrorResponse;
+import patient.api.Patient;
+import patient.api.PatientRequest;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the patient DTOs as {@code application/x-protobuf} so internal callers skip JSON.
+ * Single resources are plain messages, lists are streamed as varint length-delimited {@link Patient}
+ * messages (content type parameter {@code delimited=true}) without building an enclosing message.
+ */
+public class PatientProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType PROTOBUF = new MediaType("application", "x-protobuf");
+    public static final MediaType PROTOBUF_DELIMITED = new MediaType(PROTOBUF, Map.of("delimited", "true"));
+    public static final String MESSAGE_HEADER = "X-Protobuf-Message";
+
+    private static final ResolvableType PATIENT_LIST =
+            ResolvableType.forClassWithGenerics(List.class, PatientResponseDTO.class);
+    private static final ResolvableType PATIENT_MODEL_LIST =
+            ResolvableType.forClassWithGenerics(List.class, com.pm.patientservice.model.Patient.class);
+    private static final ResolvableType ERROR_MAP =
+            ResolvableType.forClassWithGenerics(Map.class, String.class, String.class);
+
+    public PatientProtobufHttpMessageConverter() {
+        super(PROTOBUF);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return PatientResponseDTO.class == clazz;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return PatientRequestDTO.class == clazz && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return type == PatientRequestDTO.class && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (!canWrite(mediaType)) {
+            return false;
+        }
+        if (type == null) {
+            return clazz == PatientResponseDTO.class;
+        }
+        ResolvableType resolved = ResolvableType.forType(type);
+        return resolved.toClass() == PatientResponseDTO.class
+                || PATIENT_LIST.isAssignableFrom(resolved)
+                || PATIENT_MODEL_LIST.isAssignableFrom(resolved)
+                || ERROR_MAP.isAssignableFrom(resolved);
+    }
+
+    // canWrite(Type, ...) already decided on the generic type, the raw class of a list says nothing
+    @Override
+    public List<MediaType> getSupportedMediaTypes(Class<?> clazz) {
+        return getSupportedMediaTypes();
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return PatientProtoMapper.toDTO(PatientRequest.parseFrom(inputMessage.getBody()));
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("Invalid PatientRequest message: " + e.getMessage(), e,
+                    inputMessage);
+        }
+    }
+
+    @Override
+    protected void addDefaultHeaders(HttpHeaders headers, Object payload, MediaType contentType) throws IOException {
+        if (payload instanceof List<?>) {
+            headers.setContentType(PROTOBUF_DELIMITED);
+            headers.set(MESSAGE_HEADER, Patient.getDescriptor().getFullName());
+        } else if (payload instanceof Map<?, ?>) {
+            headers.set(MESSAGE_HEADER, ErrorResponse.getDescriptor().getFullName());
+        } else {
+            headers.set(MESSAGE_HEADER, Patient.getDescriptor().getFullName());
+        }
+        super.addDefaultHeaders(headers, payload, contentType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object payload, Type type, HttpOutputMessage outputMessage) throws IOException {
+        CodedOutputStream output = CodedOutputStream.newInstance(outputMessage.getBody());
+        if (payload instanceof List<?> patients) {
+            for (Object element : patients) {
+                Patient patient = element instanceof PatientResponseDTO dto
+                        ? PatientProtoMapper.toProto(dto)
+                        : PatientProtoMapper.toProto((com.pm.patientservice.model.Patient) element);
+                output.writeUInt32NoTag(patient.getSerializedSize());
+                patient.writeTo(output);
+            }
+        } else if (payload instanceof Map<?, ?> errors) {
+            ErrorResponse.newBuilder().putAllErrors((Map<String, String>) errors).build().writeTo(output);
+        } else {
+            PatientProtoMapper.toProto((PatientResponseDTO) payload).writeTo(output);
+        }
+        output.flush();
+    }
+}
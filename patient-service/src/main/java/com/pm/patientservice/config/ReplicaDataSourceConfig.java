@@ -0,0 +1,97 @@
+package com.pm.patientservice.config;
+
+import com.pm.patientservice.replica.ReplicaReadJpaDialect;
+import com.pm.patientservice.replica.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Only active with {@code patient.replicas.urls}: replaces the auto-configured pool with the primary pool plus
+ * one pool per read replica behind a {@link ReplicaRoutingDataSource}. Replica pools take the primary's
+ * credentials, driver properties and auto-commit mode, Hibernate expects the same from every connection.
+ * Read-only transactions, the ones that may run on a replica, do not fill the second-level cache.
+ */
+@Configuration
+@ConditionalOnProperty("patient.replicas.urls")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            HikariDataSource primaryDataSource,
+            @Value("${patient.replicas.urls}") List<String> urls,
+            @Value("${patient.replicas.pool-size:10}") int poolSize,
+            @Value("${patient.replicas.max-lag:5s}") Duration maxLag,
+            MeterRegistry meterRegistry) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("patient-replica-" + i);
+            replica.setJdbcUrl(urls.get(i).trim());
+            replica.setUsername(primaryDataSource.getUsername());
+            replica.setPassword(primaryDataSource.getPassword());
+            replica.setDataSourceProperties(primaryDataSource.getDataSourceProperties());
+            replica.setAutoCommit(primaryDataSource.isAutoCommit());
+            replica.setReadOnly(true);
+            replica.setMaximumPoolSize(poolSize);
+            replica.setConnectionTimeout(primaryDataSource.getConnectionTimeout());
+            // a replica that is down must not keep the application from starting, the lag check skips it
+            replica.setInitializationFailTimeout(-1);
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.put(replica.getPoolName(), replica);
+        }
+
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primaryDataSource, replicas, maxLag);
+        for (ReplicaRoutingDataSource.Replica replica : routing.replicas()) {
+            Gauge.builder("patient.replica.lag", replica, ReplicaRoutingDataSource.Replica::lagMillis)
+                    .tag("replica", replica.name())
+                    .baseUnit("milliseconds")
+                    .description("Replication lag of a read replica, NaN while it cannot be reached")
+                    .register(meterRegistry);
+        }
+        return routing;
+    }
+
+    // set on the factory before it initializes, the transaction manager takes its dialect from there
+    @Bean
+    public static BeanPostProcessor replicaReadJpaDialect() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof LocalContainerEntityManagerFactoryBean entityManagerFactory) {
+                    entityManagerFactory.setJpaDialect(new ReplicaReadJpaDialect());
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
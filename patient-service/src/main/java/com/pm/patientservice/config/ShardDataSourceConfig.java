@@ -0,0 +1,117 @@
+package com.pm.patientservice.config;
+
+import com.pm.patientservice.shard.PatientShards;
+import com.pm.patientservice.shard.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.flywaydb.core.Flyway;
+import org.hibernate.SessionFactory;
+import org.hibernate.relational.SchemaManager;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Only active with {@code patient.shards.urls}: every url is one shard instance, in a fixed order that is part
+ * of the data layout. Each gets its own pool configured like {@code spring.datasource.hikari} with the
+ * {@code spring.datasource} credentials; {@code spring.datasource.url} itself is not used.
+ * <p>
+ * Every shard needs the full schema. Flyway runs the same migrations on every shard, one after the other, and
+ * startup then validates the mapped tables on all of them; the database name has to be the same on every
+ * instance, validation qualifies tables with the name seen on shard 0.
+ */
+@Configuration
+@ConditionalOnProperty("patient.shards.urls")
+public class ShardDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariConfig shardPoolConfig() {
+        return new HikariConfig();
+    }
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(
+            HikariConfig shardPoolConfig,
+            DataSourceProperties properties,
+            @Value("${patient.shards.urls}") List<String> urls,
+            @Value("${patient.events.source:SERVICE}") String eventSource,
+            @Value("${spring.jpa.open-in-view:true}") boolean openInView,
+            @Value("${spring.flyway.locations:}") List<String> migrationLocations,
+            MeterRegistry meterRegistry) {
+        if (!eventSource.equalsIgnoreCase("SERVICE")) {
+            // change data capture follows the replication stream of one database
+            throw new IllegalStateException("patient.shards.urls needs patient.events.source=SERVICE");
+        }
+        if (openInView) {
+            // one EntityManager per request would keep the connection of the first shard it touched
+            throw new IllegalStateException("patient.shards.urls needs spring.jpa.open-in-view=false");
+        }
+        if (migrationLocations.stream().anyMatch(location -> location.contains("db/seed"))) {
+            // the sample patients have fixed ids, every shard would get all of them
+            throw new IllegalStateException("patient.shards.urls needs spring.flyway.locations without db/seed");
+        }
+        List<DataSource> shards = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariConfig config = new HikariConfig();
+            shardPoolConfig.copyStateTo(config);
+            config.setPoolName("patient-shard-" + i);
+            config.setJdbcUrl(urls.get(i).trim());
+            config.setUsername(properties.getUsername());
+            config.setPassword(properties.getPassword());
+            if (properties.getDriverClassName() != null) {
+                config.setDriverClassName(properties.getDriverClassName());
+            }
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            shards.add(new HikariDataSource(config));
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    @Bean
+    public FlywayMigrationStrategy shardMigrations(ShardRoutingDataSource shardRoutingDataSource) {
+        return flyway -> {
+            for (int shard = 0; shard < shardRoutingDataSource.size(); shard++) {
+                Flyway.configure()
+                        .configuration(flyway.getConfiguration())
+                        .dataSource(shardRoutingDataSource.shard(shard))
+                        .load()
+                        .migrate();
+            }
+        };
+    }
+
+    @Bean
+    public SmartInitializingSingleton shardSchemaValidation(EntityManagerFactory entityManagerFactory,
+                                                            PatientShards shards) {
+        return () -> {
+            SchemaManager schemaManager = entityManagerFactory.unwrap(SessionFactory.class).getSchemaManager();
+            for (int shard = 0; shard < shards.count(); shard++) {
+                ShardRoutingDataSource.callOn(shard, () -> {
+                    schemaManager.validateMappedObjects();
+                    return null;
+                });
+            }
+        };
+    }
+}
@@ -3,15 +3,22 @@ package com.pm.patientservice.controller;
 import com.pm.patientservice.dto.PatientRequestDTO;
 import com.pm.patientservice.dto.PatientResponseDTO;
 import com.pm.patientservice.dto.validators.CreatePatientValidationGroup;
+import com.pm.patientservice.model.Patient;
 import com.pm.patientservice.service.PatientService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.groups.Default;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.UUID;
@@ -28,16 +35,40 @@ public class PatientController {
 
     @GetMapping
     @Operation(summary = "Get patients")
-    public ResponseEntity<List<PatientResponseDTO>> getAllPatients() {
-        return ResponseEntity.ok(patientService.getAllPatients());
+    @ApiResponse(responseCode = "200", content = @Content(
+            array = @ArraySchema(schema = @Schema(implementation = PatientResponseDTO.class))))
+    public ResponseEntity<List<Patient>> getAllPatients(WebRequest request) {
+        return patientService.readVersioned(tableVersion -> {
+            String eTag = eTag(tableVersion, request.getHeader(HttpHeaders.ACCEPT));
+            if (request.checkNotModified(eTag)) {
+                return null;
+            }
+            // written by PatientJsonSerializer in the PatientResponseDTO shape, without building the DTOs
+            return ResponseEntity.ok()
+                    .eTag(eTag)
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .body(patientService.findAllPatients());
+        });
+    }
+
+    // One strong validator per table version and representation; Accept decides between JSON and protobuf. The
+    // version is bumped by a trigger on patient, so writes bypassing the service (seeds, manual fixes) change it too
+    private static String eTag(long tableVersion, String accept) {
+        return accept == null
+                ? "\"" + tableVersion + "\""
+                : "\"" + tableVersion + "-" + Integer.toHexString(accept.hashCode()) + "\"";
     }
 
     @PostMapping
     @Operation(summary = "Create a new Patient")
     public ResponseEntity<PatientResponseDTO> createPatient(
             @Validated({Default.class, CreatePatientValidationGroup.class})
-            @RequestBody PatientRequestDTO patientRequestDTO) {
-        PatientResponseDTO patientResponseDTO = patientService.createPatient(patientRequestDTO);
+            @RequestBody PatientRequestDTO patientRequestDTO,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        PatientResponseDTO patientResponseDTO = idempotencyKey == null
+                ? patientService.createPatient(patientRequestDTO)
+                : patientService.createPatient(patientRequestDTO, idempotencyKey);
 
         return ResponseEntity.status(HttpStatus.CREATED).body(patientResponseDTO);
     }
@@ -49,9 +80,7 @@ public class PatientController {
             @Validated({Default.class}) @RequestBody PatientRequestDTO patientRequestDTO) {
 
         PatientResponseDTO updatedPatientResponseDTO = patientService.updatePatient(id, patientRequestDTO);
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(updatedPatientResponseDTO);
+        return ResponseEntity.ok(updatedPatientResponseDTO);
     }
 
     @DeleteMapping("/{id}")
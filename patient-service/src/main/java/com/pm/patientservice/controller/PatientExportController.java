@@ -0,0 +1,53 @@
+package com.pm.patientservice.controller;
+
+import com.pm.patientservice.export.ExportWatermark;
+import com.pm.patientservice.export.PatientColumnarExporter;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/patients/export")
+@Tag(name = "Patient export", description = "Columnar exports of the patient table")
+public class PatientExportController {
+
+    public static final String WATERMARK_HEADER = "X-Export-Watermark";
+
+    private final PatientColumnarExporter exporter;
+
+    public PatientExportController(PatientColumnarExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    // since is the X-Export-Watermark of the previous export; the watermark is read before the rows, so changes
+    // committed while this export streams are picked up by the next one
+    @GetMapping(produces = PatientColumnarExporter.CONTENT_TYPE)
+    @Operation(summary = "Export patients changed since a watermark as an Arrow IPC stream")
+    public ResponseEntity<StreamingResponseBody> exportPatients(@RequestParam(required = false) String since)
+            throws IOException {
+        ExportWatermark lowerBound;
+        try {
+            lowerBound = since == null ? null : ExportWatermark.parse(since);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        ExportWatermark upperBound = exporter.watermark();
+        if (lowerBound != null && lowerBound.versions().size() != upperBound.versions().size()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        StreamingResponseBody body = out -> exporter.export(lowerBound, upperBound, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(PatientColumnarExporter.CONTENT_TYPE))
+                .header(WATERMARK_HEADER, upperBound.toString())
+                .body(body);
+    }
+}
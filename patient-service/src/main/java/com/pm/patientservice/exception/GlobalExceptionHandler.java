@@ -1,7 +1,9 @@
 package com.pm.patientservice.exception;
 
+import com.pm.patientservice.idempotency.IdempotencyKeyReusedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -46,4 +48,14 @@ public class GlobalExceptionHandler {
         errors.put("message", "Patient not found");
         return ResponseEntity.badRequest().body(errors);
     }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<Map<String,String>> handleIdempotencyKeyReusedException(
+            IdempotencyKeyReusedException ex){
+
+        log.warn("Idempotency key reused! {}", ex.getMessage());
+        Map<String,String> errors = new HashMap<>();
+        errors.put("message", "Idempotency key was already used for a different request");
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(errors);
+    }
 }
@@ -0,0 +1,44 @@
+package com.pm.patientservice.export;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Position of an incremental export in the change sequence of the patient table: the highest change number of
+ * every shard, one number unsharded. Written as the comma separated versions, e.g. {@code 1042} or {@code 17,9,30}.
+ */
+public record ExportWatermark(List<Long> versions) {
+
+    public ExportWatermark {
+        versions = List.copyOf(versions);
+    }
+
+    public static ExportWatermark parse(String value) {
+        try {
+            return new ExportWatermark(Arrays.stream(value.split(",", -1))
+                    .map(version -> Long.parseLong(version.trim()))
+                    .toList());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not an export watermark: " + value, e);
+        }
+    }
+
+    public long version(int shard) {
+        return versions.get(shard);
+    }
+
+    public boolean isAfter(ExportWatermark other) {
+        for (int shard = 0; shard < versions.size(); shard++) {
+            if (versions.get(shard) > other.version(shard)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return versions.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,354 @@
+package com.pm.patientservice.export;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import com.pm.patientservice.shard.PatientShards;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Streams the patient table into an Arrow IPC stream. Rows are read through a JDBC cursor and written
+ * in record batches of {@code batchSize} rows, so memory stays bounded by one batch regardless of the
+ * table size. Dates are int32 days since the epoch and names and emails are dictionary encoded per batch.
+ * Exports follow the change sequence of the table (db/migration V3): an export covers the patients inserted,
+ * updated or deleted in {@code (since, until]} of their change number, whoever wrote them, so the
+ * {@code until} of one export is the {@code since} of the next incremental one. A changed patient is exported
+ * as it is now, a deleted one only with its id and {@code deleted} set. Sharded, the shards are read one after
+ * the other into the same stream, each within its own versions.
+ */
+@Service
+public class PatientColumnarExporter {
+
+    public static final String CONTENT_TYPE = "application/vnd.apache.arrow.stream";
+
+    private static final DictionaryEncoding NAME_ENCODING =
+            new DictionaryEncoding(1, false, new ArrowType.Int(32, true));
+    private static final DictionaryEncoding EMAIL_ENCODING =
+            new DictionaryEncoding(2, false, new ArrowType.Int(32, true));
+
+    public static final Schema SCHEMA = new Schema(List.of(
+            new Field("id", FieldType.notNullable(new ArrowType.FixedSizeBinary(16)), null),
+            new Field("name", new FieldType(true, new ArrowType.Int(32, true), NAME_ENCODING), null),
+            new Field("email", new FieldType(true, new ArrowType.Int(32, true), EMAIL_ENCODING), null),
+            Field.nullable("address", ArrowType.Utf8.INSTANCE),
+            Field.nullable("date_of_birth", new ArrowType.Date(DateUnit.DAY)),
+            Field.nullable("registered_date", new ArrowType.Date(DateUnit.DAY)),
+            Field.notNullable("deleted", ArrowType.Bool.INSTANCE)));
+
+    private static final String CHANGES = "select c.patient_id, p.name, p.email, p.address, p.date_of_birth, "
+            + "p.registered_date, p.id is null from patient_change c left join patient p on p.id = c.patient_id "
+            + "where c.version > ? and c.version <= ?";
+    private static final String VERSION = "select coalesce(max(version), 0) from patient_change";
+    // Every transaction writing to patient holds this lock until it ends
+    private static final String WRITERS = "select virtualtransaction from pg_locks where locktype = 'relation' "
+            + "and relation = 'patient'::regclass and mode = 'RowExclusiveLock' and pid <> pg_backend_pid()";
+    private static final long WRITER_POLL_MILLIS = 10;
+
+    private final DataSource dataSource;
+    private final PatientShards shards;
+    private final int batchSize;
+    private final Duration writerWait;
+
+    @Autowired
+    public PatientColumnarExporter(DataSource dataSource, PatientShards shards,
+                                   @Value("${patient.export.batch-size:4096}") int batchSize,
+                                   @Value("${patient.export.writer-wait:30s}") Duration writerWait) {
+        this.dataSource = dataSource;
+        this.shards = shards;
+        this.batchSize = batchSize;
+        this.writerWait = writerWait;
+    }
+
+    public PatientColumnarExporter(DataSource dataSource, int batchSize) {
+        this(dataSource, PatientShards.unsharded(), batchSize, Duration.ofSeconds(30));
+    }
+
+    /**
+     * The current end of the change sequence once every change up to it has committed, so it is a safe
+     * {@code until} and, once exported, the {@code since} of the next export. Change numbers are taken at the
+     * write, so a transaction still open may hold a lower number than the highest committed one; on Postgres
+     * this waits for the writers open when the version was read, at most {@code patient.export.writer-wait}.
+     */
+    public ExportWatermark watermark() throws IOException {
+        List<Long> versions = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < shards.count(); shard++) {
+                try (Connection connection = source(shard).getConnection()) {
+                    versions.add(version(connection));
+                    if (connection.getMetaData().getDatabaseProductName().equals("PostgreSQL")) {
+                        awaitWriters(connection);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not read the patient table version", e);
+        }
+        return new ExportWatermark(versions);
+    }
+
+    private static long version(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(VERSION);
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    // A writer holding a number up to the version read before has its table lock from before it took the number
+    // until it ends; later writers only take higher numbers, so the ones open now are all there is to wait for
+    private void awaitWriters(Connection connection) throws SQLException, IOException {
+        Set<String> open = writers(connection);
+        long deadline = System.nanoTime() + writerWait.toNanos();
+        while (!open.isEmpty()) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IOException(open.size() + " transactions writing to patient are still open after "
+                        + writerWait + ", the export watermark would skip their changes");
+            }
+            try {
+                Thread.sleep(WRITER_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the writers of patient");
+            }
+            open.retainAll(writers(connection));
+        }
+    }
+
+    private static Set<String> writers(Connection connection) throws SQLException {
+        Set<String> writers = new HashSet<>();
+        try (PreparedStatement statement = connection.prepareStatement(WRITERS);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                writers.add(resultSet.getString(1));
+            }
+        }
+        return writers;
+    }
+
+    /**
+     * Writes all patients changed after {@code since} up to and including {@code until} to {@code out},
+     * {@code since} null exports from the start. Returns the number of exported rows.
+     */
+    public long export(ExportWatermark since, ExportWatermark until, OutputStream out) throws IOException {
+        if (until.versions().size() != shards.count() || since != null && since.versions().size() != shards.count()) {
+            throw new IllegalArgumentException("Export watermarks need one version per shard, there are "
+                    + shards.count() + " shards");
+        }
+        try (Rows rows = new Rows(since, until)) {
+            return write(rows, out);
+        } catch (SQLException e) {
+            throw new IOException("Could not read patients for export", e);
+        }
+    }
+
+    private DataSource source(int shard) {
+        return shards.sharded() ? shards.dataSource(shard) : dataSource;
+    }
+
+    private long write(Rows rows, OutputStream out) throws SQLException, IOException {
+        try (BufferAllocator allocator = new RootAllocator();
+             VectorSchemaRoot root = VectorSchemaRoot.create(SCHEMA, allocator);
+             BatchDictionary names = new BatchDictionary("name_dictionary", allocator);
+             BatchDictionary emails = new BatchDictionary("email_dictionary", allocator)) {
+
+            DictionaryProvider.MapDictionaryProvider provider = new DictionaryProvider.MapDictionaryProvider();
+            provider.put(new Dictionary(names.vector, NAME_ENCODING));
+            provider.put(new Dictionary(emails.vector, EMAIL_ENCODING));
+
+            FixedSizeBinaryVector ids = (FixedSizeBinaryVector) root.getVector("id");
+            IntVector nameCodes = (IntVector) root.getVector("name");
+            IntVector emailCodes = (IntVector) root.getVector("email");
+            VarCharVector addresses = (VarCharVector) root.getVector("address");
+            DateDayVector birthDates = (DateDayVector) root.getVector("date_of_birth");
+            DateDayVector registeredDates = (DateDayVector) root.getVector("registered_date");
+            BitVector deleted = (BitVector) root.getVector("deleted");
+            ByteBuffer id = ByteBuffer.allocate(16);
+
+            try (ArrowStreamWriter writer = new ArrowStreamWriter(root, provider, Channels.newChannel(out))) {
+                writer.start();
+                long total = 0;
+                boolean more = rows.next();
+                while (more) {
+                    root.allocateNew();
+                    names.reset();
+                    emails.reset();
+                    int row = 0;
+                    for (; row < batchSize && more; row++, more = rows.next()) {
+                        ResultSet resultSet = rows.current();
+                        UUID uuid = resultSet.getObject(1, UUID.class);
+                        id.clear();
+                        ids.setSafe(row, id.putLong(uuid.getMostSignificantBits())
+                                .putLong(uuid.getLeastSignificantBits()).array());
+                        setCode(nameCodes, row, names.encode(resultSet.getString(2)));
+                        setCode(emailCodes, row, emails.encode(resultSet.getString(3)));
+                        String address = resultSet.getString(4);
+                        if (address == null) {
+                            addresses.setNull(row);
+                        } else {
+                            addresses.setSafe(row, address.getBytes(StandardCharsets.UTF_8));
+                        }
+                        setDate(birthDates, row, resultSet.getObject(5, LocalDate.class));
+                        setDate(registeredDates, row, resultSet.getObject(6, LocalDate.class));
+                        deleted.setSafe(row, resultSet.getBoolean(7) ? 1 : 0);
+                    }
+                    names.seal();
+                    emails.seal();
+                    root.setRowCount(row);
+                    writer.writeBatch();
+                    total += row;
+                }
+                writer.end();
+                return total;
+            }
+        }
+    }
+
+    private static void setCode(IntVector vector, int row, int code) {
+        if (code < 0) {
+            vector.setNull(row);
+        } else {
+            vector.setSafe(row, code);
+        }
+    }
+
+    private static void setDate(DateDayVector vector, int row, LocalDate date) {
+        if (date == null) {
+            vector.setNull(row);
+        } else {
+            vector.setSafe(row, (int) date.toEpochDay());
+        }
+    }
+
+    // The changes of one shard after the other, each through its own cursor
+    private final class Rows implements AutoCloseable {
+        private final ExportWatermark since;
+        private final ExportWatermark until;
+        private int shard = -1;
+        private Connection connection;
+        private boolean autoCommit;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+
+        private Rows(ExportWatermark since, ExportWatermark until) {
+            this.since = since;
+            this.until = until;
+        }
+
+        private boolean next() throws SQLException {
+            while (resultSet == null || !resultSet.next()) {
+                close();
+                if (++shard >= shards.count()) {
+                    return false;
+                }
+                open(source(shard));
+            }
+            return true;
+        }
+
+        private ResultSet current() {
+            return resultSet;
+        }
+
+        private void open(DataSource source) throws SQLException {
+            connection = source.getConnection();
+            autoCommit = connection.getAutoCommit();
+            // Postgres only streams with a cursor outside of auto-commit, otherwise it buffers the whole result
+            connection.setAutoCommit(false);
+            statement = connection.prepareStatement(CHANGES, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(batchSize);
+            // patients from before the change sequence are at version 0
+            statement.setLong(1, since == null ? -1 : since.version(shard));
+            statement.setLong(2, until.version(shard));
+            resultSet = statement.executeQuery();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (connection == null) {
+                return;
+            }
+            try (Connection open = connection; PreparedStatement prepared = statement; ResultSet cursor = resultSet) {
+                open.rollback();
+                open.setAutoCommit(autoCommit);
+            } finally {
+                connection = null;
+                statement = null;
+                resultSet = null;
+            }
+        }
+    }
+
+    // Dictionary of one record batch; the stream writer emits it again whenever it differs from the last one
+    private static final class BatchDictionary implements AutoCloseable {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final VarCharVector vector;
+
+        private BatchDictionary(String name, BufferAllocator allocator) {
+            this.vector = new VarCharVector(name, allocator);
+        }
+
+        private int encode(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size();
+                codes.put(value, code);
+                vector.setSafe(code, value.getBytes(StandardCharsets.UTF_8));
+            }
+            return code;
+        }
+
+        private void reset() {
+            codes.clear();
+            vector.allocateNew();
+        }
+
+        private void seal() {
+            vector.setValueCount(codes.size());
+        }
+
+        @Override
+        public void close() {
+            vector.close();
+        }
+    }
+}
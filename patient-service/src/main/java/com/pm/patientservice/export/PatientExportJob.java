@@ -0,0 +1,98 @@
+package com.pm.patientservice.export;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes one Arrow file per run into {@code patient.export.job.directory} with all patients changed or deleted
+ * since the previous run. The watermark (the table version the last successful export went up to) is kept in
+ * a file next to the exports and only moved forward once the export file is complete.
+ */
+@Component
+@ConditionalOnProperty(name = "patient.export.job.enabled", havingValue = "true")
+public class PatientExportJob {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientExportJob.class);
+    private static final String WATERMARK_FILE = "watermark";
+
+    private final PatientColumnarExporter exporter;
+    private final Path directory;
+
+    public PatientExportJob(PatientColumnarExporter exporter,
+                            @Value("${patient.export.job.directory:${java.io.tmpdir}/patient-exports}") Path directory) {
+        this.exporter = exporter;
+        this.directory = directory;
+    }
+
+    @Scheduled(cron = "${patient.export.job.cron:0 30 1 * * *}")
+    public void run() {
+        try {
+            export();
+        } catch (IOException e) {
+            log.error("Patient export failed", e);
+        }
+    }
+
+    public Path export() throws IOException {
+        Files.createDirectories(directory);
+        ExportWatermark since = readWatermark();
+        ExportWatermark until = exporter.watermark();
+        if (since != null && since.versions().size() != until.versions().size()) {
+            log.warn("Export watermark {} is of another shard count, exporting all patients", since);
+            since = null;
+        }
+        if (since != null && !until.isAfter(since)) {
+            log.info("Patient export is up to date with watermark {}", since);
+            return null;
+        }
+
+        String name = "patients-" + (since == null ? "initial" : fileName(since)) + "-" + fileName(until) + ".arrows";
+        Path target = directory.resolve(name);
+        Path partial = directory.resolve(name + ".partial");
+        long rows;
+        try (OutputStream out = Files.newOutputStream(partial)) {
+            rows = exporter.export(since, until, out);
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writeWatermark(until);
+        log.info("Exported {} patients changed up to version {} to {}", rows, until, target);
+        return target;
+    }
+
+    private static String fileName(ExportWatermark watermark) {
+        return watermark.toString().replace(',', '_');
+    }
+
+    // A watermark from before the change sequence (a registered date) starts over with a full export
+    private ExportWatermark readWatermark() throws IOException {
+        Path file = directory.resolve(WATERMARK_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        String watermark = Files.readString(file, StandardCharsets.UTF_8).trim();
+        try {
+            return ExportWatermark.parse(watermark);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring export watermark {}, exporting all patients", watermark);
+            return null;
+        }
+    }
+
+    private void writeWatermark(ExportWatermark watermark) throws IOException {
+        Path temporary = directory.resolve(WATERMARK_FILE + ".tmp");
+        Files.writeString(temporary, watermark.toString(), StandardCharsets.UTF_8);
+        Files.move(temporary, directory.resolve(WATERMARK_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
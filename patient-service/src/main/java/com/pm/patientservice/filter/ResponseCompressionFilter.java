@@ -0,0 +1,420 @@
+package com.pm.patientservice.filter;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * gzip/zstd response compression that cooperates with strong ETags. Tomcat's built-in compression skips
+ * any response with a strong ETag, which is exactly the polled {@code GET /patients}, so compression is
+ * done here instead: a compressed response gets the coding appended to its ETag ({@code "7-1a2b+zstd"})
+ * and the suffix is stripped again from {@code If-None-Match}, so the controllers only ever see their
+ * own validators. Bodies smaller than the threshold are sent as they are, with a Content-Length.
+ */
+@Component
+public class ResponseCompressionFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseCompressionFilter.class);
+
+    private static final boolean ZSTD_AVAILABLE = zstdAvailable();
+
+    private final boolean enabled;
+    private final int minResponseSize;
+    private final List<MediaType> mimeTypes;
+
+    public ResponseCompressionFilter(
+            @Value("${patient.compression.enabled:true}") boolean enabled,
+            @Value("${patient.compression.min-response-size:2048}") int minResponseSize,
+            @Value("${patient.compression.mime-types:application/json,application/x-protobuf,"
+                    + "application/vnd.apache.arrow.stream,text/plain}") List<String> mimeTypes) {
+        this.enabled = enabled;
+        this.minResponseSize = minResponseSize;
+        this.mimeTypes = mimeTypes.stream().map(MediaType::parseMediaType).toList();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+
+    // StreamingResponseBody finishes on an async dispatch, the wrapper is completed there
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        CompressingResponse existing = WebUtils.getNativeResponse(response, CompressingResponse.class);
+        if (existing != null) {
+            chain.doFilter(request, response);
+            if (!isAsyncStarted(request)) {
+                existing.finish();
+            }
+            return;
+        }
+
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        Coding coding = Coding.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (coding == null || "HEAD".equals(request.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        CompressingResponse compressing = new CompressingResponse(response, coding);
+        chain.doFilter(new CodingStrippedRequest(request, coding), compressing);
+        if (!isAsyncStarted(request)) {
+            compressing.finish();
+        }
+    }
+
+    enum Coding {
+        ZSTD("zstd"),
+        GZIP("gzip");
+
+        private final String token;
+
+        Coding(String token) {
+            this.token = token;
+        }
+
+        // Highest q wins, zstd on ties; "*" stands for any coding not listed
+        static Coding negotiate(String acceptEncoding) {
+            if (acceptEncoding == null) {
+                return null;
+            }
+            Coding best = null;
+            double bestQuality = 0;
+            for (Coding coding : values()) {
+                if (coding == ZSTD && !ZSTD_AVAILABLE) {
+                    continue;
+                }
+                double quality = coding.quality(acceptEncoding);
+                if (quality > bestQuality) {
+                    best = coding;
+                    bestQuality = quality;
+                }
+            }
+            return best;
+        }
+
+        private double quality(String acceptEncoding) {
+            double wildcard = 0;
+            for (String element : acceptEncoding.split(",")) {
+                String[] parts = element.split(";");
+                String name = parts[0].trim();
+                double quality = 1;
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            quality = Double.parseDouble(parameter.substring(2));
+                        } catch (NumberFormatException e) {
+                            quality = 0;
+                        }
+                    }
+                }
+                if (name.equalsIgnoreCase(token)) {
+                    return quality;
+                }
+                if (name.equals("*")) {
+                    wildcard = quality;
+                }
+            }
+            return wildcard;
+        }
+
+        OutputStream wrap(OutputStream out) throws IOException {
+            return this == GZIP ? new GZIPOutputStream(out, 8192, true) : new ZstdOutputStream(out);
+        }
+
+        String suffix() {
+            return "+" + token;
+        }
+    }
+
+    private static String withCoding(String eTag, Coding coding) {
+        if (eTag == null || eTag.startsWith("W/") || !eTag.endsWith("\"")) {
+            return eTag;
+        }
+        return eTag.substring(0, eTag.length() - 1) + coding.suffix() + "\"";
+    }
+
+    private static boolean zstdAvailable() {
+        try {
+            Native.load();
+            return true;
+        } catch (Throwable e) {
+            log.warn("zstd native library not available, responses are compressed with gzip only", e);
+            return false;
+        }
+    }
+
+    private static final class CodingStrippedRequest extends HttpServletRequestWrapper {
+
+        private final String suffix;
+
+        CodingStrippedRequest(HttpServletRequest request, Coding coding) {
+            super(request);
+            this.suffix = coding.suffix() + "\"";
+        }
+
+        @Override
+        public String getHeader(String name) {
+            String value = super.getHeader(name);
+            return isIfNoneMatch(name) && value != null ? value.replace(suffix, "\"") : value;
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (!isIfNoneMatch(name)) {
+                return super.getHeaders(name);
+            }
+            List<String> values = Collections.list(super.getHeaders(name));
+            values.replaceAll(value -> value.replace(suffix, "\""));
+            return Collections.enumeration(values);
+        }
+
+        private static boolean isIfNoneMatch(String name) {
+            return HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase(name);
+        }
+    }
+
+    /**
+     * Buffers the body until it reaches the threshold, then decides once: compress (Content-Encoding, ETag
+     * suffix, no Content-Length) or pass through.
+     */
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+
+        private final Coding coding;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream target;
+        private boolean compressed;
+        private long contentLength = -1;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        CompressingResponse(HttpServletResponse response, Coding coding) {
+            super(response);
+            this.coding = coding;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called for this response");
+            }
+            return body();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called for this response");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(body(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        private ServletOutputStream body() {
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        CompressingResponse.this.write(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        CompressingResponse.this.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        if (target != null) {
+                            target.flush();
+                        }
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        // writes go through the buffer or the compressor and never block, so the stream is always ready
+                        try {
+                            listener.onWritePossible();
+                        } catch (IOException | RuntimeException e) {
+                            listener.onError(e);
+                        }
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        private void write(byte[] b, int off, int len) throws IOException {
+            if (target == null) {
+                if (buffer.size() + len < minResponseSize) {
+                    buffer.write(b, off, len);
+                    return;
+                }
+                start(compressible());
+            }
+            target.write(b, off, len);
+        }
+
+        private boolean compressible() {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (response.getStatus() != HttpServletResponse.SC_OK
+                    || response.containsHeader(HttpHeaders.CONTENT_ENCODING)
+                    || response.getContentType() == null) {
+                return false;
+            }
+            MediaType contentType = MediaType.parseMediaType(response.getContentType());
+            return mimeTypes.stream().anyMatch(type -> type.includes(contentType));
+        }
+
+        private void start(boolean compress) throws IOException {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (compress) {
+                compressed = true;
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, coding.token);
+                String eTag = response.getHeader(HttpHeaders.ETAG);
+                if (eTag != null) {
+                    response.setHeader(HttpHeaders.ETAG, withCoding(eTag, coding));
+                }
+                target = coding.wrap(response.getOutputStream());
+            } else {
+                if (contentLength >= 0) {
+                    response.setContentLengthLong(contentLength);
+                }
+                target = response.getOutputStream();
+            }
+            buffer.writeTo(target);
+            buffer = null;
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (target == null) {
+                // a 304 answers an If-None-Match that carried the coding, it has to echo that validator
+                if (response.getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
+                    String eTag = response.getHeader(HttpHeaders.ETAG);
+                    if (eTag != null) {
+                        response.setHeader(HttpHeaders.ETAG, withCoding(eTag, coding));
+                    }
+                }
+                if (buffer.size() == 0 && contentLength < 0) {
+                    return;
+                }
+                response.setContentLengthLong(contentLength >= 0 ? contentLength : buffer.size());
+                start(false);
+            }
+            if (compressed) {
+                target.close();
+            } else {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            // before the decision nothing may be committed, after it the compressor flushes through
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target != null) {
+                target.flush();
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            contentLength = len;
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            contentLength = len;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                contentLength = value == null ? -1 : Long.parseLong(value);
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                contentLength = Long.parseLong(value);
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                contentLength = value;
+            } else {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (target == null) {
+                buffer.reset();
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            if (target == null) {
+                buffer.reset();
+                contentLength = -1;
+            }
+        }
+    }
+}
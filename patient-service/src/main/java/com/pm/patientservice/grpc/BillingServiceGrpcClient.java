@@ -3,52 +3,181 @@ package com.pm.patientservice.grpc;
 import billing.BillingRequest;
 import billing.BillingResponse;
 import billing.BillingServiceGrpc;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls billing-service through a circuit breaker and a semaphore bulkhead, every call carries a deadline.
+ * When billing-service is unavailable (breaker open, bulkhead full, UNAVAILABLE/DEADLINE_EXCEEDED/
+ * RESOURCE_EXHAUSTED) the request is queued and a PENDING response is returned right away; the queue is
+ * replayed in the background once the breaker lets calls through again. Replays are safe because billing
+ * deduplicates on the idempotency key. The queue lives in memory, it is bounded and lost on restart.
+ */
 @Service
 public class BillingServiceGrpcClient {
     private static final Logger log = LoggerFactory.getLogger(BillingServiceGrpcClient.class);
+
+    public static final String PENDING = "PENDING";
+
+    private static final Set<Status.Code> UNAVAILABLE = Set.of(
+            Status.Code.UNAVAILABLE, Status.Code.DEADLINE_EXCEEDED, Status.Code.RESOURCE_EXHAUSTED);
+
     private final BillingServiceGrpc.BillingServiceBlockingStub blockingStub;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final BlockingQueue<BillingRequest> pending;
 
     @Autowired
     public BillingServiceGrpcClient(
             @Value("${billing.service.address:localhost}") String serverAddress,
-            @Value("${billing.service.grpc.port:9001}") int serverPort) {
-        this(createStub(serverAddress, serverPort));
+            @Value("${billing.service.grpc.port:9001}") int serverPort,
+            @Value("${billing.service.grpc.deadline:2s}") Duration deadline,
+            @Value("${billing.pending.max-size:10000}") int maxPending,
+            CircuitBreakerRegistry circuitBreakerRegistry,
+            BulkheadRegistry bulkheadRegistry,
+            MeterRegistry meterRegistry) {
+        this(createStub(serverAddress, serverPort, deadline),
+                circuitBreakerRegistry.circuitBreaker("billing"),
+                bulkheadRegistry.bulkhead("billing"),
+                maxPending);
+        Gauge.builder("billing.accounts.pending", pending, BlockingQueue::size)
+                .description("Billing account creations waiting for billing-service to come back")
+                .register(meterRegistry);
+    }
+
+    public BillingServiceGrpcClient(BillingServiceGrpc.BillingServiceBlockingStub blockingStub,
+                                    CircuitBreaker circuitBreaker, Bulkhead bulkhead, int maxPending) {
+        this.blockingStub = blockingStub;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.pending = new LinkedBlockingQueue<>(maxPending);
     }
 
     // Constructor for testing - inject the stub directly
     public BillingServiceGrpcClient(BillingServiceGrpc.BillingServiceBlockingStub blockingStub) {
-        this.blockingStub = blockingStub;
+        this(blockingStub, CircuitBreaker.ofDefaults("billing"), Bulkhead.ofDefaults("billing"), 10_000);
     }
 
     private static BillingServiceGrpc.BillingServiceBlockingStub createStub(
-            String serverAddress, int serverPort) {
+            String serverAddress, int serverPort, Duration deadline) {
 
         ManagedChannel channel = ManagedChannelBuilder
                 .forAddress(serverAddress, serverPort)
                 .usePlaintext()
                 .build();
-        return BillingServiceGrpc.newBlockingStub(channel);
+        return BillingServiceGrpc.newBlockingStub(channel)
+                .withInterceptors(deadlineInterceptor(deadline.toMillis()));
+    }
+
+    // a stub deadline would be absolute, the interceptor gives every call its own
+    private static ClientInterceptor deadlineInterceptor(long deadlineMillis) {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+                    MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                return next.newCall(method, callOptions.getDeadline() == null
+                        ? callOptions.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS)
+                        : callOptions);
+            }
+        };
     }
 
     public BillingResponse createBillingAccount(
             String patientId, String name, String email) {
+        // a patient owns exactly one billing account, so its id is a natural idempotency key
+        return createBillingAccount(patientId, name, email, patientId);
+    }
+
+    public BillingResponse createBillingAccount(
+            String patientId, String name, String email, String idempotencyKey) {
 
         BillingRequest request = BillingRequest.newBuilder()
                 .setPatientId(patientId)
                 .setEmail(email)
                 .setName(name)
+                .setIdempotencyKey(idempotencyKey)
                 .build();
 
-        BillingResponse response = blockingStub.createBillingAccount(request);
-        log.info("Received response from billing service via GRPC: {}", response);
-        return response;
+        try {
+            BillingResponse response = call(request);
+            log.info("Received response from billing service via GRPC: {}", response);
+            return response;
+        } catch (CallNotPermittedException | BulkheadFullException e) {
+            return defer(request, e);
+        } catch (StatusRuntimeException e) {
+            if (!UNAVAILABLE.contains(e.getStatus().getCode())) {
+                throw e;
+            }
+            return defer(request, e);
+        }
+    }
+
+    private BillingResponse call(BillingRequest request) {
+        return bulkhead.executeSupplier(() ->
+                circuitBreaker.executeSupplier(() -> blockingStub.createBillingAccount(request)));
+    }
+
+    private BillingResponse defer(BillingRequest request, RuntimeException cause) {
+        if (!pending.offer(request)) {
+            log.error("Billing retry queue is full, cannot create billing account for patient {}",
+                    request.getPatientId());
+            throw cause;
+        }
+        log.warn("Billing service unavailable ({}), billing account for patient {} is queued",
+                cause.getMessage(), request.getPatientId());
+        return BillingResponse.newBuilder().setStatus(PENDING).build();
+    }
+
+    @Scheduled(fixedDelayString = "${billing.pending.retry-interval-ms:5000}")
+    public void retryPending() {
+        BillingRequest request;
+        while ((request = pending.peek()) != null && circuitBreaker.getState() != CircuitBreaker.State.OPEN) {
+            try {
+                BillingResponse response = call(request);
+                log.info("Created queued billing account for patient {}: {}", request.getPatientId(), response);
+            } catch (CallNotPermittedException | BulkheadFullException e) {
+                return;
+            } catch (StatusRuntimeException e) {
+                if (UNAVAILABLE.contains(e.getStatus().getCode())) {
+                    return;
+                }
+                log.error("Giving up on billing account for patient {}", request.getPatientId(), e);
+            } catch (RuntimeException e) {
+                // anything else would fail again every time and hold up the whole queue behind it
+                log.error("Giving up on billing account for patient {}", request.getPatientId(), e);
+            }
+            pending.poll();
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
     }
 }
@@ -0,0 +1,204 @@
+package com.pm.patientservice.grpc;
+
+import com.pm.patientservice.dto.PatientRequestDTO;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.dto.validators.CreatePatientValidationGroup;
+import com.pm.patientservice.exception.EmailAlreadyExistsException;
+import com.pm.patientservice.exception.PatientNotFoundException;
+import com.pm.patientservice.idempotency.IdempotencyKeyReusedException;
+import com.pm.patientservice.lookup.PatientLookup;
+import com.pm.patientservice.lookup.PatientRecordStore.PatientRecord;
+import com.pm.patientservice.mapper.PatientProtoMapper;
+import com.pm.patientservice.service.PatientService;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import jakarta.validation.groups.Default;
+import net.devh.boot.grpc.server.service.GrpcService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import patient.api.BatchGetPatientsRequest;
+import patient.api.BatchGetPatientsResponse;
+import patient.api.CreatePatientRequest;
+import patient.api.CreatePatientResult;
+import patient.api.CreatePatientsResponse;
+import patient.api.ErrorResponse;
+import patient.api.ListPatientsRequest;
+import patient.api.LookupPatientsResponse;
+import patient.api.Patient;
+import patient.api.PatientId;
+import patient.api.PatientServiceGrpc;
+import patient.api.SearchPatientsRequest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+@GrpcService
+public class PatientGrpcService extends PatientServiceGrpc.PatientServiceImplBase {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientGrpcService.class);
+
+    private final PatientService patientService;
+    private final Validator validator;
+    private final PatientLookup patientLookup;
+
+    public PatientGrpcService(PatientService patientService, Validator validator, PatientLookup patientLookup) {
+        this.patientService = patientService;
+        this.validator = validator;
+        this.patientLookup = patientLookup;
+    }
+
+    @Override
+    public void getPatient(PatientId request, StreamObserver<Patient> responseObserver) {
+        try {
+            responseObserver.onNext(PatientProtoMapper.toProto(patientService.getPatient(toUuid(request))));
+            responseObserver.onCompleted();
+        } catch (PatientNotFoundException e) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription(e.getMessage()).asRuntimeException());
+        }
+    }
+
+    @Override
+    public void batchGetPatients(BatchGetPatientsRequest request,
+                                 StreamObserver<BatchGetPatientsResponse> responseObserver) {
+        List<UUID> ids = request.getIdsList().stream().map(PatientGrpcService::toUuid).toList();
+        BatchGetPatientsResponse.Builder response = BatchGetPatientsResponse.newBuilder();
+        for (com.pm.patientservice.model.Patient patient : patientService.getPatients(ids)) {
+            response.addPatients(PatientProtoMapper.toProto(patient));
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    // Ids the lookup store does not know (yet) are read from the database
+    @Override
+    public void lookupPatients(BatchGetPatientsRequest request,
+                               StreamObserver<LookupPatientsResponse> responseObserver) {
+        LookupPatientsResponse.Builder response = LookupPatientsResponse.newBuilder();
+        List<UUID> missing = new ArrayList<>();
+        for (PatientId id : request.getIdsList()) {
+            PatientRecord record = patientLookup.get(id.getMsb(), id.getLsb());
+            if (record == null) {
+                missing.add(toUuid(id));
+            } else {
+                response.addPatients(PatientProtoMapper.toSummary(id.getMsb(), id.getLsb(), record.name(), record.email()));
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (com.pm.patientservice.model.Patient patient : patientService.getPatients(missing)) {
+                response.addPatients(PatientProtoMapper.toSummary(patient));
+            }
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void listPatients(ListPatientsRequest request, StreamObserver<Patient> responseObserver) {
+        LocalDate since = request.hasRegisteredSinceEpochDay()
+                ? LocalDate.ofEpochDay(request.getRegisteredSinceEpochDay()) : null;
+        stream(patientService.streamPatients(since), Long.MAX_VALUE, responseObserver);
+    }
+
+    @Override
+    public void searchPatients(SearchPatientsRequest request, StreamObserver<Patient> responseObserver) {
+        if (request.getQuery().isBlank()) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("query is required").asRuntimeException());
+            return;
+        }
+        long limit = request.getLimit() == 0 ? Long.MAX_VALUE : Integer.toUnsignedLong(request.getLimit());
+        stream(patientService.searchPatients(request.getQuery()), limit, responseObserver);
+    }
+
+    @Override
+    public StreamObserver<CreatePatientRequest> createPatients(
+            StreamObserver<CreatePatientsResponse> responseObserver) {
+        CreatePatientsResponse.Builder response = CreatePatientsResponse.newBuilder();
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(CreatePatientRequest request) {
+                response.addResults(create(request));
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                log.warn("Client aborted patient creation stream after {} patients", response.getResultsCount(), t);
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onNext(response.build());
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    private CreatePatientResult create(CreatePatientRequest request) {
+        PatientRequestDTO dto = PatientProtoMapper.toDTO(request.getPatient());
+        Set<ConstraintViolation<PatientRequestDTO>> violations =
+                validator.validate(dto, Default.class, CreatePatientValidationGroup.class);
+        if (!violations.isEmpty()) {
+            ErrorResponse.Builder error = ErrorResponse.newBuilder();
+            violations.forEach(v -> error.putErrors(v.getPropertyPath().toString(), v.getMessage()));
+            return CreatePatientResult.newBuilder().setError(error).build();
+        }
+        try {
+            PatientResponseDTO created = request.getIdempotencyKey().isEmpty()
+                    ? patientService.createPatient(dto)
+                    : patientService.createPatient(dto, request.getIdempotencyKey());
+            return CreatePatientResult.newBuilder().setPatient(PatientProtoMapper.toProto(created)).build();
+        } catch (EmailAlreadyExistsException e) {
+            return error("email", "Email already exists");
+        } catch (IdempotencyKeyReusedException e) {
+            return error("idempotency_key", "Idempotency key was already used for a different request");
+        } catch (RuntimeException e) {
+            // one failed patient must not abort the stream, the others were or will still be created
+            log.error("Creating patient {} failed", dto.getEmail(), e);
+            return error("message", "Patient could not be created");
+        }
+    }
+
+    private static CreatePatientResult error(String field, String message) {
+        return CreatePatientResult.newBuilder()
+                .setError(ErrorResponse.newBuilder().putErrors(field, message))
+                .build();
+    }
+
+    // Pulls the next page from the database only when the transport can take more messages
+    private static void stream(Iterator<com.pm.patientservice.model.Patient> patients, long limit,
+                               StreamObserver<Patient> responseObserver) {
+        ServerCallStreamObserver<Patient> serverObserver = (ServerCallStreamObserver<Patient>) responseObserver;
+        long[] sent = {0};
+        boolean[] done = {false};
+        serverObserver.setOnCancelHandler(() -> done[0] = true);
+        serverObserver.setOnReadyHandler(() -> {
+            if (done[0]) {
+                return;
+            }
+            try {
+                while (serverObserver.isReady() && sent[0] < limit && patients.hasNext()) {
+                    serverObserver.onNext(PatientProtoMapper.toProto(patients.next()));
+                    sent[0]++;
+                }
+                if (sent[0] >= limit || !patients.hasNext()) {
+                    done[0] = true;
+                    serverObserver.onCompleted();
+                }
+            } catch (RuntimeException e) {
+                done[0] = true;
+                log.error("Streaming patients failed after {} messages", sent[0], e);
+                serverObserver.onError(Status.INTERNAL.withDescription("Streaming patients failed").asRuntimeException());
+            }
+        });
+    }
+
+    private static UUID toUuid(PatientId id) {
+        return new UUID(id.getMsb(), id.getLsb());
+    }
+}
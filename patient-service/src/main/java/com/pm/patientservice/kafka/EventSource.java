@@ -0,0 +1,11 @@
+package com.pm.patientservice.kafka;
+
+/** Where patient events published to the {@code patient} topic come from. */
+public enum EventSource {
+    /** PatientService publishes events for the writes it performs. */
+    SERVICE,
+    /** Events are captured from the Postgres logical replication stream of the patient table. */
+    CDC,
+    /** Both of the above, consumers must tolerate duplicates. */
+    BOTH
+}
@@ -1,34 +1,44 @@
 package com.pm.patientservice.kafka;
 
+import com.pm.patientservice.mapper.PatientEventMapper;
 import com.pm.patientservice.model.Patient;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.UUID;
 
 @Service
 public class KafkaProducer {
 
-    private static final Logger log = LoggerFactory.getLogger(KafkaProducer.class);
-    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final PatientEventBuffer eventBuffer;
+    private final boolean enabled;
 
-    public KafkaProducer(KafkaTemplate<String, byte[]> kafkaTemplate) {
-        this.kafkaTemplate = kafkaTemplate;
+    public KafkaProducer(PatientEventBuffer eventBuffer,
+                         @Value("${patient.events.source:SERVICE}") EventSource eventSource) {
+        this.eventBuffer = eventBuffer;
+        // in CDC mode the replication stream publishes the events, the request path stays silent
+        this.enabled = eventSource != EventSource.CDC;
     }
 
     public void sendEvent(Patient patient) {
-        PatientEvent event = PatientEvent.newBuilder()
-                .setPatientId(String.valueOf(patient.getId()))
-                .setEmail(patient.getEmail())
-                .setName(patient.getName())
-                .setEventType("PATIENT_CREATED")
-                .build();
-
-        try {
-            kafkaTemplate.send("patient", event.toByteArray());
-        }catch (Exception e) {
-            log.error("Error in sending PatientCreated event {}", event);
+        publish(PatientEventMapper.toEvent(patient, PatientEventType.PATIENT_CREATED, Instant.now()));
+    }
+
+    public void sendUpdatedEvent(Patient patient, Collection<String> changedFields) {
+        publish(PatientEventMapper.toUpdatedEvent(patient, changedFields, Instant.now()));
+    }
+
+    public void sendDeletedEvent(UUID patientId) {
+        publish(PatientEventMapper.toDeletedEvent(patientId, Instant.now()));
+    }
+
+    private void publish(PatientEvent event) {
+        if (enabled) {
+            eventBuffer.publish(event);
         }
     }
 }
@@ -0,0 +1,10 @@
+package com.pm.patientservice.kafka;
+
+public enum OverflowPolicy {
+    /** Wait for free space up to the configured block timeout, then drop. */
+    BLOCK,
+    /** Drop the event and count it. */
+    DROP,
+    /** Append the event to a local spill file that is replayed once the buffer drains. */
+    SPILL
+}
@@ -0,0 +1,59 @@
+package com.pm.patientservice.kafka;
+
+import com.pm.patientservice.model.Patient;
+import jakarta.persistence.EntityManagerFactory;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+
+/**
+ * Keeps the second-level cache of this instance in step with writes made by the others. Records of the patient
+ * topic are keyed by patient id and that patient leaves the entity cache. Each instance consumes in its own
+ * group, so every instance sees every event; its own writes come back as well and cost one extra load. Reads
+ * that could put an older copy back right after the eviction run on a replica, and those never fill the cache
+ * ({@code ReplicaReadJpaDialect}).
+ */
+@Service
+public class PatientCacheInvalidationConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientCacheInvalidationConsumer.class);
+
+    private final Cache cache;
+
+    @Autowired
+    public PatientCacheInvalidationConsumer(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory.unwrap(SessionFactory.class).getCache());
+    }
+
+    public PatientCacheInvalidationConsumer(Cache cache) {
+        this.cache = cache;
+    }
+
+    @KafkaListener(topics = "patient", groupId = "patient-service-cache-${random.uuid}",
+            properties = "auto.offset.reset=latest")
+    public void consumeEvent(ConsumerRecord<String, byte[]> record) {
+        String patientId = record.key();
+        UUID id = parse(patientId);
+        if (id == null) {
+            cache.evictEntityData(Patient.class);
+        } else {
+            cache.evictEntityData(Patient.class, id);
+        }
+        log.debug("Patient {} changed, evicted it from the second-level cache", patientId);
+    }
+
+    private static UUID parse(String patientId) {
+        try {
+            return patientId == null ? null : UUID.fromString(patientId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package com.pm.patientservice.kafka;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import patient.events.PatientEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples request threads from the Kafka producer. Events are published into a lock-free
+ * ring buffer and a dedicated drainer thread hands them to the producer in batches, so a slow
+ * broker stalls the drainer instead of HTTP threads. When the ring is full the configured
+ * {@link OverflowPolicy} decides what happens to the event.
+ * <p>
+ * Sends go through the "kafka" circuit breaker and bulkhead (unacknowledged sends in flight). While the
+ * breaker is open or the bulkhead is full the drainer stops taking events, they stay in the ring and, once
+ * it is full, go to the overflow policy. A send that fails is retried, one whose acknowledgement fails is
+ * sent again ahead of every newer event.
+ * <p>
+ * Events keep their order per patient: once an event is spilled, every newer one goes to the spill file as
+ * well until the file has been replayed. The file is first renamed to {@code <spill-file>.replay}; a replay
+ * file left by a failed replay or a crash is replayed before anything else.
+ */
+@Component
+public class PatientEventBuffer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientEventBuffer.class);
+    static final String TOPIC = "patient";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final EventRingBuffer<PatientEvent> ring;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final long blockTimeoutNanos;
+    private final Path spillFile;
+    private final Path replayFile;
+    private final Object spillLock = new Object();
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    // drained but not yet sent, touched by the drainer thread only
+    private final List<PatientEvent> batch = new ArrayList<>();
+    private int batchPosition;
+    // order in which events were handed to the producer, drainer thread only
+    private long sequence;
+    // open replay file and the events of it handed to the producer, drainer thread only
+    private InputStream replayIn;
+    private int replayed;
+    // sends whose acknowledgement failed, by sequence
+    private final ConcurrentSkipListMap<Long, PatientEvent> unacknowledged = new ConcurrentSkipListMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Counter droppedCounter;
+    private final Counter spilledCounter;
+
+    private volatile boolean running;
+    private volatile boolean spillPending;
+    private Thread drainer;
+
+    @Autowired
+    public PatientEventBuffer(KafkaTemplate<String, byte[]> kafkaTemplate,
+                              MeterRegistry meterRegistry,
+                              CircuitBreakerRegistry circuitBreakerRegistry,
+                              BulkheadRegistry bulkheadRegistry,
+                              @Value("${patient.events.buffer.capacity:8192}") int capacity,
+                              @Value("${patient.events.buffer.batch-size:256}") int batchSize,
+                              @Value("${patient.events.buffer.overflow-policy:DROP}") OverflowPolicy overflowPolicy,
+                              @Value("${patient.events.buffer.block-timeout-ms:100}") long blockTimeoutMillis,
+                              @Value("${patient.events.buffer.spill-file:${java.io.tmpdir}/patient-events.spill}") Path spillFile) {
+        this(kafkaTemplate, meterRegistry, circuitBreakerRegistry.circuitBreaker("kafka"),
+                bulkheadRegistry.bulkhead("kafka"), capacity, batchSize, overflowPolicy, blockTimeoutMillis, spillFile);
+    }
+
+    public PatientEventBuffer(KafkaTemplate<String, byte[]> kafkaTemplate, MeterRegistry meterRegistry,
+                              int capacity, int batchSize, OverflowPolicy overflowPolicy, long blockTimeoutMillis,
+                              Path spillFile) {
+        this(kafkaTemplate, meterRegistry, CircuitBreaker.ofDefaults("kafka"), Bulkhead.ofDefaults("kafka"),
+                capacity, batchSize, overflowPolicy, blockTimeoutMillis, spillFile);
+    }
+
+    public PatientEventBuffer(KafkaTemplate<String, byte[]> kafkaTemplate, MeterRegistry meterRegistry,
+                              CircuitBreaker circuitBreaker, Bulkhead bulkhead,
+                              int capacity, int batchSize, OverflowPolicy overflowPolicy, long blockTimeoutMillis,
+                              Path spillFile) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.ring = new EventRingBuffer<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.batchSize = batchSize;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        this.spillFile = spillFile;
+        this.replayFile = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+        this.spillPending = Files.exists(spillFile) || Files.exists(replayFile);
+
+        Gauge.builder("patient.events.buffer.depth", ring, EventRingBuffer::size)
+                .description("Patient events waiting to be handed to the Kafka producer")
+                .register(meterRegistry);
+        Gauge.builder("patient.events.buffer.capacity", ring, EventRingBuffer::capacity)
+                .register(meterRegistry);
+        this.sentCounter = meterRegistry.counter("patient.events.sent");
+        this.failedCounter = meterRegistry.counter("patient.events.send.failures");
+        this.droppedCounter = meterRegistry.counter("patient.events.buffer.dropped");
+        this.spilledCounter = meterRegistry.counter("patient.events.buffer.spilled");
+    }
+
+    public void publish(PatientEvent event) {
+        if (spillPending) {
+            // older events of this patient may be on disk, this one has to go out after them
+            spill(event);
+            return;
+        }
+        if (ring.offer(event)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK -> publishBlocking(event);
+            case SPILL -> spill(event);
+            case DROP -> drop(event);
+        }
+    }
+
+    public int depth() {
+        return ring.size();
+    }
+
+    private void publishBlocking(PatientEvent event) {
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+            if (ring.offer(event)) {
+                return;
+            }
+        }
+        drop(event);
+    }
+
+    private void drop(PatientEvent event) {
+        droppedCounter.increment();
+        log.warn("Patient event buffer is full, dropping event for patient {}", event.getPatientId());
+    }
+
+    private void spill(PatientEvent event) {
+        synchronized (spillLock) {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(spillFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                event.writeDelimitedTo(out);
+                spillPending = true;
+                spilledCounter.increment();
+            } catch (IOException e) {
+                log.error("Could not spill patient event to {}", spillFile, e);
+                drop(event);
+            }
+        }
+    }
+
+    // Runs on the drainer thread only
+    private int drainOnce() {
+        if (!unacknowledged.isEmpty()) {
+            return resendUnacknowledged();
+        }
+        if (batchPosition == batch.size()) {
+            batch.clear();
+            batchPosition = 0;
+            if (ring.drainTo(batch, batchSize) == 0) {
+                if (spillPending && circuitBreaker.getState() == CircuitBreaker.State.CLOSED) {
+                    return replaySpill();
+                }
+                return 0;
+            }
+        }
+        int sent = 0;
+        while (batchPosition < batch.size() && send(batch.get(batchPosition))) {
+            batchPosition++;
+            sent++;
+        }
+        return sent;
+    }
+
+    // Sends after a failed one may still be in flight and fail as well. Once none is left the failed events go
+    // out again one at a time, oldest first, so a patient's later event cannot overtake an earlier one.
+    private int resendUnacknowledged() {
+        if (inFlight.get() > 0) {
+            return 0;
+        }
+        Map.Entry<Long, PatientEvent> oldest = unacknowledged.pollFirstEntry();
+        if (!send(oldest.getValue(), oldest.getKey())) {
+            unacknowledged.put(oldest.getKey(), oldest.getValue());
+            return 0;
+        }
+        return 1;
+    }
+
+    private int replaySpill() {
+        synchronized (spillLock) {
+            try {
+                if (!Files.exists(replayFile)) {
+                    if (!Files.exists(spillFile)) {
+                        spillPending = false;
+                        return 0;
+                    }
+                    // never over an existing replay file, it holds older events
+                    Files.move(spillFile, replayFile);
+                    replayed = 0;
+                }
+            } catch (IOException e) {
+                log.error("Could not rotate spill file {}", spillFile, e);
+                return 0;
+            }
+        }
+        int sent = 0;
+        try {
+            if (replayIn == null) {
+                replayIn = new BufferedInputStream(Files.newInputStream(replayFile));
+                for (int i = 0; i < replayed; i++) {
+                    PatientEvent.parseDelimitedFrom(replayIn);
+                }
+            }
+            PatientEvent event;
+            while ((event = PatientEvent.parseDelimitedFrom(replayIn)) != null) {
+                if (!send(event)) {
+                    // Kafka went away again, the next replay resumes at this event
+                    closeReplay();
+                    return sent;
+                }
+                replayed++;
+                sent++;
+            }
+            closeReplay();
+            Files.delete(replayFile);
+            replayed = 0;
+        } catch (InvalidProtocolBufferException e) {
+            closeReplay();
+            Path unreadable = replayFile.resolveSibling(replayFile.getFileName() + ".unreadable-"
+                    + System.currentTimeMillis());
+            log.error("Spilled patient events in {} are unreadable after {} events, moving them to {}",
+                    replayFile, replayed, unreadable, e);
+            try {
+                Files.move(replayFile, unreadable);
+                replayed = 0;
+            } catch (IOException moveFailed) {
+                log.error("Could not move {} aside", replayFile, moveFailed);
+            }
+        } catch (IOException e) {
+            closeReplay();
+            log.error("Could not replay spilled patient events from {}", replayFile, e);
+        }
+        return sent;
+    }
+
+    private void closeReplay() {
+        if (replayIn == null) {
+            return;
+        }
+        try {
+            replayIn.close();
+        } catch (IOException e) {
+            log.warn("Could not close {}", replayFile, e);
+        }
+        replayIn = null;
+    }
+
+    // Events still in memory at shutdown are older than everything on disk, they go in front of the replay file
+    private void spillAhead(List<PatientEvent> events) {
+        synchronized (spillLock) {
+            Path temporary = replayFile.resolveSibling(replayFile.getFileName() + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+                for (PatientEvent event : events) {
+                    event.writeDelimitedTo(out);
+                }
+                if (Files.exists(replayFile)) {
+                    try (InputStream in = new BufferedInputStream(Files.newInputStream(replayFile))) {
+                        PatientEvent event;
+                        for (int i = 0; (event = PatientEvent.parseDelimitedFrom(in)) != null; i++) {
+                            if (i >= replayed) {
+                                event.writeDelimitedTo(out);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Could not spill {} patient events to {} on shutdown", events.size(), replayFile, e);
+                return;
+            }
+            try {
+                Files.move(temporary, replayFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                replayed = 0;
+                spillPending = true;
+                spilledCounter.increment(events.size());
+            } catch (IOException e) {
+                log.error("Could not move {} to {}", temporary, replayFile, e);
+            }
+        }
+    }
+
+    // false when the event was not handed to the producer and has to be sent again later
+    private boolean send(PatientEvent event) {
+        // nothing newer may go out while a failed send waits to be resent
+        if (!unacknowledged.isEmpty()) {
+            return false;
+        }
+        if (send(event, sequence)) {
+            sequence++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean send(PatientEvent event, long sequence) {
+        if (!bulkhead.tryAcquirePermission()) {
+            return false;
+        }
+        if (!circuitBreaker.tryAcquirePermission()) {
+            bulkhead.onComplete();
+            return false;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<?> result;
+        inFlight.incrementAndGet();
+        try {
+            // keyed by patient id so all changes of one patient stay ordered in a single partition
+            result = kafkaTemplate.send(TOPIC, event.getPatientId(), event.toByteArray());
+        } catch (Exception e) {
+            inFlight.decrementAndGet();
+            bulkhead.onComplete();
+            circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+            failedCounter.increment();
+            log.error("Error in sending {} event {}", event.getEventType(), event, e);
+            return false;
+        }
+        result.whenComplete((ignored, e) -> {
+            long duration = System.nanoTime() - start;
+            if (e == null) {
+                circuitBreaker.onSuccess(duration, TimeUnit.NANOSECONDS);
+                sentCounter.increment();
+            } else {
+                // recorded before the permit is released, the drainer must not use it for a newer event
+                unacknowledged.put(sequence, event);
+                circuitBreaker.onError(duration, TimeUnit.NANOSECONDS, e);
+                failedCounter.increment();
+                log.error("Kafka did not acknowledge {} event for patient {}, sending it again",
+                        event.getEventType(), event.getPatientId(), e);
+            }
+            bulkhead.onComplete();
+            inFlight.decrementAndGet();
+        });
+        return true;
+    }
+
+    private void drainLoop() {
+        while (running) {
+            if (drainOnce() == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        while (drainOnce() > 0) {
+            // flush whatever was published before shutdown
+        }
+        closeReplay();
+        List<PatientEvent> unsent = new ArrayList<>(unacknowledged.values());
+        unsent.addAll(batch.subList(batchPosition, batch.size()));
+        ring.drainTo(unsent, Integer.MAX_VALUE);
+        if (unsent.isEmpty()) {
+            return;
+        }
+        if (overflowPolicy == OverflowPolicy.SPILL || spillPending) {
+            spillAhead(unsent);
+        } else {
+            log.warn("Kafka unavailable on shutdown, {} patient events were not sent", unsent.size());
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        drainer = new Thread(this::drainLoop, "patient-event-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (drainer != null) {
+            try {
+                drainer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,84 @@
+package com.pm.patientservice.kafka;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pm.patientservice.lookup.PatientLookup;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult.ListOffsetsResultInfo;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Service;
+import patient.events.PatientEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Applies the writes of the other instances to the lookup store of this one. Each instance consumes in its own
+ * group; its own writes come back as well and leave the store unchanged. When the store was mapped from a snapshot
+ * the listener starts at the positions the snapshot was taken at, provided the topic still has those events.
+ */
+@Service
+public class PatientLookupConsumer implements ConsumerSeekAware {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientLookupConsumer.class);
+    private static final String TOPIC = "patient";
+
+    private final PatientLookup patientLookup;
+    private final KafkaAdmin kafkaAdmin;
+
+    public PatientLookupConsumer(PatientLookup patientLookup, KafkaAdmin kafkaAdmin) {
+        this.patientLookup = patientLookup;
+        this.kafkaAdmin = kafkaAdmin;
+    }
+
+    @KafkaListener(topics = TOPIC, groupId = "patient-service-lookup-${random.uuid}",
+            properties = "auto.offset.reset=latest")
+    public void consumeEvent(ConsumerRecord<String, byte[]> record) {
+        try {
+            patientLookup.apply(PatientEvent.parseFrom(record.value()), record.partition(), record.offset());
+        } catch (InvalidProtocolBufferException e) {
+            log.error("Skipping unreadable patient event for {}", record.key(), e);
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        Map<Integer, Long> positions = new HashMap<>();
+        assignments.forEach((partition, position) -> positions.put(partition.partition(), position));
+        Map<Integer, Long> resume = patientLookup.resumePositions();
+        boolean resumable = !resume.isEmpty()
+                && resume.keySet().equals(positions.keySet())
+                && resume.entrySet().stream().allMatch(e -> e.getValue() <= positions.get(e.getKey()))
+                && stillInTopic(resume);
+        if (resumable) {
+            resume.forEach((partition, offset) -> callback.seek(TOPIC, partition, offset));
+        }
+        patientLookup.positioned(resumable ? resume : positions, resumable);
+    }
+
+    // Retention may have deleted the first events to replay, then the snapshot is of no use
+    private boolean stillInTopic(Map<Integer, Long> offsets) {
+        Map<TopicPartition, OffsetSpec> earliest = new HashMap<>();
+        offsets.keySet().forEach(partition -> earliest.put(new TopicPartition(TOPIC, partition), OffsetSpec.earliest()));
+        try (AdminClient admin = AdminClient.create(kafkaAdmin.getConfigurationProperties())) {
+            Map<TopicPartition, ListOffsetsResultInfo> first = admin.listOffsets(earliest).all().get(10, TimeUnit.SECONDS);
+            return first.entrySet().stream()
+                    .allMatch(e -> e.getValue().offset() <= offsets.get(e.getKey().partition()));
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Could not read the earliest offsets of the patient topic", e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
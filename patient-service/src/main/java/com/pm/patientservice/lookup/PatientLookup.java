@@ -0,0 +1,366 @@
+package com.pm.patientservice.lookup;
+
+import com.pm.patientservice.lookup.PatientRecordStore.PatientRecord;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.repository.PatientRepository;
+import com.pm.patientservice.shard.PatientShards;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name and email of every patient for the enrichment lookups of the gRPC LookupPatients call, held off the heap in
+ * a {@link PatientRecordStore}. The table is loaded in the background at startup; after that the store is kept
+ * current by this instance's writes (PatientService) and the events of the other instances on the patient topic
+ * (PatientLookupConsumer). An id the store does not know yet is looked up in the database by the caller.
+ * <p>
+ * With {@code patient.lookup.snapshot.file} set, the store is also written to that file periodically and on
+ * shutdown, together with the position in each partition of the patient topic up to which it had applied the
+ * events. The next start maps the file instead of loading the table, and the listener replays the topic from those
+ * positions. The table is loaded as before when there is no snapshot, the topic no longer has every event since,
+ * or the database is older than the snapshot.
+ */
+@Component
+public class PatientLookup implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientLookup.class);
+    private static final int LOAD_PAGE = 1000;
+
+    private final PatientRepository patientRepository;
+    private final PatientShards shards;
+    private final boolean enabled;
+    private final int expectedPatients;
+    private final int chunkSize;
+    private final Path snapshotFile;
+    private final Duration positionTimeout;
+    private final Object loadLock = new Object();
+    private final CountDownLatch positioned = new CountDownLatch(1);
+    // per partition of the patient topic, the offset of the first event the store has not applied
+    private final Map<Integer, Long> topicPositions = new ConcurrentHashMap<>();
+
+    private volatile PatientRecordStore store;
+    // ids written while the load runs, the load must not put its older copy over them
+    private Set<UUID> writtenDuringLoad = new HashSet<>();
+    // mapped at start, until the listener confirms the topic can be replayed from its positions
+    private PatientLookupSnapshot snapshot;
+    private boolean loadStarted;
+    private volatile boolean serving = true;
+    private volatile boolean loaded;
+    // the store has every event before topicPositions, only then a snapshot of it can resume from there
+    private volatile boolean topicConsistent;
+    private volatile boolean running;
+    private Thread loader;
+
+    public PatientLookup(PatientRepository patientRepository, PatientShards shards, MeterRegistry meterRegistry,
+                         @Value("${patient.lookup.enabled:true}") boolean enabled,
+                         @Value("${patient.lookup.expected-patients:100000}") int expectedPatients,
+                         @Value("${patient.lookup.chunk-size:1MB}") DataSize chunkSize,
+                         @Value("${patient.lookup.snapshot.file:}") String snapshotFile,
+                         @Value("${patient.lookup.snapshot.position-timeout:30s}") Duration positionTimeout) {
+        this.patientRepository = patientRepository;
+        this.shards = shards;
+        this.enabled = enabled;
+        this.expectedPatients = enabled ? expectedPatients : 0;
+        this.chunkSize = Math.toIntExact(chunkSize.toBytes());
+        this.snapshotFile = snapshotFile.isBlank() ? null : Path.of(snapshotFile);
+        this.positionTimeout = positionTimeout;
+        this.store = new PatientRecordStore(this.expectedPatients, this.chunkSize);
+
+        Gauge.builder("patient.lookup.size", this, lookup -> lookup.store.size())
+                .description("Patients in the off-heap lookup store")
+                .register(meterRegistry);
+        Gauge.builder("patient.lookup.memory", this, lookup -> lookup.store.offHeapBytes())
+                .description("Off-heap bytes held by the lookup store")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public PatientRecord get(long msb, long lsb) {
+        return serving ? store.get(msb, lsb) : null;
+    }
+
+    public void saved(Patient patient) {
+        put(patient.getId(), patient.getName(), patient.getEmail());
+    }
+
+    public void deleted(UUID id) {
+        if (!enabled) {
+            return;
+        }
+        if (loaded) {
+            store.remove(id);
+            return;
+        }
+        synchronized (loadLock) {
+            if (writtenDuringLoad != null) {
+                writtenDuringLoad.add(id);
+            }
+            store.remove(id);
+        }
+    }
+
+    // Events carry the whole patient on create and update
+    public void apply(PatientEvent event) {
+        UUID id;
+        try {
+            id = UUID.fromString(event.getPatientId());
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring patient event with id '{}'", event.getPatientId());
+            return;
+        }
+        if (typeOf(event) == PatientEventType.PATIENT_DELETED) {
+            deleted(id);
+        } else {
+            put(id, event.getName(), event.getEmail());
+        }
+    }
+
+    // The position moves only once the event is in the store, a snapshot never claims an event it lacks
+    public void apply(PatientEvent event, int partition, long offset) {
+        apply(event);
+        topicPositions.merge(partition, offset + 1, Math::max);
+    }
+
+    /**
+     * Positions in the patient topic the listener should start from, those of the mapped snapshot; empty without one.
+     */
+    public Map<Integer, Long> resumePositions() {
+        synchronized (loadLock) {
+            return snapshot == null ? Map.of() : snapshot.topicPositions();
+        }
+    }
+
+    /**
+     * Called by the listener once it has its partitions: {@code resumed} when it seeked to
+     * {@link #resumePositions()}, otherwise {@code positions} are where it starts reading.
+     */
+    public void positioned(Map<Integer, Long> positions, boolean resumed) {
+        topicPositions.putAll(positions);
+        synchronized (loadLock) {
+            if (resumed && snapshot != null) {
+                log.info("Resuming the lookup store from the snapshot of {} with {} patients, replaying the patient "
+                        + "topic from {}", snapshot.takenAt(), store.size(), positions);
+                snapshot = null;
+                writtenDuringLoad = null;
+                serving = true;
+                loaded = true;
+                topicConsistent = true;
+            } else if (!loadStarted && !loaded) {
+                // the table is read after this, with every write whose event comes before these positions
+                topicConsistent = true;
+            }
+        }
+        positioned.countDown();
+    }
+
+    private void put(UUID id, String name, String email) {
+        if (!enabled) {
+            return;
+        }
+        if (loaded) {
+            store.put(id, name, email);
+            return;
+        }
+        synchronized (loadLock) {
+            if (writtenDuringLoad != null) {
+                writtenDuringLoad.add(id);
+            }
+            store.put(id, name, email);
+        }
+    }
+
+    private static PatientEventType typeOf(PatientEvent event) {
+        if (event.getType() != PatientEventType.PATIENT_EVENT_TYPE_UNSPECIFIED
+                && event.getType() != PatientEventType.UNRECOGNIZED) {
+            return event.getType();
+        }
+        // schema version 1 only had the name
+        return "PATIENT_DELETED".equals(event.getEventType())
+                ? PatientEventType.PATIENT_DELETED : PatientEventType.PATIENT_UPDATED;
+    }
+
+    private long tableVersion() {
+        return shards.onEachShard(patientRepository::findTableVersion).stream().mapToLong(Long::longValue).sum();
+    }
+
+    private void mapSnapshot() {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        try {
+            PatientLookupSnapshot mapped = PatientLookupSnapshot.read(snapshotFile);
+            long tableVersion = tableVersion();
+            if (tableVersion < mapped.tableVersion()) {
+                log.warn("Ignoring lookup snapshot {}, the patient table is at version {} and the snapshot at {}",
+                        snapshotFile, tableVersion, mapped.tableVersion());
+                return;
+            }
+            synchronized (loadLock) {
+                snapshot = mapped;
+                store = mapped.store();
+                serving = false;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read lookup snapshot {}, loading the table instead", snapshotFile, e);
+        }
+    }
+
+    private void warmUp() {
+        if (snapshotFile != null) {
+            try {
+                if (!positioned.await(positionTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    log.warn("No partitions of the patient topic assigned within {}, loading the lookup store "
+                            + "from the table", positionTimeout);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        synchronized (loadLock) {
+            if (loaded || !running) {
+                return;
+            }
+            if (snapshot != null) {
+                log.info("Dropping the lookup snapshot of {}, the patient topic cannot be replayed from it",
+                        snapshot.takenAt());
+                // keep what was written meanwhile, the load skips those ids
+                PatientRecordStore fresh = new PatientRecordStore(expectedPatients, chunkSize);
+                for (UUID id : writtenDuringLoad) {
+                    PatientRecord record = store.get(id);
+                    if (record != null) {
+                        fresh.put(id, record.name(), record.email());
+                    }
+                }
+                snapshot = null;
+                store = fresh;
+                serving = true;
+            }
+            loadStarted = true;
+        }
+        load();
+    }
+
+    private void load() {
+        long started = System.nanoTime();
+        try {
+            Iterator<Patient> patients = shards.scroll(position ->
+                    patientRepository.findAllBy(position, Limit.of(LOAD_PAGE), Sort.by("id")));
+            List<Patient> page = new ArrayList<>(LOAD_PAGE);
+            while (running && patients.hasNext()) {
+                page.add(patients.next());
+                if (page.size() == LOAD_PAGE) {
+                    putLoaded(page);
+                }
+            }
+            putLoaded(page);
+            if (!running) {
+                return;
+            }
+            synchronized (loadLock) {
+                loaded = true;
+                writtenDuringLoad = null;
+            }
+            log.info("Loaded {} patients into the lookup store in {} ms, {} bytes off-heap", store.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), store.offHeapBytes());
+        } catch (RuntimeException e) {
+            synchronized (loadLock) {
+                writtenDuringLoad = null;
+            }
+            log.error("Loading the patient lookup store failed, lookups of the missing ids go to the database", e);
+        }
+    }
+
+    private void putLoaded(List<Patient> page) {
+        synchronized (loadLock) {
+            for (Patient patient : page) {
+                if (!writtenDuringLoad.contains(patient.getId())) {
+                    store.put(patient.getId(), patient.getName(), patient.getEmail());
+                }
+            }
+        }
+        page.clear();
+    }
+
+    @Scheduled(fixedDelayString = "${patient.lookup.snapshot.interval-ms:300000}",
+            initialDelayString = "${patient.lookup.snapshot.interval-ms:300000}")
+    public synchronized void writeSnapshot() {
+        if (snapshotFile == null || !loaded || !topicConsistent) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            // taken before the image, events applied meanwhile are replayed once more on resume
+            Map<Integer, Long> positions = Map.copyOf(topicPositions);
+            PatientLookupSnapshot.write(snapshotFile, tableVersion(), positions, store);
+            log.info("Wrote lookup snapshot of {} patients at {} to {} in {} ms", store.size(), positions,
+                    snapshotFile, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException | RuntimeException e) {
+            log.error("Writing lookup snapshot {} failed", snapshotFile, e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (enabled) {
+            if (snapshotFile != null) {
+                mapSnapshot();
+            }
+            loader = new Thread(this::warmUp, "patient-lookup-loader");
+            loader.setDaemon(true);
+            loader.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        positioned.countDown();
+        if (loader != null) {
+            try {
+                loader.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // the listener has stopped by now, the next start replays as little as possible
+        writeSnapshot();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Ahead of the Kafka listeners, the snapshot has to be mapped when the lookup listener gets its partitions
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 200;
+    }
+}
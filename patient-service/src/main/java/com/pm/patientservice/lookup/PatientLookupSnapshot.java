@@ -0,0 +1,90 @@
+package com.pm.patientservice.lookup;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Snapshot file of the lookup store: when it was taken, the patient table version at that time, the position in
+ * every partition of the patient topic up to which the store had applied the events, then the store image
+ * ({@link PatientRecordStore#writeTo}). It is written to a temporary file that is then moved over the old one, so
+ * a crash never leaves half a snapshot behind.
+ */
+public record PatientLookupSnapshot(Instant takenAt, long tableVersion, Map<Integer, Long> topicPositions,
+                                    PatientRecordStore store) {
+
+    private static final int MAGIC = 0x504c4b53;
+    private static final int FORMAT = 1;
+    private static final int FIXED_HEADER = 3 * Integer.BYTES + 2 * Long.BYTES;
+    private static final int POSITION = Integer.BYTES + Long.BYTES;
+
+    public static void write(Path file, long tableVersion, Map<Integer, Long> topicPositions,
+                             PatientRecordStore store) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(
+                PatientRecordStore.align(FIXED_HEADER + topicPositions.size() * POSITION));
+        header.putInt(MAGIC)
+                .putInt(FORMAT)
+                .putLong(System.currentTimeMillis())
+                .putLong(tableVersion)
+                .putInt(topicPositions.size());
+        topicPositions.forEach((partition, offset) -> header.putInt(partition).putLong(offset));
+        header.clear();
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            store.writeTo(out);
+            out.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // The store stays mapped after the file is closed. Opened for writing only because private mappings need it
+    public static PatientLookupSnapshot read(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER);
+            readFully(in, header, 0);
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT) {
+                throw new IOException(file + " is not a lookup snapshot of this version");
+            }
+            Instant takenAt = Instant.ofEpochMilli(header.getLong());
+            long tableVersion = header.getLong();
+            int partitions = header.getInt();
+            if (partitions < 0 || partitions > 1 << 16) {
+                throw new IOException(file + " is not a lookup snapshot of this version");
+            }
+            ByteBuffer positions = ByteBuffer.allocate(partitions * POSITION);
+            readFully(in, positions, FIXED_HEADER);
+            Map<Integer, Long> topicPositions = new HashMap<>();
+            for (int i = 0; i < partitions; i++) {
+                topicPositions.put(positions.getInt(), positions.getLong());
+            }
+            PatientRecordStore store = PatientRecordStore.map(in,
+                    PatientRecordStore.align(FIXED_HEADER + partitions * POSITION));
+            return new PatientLookupSnapshot(takenAt, tableVersion, Map.copyOf(topicPositions), store);
+        }
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("lookup snapshot is truncated");
+            }
+        }
+        buffer.flip();
+    }
+}
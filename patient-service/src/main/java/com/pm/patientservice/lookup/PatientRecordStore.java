@@ -0,0 +1,461 @@
+package com.pm.patientservice.lookup;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Name and email of patients by id, held outside the Java heap so that millions of entries cost the GC nothing.
+ * <p>
+ * Records {@code [name length u16][email length u16][name][email]}, UTF-8, are appended to direct buffer chunks and
+ * never changed in place: an update appends a new record and points the id at it. The index is an open-addressing
+ * table with linear probing over 32-byte slots {@code [version][msb][lsb][record]}; a removed id leaves a tombstone.
+ * <p>
+ * One writer at a time, readers take no lock. Every slot is a seqlock: the writer makes its version odd while it
+ * changes the slot and even again afterwards, a reader retries when it saw an odd version or the version moved
+ * while it read. Growing the index and dropping replaced records both copy the live records into a new generation
+ * that is swapped in at once; readers still in the old one keep its buffers reachable until they are done.
+ * <p>
+ * {@link #writeTo} saves a copy of the index and the record chunks as they are; {@link #map} maps such an image back
+ * copy-on-write, so a store of millions of patients is usable without reading the file first.
+ */
+public class PatientRecordStore {
+
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int SLOT = 32;
+    private static final int VERSION = 0;
+    private static final int MSB = 8;
+    private static final int LSB = 16;
+    private static final int REF = 24;
+    private static final long REMOVED = -1;
+
+    private static final int HEADER = 4;
+    private static final int MAX_FIELD_BYTES = 0xFFFF;
+    private static final int MIN_CAPACITY = 16;
+    // a single index buffer holds at most 2^31 bytes
+    private static final int MAX_CAPACITY = 1 << 25;
+    // image header: byte order, capacity, chunk size, size, used slots, chunk count, live and garbage bytes
+    private static final int IMAGE_HEADER = 6 * Integer.BYTES + 2 * Long.BYTES;
+
+    public record PatientRecord(String name, String email) {
+    }
+
+    private final int chunkSize;
+    private volatile Generation generation;
+    private volatile int size;
+    // written by the writer only
+    private int usedSlots;
+    private long liveBytes;
+    private long garbageBytes;
+
+    public PatientRecordStore(int expectedPatients, int chunkSize) {
+        if (chunkSize < HEADER) {
+            throw new IllegalArgumentException("chunk size must be at least " + HEADER + " bytes");
+        }
+        this.chunkSize = chunkSize;
+        this.generation = new Generation(capacityFor(expectedPatients), chunkSize);
+    }
+
+    private PatientRecordStore(Generation generation, int size, int usedSlots, long liveBytes, long garbageBytes) {
+        this.chunkSize = generation.chunkSize;
+        this.generation = generation;
+        this.size = size;
+        this.usedSlots = usedSlots;
+        this.liveBytes = liveBytes;
+        this.garbageBytes = garbageBytes;
+    }
+
+    public PatientRecord get(UUID id) {
+        return get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    public PatientRecord get(long msb, long lsb) {
+        Generation g = generation;
+        ByteBuffer index = g.index;
+        int slot = hash(msb, lsb) & g.mask;
+        while (true) {
+            int base = slot * SLOT;
+            long version;
+            long slotMsb;
+            long slotLsb;
+            long ref;
+            while (true) {
+                version = (long) LONG.getAcquire(index, base + VERSION);
+                if ((version & 1) == 0) {
+                    slotMsb = (long) LONG.getOpaque(index, base + MSB);
+                    slotLsb = (long) LONG.getOpaque(index, base + LSB);
+                    ref = (long) LONG.getOpaque(index, base + REF);
+                    VarHandle.loadLoadFence();
+                    if ((long) LONG.getOpaque(index, base + VERSION) == version) {
+                        break;
+                    }
+                }
+                Thread.onSpinWait();
+            }
+            if (version == 0) {
+                return null;
+            }
+            if (ref != REMOVED && slotMsb == msb && slotLsb == lsb) {
+                return read(g, ref);
+            }
+            slot = (slot + 1) & g.mask;
+        }
+    }
+
+    public synchronized void put(UUID id, String name, String email) {
+        byte[] nameBytes = encode(name);
+        byte[] emailBytes = encode(email);
+        int length = HEADER + nameBytes.length + emailBytes.length;
+        if (length > chunkSize) {
+            throw new IllegalArgumentException("record of " + length + " bytes does not fit a chunk of " + chunkSize);
+        }
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        Generation g = generation;
+        int slot = probe(g, msb, lsb);
+        if (slot >= 0) {
+            long ref = slotRef(g, slot);
+            if (sameRecord(g, ref, nameBytes, emailBytes)) {
+                return;
+            }
+            garbageBytes += recordLength(g, ref);
+            liveBytes -= recordLength(g, ref);
+        } else if (usedSlots + 1 > (g.mask + 1) / 2) {
+            if (size + 1 > MAX_CAPACITY / 2) {
+                throw new IllegalStateException("patient record store is full at " + size + " patients");
+            }
+            // room for twice the ids, so the next resize is as many inserts away
+            g = rebuild(capacityFor(Math.min(2 * (size + 1), MAX_CAPACITY / 2)));
+            slot = probe(g, msb, lsb);
+        }
+        long ref = append(g, nameBytes, emailBytes);
+        liveBytes += length;
+        if (slot >= 0) {
+            writeSlot(g.index, slot, msb, lsb, ref);
+        } else {
+            int free = -slot - 1;
+            if (slotVersion(g, free) == 0) {
+                usedSlots++;
+            }
+            writeSlot(g.index, free, msb, lsb, ref);
+            size++;
+        }
+        compactIfWasteful();
+    }
+
+    public synchronized boolean remove(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        Generation g = generation;
+        int slot = probe(g, msb, lsb);
+        if (slot < 0) {
+            return false;
+        }
+        long ref = slotRef(g, slot);
+        garbageBytes += recordLength(g, ref);
+        liveBytes -= recordLength(g, ref);
+        writeSlot(g.index, slot, msb, lsb, REMOVED);
+        size--;
+        compactIfWasteful();
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long offHeapBytes() {
+        Generation g = generation;
+        return (long) g.index.capacity() + (long) g.chunks.length * chunkSize;
+    }
+
+    /**
+     * Writes an image of the store at the position of {@code out}, which has to be a multiple of 8. Writers only wait
+     * while the index is copied, readers do not wait at all.
+     */
+    public void writeTo(FileChannel out) throws IOException {
+        Image image = image();
+        writeFully(out, image.header());
+        writeFully(out, image.index());
+        for (ByteBuffer chunk : image.chunks()) {
+            writeFully(out, chunk);
+        }
+    }
+
+    private record Image(ByteBuffer header, ByteBuffer index, ByteBuffer[] chunks) {
+    }
+
+    // The index changes in place and is copied. Appended records never change and a rebuild leaves the old
+    // buffers alone, so the chunks are written from the store's own buffers, up to where they ended at the copy
+    private synchronized Image image() {
+        Generation g = generation;
+        ByteBuffer[] chunks = g.chunks;
+        ByteBuffer header = ByteBuffer.allocate(align(IMAGE_HEADER + chunks.length * Integer.BYTES));
+        header.putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0)
+                .putInt(g.mask + 1)
+                .putInt(chunkSize)
+                .putInt(size)
+                .putInt(usedSlots)
+                .putInt(chunks.length)
+                .putLong(liveBytes)
+                .putLong(garbageBytes);
+        ByteBuffer[] written = new ByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            int length = i == chunks.length - 1 ? Math.min(g.chunkPosition, chunks[i].capacity()) : chunks[i].capacity();
+            header.putInt(length);
+            written[i] = chunks[i].slice(0, length);
+        }
+        int indexBytes = (g.mask + 1) * SLOT;
+        ByteBuffer index = ByteBuffer.allocateDirect(indexBytes).put(0, g.index, 0, indexBytes);
+        return new Image(header.clear(), index, written);
+    }
+
+    /**
+     * Maps an image written by {@link #writeTo} at {@code position} of {@code in}, which has to be open for reading
+     * and writing. Changes go to private copies of the touched pages, never to the file; the mapping lives until the
+     * store has moved on to a new generation.
+     */
+    public static PatientRecordStore map(FileChannel in, long position) throws IOException {
+        ByteBuffer header = readFully(in, position, IMAGE_HEADER);
+        boolean littleEndian = header.getInt() == 1;
+        int capacity = header.getInt();
+        int chunkSize = header.getInt();
+        int size = header.getInt();
+        int usedSlots = header.getInt();
+        int chunkCount = header.getInt();
+        long liveBytes = header.getLong();
+        long garbageBytes = header.getLong();
+        if (littleEndian != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN)) {
+            throw new IOException("image was written on a machine of the other byte order");
+        }
+        if (Integer.bitCount(capacity) != 1 || capacity < MIN_CAPACITY || capacity > MAX_CAPACITY
+                || chunkSize < HEADER || size < 0 || usedSlots < size || usedSlots > capacity / 2 || chunkCount < 0) {
+            throw new IOException("not a patient record store image");
+        }
+        ByteBuffer lengths = readFully(in, position + IMAGE_HEADER, chunkCount * Integer.BYTES);
+        long indexPosition = position + align(IMAGE_HEADER + chunkCount * Integer.BYTES);
+        long end = indexPosition + (long) capacity * SLOT;
+        for (int i = 0; i < chunkCount; i++) {
+            end += lengths.getInt(i * Integer.BYTES);
+        }
+        if (end > in.size()) {
+            throw new EOFException("image is truncated");
+        }
+
+        ByteBuffer index = in.map(FileChannel.MapMode.PRIVATE, indexPosition, (long) capacity * SLOT);
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+        long chunkPosition = indexPosition + (long) capacity * SLOT;
+        for (int i = 0; i < chunkCount; i++) {
+            int length = lengths.getInt(i * Integer.BYTES);
+            chunks[i] = in.map(FileChannel.MapMode.PRIVATE, chunkPosition, length);
+            chunkPosition += length;
+        }
+        return new PatientRecordStore(new Generation(index, capacity, chunks, chunkSize),
+                size, usedSlots, liveBytes, garbageBytes);
+    }
+
+    private static ByteBuffer readFully(FileChannel in, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("image is truncated");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    static int align(int bytes) {
+        return (bytes + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    // Slot of the live id, or -(slot + 1) for the slot it would be inserted into: the first tombstone on its
+    // probe path, else the empty slot ending it. Writer only
+    private static int probe(Generation g, long msb, long lsb) {
+        int tombstone = -1;
+        int slot = hash(msb, lsb) & g.mask;
+        while (true) {
+            if (slotVersion(g, slot) == 0) {
+                return -(tombstone >= 0 ? tombstone : slot) - 1;
+            }
+            int base = slot * SLOT;
+            long ref = (long) LONG.get(g.index, base + REF);
+            if (ref == REMOVED) {
+                if (tombstone < 0) {
+                    tombstone = slot;
+                }
+            } else if ((long) LONG.get(g.index, base + MSB) == msb && (long) LONG.get(g.index, base + LSB) == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & g.mask;
+        }
+    }
+
+    private static void writeSlot(ByteBuffer index, int slot, long msb, long lsb, long ref) {
+        int base = slot * SLOT;
+        long version = (long) LONG.get(index, base + VERSION);
+        LONG.setOpaque(index, base + VERSION, version + 1);
+        VarHandle.storeStoreFence();
+        LONG.setOpaque(index, base + MSB, msb);
+        LONG.setOpaque(index, base + LSB, lsb);
+        LONG.setOpaque(index, base + REF, ref);
+        LONG.setRelease(index, base + VERSION, version + 2);
+    }
+
+    private static long slotVersion(Generation g, int slot) {
+        return (long) LONG.get(g.index, slot * SLOT + VERSION);
+    }
+
+    private static long slotRef(Generation g, int slot) {
+        return (long) LONG.get(g.index, slot * SLOT + REF);
+    }
+
+    // A record never spans two chunks; refs are chunk number << 32 | offset
+    private long append(Generation g, byte[] name, byte[] email) {
+        int length = HEADER + name.length + email.length;
+        ByteBuffer chunk = g.writableChunk(length);
+        int offset = g.chunkPosition;
+        chunk.putShort(offset, (short) name.length);
+        chunk.putShort(offset + 2, (short) email.length);
+        chunk.put(offset + HEADER, name);
+        chunk.put(offset + HEADER + name.length, email);
+        g.chunkPosition += length;
+        return (long) (g.chunks.length - 1) << 32 | offset;
+    }
+
+    private static PatientRecord read(Generation g, long ref) {
+        ByteBuffer chunk = g.chunks[(int) (ref >>> 32)];
+        int offset = (int) ref;
+        int nameLength = Short.toUnsignedInt(chunk.getShort(offset));
+        int emailLength = Short.toUnsignedInt(chunk.getShort(offset + 2));
+        byte[] bytes = new byte[nameLength + emailLength];
+        chunk.get(offset + HEADER, bytes);
+        return new PatientRecord(new String(bytes, 0, nameLength, StandardCharsets.UTF_8),
+                new String(bytes, nameLength, emailLength, StandardCharsets.UTF_8));
+    }
+
+    private static int recordLength(Generation g, long ref) {
+        ByteBuffer chunk = g.chunks[(int) (ref >>> 32)];
+        int offset = (int) ref;
+        return HEADER + Short.toUnsignedInt(chunk.getShort(offset)) + Short.toUnsignedInt(chunk.getShort(offset + 2));
+    }
+
+    private static boolean sameRecord(Generation g, long ref, byte[] name, byte[] email) {
+        ByteBuffer chunk = g.chunks[(int) (ref >>> 32)];
+        int offset = (int) ref;
+        if (Short.toUnsignedInt(chunk.getShort(offset)) != name.length
+                || Short.toUnsignedInt(chunk.getShort(offset + 2)) != email.length) {
+            return false;
+        }
+        return chunk.slice(offset + HEADER, name.length).equals(ByteBuffer.wrap(name))
+                && chunk.slice(offset + HEADER + name.length, email.length).equals(ByteBuffer.wrap(email));
+    }
+
+    // Replaced and removed records stay in their chunks until they outweigh the live ones
+    private void compactIfWasteful() {
+        if (garbageBytes > chunkSize && garbageBytes > liveBytes) {
+            rebuild(generation.mask + 1);
+        }
+    }
+
+    private Generation rebuild(int capacity) {
+        Generation old = generation;
+        Generation fresh = new Generation(capacity, chunkSize);
+        long bytes = 0;
+        for (int slot = 0; slot <= old.mask; slot++) {
+            long ref = slotRef(old, slot);
+            if (slotVersion(old, slot) == 0 || ref == REMOVED) {
+                continue;
+            }
+            int base = slot * SLOT;
+            long msb = (long) LONG.get(old.index, base + MSB);
+            long lsb = (long) LONG.get(old.index, base + LSB);
+            int length = recordLength(old, ref);
+            ByteBuffer chunk = fresh.writableChunk(length);
+            int offset = fresh.chunkPosition;
+            chunk.put(offset, old.chunks[(int) (ref >>> 32)], (int) ref, length);
+            fresh.chunkPosition += length;
+            writeSlot(fresh.index, -probe(fresh, msb, lsb) - 1, msb, lsb, (long) (fresh.chunks.length - 1) << 32 | offset);
+            bytes += length;
+        }
+        usedSlots = size;
+        liveBytes = bytes;
+        garbageBytes = 0;
+        generation = fresh;
+        return fresh;
+    }
+
+    // Slots for n ids at a load factor of at most a half
+    private static int capacityFor(int n) {
+        long wanted = Math.max(MIN_CAPACITY, Math.min(2L * n, MAX_CAPACITY));
+        return Integer.highestOneBit((int) wanted - 1) << 1;
+    }
+
+    private static byte[] encode(String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_FIELD_BYTES) {
+            throw new IllegalArgumentException("field of " + bytes.length + " bytes is longer than " + MAX_FIELD_BYTES);
+        }
+        return bytes;
+    }
+
+    static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static final class Generation {
+
+        final ByteBuffer index;
+        final int mask;
+        // replaced by a longer copy before a record in the new chunk is published
+        volatile ByteBuffer[] chunks = new ByteBuffer[0];
+        final int chunkSize;
+        int chunkPosition;
+
+        Generation(int capacity, int chunkSize) {
+            // the atomic access modes of the view VarHandle need 8-byte aligned longs
+            this.index = ByteBuffer.allocateDirect(capacity * SLOT + Long.BYTES - 1).alignedSlice(Long.BYTES);
+            this.mask = capacity - 1;
+            this.chunkSize = chunkSize;
+            this.chunkPosition = chunkSize;
+        }
+
+        // the chunks of a mapped image are only as long as their records, new records go to a new chunk
+        Generation(ByteBuffer index, int capacity, ByteBuffer[] chunks, int chunkSize) {
+            this.index = index;
+            this.mask = capacity - 1;
+            this.chunks = chunks;
+            this.chunkSize = chunkSize;
+            this.chunkPosition = chunkSize;
+        }
+
+        ByteBuffer writableChunk(int length) {
+            if (chunkPosition + length > chunkSize) {
+                ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[chunks.length] = ByteBuffer.allocateDirect(chunkSize);
+                chunks = grown;
+                chunkPosition = 0;
+            }
+            return chunks[chunks.length - 1];
+        }
+    }
+}
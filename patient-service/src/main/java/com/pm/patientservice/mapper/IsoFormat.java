@@ -0,0 +1,96 @@
+package com.pm.patientservice.mapper;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Writes UUIDs and ISO dates into caller supplied char buffers and parses {@code yyyy-MM-dd} without
+ * going through the {@link java.time.format.DateTimeFormatter} machinery. Output and accepted input are
+ * identical to {@link UUID#toString()}, {@link LocalDate#toString()} and {@link LocalDate#parse}; anything
+ * outside the four digit year range falls back to those.
+ */
+public final class IsoFormat {
+
+    public static final int UUID_LENGTH = 36;
+    public static final int DATE_LENGTH = 10;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private IsoFormat() {
+    }
+
+    public static int formatUuid(UUID id, char[] buffer, int offset) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        hex(msb >>> 32, buffer, offset, 8);
+        buffer[offset + 8] = '-';
+        hex(msb >>> 16, buffer, offset + 9, 4);
+        buffer[offset + 13] = '-';
+        hex(msb, buffer, offset + 14, 4);
+        buffer[offset + 18] = '-';
+        hex(lsb >>> 48, buffer, offset + 19, 4);
+        buffer[offset + 23] = '-';
+        hex(lsb, buffer, offset + 24, 12);
+        return UUID_LENGTH;
+    }
+
+    private static void hex(long value, char[] buffer, int offset, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    public static int formatDate(LocalDate date, char[] buffer, int offset) {
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            String text = date.toString();
+            text.getChars(0, text.length(), buffer, offset);
+            return text.length();
+        }
+        digits(year, buffer, offset, 4);
+        buffer[offset + 4] = '-';
+        digits(date.getMonthValue(), buffer, offset + 5, 2);
+        buffer[offset + 7] = '-';
+        digits(date.getDayOfMonth(), buffer, offset + 8, 2);
+        return DATE_LENGTH;
+    }
+
+    private static void digits(int value, char[] buffer, int offset, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    public static LocalDate parseDate(String text) {
+        if (text.length() != DATE_LENGTH || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return LocalDate.parse(text);
+        }
+        int year = number(text, 0, 4);
+        int month = number(text, 5, 7);
+        int day = number(text, 8, 10);
+        if (year < 0 || month < 0 || day < 0) {
+            return LocalDate.parse(text);
+        }
+        try {
+            return LocalDate.of(year, month, day);
+        } catch (DateTimeException e) {
+            // let the formatter raise its usual DateTimeParseException for e.g. 2023-02-30
+            return LocalDate.parse(text);
+        }
+    }
+
+    private static int number(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
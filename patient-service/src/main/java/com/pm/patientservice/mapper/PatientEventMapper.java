@@ -0,0 +1,57 @@
+package com.pm.patientservice.mapper;
+
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Timestamp;
+import com.pm.patientservice.model.Patient;
+import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.UUID;
+
+public class PatientEventMapper {
+
+    public static final int SCHEMA_VERSION = 2;
+
+    public static PatientEvent toEvent(Patient patient, PatientEventType type, Instant occurredAt) {
+        return toEventBuilder(patient, type, occurredAt).build();
+    }
+
+    public static PatientEvent toUpdatedEvent(Patient patient, Collection<String> changedFields, Instant occurredAt) {
+        return toEventBuilder(patient, PatientEventType.PATIENT_UPDATED, occurredAt)
+                .setChangedFields(FieldMask.newBuilder().addAllPaths(changedFields))
+                .build();
+    }
+
+    public static PatientEvent toDeletedEvent(UUID patientId, Instant occurredAt) {
+        return baseEvent(PatientEventType.PATIENT_DELETED, occurredAt)
+                .setPatientId(String.valueOf(patientId))
+                .build();
+    }
+
+    private static PatientEvent.Builder toEventBuilder(Patient patient, PatientEventType type, Instant occurredAt) {
+        PatientEvent.Builder builder = baseEvent(type, occurredAt)
+                .setPatientId(String.valueOf(patient.getId()));
+        if (patient.getName() != null) builder.setName(patient.getName());
+        if (patient.getEmail() != null) builder.setEmail(patient.getEmail());
+        if (patient.getAddress() != null) builder.setAddress(patient.getAddress());
+        if (patient.getDateOfBirth() != null) {
+            builder.setDateOfBirthEpochDay((int) patient.getDateOfBirth().toEpochDay());
+        }
+        if (patient.getRegisteredDate() != null) {
+            builder.setRegisteredDateEpochDay((int) patient.getRegisteredDate().toEpochDay());
+        }
+        return builder;
+    }
+
+    private static PatientEvent.Builder baseEvent(PatientEventType type, Instant occurredAt) {
+        return PatientEvent.newBuilder()
+                .setSchemaVersion(SCHEMA_VERSION)
+                .setType(type)
+                .setEventType(type.name())
+                .setOccurredAt(Timestamp.newBuilder()
+                        .setSeconds(occurredAt.getEpochSecond())
+                        .setNanos(occurredAt.getNano()));
+    }
+}
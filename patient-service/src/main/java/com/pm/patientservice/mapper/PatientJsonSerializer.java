@@ -0,0 +1,48 @@
+package com.pm.patientservice.mapper;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.pm.patientservice.model.Patient;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link Patient} straight to the generator in the same shape as {@code PatientResponseDTO},
+ * so list endpoints skip the DTO and the intermediate id and date strings. The id and the date are
+ * formatted into a per-thread scratch buffer that Jackson copies from.
+ */
+@JsonComponent
+public class PatientJsonSerializer extends StdSerializer<Patient> {
+
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[64]);
+
+    public PatientJsonSerializer() {
+        super(Patient.class);
+    }
+
+    @Override
+    public void serialize(Patient patient, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        char[] scratch = SCRATCH.get();
+        generator.writeStartObject(patient);
+
+        generator.writeFieldName("id");
+        if (patient.getId() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(scratch, 0, IsoFormat.formatUuid(patient.getId(), scratch, 0));
+        }
+        generator.writeStringField("name", patient.getName());
+        generator.writeStringField("email", patient.getEmail());
+        generator.writeStringField("address", patient.getAddress());
+        generator.writeFieldName("dateOfBirth");
+        if (patient.getDateOfBirth() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(scratch, 0, IsoFormat.formatDate(patient.getDateOfBirth(), scratch, 0));
+        }
+
+        generator.writeEndObject();
+    }
+}
@@ -4,8 +4,6 @@ import com.pm.patientservice.dto.PatientRequestDTO;
 import com.pm.patientservice.dto.PatientResponseDTO;
 import com.pm.patientservice.model.Patient;
 
-import java.time.LocalDate;
-
 public class PatientMapper {
     public static PatientResponseDTO toDTO(Patient patient) {
         if (patient == null) return null;
@@ -23,8 +21,8 @@ public class PatientMapper {
         patient.setName(dto.getName());
         patient.setAddress(dto.getAddress());
         patient.setEmail(dto.getEmail());
-        patient.setRegisteredDate(dto.getRegisteredDate() == null ? null : LocalDate.parse(dto.getRegisteredDate()));
-        patient.setDateOfBirth(dto.getDateOfBirth() == null ? null : LocalDate.parse(dto.getDateOfBirth()));
+        patient.setRegisteredDate(dto.getRegisteredDate() == null ? null : IsoFormat.parseDate(dto.getRegisteredDate()));
+        patient.setDateOfBirth(dto.getDateOfBirth() == null ? null : IsoFormat.parseDate(dto.getDateOfBirth()));
         return patient;
     }
 }
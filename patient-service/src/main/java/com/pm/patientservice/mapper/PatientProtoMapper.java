@@ -0,0 +1,76 @@
+package com.pm.patientservice.mapper;
+
+import com.pm.patientservice.dto.PatientRequestDTO;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import patient.api.Patient;
+import patient.api.PatientRequest;
+import patient.api.PatientSummary;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+public class PatientProtoMapper {
+
+    public static Patient toProto(PatientResponseDTO dto) {
+        Patient.Builder builder = Patient.newBuilder()
+                .setName(nullToEmpty(dto.getName()))
+                .setEmail(nullToEmpty(dto.getEmail()))
+                .setAddress(nullToEmpty(dto.getAddress()));
+        if (dto.getId() != null) {
+            UUID id = UUID.fromString(dto.getId());
+            builder.setIdMsb(id.getMostSignificantBits()).setIdLsb(id.getLeastSignificantBits());
+        }
+        if (dto.getDateOfBirth() != null) {
+            builder.setDateOfBirthEpochDay((int) IsoFormat.parseDate(dto.getDateOfBirth()).toEpochDay());
+        }
+        return builder.build();
+    }
+
+    public static Patient toProto(com.pm.patientservice.model.Patient patient) {
+        Patient.Builder builder = Patient.newBuilder()
+                .setName(nullToEmpty(patient.getName()))
+                .setEmail(nullToEmpty(patient.getEmail()))
+                .setAddress(nullToEmpty(patient.getAddress()));
+        if (patient.getId() != null) {
+            builder.setIdMsb(patient.getId().getMostSignificantBits())
+                    .setIdLsb(patient.getId().getLeastSignificantBits());
+        }
+        if (patient.getDateOfBirth() != null) {
+            builder.setDateOfBirthEpochDay((int) patient.getDateOfBirth().toEpochDay());
+        }
+        return builder.build();
+    }
+
+    public static PatientSummary toSummary(long idMsb, long idLsb, String name, String email) {
+        return PatientSummary.newBuilder()
+                .setIdMsb(idMsb)
+                .setIdLsb(idLsb)
+                .setName(nullToEmpty(name))
+                .setEmail(nullToEmpty(email))
+                .build();
+    }
+
+    public static PatientSummary toSummary(com.pm.patientservice.model.Patient patient) {
+        return toSummary(patient.getId().getMostSignificantBits(), patient.getId().getLeastSignificantBits(),
+                patient.getName(), patient.getEmail());
+    }
+
+    public static PatientRequestDTO toDTO(PatientRequest request) {
+        PatientRequestDTO dto = new PatientRequestDTO(
+                request.getName(), request.getEmail(), request.getAddress(),
+                request.hasDateOfBirthEpochDay()
+                        ? LocalDate.ofEpochDay(request.getDateOfBirthEpochDay()).toString() : null);
+        if (request.hasRegisteredDateEpochDay()) {
+            dto.setRegisteredDate(LocalDate.ofEpochDay(request.getRegisteredDateEpochDay()).toString());
+        }
+        return dto;
+    }
+
+    public static UUID toUuid(Patient patient) {
+        return new UUID(patient.getIdMsb(), patient.getIdLsb());
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
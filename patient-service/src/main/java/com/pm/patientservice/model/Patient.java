@@ -3,14 +3,21 @@ package com.pm.patientservice.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDate;
 import java.util.UUID;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Patient.CACHE_REGION)
 public class Patient {
+    // second-level cache region, sized in ehcache.xml
+    public static final String CACHE_REGION = "patient";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @UuidV7
     private UUID id;
 
     @NotNull
@@ -18,7 +25,6 @@ public class Patient {
 
     @NotNull
     @Email
-    @Column(unique = true)
     private String email;
 
     @NotNull
@@ -0,0 +1,64 @@
+package com.pm.patientservice.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Transient;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Sharded mode only: which patient an email belongs to. Rows live on the shard the email hashes to, so a
+ * claim is a primary key insert on one shard instead of a uniqueness check across all of them.
+ */
+@Entity
+public class PatientEmail implements Persistable<String> {
+
+    @Id
+    private String email;
+
+    private UUID patientId;
+
+    private Instant claimedAt;
+
+    // always inserted, never merged: a duplicate email has to fail on the primary key
+    @Transient
+    private boolean isNew = true;
+
+    public PatientEmail(String email, UUID patientId, Instant claimedAt) {
+        this.email = email;
+        this.patientId = patientId;
+        this.claimedAt = claimedAt;
+    }
+
+    public PatientEmail() {
+
+    }
+
+    @Override
+    public String getId() {
+        return email;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        isNew = false;
+    }
+
+    public UUID getPatientId() {
+        return patientId;
+    }
+
+    public Instant getClaimedAt() {
+        return claimedAt;
+    }
+}
@@ -0,0 +1,54 @@
+package com.pm.patientservice.replica;
+
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+
+import java.sql.SQLException;
+
+/**
+ * Read-only transactions read the second-level cache but never fill it. They go to a replica that may not have
+ * replayed a write yet: a patient loaded there right after another instance's event evicted it would be put back
+ * stale and served until it expires. The cache is filled from the primary only, by writes and read-write loads.
+ */
+public class ReplicaReadJpaDialect extends HibernateJpaDialect {
+
+    private record ReadOnlyTransactionData(Object transactionData, Session session, CacheMode previousCacheMode,
+                                           Object previousStoreMode) {
+    }
+
+    @Override
+    public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+            throws PersistenceException, SQLException, TransactionException {
+        Object transactionData = super.beginTransaction(entityManager, definition);
+        if (!definition.isReadOnly()) {
+            return transactionData;
+        }
+        Session session = entityManager.unwrap(Session.class);
+        ReadOnlyTransactionData readOnly = new ReadOnlyTransactionData(transactionData, session,
+                session.getCacheMode(), session.getProperties().get(AvailableSettings.JAKARTA_SHARED_CACHE_STORE_MODE));
+        // find() goes by the store mode, queries by the cache mode
+        session.setProperty(AvailableSettings.JAKARTA_SHARED_CACHE_STORE_MODE, CacheStoreMode.BYPASS);
+        session.setCacheMode(CacheMode.GET);
+        return readOnly;
+    }
+
+    // with open-in-view the session outlives the transaction
+    @Override
+    public void cleanupTransaction(Object transactionData) {
+        if (transactionData instanceof ReadOnlyTransactionData readOnly) {
+            readOnly.session().setProperty(AvailableSettings.JAKARTA_SHARED_CACHE_STORE_MODE,
+                    readOnly.previousStoreMode() == null ? CacheStoreMode.USE : readOnly.previousStoreMode());
+            readOnly.session().setCacheMode(readOnly.previousCacheMode());
+            super.cleanupTransaction(readOnly.transactionData());
+            return;
+        }
+        super.cleanupTransaction(transactionData);
+    }
+}
@@ -0,0 +1,137 @@
+package com.pm.patientservice.replica;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions round robin to the read replicas that are currently within the allowed
+ * replication lag, everything else to the primary. Lag is polled from every replica; a replica that cannot be
+ * reached, is not streaming from the primary or falls behind is skipped until it catches up, and with no
+ * replica left reads go to the primary.
+ * <p>
+ * The lookup happens when a connection is first used, so this has to sit behind a
+ * {@code LazyConnectionDataSourceProxy}: the transaction manager asks for the connection before it marks the
+ * transaction read-only.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    // caught up (nothing received is waiting for replay) counts as no lag, but only while the WAL receiver is
+    // streaming: a disconnected replica has replayed everything it received and would look caught up forever.
+    // NULL when the lag is unknown. pg_stat_wal_receiver shows the status to pg_read_all_stats (pg_monitor) only
+    private static final String LAG_QUERY = """
+            SELECT CASE
+                       WHEN NOT pg_is_in_recovery() THEN 0
+                       WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN NULL
+                       WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                       ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000
+                   END""";
+
+    public static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile double lagMillis = Double.NaN;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        // NaN while the replica cannot be reached
+        public double lagMillis() {
+            return lagMillis;
+        }
+    }
+
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile List<String> available = List.of();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Duration maxLag) {
+        this.maxLagMillis = maxLag.toMillis();
+        this.replicas = new ArrayList<>();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicas.forEach((name, dataSource) -> {
+            this.replicas.add(new Replica(name, dataSource));
+            targets.put(name, dataSource);
+        });
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    public List<Replica> replicas() {
+        return List.copyOf(replicas);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        List<String> candidates = available;
+        if (candidates.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+
+    @Scheduled(fixedDelayString = "${patient.replicas.lag-check-interval-ms:1000}")
+    public void checkReplicas() {
+        List<String> healthy = new ArrayList<>();
+        for (Replica replica : replicas) {
+            replica.lagMillis = lag(replica);
+            boolean usable = replica.lagMillis <= maxLagMillis;
+            if (usable) {
+                healthy.add(replica.name);
+            }
+            if (usable != available.contains(replica.name)) {
+                if (usable) {
+                    log.info("Read replica {} is back in rotation", replica.name);
+                } else {
+                    log.warn("Read replica {} taken out of rotation, lag {} ms", replica.name, replica.lagMillis);
+                }
+            }
+        }
+        available = List.copyOf(healthy);
+    }
+
+    private static double lag(Replica replica) {
+        try (Connection connection = replica.dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(1);
+            try (ResultSet resultSet = statement.executeQuery(LAG_QUERY)) {
+                resultSet.next();
+                double lag = resultSet.getDouble(1);
+                return resultSet.wasNull() ? Double.NaN : Math.max(lag, 0);
+            } finally {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                }
+            }
+        } catch (SQLException e) {
+            log.debug("Could not read the lag of replica {}", replica.name, e);
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.pm.patientservice.repository;
+
+import com.pm.patientservice.model.PatientEmail;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Repository
+public interface PatientEmailRepository extends JpaRepository<PatientEmail, String> {
+
+    // only succeeds while the row still belongs to the owner that was found to be stale
+    @Modifying
+    @Query("update PatientEmail e set e.patientId = :patientId, e.claimedAt = :claimedAt " +
+            "where e.email = :email and e.patientId = :staleOwner")
+    int takeOver(String email, UUID staleOwner, UUID patientId, Instant claimedAt);
+
+    @Modifying
+    @Query("delete from PatientEmail e where e.email = :email and e.patientId = :patientId")
+    int release(String email, UUID patientId);
+}
@@ -1,13 +1,50 @@
 package com.pm.patientservice.repository;
 
 import com.pm.patientservice.model.Patient;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface PatientRepository extends JpaRepository<Patient, UUID> {
+    // Lookups ahead of a write run read-write, so with read replicas they see the primary's rows; inside a
+    // read-only service transaction they join it and read from a replica
+    // Emails are unique regardless of case; lower(email) is what patient_email_lower_idx indexes
+    @Transactional
+    @Query("select count(p) > 0 from Patient p where lower(p.email) = lower(:email)")
     boolean existsByEmail(String email);
+    @Transactional
+    @Query("select count(p) > 0 from Patient p where lower(p.email) = lower(:email) and p.id <> :id")
     boolean existsByEmailAndIdNot(String email, UUID id);
+    @Override
+    @Transactional
+    Optional<Patient> findById(UUID id);
+    @Query("select count(p) > 0 from Patient p where p.id = :id and lower(p.email) = lower(:email)")
+    boolean existsByIdAndEmail(UUID id, String email);
+    // The highest number the patient_change_record trigger (db/migration V3) stamped, 0 before the first write
+    @Query(value = "select coalesce(max(version), 0) from patient_change", nativeQuery = true)
+    long findTableVersion();
+
+    // The scans of the whole table only read the entity cache, filling it would push out every hot patient.
+    // Query results are not cached: any patient write anywhere drops them all and searches are keyed by text
+    // and position, so they would hardly ever hit
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "GET"))
+    Window<Patient> findAllBy(ScrollPosition position, Limit limit, Sort sort);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "GET"))
+    Window<Patient> findByRegisteredDateGreaterThanEqual(
+            LocalDate since, ScrollPosition position, Limit limit, Sort sort);
+    Window<Patient> findByNameContainingIgnoreCaseOrEmailContainingIgnoreCase(
+            String name, String email, ScrollPosition position, Limit limit, Sort sort);
 }
@@ -0,0 +1,44 @@
+package com.pm.patientservice.schema;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The patient_change_record trigger of the H2 schema (db/migration/h2), the same as the plpgsql function of the
+ * Postgres one: takes the next number of patient_change_seq and stamps the changed patient in patient_change
+ * with it.
+ */
+public class H2PatientChangeTrigger implements Trigger {
+
+    @Override
+    public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+        long version = nextVersion(connection);
+        if (oldRow != null) {
+            record(connection, oldRow[0], version);
+        }
+        if (newRow != null && (oldRow == null || !newRow[0].equals(oldRow[0]))) {
+            record(connection, newRow[0], version);
+        }
+    }
+
+    private static long nextVersion(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("values next value for patient_change_seq");
+             ResultSet resultSet = select.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static void record(Connection connection, Object patientId, long version) throws SQLException {
+        try (PreparedStatement merge = connection.prepareStatement(
+                "merge into patient_change (patient_id, version) key (patient_id) values (?, ?)")) {
+            merge.setObject(1, patientId);
+            merge.setLong(2, version);
+            merge.executeUpdate();
+        }
+    }
+}
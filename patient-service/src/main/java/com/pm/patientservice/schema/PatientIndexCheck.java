@@ -0,0 +1,73 @@
+package com.pm.patientservice.schema;
+
+import com.pm.patientservice.shard.PatientShards;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Refuses to start on a patient table without the indexes its queries rely on, e.g. one that was created by
+ * hand or by Hibernate instead of the migrations in {@code db/migration}. Checked on every shard.
+ */
+@Component
+public class PatientIndexCheck implements SmartInitializingSingleton {
+
+    private static final List<String> REQUIRED = List.of(
+            "patient_email_lower_idx", "patient_registered_date_idx", "patient_date_of_birth_idx");
+    // trigram indexes, Postgres only
+    private static final List<String> REQUIRED_ON_POSTGRES = List.of("patient_name_trgm_idx", "patient_email_trgm_idx");
+
+    private final DataSource dataSource;
+    private final PatientShards shards;
+
+    public PatientIndexCheck(DataSource dataSource, PatientShards shards) {
+        this.dataSource = dataSource;
+        this.shards = shards;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (int shard = 0; shard < shards.count(); shard++) {
+            List<String> missing = missingIndexes(shards.sharded() ? shards.dataSource(shard) : dataSource);
+            if (!missing.isEmpty()) {
+                throw new IllegalStateException("The patient table" + (shards.sharded() ? " on shard " + shard : "")
+                        + " has no index " + String.join(", ", missing) + ", it has to be migrated by Flyway");
+            }
+        }
+    }
+
+    private static List<String> missingIndexes(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String table = metaData.storesUpperCaseIdentifiers() ? "PATIENT" : "patient";
+            Set<String> present = new HashSet<>();
+            try (ResultSet indexes = metaData.getIndexInfo(
+                    connection.getCatalog(), connection.getSchema(), table, false, true)) {
+                while (indexes.next()) {
+                    String name = indexes.getString("INDEX_NAME");
+                    if (name != null) {
+                        present.add(name.toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+            List<String> required = new ArrayList<>(REQUIRED);
+            if (metaData.getDatabaseProductName().equals("PostgreSQL")) {
+                required.addAll(REQUIRED_ON_POSTGRES);
+            }
+            required.removeAll(present);
+            return required;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read the indexes of the patient table", e);
+        }
+    }
+}
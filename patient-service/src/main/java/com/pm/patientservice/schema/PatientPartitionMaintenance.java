@@ -0,0 +1,72 @@
+package com.pm.patientservice.schema;
+
+import com.pm.patientservice.shard.PatientShards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+/**
+ * With {@code patient} range partitioned by registered_date ({@code db/partitioning/postgresql}), creates the
+ * partitions of this and the next year ahead of time, so new registrations do not pile up in
+ * {@code patient_default}. Does nothing on an unpartitioned table.
+ */
+@Component
+public class PatientPartitionMaintenance {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientPartitionMaintenance.class);
+
+    private static final String PARTITIONED = "select to_regprocedure('ensure_patient_partitions(integer, integer)') is not null";
+
+    private final DataSource dataSource;
+    private final PatientShards shards;
+
+    public PatientPartitionMaintenance(DataSource dataSource, PatientShards shards) {
+        this.dataSource = dataSource;
+        this.shards = shards;
+    }
+
+    @Scheduled(cron = "${patient.partitions.maintenance-cron:0 15 0 * * *}")
+    public void createUpcomingPartitions() {
+        int year = LocalDate.now().getYear();
+        for (int shard = 0; shard < shards.count(); shard++) {
+            try {
+                createPartitions(shards.sharded() ? shards.dataSource(shard) : dataSource, year);
+            } catch (SQLException e) {
+                log.warn("Could not create the patient partitions of {} on shard {}", year + 1, shard, e);
+            }
+        }
+    }
+
+    private static void createPartitions(DataSource dataSource, int year) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            if (!connection.getMetaData().getDatabaseProductName().equals("PostgreSQL") || !partitioned(connection)) {
+                return;
+            }
+            try (PreparedStatement statement = connection.prepareStatement("select ensure_patient_partitions(?, ?)")) {
+                statement.setInt(1, year);
+                statement.setInt(2, year + 1);
+                statement.execute();
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+    }
+
+    private static boolean partitioned(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(PARTITIONED)) {
+            resultSet.next();
+            return resultSet.getBoolean(1);
+        }
+    }
+}
@@ -5,42 +5,148 @@ import com.pm.patientservice.dto.PatientResponseDTO;
 import com.pm.patientservice.exception.EmailAlreadyExistsException;
 import com.pm.patientservice.exception.PatientNotFoundException;
 import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import com.pm.patientservice.idempotency.IdempotencyStore;
 import com.pm.patientservice.kafka.KafkaProducer;
+import com.pm.patientservice.lookup.PatientLookup;
+import com.pm.patientservice.mapper.IsoFormat;
 import com.pm.patientservice.mapper.PatientMapper;
 import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.model.UuidV7Generator;
 import com.pm.patientservice.repository.PatientRepository;
+import com.pm.patientservice.shard.PatientEmailIndex;
+import com.pm.patientservice.shard.PatientShards;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.LongFunction;
 
 @Service
 public class PatientService {
 
+    private static final Limit STREAM_PAGE = Limit.of(500);
+    private static final Sort BY_ID = Sort.by("id");
+
     private final PatientRepository patientRepository;
     private final BillingServiceGrpcClient billingServiceGrpcClient;
     private final KafkaProducer kafkaProducer;
+    private final IdempotencyStore<PatientResponseDTO> idempotencyStore;
+    private final PatientShards shards;
+    private final PatientEmailIndex emailIndex;
+    private final PatientLookup patientLookup;
 
-    public PatientService(PatientRepository patientRepository, BillingServiceGrpcClient billingServiceGrpcClient, KafkaProducer kafkaProducer) {
+    public PatientService(PatientRepository patientRepository, BillingServiceGrpcClient billingServiceGrpcClient,
+                          KafkaProducer kafkaProducer, IdempotencyStore<PatientResponseDTO> idempotencyStore,
+                          PatientShards shards, PatientEmailIndex emailIndex, PatientLookup patientLookup) {
         this.patientRepository = patientRepository;
         this.billingServiceGrpcClient = billingServiceGrpcClient;
         this.kafkaProducer = kafkaProducer;
+        this.idempotencyStore = idempotencyStore;
+        this.shards = shards;
+        this.emailIndex = emailIndex;
+        this.patientLookup = patientLookup;
+    }
+
+    // Read before the rows and moved by the patient_change_record trigger of every write to the table, whoever
+    // makes it, so a version never labels older data. Sharded, every shard numbers its own writes and the version
+    // is the sum
+    public long getTableVersion() {
+        return shards.onEachShard(patientRepository::findTableVersion).stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Runs {@code read} with the current table version in one read-only transaction, so the version and the
+     * rows read in {@code read} come from the same database, also when reads go to a replica.
+     */
+    @Transactional(readOnly = true)
+    public <T> T readVersioned(LongFunction<T> read) {
+        return read.apply(getTableVersion());
     }
 
+    @Transactional(readOnly = true)
     public List<PatientResponseDTO> getAllPatients() {
-        List<Patient> patients = patientRepository.findAll();
-        return patients.stream()
+        return findAllPatients().stream()
                 .map(PatientMapper::toDTO).toList();
     }
 
+    // List and stream reads hand out the entities, the JSON and protobuf writers map them without a DTO
+    @Transactional(readOnly = true)
+    public List<Patient> findAllPatients() {
+        return shards.onEachShard(patientRepository::findAll).stream()
+                .flatMap(List::stream).toList();
+    }
+
+    @Transactional(readOnly = true)
+    public PatientResponseDTO getPatient(UUID id) {
+        return shards.onShardOf(id, () -> patientRepository.findById(id))
+                .map(PatientMapper::toDTO)
+                .orElseThrow(() -> new PatientNotFoundException("Patient not found with ID: " + id));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Patient> getPatients(Collection<UUID> ids) {
+        return shards.onShardsOf(ids, patientRepository::findAllById);
+    }
+
+    // Streaming reads page through the table by id (keyset), so memory stays bounded by one page per shard
+    public Iterator<Patient> streamPatients(LocalDate registeredSince) {
+        return page(position -> registeredSince == null
+                ? patientRepository.findAllBy(position, STREAM_PAGE, BY_ID)
+                : patientRepository.findByRegisteredDateGreaterThanEqual(registeredSince, position, STREAM_PAGE, BY_ID));
+    }
+
+    public Iterator<Patient> searchPatients(String query) {
+        return page(position -> patientRepository.findByNameContainingIgnoreCaseOrEmailContainingIgnoreCase(
+                query, query, position, STREAM_PAGE, BY_ID));
+    }
+
+    private Iterator<Patient> page(Function<ScrollPosition, Window<Patient>> query) {
+        return shards.scroll(query);
+    }
+
+    // Sharded, the email index decides: it claims the email for this patient, so a later failed write releases it
+    private boolean emailTaken(String email, UUID patientId) {
+        if (shards.sharded()) {
+            return !emailIndex.claim(email, patientId);
+        }
+        return patientId == null
+                ? patientRepository.existsByEmail(email)
+                : patientRepository.existsByEmailAndIdNot(email, patientId);
+    }
+
     public PatientResponseDTO createPatient(PatientRequestDTO patientRequestDTO) {
-        if(patientRepository.existsByEmail(patientRequestDTO.getEmail())) {
+        Patient patient = PatientMapper.toModel(patientRequestDTO);
+        if (shards.sharded()) {
+            // the id picks the shard, so it is known before anything is written
+            patient.setId(UuidV7Generator.next());
+        }
+        if(emailTaken(patientRequestDTO.getEmail(), patient.getId())) {
             throw new EmailAlreadyExistsException("A patient with this"+
                     " email already exists "+ patientRequestDTO.getEmail());
         }
-        Patient newPatient = patientRepository.save(
-                PatientMapper.toModel(patientRequestDTO));
+        Patient newPatient;
+        try {
+            newPatient = shards.onShardOf(patient.getId(), () -> patientRepository.save(patient));
+        } catch (RuntimeException e) {
+            if (shards.sharded()) {
+                emailIndex.release(patient.getEmail(), patient.getId());
+            }
+            throw e;
+        }
+        patientLookup.saved(newPatient);
 
         billingServiceGrpcClient.createBillingAccount(
                 String.valueOf(newPatient.getId()), newPatient.getName(), newPatient.getEmail());
@@ -49,27 +155,81 @@ public class PatientService {
         return PatientMapper.toDTO(newPatient);
     }
 
+    // Retries carrying the same key get the first result back without touching the DB, billing or Kafka again
+    public PatientResponseDTO createPatient(PatientRequestDTO patientRequestDTO, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return createPatient(patientRequestDTO);
+        }
+        return idempotencyStore.execute(idempotencyKey, fingerprint(patientRequestDTO),
+                () -> createPatient(patientRequestDTO));
+    }
+
+    private static byte[] fingerprint(PatientRequestDTO request) {
+        return String.join("\u0000", String.valueOf(request.getName()), String.valueOf(request.getEmail()),
+                        String.valueOf(request.getAddress()), String.valueOf(request.getDateOfBirth()),
+                        String.valueOf(request.getRegisteredDate()))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
     public PatientResponseDTO updatePatient(UUID id, PatientRequestDTO patientRequestDTO) {
 
-        Patient patient = patientRepository.findById(id).orElseThrow(
+        Patient patient = shards.onShardOf(id, () -> patientRepository.findById(id)).orElseThrow(
                 ()->new PatientNotFoundException("Patient not found with ID: "+ id)
         );
 
-        if(patientRepository.existsByEmailAndIdNot(patientRequestDTO.getEmail(),id)) {
+        // sharded, an unchanged email is already claimed by this patient; claims ignore case like the table does
+        boolean emailChanged = !Objects.equals(patient.getEmail(), patientRequestDTO.getEmail());
+        boolean claimChanged = shards.sharded() && !PatientEmailIndex.key(patient.getEmail())
+                .equals(PatientEmailIndex.key(patientRequestDTO.getEmail()));
+        if((claimChanged || !shards.sharded()) && emailTaken(patientRequestDTO.getEmail(), id)) {
             throw new EmailAlreadyExistsException("A patient with this"+
                     " email already exists "+ patientRequestDTO.getEmail());
         }
 
+        LocalDate dateOfBirth = IsoFormat.parseDate(patientRequestDTO.getDateOfBirth());
+        List<String> changedFields = new ArrayList<>();
+        if (!Objects.equals(patient.getName(), patientRequestDTO.getName())) changedFields.add("name");
+        if (emailChanged) changedFields.add("email");
+        if (!Objects.equals(patient.getAddress(), patientRequestDTO.getAddress())) changedFields.add("address");
+        if (!Objects.equals(patient.getDateOfBirth(), dateOfBirth)) changedFields.add("date_of_birth_epoch_day");
+
+        String previousEmail = patient.getEmail();
         patient.setName(patientRequestDTO.getName());
-        patient.setDateOfBirth(LocalDate.parse(patientRequestDTO.getDateOfBirth()));
+        patient.setDateOfBirth(dateOfBirth);
         patient.setAddress(patientRequestDTO.getAddress());
         patient.setEmail(patientRequestDTO.getEmail());
-        Patient updatedPatient = patientRepository.save(patient);
+        Patient updatedPatient;
+        try {
+            updatedPatient = shards.onShardOf(id, () -> patientRepository.save(patient));
+        } catch (RuntimeException e) {
+            if (claimChanged) {
+                emailIndex.release(patient.getEmail(), id);
+            }
+            throw e;
+        }
+        patientLookup.saved(updatedPatient);
+        if (claimChanged) {
+            emailIndex.release(previousEmail, id);
+        }
+
+        if (!changedFields.isEmpty()) {
+            kafkaProducer.sendUpdatedEvent(updatedPatient, changedFields);
+        }
         return PatientMapper.toDTO(updatedPatient);
     }
 
+    // Deleting a patient that does not exist is a no-op, also for the lookup and the consumers of the events
     public void deletePatient(UUID id) {
-        patientRepository.deleteById(id);
+        Optional<Patient> patient = shards.onShardOf(id, () -> patientRepository.findById(id));
+        if (patient.isEmpty()) {
+            return;
+        }
+        shards.runOnShardOf(id, () -> patientRepository.deleteById(id));
+        patientLookup.deleted(id);
+        if (shards.sharded()) {
+            emailIndex.release(patient.get().getEmail(), id);
+        }
+        kafkaProducer.sendDeletedEvent(id);
     }
 }
 
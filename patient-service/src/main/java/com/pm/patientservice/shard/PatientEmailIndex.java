@@ -0,0 +1,98 @@
+package com.pm.patientservice.shard;
+
+import com.pm.patientservice.model.PatientEmail;
+import com.pm.patientservice.repository.PatientEmailRepository;
+import com.pm.patientservice.repository.PatientRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Email uniqueness across shards. The unique index on {@code lower(patient.email)} only holds per shard, so every
+ * email is first claimed for a patient in {@code patient_email} on the shard the email hashes to, then the
+ * patient row is written on its own shard.
+ * <p>
+ * The two writes are not atomic. A claim whose patient write failed or that was never released (delete,
+ * crash) stays behind; it is taken over by the next claim once it is older than {@code patient.shards.claim-timeout}
+ * and its patient does not hold that email. Younger claims count as taken, the write that made them may
+ * still be running.
+ * <p>
+ * Claims are keyed by the lower-cased email, the same way the patient table compares emails.
+ */
+@Component
+public class PatientEmailIndex {
+
+    private static final int ATTEMPTS = 3;
+
+    private final PatientShards shards;
+    private final PatientEmailRepository emailRepository;
+    private final PatientRepository patientRepository;
+    private final Duration claimTimeout;
+    private final Clock clock;
+
+    @Autowired
+    public PatientEmailIndex(PatientShards shards, PatientEmailRepository emailRepository,
+                             PatientRepository patientRepository,
+                             @Value("${patient.shards.claim-timeout:30s}") Duration claimTimeout) {
+        this(shards, emailRepository, patientRepository, claimTimeout, Clock.systemUTC());
+    }
+
+    public PatientEmailIndex(PatientShards shards, PatientEmailRepository emailRepository,
+                             PatientRepository patientRepository, Duration claimTimeout, Clock clock) {
+        this.shards = shards;
+        this.emailRepository = emailRepository;
+        this.patientRepository = patientRepository;
+        this.claimTimeout = claimTimeout;
+        this.clock = clock;
+    }
+
+    /**
+     * Claims {@code email} for {@code patientId}; true if it is now, or already was, that patient's.
+     */
+    public boolean claim(String email, UUID patientId) {
+        String key = key(email);
+        int shard = shards.shardOfEmail(key);
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            Instant now = clock.instant();
+            try {
+                shards.onShard(shard, () -> emailRepository.saveAndFlush(new PatientEmail(key, patientId, now)));
+                return true;
+            } catch (DataIntegrityViolationException e) {
+                // claimed before, see by whom
+            }
+            Optional<PatientEmail> claimed = shards.onShard(shard, () -> emailRepository.findById(key));
+            if (claimed.isEmpty()) {
+                continue;
+            }
+            UUID owner = claimed.get().getPatientId();
+            if (owner.equals(patientId)) {
+                return true;
+            }
+            if (claimed.get().getClaimedAt().plus(claimTimeout).isAfter(now)
+                    || shards.onShardOf(owner, () -> patientRepository.existsByIdAndEmail(owner, email))) {
+                return false;
+            }
+            if (shards.onShard(shard, () -> emailRepository.takeOver(key, owner, patientId, now)) == 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void release(String email, UUID patientId) {
+        String key = key(email);
+        shards.onShard(shards.shardOfEmail(key), () -> emailRepository.release(key, patientId));
+    }
+
+    public static String key(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,253 @@
+package com.pm.patientservice.shard;
+
+import com.pm.patientservice.model.Patient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.data.support.WindowIterator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Where patient rows live. Without {@code patient.shards.urls} there is a single database and every method
+ * runs its work inline, exactly as if the call went straight to the repository.
+ * <p>
+ * Sharded, a patient belongs to one of {@code patient.shards.logical-count} logical shards by a hash of its id,
+ * and logical shard {@code l} lives on instance {@code l % instances}. Both the hash and the logical count are
+ * part of the data layout and must not change once rows are written; adding instances means moving whole
+ * logical shards. Work on a shard runs in its own transaction on that shard, work on every shard runs in
+ * parallel and the results are gathered.
+ */
+@Component
+public class PatientShards {
+
+    // Postgres orders uuid columns bytewise, i.e. both halves unsigned
+    static final Comparator<UUID> ID_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    private final ShardRoutingDataSource routing;
+    private final int logicalShards;
+    private final TransactionTemplate readWrite;
+    private final TransactionTemplate readOnly;
+    private final ExecutorService scatter;
+
+    @Autowired
+    public PatientShards(ObjectProvider<ShardRoutingDataSource> routing, PlatformTransactionManager transactionManager,
+                         @Value("${patient.shards.logical-count:256}") int logicalShards) {
+        this(routing.getIfAvailable(), transactionManager, logicalShards);
+    }
+
+    public PatientShards(ShardRoutingDataSource routing, PlatformTransactionManager transactionManager,
+                         int logicalShards) {
+        this.routing = routing;
+        this.logicalShards = logicalShards;
+        if (routing == null) {
+            this.readWrite = null;
+            this.readOnly = null;
+            this.scatter = null;
+            return;
+        }
+        if (logicalShards < routing.size()) {
+            throw new IllegalStateException("patient.shards.logical-count must be at least the number of shard instances");
+        }
+        this.readWrite = new TransactionTemplate(transactionManager);
+        this.readWrite.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnly = new TransactionTemplate(transactionManager, readWrite);
+        this.readOnly.setReadOnly(true);
+        this.scatter = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    public static PatientShards unsharded() {
+        return new PatientShards((ShardRoutingDataSource) null, null, 1);
+    }
+
+    public boolean sharded() {
+        return routing != null;
+    }
+
+    public int count() {
+        return sharded() ? routing.size() : 1;
+    }
+
+    public int shardOf(UUID patientId) {
+        return instanceOf(mix(patientId.getMostSignificantBits() ^ patientId.getLeastSignificantBits()));
+    }
+
+    public int shardOfEmail(String email) {
+        return instanceOf(mix(email.hashCode()));
+    }
+
+    private int instanceOf(long hash) {
+        return (int) (Long.remainderUnsigned(hash, logicalShards) % count());
+    }
+
+    // murmur3 fmix64, fixed forever: it decides where existing rows are
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * The pool of one shard, for plain JDBC readers; null when unsharded.
+     */
+    public DataSource dataSource(int shard) {
+        return sharded() ? routing.shard(shard) : null;
+    }
+
+    public <T> T onShardOf(UUID patientId, Supplier<T> work) {
+        return sharded() ? onShard(shardOf(patientId), work) : work.get();
+    }
+
+    public void runOnShardOf(UUID patientId, Runnable work) {
+        onShardOf(patientId, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs {@code work} in a new transaction on {@code shard}, read-only if the caller's transaction is.
+     */
+    public <T> T onShard(int shard, Supplier<T> work) {
+        if (!sharded()) {
+            return work.get();
+        }
+        TransactionTemplate template = TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                ? readOnly : readWrite;
+        return ShardRoutingDataSource.callOn(shard, () -> template.execute(status -> work.get()));
+    }
+
+    /**
+     * One result per shard, in shard order.
+     */
+    public <T> List<T> onEachShard(Supplier<T> work) {
+        if (!sharded()) {
+            return Collections.singletonList(work.get());
+        }
+        boolean readOnlyCaller = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        List<CompletableFuture<T>> results = new ArrayList<>(count());
+        for (int shard = 0; shard < count(); shard++) {
+            int target = shard;
+            TransactionTemplate template = readOnlyCaller ? readOnly : readWrite;
+            results.add(CompletableFuture.supplyAsync(() -> ShardRoutingDataSource.callOn(target,
+                    () -> template.execute(status -> work.get())), scatter));
+        }
+        return join(results);
+    }
+
+    /**
+     * Splits {@code patientIds} by shard and only asks the shards that own one of them.
+     */
+    public <T> List<T> onShardsOf(Collection<UUID> patientIds, Function<Collection<UUID>, List<T>> work) {
+        if (!sharded()) {
+            return work.apply(patientIds);
+        }
+        Map<Integer, List<UUID>> byShard = new TreeMap<>();
+        for (UUID id : patientIds) {
+            byShard.computeIfAbsent(shardOf(id), shard -> new ArrayList<>()).add(id);
+        }
+        boolean readOnlyCaller = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        List<CompletableFuture<List<T>>> results = new ArrayList<>(byShard.size());
+        byShard.forEach((shard, ids) -> {
+            TransactionTemplate template = readOnlyCaller ? readOnly : readWrite;
+            results.add(CompletableFuture.supplyAsync(() -> ShardRoutingDataSource.callOn(shard,
+                    () -> template.execute(status -> work.apply(ids))), scatter));
+        });
+        return join(results).stream().flatMap(List::stream).toList();
+    }
+
+    /**
+     * Pages through {@code query} on every shard by keyset and merges the pages, so the result is in id
+     * order across all shards while only one page per shard is held in memory.
+     */
+    public Iterator<Patient> scroll(Function<ScrollPosition, Window<Patient>> query) {
+        if (!sharded()) {
+            return WindowIterator.of(query).startingAt(ScrollPosition.keyset());
+        }
+        List<Iterator<Patient>> perShard = new ArrayList<>(count());
+        for (int shard = 0; shard < count(); shard++) {
+            int target = shard;
+            perShard.add(WindowIterator.<Patient>of(position -> onShard(target, () -> query.apply(position)))
+                    .startingAt(ScrollPosition.keyset()));
+        }
+        return new MergedIterator(perShard);
+    }
+
+    private static <T> List<T> join(List<CompletableFuture<T>> results) {
+        List<T> values = new ArrayList<>(results.size());
+        try {
+            for (CompletableFuture<T> result : results) {
+                values.add(result.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return values;
+    }
+
+    private static final class MergedIterator implements Iterator<Patient> {
+
+        private record Head(Patient patient, Iterator<Patient> rest) {
+        }
+
+        private final PriorityQueue<Head> heads =
+                new PriorityQueue<>(Comparator.comparing((Head head) -> head.patient().getId(), ID_ORDER));
+
+        private MergedIterator(List<Iterator<Patient>> shards) {
+            shards.forEach(this::advance);
+        }
+
+        private void advance(Iterator<Patient> shard) {
+            if (shard.hasNext()) {
+                heads.add(new Head(shard.next(), shard));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Patient next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            advance(head.rest());
+            return head.patient();
+        }
+    }
+}
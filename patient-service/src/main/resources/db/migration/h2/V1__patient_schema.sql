@@ -0,0 +1,34 @@
+-- The H2 schema of local runs, the same tables as db/migration/postgresql without the trigram indexes.
+
+CREATE TABLE IF NOT EXISTS patient
+(
+    id              UUID PRIMARY KEY,
+    name            VARCHAR(255) NOT NULL,
+    email           VARCHAR(255) NOT NULL,
+    address         VARCHAR(255) NOT NULL,
+    date_of_birth   DATE         NOT NULL,
+    registered_date DATE         NOT NULL,
+    -- H2 cannot index an expression, so lower(email) is a generated column
+    email_lower     VARCHAR(255) GENERATED ALWAYS AS (LOWER(email))
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS patient_email_lower_idx ON patient (email_lower);
+CREATE INDEX IF NOT EXISTS patient_registered_date_idx ON patient (registered_date);
+CREATE INDEX IF NOT EXISTS patient_date_of_birth_idx ON patient (date_of_birth);
+
+CREATE TABLE IF NOT EXISTS patient_table_version
+(
+    id      INTEGER PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+
+INSERT INTO patient_table_version (id, version)
+SELECT 1, 0
+WHERE NOT EXISTS (SELECT 1 FROM patient_table_version WHERE id = 1);
+
+CREATE TABLE IF NOT EXISTS patient_email
+(
+    email      VARCHAR(255) PRIMARY KEY,
+    patient_id UUID                        NOT NULL,
+    claimed_at TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
@@ -0,0 +1,24 @@
+-- The change sequence of db/migration/postgresql, the trigger is H2PatientChangeTrigger.
+
+CREATE SEQUENCE IF NOT EXISTS patient_change_seq;
+
+CREATE TABLE IF NOT EXISTS patient_change
+(
+    patient_id UUID PRIMARY KEY,
+    version    BIGINT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS patient_change_version_idx ON patient_change (version);
+
+CREATE TRIGGER IF NOT EXISTS patient_change_record
+    AFTER INSERT, UPDATE, DELETE
+    ON patient
+    FOR EACH ROW
+CALL 'com.pm.patientservice.schema.H2PatientChangeTrigger';
+
+INSERT INTO patient_change (patient_id, version)
+SELECT id, 0
+FROM patient
+WHERE id NOT IN (SELECT patient_id FROM patient_change);
+
+DROP TABLE IF EXISTS patient_table_version;
@@ -0,0 +1,42 @@
+-- Everything is IF NOT EXISTS: a database whose tables Hibernate created before is baselined at version 0
+-- and only gains what is missing here.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE TABLE IF NOT EXISTS patient
+(
+    id              UUID PRIMARY KEY,
+    name            VARCHAR(255) NOT NULL,
+    email           VARCHAR(255) NOT NULL,
+    address         VARCHAR(255) NOT NULL,
+    date_of_birth   DATE         NOT NULL,
+    registered_date DATE         NOT NULL
+);
+
+-- emails are unique regardless of case, the lookups ahead of a write compare lower(email)
+CREATE UNIQUE INDEX IF NOT EXISTS patient_email_lower_idx ON patient (lower(email));
+-- GET /patients?since= and the Arrow export select ranges of registered_date
+CREATE INDEX IF NOT EXISTS patient_registered_date_idx ON patient (registered_date);
+CREATE INDEX IF NOT EXISTS patient_date_of_birth_idx ON patient (date_of_birth);
+-- substring search; Spring Data renders ContainingIgnoreCase as upper(column) LIKE upper(?)
+CREATE INDEX IF NOT EXISTS patient_name_trgm_idx ON patient USING gin (upper(name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS patient_email_trgm_idx ON patient USING gin (upper(email) gin_trgm_ops);
+
+-- change counter behind the ETag of GET /patients
+CREATE TABLE IF NOT EXISTS patient_table_version
+(
+    id      INTEGER PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+
+INSERT INTO patient_table_version (id, version)
+SELECT 1, 0
+WHERE NOT EXISTS (SELECT 1 FROM patient_table_version WHERE id = 1);
+
+-- email claims of the sharded mode, on the shard the email hashes to
+CREATE TABLE IF NOT EXISTS patient_email
+(
+    email      VARCHAR(255) PRIMARY KEY,
+    patient_id UUID                        NOT NULL,
+    claimed_at TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
@@ -0,0 +1,52 @@
+-- Server side change sequence of the patient table, kept by a trigger so every writer counts: the service, the
+-- seed, manual fixes. Every inserted, updated or deleted row takes the next number of patient_change_seq and
+-- stamps the patient in patient_change with it; deleted patients keep their row there, so an incremental export
+-- can tell them apart. The table version is the highest number in patient_change. Numbers are taken at the write,
+-- not at the commit, so writers never wait for each other; a reader that needs every change up to a version to
+-- have committed waits for the writers still open (PatientColumnarExporter.watermark).
+
+CREATE SEQUENCE IF NOT EXISTS patient_change_seq;
+
+CREATE TABLE IF NOT EXISTS patient_change
+(
+    patient_id UUID PRIMARY KEY,
+    version    BIGINT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS patient_change_version_idx ON patient_change (version);
+
+CREATE OR REPLACE FUNCTION patient_change_record() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    changed_version BIGINT := nextval('patient_change_seq');
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        INSERT INTO patient_change (patient_id, version)
+        VALUES (OLD.id, changed_version)
+        ON CONFLICT (patient_id) DO UPDATE SET version = excluded.version;
+    END IF;
+    IF TG_OP IN ('UPDATE', 'INSERT') THEN
+        INSERT INTO patient_change (patient_id, version)
+        VALUES (NEW.id, changed_version)
+        ON CONFLICT (patient_id) DO UPDATE SET version = excluded.version;
+    END IF;
+    RETURN NULL;
+END
+$$;
+
+DROP TRIGGER IF EXISTS patient_change_record ON patient;
+CREATE TRIGGER patient_change_record
+    AFTER INSERT OR UPDATE OR DELETE
+    ON patient
+    FOR EACH ROW
+EXECUTE FUNCTION patient_change_record();
+
+-- patients from before the trigger are part of the first export
+INSERT INTO patient_change (patient_id, version)
+SELECT id, 0
+FROM patient
+ON CONFLICT (patient_id) DO NOTHING;
+
+-- the single counter row of the ETag before the change sequence
+DROP TABLE IF EXISTS patient_table_version;
@@ -0,0 +1,15 @@
+-- Puts the trigger of V3__patient_change_sequence back on patient when a later migration replaced the table,
+-- as db/partitioning/postgresql does when it is enabled after V3.
+DO
+$$
+    BEGIN
+        IF to_regprocedure('patient_change_record()') IS NOT NULL AND NOT EXISTS(
+                SELECT 1 FROM pg_trigger WHERE tgrelid = 'patient'::regclass AND tgname = 'patient_change_record') THEN
+            CREATE TRIGGER patient_change_record
+                AFTER INSERT OR UPDATE OR DELETE
+                ON patient
+                FOR EACH ROW
+            EXECUTE FUNCTION patient_change_record();
+        END IF;
+    END
+$$;
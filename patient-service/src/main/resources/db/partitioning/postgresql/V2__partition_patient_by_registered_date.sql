@@ -0,0 +1,126 @@
+-- Optional: turns patient into a table range partitioned by registered_date, one partition per year, so a
+-- year is archived with ALTER TABLE patient DETACH PARTITION patient_y2019 CONCURRENTLY instead of a bulk
+-- DELETE. Applied when classpath:db/partitioning/postgresql is added to spring.flyway.locations; once later
+-- migrations exist, enabling it needs spring.flyway.out-of-order=true.
+--
+-- Rows outside every yearly partition go to patient_default. ensure_patient_partitions(from, through) creates
+-- the partitions of those years and moves their rows out of patient_default; the service calls it every
+-- night for the coming year.
+--
+-- A unique index on a partitioned table has to contain the partition key, so lower(email) can no longer be
+-- unique by itself: patient_email_lower, kept by a trigger, holds one row per email across all partitions.
+
+CREATE TABLE patient_email_lower
+(
+    email_lower VARCHAR(255) PRIMARY KEY,
+    patient_id  UUID NOT NULL
+);
+
+CREATE FUNCTION patient_email_lower_sync() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    IF TG_OP = 'UPDATE' AND lower(OLD.email) = lower(NEW.email) THEN
+        RETURN NULL;
+    END IF;
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        DELETE FROM patient_email_lower WHERE email_lower = lower(OLD.email) AND patient_id = OLD.id;
+    END IF;
+    IF TG_OP IN ('UPDATE', 'INSERT') THEN
+        INSERT INTO patient_email_lower (email_lower, patient_id) VALUES (lower(NEW.email), NEW.id);
+    END IF;
+    RETURN NULL;
+END
+$$;
+
+ALTER TABLE patient RENAME TO patient_unpartitioned;
+ALTER TABLE patient_unpartitioned RENAME CONSTRAINT patient_pkey TO patient_unpartitioned_pkey;
+DROP INDEX patient_email_lower_idx, patient_registered_date_idx, patient_date_of_birth_idx,
+    patient_name_trgm_idx, patient_email_trgm_idx;
+
+CREATE TABLE patient
+(
+    id              UUID         NOT NULL,
+    name            VARCHAR(255) NOT NULL,
+    email           VARCHAR(255) NOT NULL,
+    address         VARCHAR(255) NOT NULL,
+    date_of_birth   DATE         NOT NULL,
+    registered_date DATE         NOT NULL,
+    PRIMARY KEY (id, registered_date)
+) PARTITION BY RANGE (registered_date);
+
+CREATE TABLE patient_default PARTITION OF patient DEFAULT;
+
+CREATE INDEX patient_email_lower_idx ON patient (lower(email));
+CREATE INDEX patient_registered_date_idx ON patient (registered_date);
+CREATE INDEX patient_date_of_birth_idx ON patient (date_of_birth);
+CREATE INDEX patient_name_trgm_idx ON patient USING gin (upper(name) gin_trgm_ops);
+CREATE INDEX patient_email_trgm_idx ON patient USING gin (upper(email) gin_trgm_ops);
+
+-- AFTER triggers on the parent are cloned to every partition; a row moving between partitions fires the
+-- DELETE and the INSERT branch
+CREATE TRIGGER patient_email_lower_sync
+    AFTER INSERT OR UPDATE OF email OR DELETE
+    ON patient
+    FOR EACH ROW
+EXECUTE FUNCTION patient_email_lower_sync();
+
+CREATE FUNCTION ensure_patient_partitions(from_year INTEGER, through_year INTEGER) RETURNS void
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    partition_year INTEGER;
+    partition_name TEXT;
+    lower_end      DATE;
+    upper_end      DATE;
+BEGIN
+    FOR partition_year IN from_year .. through_year
+        LOOP
+            partition_name := 'patient_y' || partition_year;
+            CONTINUE WHEN to_regclass(partition_name) IS NOT NULL;
+            lower_end := make_date(partition_year, 1, 1);
+            upper_end := make_date(partition_year + 1, 1, 1);
+            -- a partition cannot be created while patient_default holds rows of its range, so they are moved
+            -- into the new table first; moving them out deleted their email keys, which are added back
+            EXECUTE format('CREATE TABLE %I (LIKE patient INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', partition_name);
+            EXECUTE format('WITH moved AS (DELETE FROM patient_default WHERE registered_date >= $1 '
+                               || 'AND registered_date < $2 RETURNING *) INSERT INTO %I SELECT * FROM moved',
+                           partition_name) USING lower_end, upper_end;
+            EXECUTE format('INSERT INTO patient_email_lower (email_lower, patient_id) '
+                               || 'SELECT lower(email), id FROM %I', partition_name);
+            EXECUTE format('ALTER TABLE patient ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                           partition_name, lower_end, upper_end);
+        END LOOP;
+END
+$$;
+
+SELECT ensure_patient_partitions(
+               coalesce((SELECT extract(YEAR FROM min(registered_date))::INTEGER FROM patient_unpartitioned),
+                        extract(YEAR FROM current_date)::INTEGER),
+               extract(YEAR FROM current_date)::INTEGER + 1);
+
+INSERT INTO patient (id, name, email, address, date_of_birth, registered_date)
+SELECT id, name, email, address, date_of_birth, registered_date
+FROM patient_unpartitioned;
+
+-- publications of the old table (change data capture) follow the new one; publishing through the root keeps
+-- the changes of every partition under the name patient. Added after the copy, so it is not published.
+DO
+$$
+    DECLARE
+        publication_name TEXT;
+    BEGIN
+        FOR publication_name IN
+            SELECT p.pubname
+            FROM pg_publication p
+                     JOIN pg_publication_rel r ON r.prpubid = p.oid
+            WHERE r.prrelid = 'patient_unpartitioned'::regclass
+            LOOP
+                EXECUTE format('ALTER PUBLICATION %I DROP TABLE patient_unpartitioned', publication_name);
+                EXECUTE format('ALTER PUBLICATION %I ADD TABLE patient', publication_name);
+                EXECUTE format('ALTER PUBLICATION %I SET (publish_via_partition_root = true)', publication_name);
+            END LOOP;
+    END
+$$;
+
+DROP TABLE patient_unpartitioned;
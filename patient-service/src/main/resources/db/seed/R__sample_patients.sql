@@ -1,13 +1,5 @@
--- Ensure the 'patient' table exists
-CREATE TABLE IF NOT EXISTS patient
-(
-    id              UUID PRIMARY KEY,
-    name            VARCHAR(255)        NOT NULL,
-    email           VARCHAR(255) UNIQUE NOT NULL,
-    address         VARCHAR(255)        NOT NULL,
-    date_of_birth   DATE                NOT NULL,
-    registered_date DATE                NOT NULL
-    );
+-- Sample patients of local runs, not part of the schema: db/seed is only in spring.flyway.locations outside
+-- the prod profile. Repeatable, so it runs again whenever this file changes; every insert skips existing rows.
 
 -- Insert well-known UUIDs for specific patients 15
 INSERT INTO patient (id, name, email, address, date_of_birth, registered_date)
@@ -154,4 +146,4 @@ SELECT '223e4567-e89b-12d3-a456-426614174014',
        '789 Willow St, Springfield',
        '1987-10-17',
        '2024-03-29'
-    WHERE NOT EXISTS (SELECT 1 FROM patient WHERE id = '223e4567-e89b-12d3-a456-426614174014');
\ No newline at end of file
+    WHERE NOT EXISTS (SELECT 1 FROM patient WHERE id = '223e4567-e89b-12d3-a456-426614174014');
@@ -4,6 +4,8 @@ import billing.BillingRequest;
 import billing.BillingResponse;
 import billing.BillingServiceGrpc;
 import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,6 +18,9 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -72,4 +77,56 @@ public class BillingServiceGrpcClientUnitTest {
         assertThrows(StatusRuntimeException.class, () ->
                 grpcClient.createBillingAccount("patient-123", "John", "john@email.com"));
     }
+
+    @Test
+    @DisplayName("Billing creation is queued when billing-service is unavailable and replayed later")
+    void shouldQueueWhenBillingIsUnavailable() {
+        BillingResponse created = BillingResponse.newBuilder().setAccountId("acc-1").setStatus("ACTIVE").build();
+        when(blockingStub.createBillingAccount(any(BillingRequest.class)))
+                .thenThrow(new StatusRuntimeException(Status.UNAVAILABLE))
+                .thenReturn(created);
+
+        BillingResponse response = grpcClient.createBillingAccount("patient-123", "John", "john@email.com");
+
+        assertThat(response.getStatus()).isEqualTo(BillingServiceGrpcClient.PENDING);
+        assertThat(grpcClient.pendingCount()).isEqualTo(1);
+
+        grpcClient.retryPending();
+
+        assertThat(grpcClient.pendingCount()).isEqualTo(0);
+        verify(blockingStub, times(2)).createBillingAccount(any(BillingRequest.class));
+    }
+
+    @Test
+    @DisplayName("An open circuit breaker fails fast without calling billing-service")
+    void shouldNotCallBillingWhileBreakerIsOpen() {
+        CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("billing");
+        circuitBreaker.transitionToOpenState();
+        grpcClient = new BillingServiceGrpcClient(blockingStub, circuitBreaker, Bulkhead.ofDefaults("billing"), 10);
+
+        BillingResponse response = grpcClient.createBillingAccount("patient-123", "John", "john@email.com");
+        grpcClient.retryPending();
+
+        assertThat(response.getStatus()).isEqualTo(BillingServiceGrpcClient.PENDING);
+        assertThat(grpcClient.pendingCount()).isEqualTo(1);
+        verify(blockingStub, never()).createBillingAccount(any(BillingRequest.class));
+    }
+
+    @Test
+    @DisplayName("A queued request failing with something other than a gRPC status is dropped, not retried forever")
+    void shouldDropQueuedRequestFailingUnexpectedly() {
+        BillingResponse created = BillingResponse.newBuilder().setAccountId("acc-2").setStatus("ACTIVE").build();
+        when(blockingStub.createBillingAccount(any(BillingRequest.class)))
+                .thenThrow(new StatusRuntimeException(Status.UNAVAILABLE))
+                .thenThrow(new StatusRuntimeException(Status.UNAVAILABLE))
+                .thenThrow(new IllegalStateException("broken request"))
+                .thenReturn(created);
+        grpcClient.createBillingAccount("patient-1", "John", "john@email.com");
+        grpcClient.createBillingAccount("patient-2", "Jane", "jane@email.com");
+
+        grpcClient.retryPending();
+
+        assertThat(grpcClient.pendingCount()).isEqualTo(0);
+        verify(blockingStub, times(4)).createBillingAccount(any(BillingRequest.class));
+    }
 }
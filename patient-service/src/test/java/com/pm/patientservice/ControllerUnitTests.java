@@ -1,29 +1,45 @@
 package com.pm.patientservice;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdInputStream;
+import com.pm.patientservice.config.PatientProtobufHttpMessageConverter;
 import com.pm.patientservice.controller.PatientController;
 import com.pm.patientservice.dto.PatientRequestDTO;
 import com.pm.patientservice.dto.PatientResponseDTO;
 import com.pm.patientservice.exception.PatientNotFoundException;
+import com.pm.patientservice.mapper.PatientProtoMapper;
 import com.pm.patientservice.service.PatientService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.http.MediaType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import patient.api.ErrorResponse;
+import patient.api.Patient;
+import patient.api.PatientRequest;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.LongFunction;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -37,24 +53,31 @@ public class ControllerUnitTests {
     @MockitoBean
     private PatientService patientService;
 
+    // the mocked service still hands the table version to the controller's read
+    @BeforeEach
+    void readVersionedCallsThrough() {
+        when(patientService.readVersioned(any())).thenAnswer(invocation ->
+                invocation.<LongFunction<?>>getArgument(0).apply(patientService.getTableVersion()));
+    }
+
     @Test
     @DisplayName("Testing getting all the patients")
     void shouldReturnAllThePatients() throws Exception {
-        List<PatientResponseDTO> list = new ArrayList<>();
+        List<com.pm.patientservice.model.Patient> list = new ArrayList<>();
         for (int i = 1; i < 10; i++) {
-            PatientResponseDTO dto = new PatientResponseDTO(
-                    "id" + i, "name" + i, "email" + i, "address" + i, "1999-10-10"
-            );
-            list.add(dto);
+            list.add(patient(UUID.randomUUID(), i, LocalDate.of(1999, 10, 10)));
         }
-        when(patientService.getAllPatients()).thenReturn(list);
+        when(patientService.findAllPatients()).thenReturn(list);
 
         //Act & Assert
         var response = mockMvc.perform(get("/patients"));
 
         response.andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$[0].id").value(list.get(0).getId().toString()))
                 .andExpect(jsonPath("$[0].name").value("name1"))
+                .andExpect(jsonPath("$[0].dateOfBirth").value("1999-10-10"))
+                .andExpect(jsonPath("$[0].registeredDate").doesNotExist())
                 .andExpect(jsonPath("$.length()").value(9));
     }
 
@@ -91,6 +114,27 @@ public class ControllerUnitTests {
 
     }
 
+    @Test
+    @DisplayName("Idempotency-Key header is passed to the service")
+    void shouldCreatePatientWithIdempotencyKey() throws Exception {
+        PatientRequestDTO request = createPatientsList().get(0);
+        PatientResponseDTO responseDTO = new PatientResponseDTO(
+                "someId", request.getName(), request.getEmail(), request.getAddress(), request.getDateOfBirth());
+
+        when(patientService.createPatient(any(PatientRequestDTO.class), eq("retry-key")))
+                .thenReturn(responseDTO);
+
+        mockMvc.perform(post("/patients")
+                        .header("Idempotency-Key", "retry-key")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(request)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value("someId"));
+
+        verify(patientService, times(1)).createPatient(any(), eq("retry-key"));
+        verify(patientService, never()).createPatient(any());
+    }
+
     @ParameterizedTest(name = "Should return 400 when {1} is invalid")
     @DisplayName("Shouldn't create patient with invalid request")
     @MethodSource("invalidPatientRequests")
@@ -187,6 +231,139 @@ public class ControllerUnitTests {
         verifyNoInteractions(patientService);
     }
 
+    @Test
+    @DisplayName("Lists are streamed as length-delimited protobuf when requested")
+    void shouldStreamPatientsAsDelimitedProtobuf() throws Exception {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        when(patientService.findAllPatients()).thenReturn(List.of(
+                patient(first, 1, LocalDate.of(1999, 10, 10)),
+                patient(second, 2, LocalDate.of(2001, 1, 1))));
+
+        byte[] body = mockMvc.perform(get("/patients").accept(PatientProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(PatientProtobufHttpMessageConverter.PROTOBUF_DELIMITED))
+                .andExpect(header().string(PatientProtobufHttpMessageConverter.MESSAGE_HEADER, "patient.api.Patient"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        ByteArrayInputStream in = new ByteArrayInputStream(body);
+        Patient patient = Patient.parseDelimitedFrom(in);
+        assertEquals(first, PatientProtoMapper.toUuid(patient));
+        assertEquals(LocalDate.of(1999, 10, 10).toEpochDay(), patient.getDateOfBirthEpochDay());
+        assertEquals("name2", Patient.parseDelimitedFrom(in).getName());
+        assertNull(Patient.parseDelimitedFrom(in));
+    }
+
+    @Test
+    @DisplayName("Protobuf request bodies are validated and answered in protobuf")
+    void shouldCreatePatientFromProtobuf() throws Exception {
+        UUID id = UUID.randomUUID();
+        when(patientService.createPatient(any(PatientRequestDTO.class))).thenReturn(
+                new PatientResponseDTO(id.toString(), "name", "name@mail.com", "address", "1999-10-10"));
+        PatientRequest request = PatientRequest.newBuilder()
+                .setName("name")
+                .setEmail("name@mail.com")
+                .setAddress("address")
+                .setDateOfBirthEpochDay((int) LocalDate.of(1999, 10, 10).toEpochDay())
+                .setRegisteredDateEpochDay((int) LocalDate.of(2005, 10, 10).toEpochDay())
+                .build();
+
+        byte[] body = mockMvc.perform(post("/patients")
+                        .contentType(PatientProtobufHttpMessageConverter.PROTOBUF)
+                        .accept(PatientProtobufHttpMessageConverter.PROTOBUF)
+                        .content(request.toByteArray()))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(PatientProtobufHttpMessageConverter.PROTOBUF))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals(id, PatientProtoMapper.toUuid(Patient.parseFrom(body)));
+        verify(patientService).createPatient(argThat(dto ->
+                "1999-10-10".equals(dto.getDateOfBirth()) && "2005-10-10".equals(dto.getRegisteredDate())));
+
+        byte[] errors = mockMvc.perform(post("/patients")
+                        .contentType(PatientProtobufHttpMessageConverter.PROTOBUF)
+                        .accept(PatientProtobufHttpMessageConverter.PROTOBUF)
+                        .content(request.toBuilder().setName("").build().toByteArray()))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsByteArray();
+        assertTrue(ErrorResponse.parseFrom(errors).containsErrors("name"));
+    }
+
+    @Test
+    @DisplayName("A matching If-None-Match is answered with 304 without loading the patients")
+    void shouldAnswerNotModifiedForCurrentTableVersion() throws Exception {
+        when(patientService.getTableVersion()).thenReturn(7L);
+        when(patientService.findAllPatients()).thenReturn(List.of(patient(UUID.randomUUID(), 1, LocalDate.of(1999, 10, 10))));
+
+        String eTag = mockMvc.perform(get("/patients").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "no-cache"))
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(eTag);
+        assertTrue(eTag.startsWith("\"7-"));
+
+        mockMvc.perform(get("/patients").accept(MediaType.APPLICATION_JSON).header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", eTag));
+        verify(patientService, times(1)).findAllPatients();
+
+        String protobufETag = mockMvc.perform(get("/patients").accept(PatientProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotEquals(eTag, protobufETag);
+
+        when(patientService.getTableVersion()).thenReturn(8L);
+        mockMvc.perform(get("/patients").accept(MediaType.APPLICATION_JSON).header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({"gzip, gzip", "'zstd, gzip', zstd", "'gzip;q=1, zstd;q=0.5', gzip", "'*', zstd"})
+    @DisplayName("Large lists are compressed and the coding is part of the ETag")
+    void shouldCompressLargeLists(String acceptEncoding, String coding) throws Exception {
+        List<com.pm.patientservice.model.Patient> list = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            list.add(patient(UUID.randomUUID(), i, LocalDate.of(1999, 10, 10)));
+        }
+        when(patientService.getTableVersion()).thenReturn(3L);
+        when(patientService.findAllPatients()).thenReturn(list);
+
+        var response = mockMvc.perform(get("/patients").header("Accept-Encoding", acceptEncoding))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", coding))
+                .andExpect(header().doesNotExist("Content-Length"))
+                .andReturn().getResponse();
+        String eTag = response.getHeader("ETag");
+        assertTrue(eTag.endsWith("+" + coding + "\""));
+        assertTrue(response.getHeaders("Vary").contains("Accept-Encoding"));
+
+        byte[] compressed = response.getContentAsByteArray();
+        InputStream in = coding.equals("gzip")
+                ? new GZIPInputStream(new ByteArrayInputStream(compressed))
+                : new ZstdInputStream(new ByteArrayInputStream(compressed));
+        JsonNode json = new ObjectMapper().readTree(in);
+        assertEquals(50, json.size());
+        assertEquals("name49", json.get(49).get("name").asText());
+
+        mockMvc.perform(get("/patients").header("Accept-Encoding", acceptEncoding).header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", eTag));
+    }
+
+    @Test
+    @DisplayName("Responses below the threshold are sent uncompressed with their length")
+    void shouldNotCompressSmallResponses() throws Exception {
+        when(patientService.findAllPatients()).thenReturn(List.of(patient(UUID.randomUUID(), 1, LocalDate.of(1999, 10, 10))));
+
+        var response = mockMvc.perform(get("/patients").header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(jsonPath("$[0].name").value("name1"))
+                .andReturn().getResponse();
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+        assertFalse(response.getHeader("ETag").contains("+gzip"));
+    }
+
     public static List<PatientRequestDTO> createPatientsList() {
         List<PatientRequestDTO> patients = new ArrayList<>();
         for (int i = 0; i < 10; i++) {
@@ -217,4 +394,15 @@ public class ControllerUnitTests {
                 // Arguments.of(new PatientRequestDTO("Name", "valid@email.com", "address", "2030-10-10"), "dateOfBirth")
         );
     }
+
+    private static com.pm.patientservice.model.Patient patient(UUID id, int i, LocalDate dateOfBirth) {
+        return new com.pm.patientservice.model.Patient.Builder()
+                .id(id)
+                .name("name" + i)
+                .email("email" + i)
+                .address("address" + i)
+                .dateOfBirth(dateOfBirth)
+                .registeredDate(LocalDate.of(2024, 1, 1))
+                .build();
+    }
 }
@@ -0,0 +1,199 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.idempotency.IdempotencyKeyReusedException;
+import com.pm.patientservice.idempotency.IdempotencyStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyStoreUnitTest {
+
+    private static final byte[] REQUEST = "request".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    @DisplayName("Same key returns the cached result without running the action again")
+    void shouldReturnCachedResultForSameKey() {
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, Duration.ofMinutes(1));
+        AtomicInteger calls = new AtomicInteger();
+
+        String first = store.execute("key", REQUEST, () -> "result-" + calls.incrementAndGet());
+        String second = store.execute("key", REQUEST, () -> "result-" + calls.incrementAndGet());
+
+        assertEquals("result-1", first);
+        assertEquals("result-1", second);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("Failed executions are not cached")
+    void shouldNotCacheFailures() {
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, Duration.ofMinutes(1));
+
+        assertThrows(IllegalStateException.class, () -> store.execute("key", REQUEST, () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        assertEquals("ok", store.execute("key", REQUEST, () -> "ok"));
+    }
+
+    @Test
+    @DisplayName("Entries expire after the TTL")
+    void shouldExpireEntries() {
+        MutableClock clock = new MutableClock();
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, Duration.ofSeconds(30), clock);
+
+        store.execute("key", REQUEST, () -> "first");
+        clock.advance(Duration.ofSeconds(31));
+
+        assertEquals("second", store.execute("key", REQUEST, () -> "second"));
+    }
+
+    @Test
+    @DisplayName("Store never grows beyond its bound")
+    void shouldEvictOldestEntriesWhenFull() {
+        IdempotencyStore<String> store = new IdempotencyStore<>(3, Duration.ofMinutes(1));
+
+        for (int i = 0; i < 10; i++) {
+            String value = "v" + i;
+            store.execute("key" + i, REQUEST, () -> value);
+        }
+
+        assertEquals(3, store.size());
+        assertEquals("new", store.execute("key0", REQUEST, () -> "new"));
+        assertEquals("v9", store.execute("key9", REQUEST, () -> "other"));
+    }
+
+    @Test
+    @DisplayName("Concurrent requests with the same key run the action once")
+    void shouldCoalesceConcurrentRequests() throws Exception {
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, Duration.ofMinutes(1));
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> store.execute("key", REQUEST, () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "done";
+            }));
+            started.await();
+            Future<String> second = executor.submit(() -> store.execute("key", REQUEST, () -> {
+                calls.incrementAndGet();
+                return "duplicate";
+            }));
+            release.countDown();
+
+            assertEquals("done", first.get());
+            assertEquals("done", second.get());
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("A key reused for a different request is rejected instead of returning the first result")
+    void shouldRejectKeyReusedForDifferentRequest() {
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, Duration.ofMinutes(1));
+        store.execute("key", REQUEST, () -> "first");
+
+        byte[] other = "other request".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IdempotencyKeyReusedException.class, () -> store.execute("key", other, () -> "second"));
+        assertEquals("first", store.execute("key", REQUEST, () -> "second"));
+    }
+
+    @Test
+    @DisplayName("A full store does not evict a running execution, a retry of it still shares the result")
+    void shouldNotEvictRunningExecution() throws Exception {
+        IdempotencyStore<String> store = new IdempotencyStore<>(2, Duration.ofMinutes(1));
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> running = executor.submit(() -> store.execute("running", REQUEST, () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "done";
+            }));
+            started.await();
+            for (int i = 0; i < 5; i++) {
+                String value = "v" + i;
+                store.execute("key" + i, REQUEST, () -> value);
+            }
+            Future<String> retry = executor.submit(() -> store.execute("running", REQUEST, () -> {
+                calls.incrementAndGet();
+                return "duplicate";
+            }));
+            release.countDown();
+
+            assertEquals("done", running.get(5, TimeUnit.SECONDS));
+            assertEquals("done", retry.get(5, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("An Error thrown by the action is not cached and does not block later calls")
+    void shouldNotHangAfterError() {
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, Duration.ofMinutes(1));
+
+        assertThrows(AssertionError.class, () -> store.execute("key", REQUEST, () -> {
+            throw new AssertionError("boom");
+        }));
+
+        assertEquals("ok", assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> store.execute("key", REQUEST, () -> "ok")));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.kafka.EventSource;
+import com.pm.patientservice.kafka.KafkaProducer;
+import com.pm.patientservice.kafka.PatientEventBuffer;
+import com.pm.patientservice.mapper.PatientEventMapper;
+import com.pm.patientservice.model.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+public class KafkaProducerUnitTest {
+
+    @Mock
+    private PatientEventBuffer eventBuffer;
+
+    private KafkaProducer kafkaProducer;
+
+    private final Patient patient = new Patient.Builder()
+            .id(UUID.randomUUID())
+            .name("John Doe")
+            .email("john@mail.com")
+            .address("Baker street")
+            .dateOfBirth(LocalDate.of(1990, 10, 10))
+            .registeredDate(LocalDate.of(2024, 1, 1))
+            .build();
+
+    @BeforeEach
+    void setUp() {
+        kafkaProducer = new KafkaProducer(eventBuffer, EventSource.SERVICE);
+    }
+
+    @Test
+    @DisplayName("Created event carries the full patient and schema version")
+    void shouldPublishCreatedEvent() {
+        kafkaProducer.sendEvent(patient);
+
+        PatientEvent event = capture();
+        assertEquals(PatientEventType.PATIENT_CREATED, event.getType());
+        assertEquals("PATIENT_CREATED", event.getEventType());
+        assertEquals(PatientEventMapper.SCHEMA_VERSION, event.getSchemaVersion());
+        assertEquals(patient.getId().toString(), event.getPatientId());
+        assertEquals("Baker street", event.getAddress());
+        assertEquals(LocalDate.of(1990, 10, 10),
+                LocalDate.ofEpochDay(event.getDateOfBirthEpochDay()));
+        assertEquals(LocalDate.of(2024, 1, 1),
+                LocalDate.ofEpochDay(event.getRegisteredDateEpochDay()));
+        assertTrue(event.getOccurredAt().getSeconds() > 0);
+    }
+
+    @Test
+    @DisplayName("Updated event carries the changed field mask")
+    void shouldPublishUpdatedEvent() {
+        kafkaProducer.sendUpdatedEvent(patient, List.of("name", "email"));
+
+        PatientEvent event = capture();
+        assertEquals(PatientEventType.PATIENT_UPDATED, event.getType());
+        assertEquals(List.of("name", "email"), event.getChangedFields().getPathsList());
+    }
+
+    @Test
+    @DisplayName("Deleted event carries only the id")
+    void shouldPublishDeletedEvent() {
+        UUID id = UUID.randomUUID();
+        kafkaProducer.sendDeletedEvent(id);
+
+        PatientEvent event = capture();
+        assertEquals(PatientEventType.PATIENT_DELETED, event.getType());
+        assertEquals(id.toString(), event.getPatientId());
+        assertFalse(event.hasDateOfBirthEpochDay());
+        assertEquals("", event.getName());
+    }
+
+    @Test
+    @DisplayName("Nothing is published from the request path in CDC mode")
+    void shouldNotPublishInCdcMode() {
+        new KafkaProducer(eventBuffer, EventSource.CDC).sendEvent(patient);
+
+        verifyNoInteractions(eventBuffer);
+    }
+
+    private PatientEvent capture() {
+        ArgumentCaptor<PatientEvent> captor = ArgumentCaptor.forClass(PatientEvent.class);
+        verify(eventBuffer).publish(captor.capture());
+        return captor.getValue();
+    }
+}
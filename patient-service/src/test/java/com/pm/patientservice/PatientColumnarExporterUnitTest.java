@@ -0,0 +1,160 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.export.ExportWatermark;
+import com.pm.patientservice.export.PatientColumnarExporter;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.DictionaryEncoder;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientColumnarExporterUnitTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        Flyway.configure().dataSource(database).locations("classpath:db/migration/h2").load().migrate();
+        jdbcTemplate = new JdbcTemplate(database);
+        for (int i = 0; i < 10; i++) {
+            insert(UUID.randomUUID(), i % 2 == 0 ? "Anna" : "Bob", "p" + i + "@mail.com",
+                    LocalDate.of(2024, 1, 1).plusDays(i));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("Export writes every row in several batches with dictionary encoded names")
+    void shouldExportAllRowsInBatches() throws Exception {
+        PatientColumnarExporter exporter = new PatientColumnarExporter(database, 4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(10, exporter.export(null, exporter.watermark(), out));
+
+        List<String> names = new ArrayList<>();
+        List<LocalDate> registeredDates = new ArrayList<>();
+        int batches = 0;
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertEquals(PatientColumnarExporter.SCHEMA.getFields().size(), root.getSchema().getFields().size());
+            while (reader.loadNextBatch()) {
+                batches++;
+                FieldVector encoded = root.getVector("name");
+                long dictionaryId = encoded.getField().getDictionary().getId();
+                try (VarCharVector decoded = (VarCharVector) DictionaryEncoder.decode(
+                        encoded, reader.getDictionaryVectors().get(dictionaryId))) {
+                    for (int i = 0; i < root.getRowCount(); i++) {
+                        names.add(decoded.getObject(i).toString());
+                    }
+                }
+                DateDayVector registered = (DateDayVector) root.getVector("registered_date");
+                for (int i = 0; i < root.getRowCount(); i++) {
+                    registeredDates.add(LocalDate.ofEpochDay(registered.get(i)));
+                }
+            }
+        }
+
+        assertEquals(3, batches);
+        assertEquals(10, names.size());
+        assertEquals(5, names.stream().filter("Anna"::equals).count());
+        assertTrue(registeredDates.contains(LocalDate.of(2024, 1, 10)));
+    }
+
+    @Test
+    @DisplayName("An incremental export has the patients inserted, updated or deleted since the watermark")
+    void shouldExportChangesSinceWatermark() throws Exception {
+        PatientColumnarExporter exporter = new PatientColumnarExporter(database, 100);
+        ExportWatermark first = exporter.watermark();
+        assertEquals(10, exporter.export(null, first, new ByteArrayOutputStream()));
+
+        UUID backdated = UUID.randomUUID();
+        insert(backdated, "Carl", "carl@mail.com", LocalDate.of(2019, 5, 1));
+        UUID updated = jdbcTemplate.queryForObject("select id from patient where email = 'p3@mail.com'", UUID.class);
+        jdbcTemplate.update("update patient set name = 'Bob Smith' where id = ?", updated);
+        UUID deleted = jdbcTemplate.queryForObject("select id from patient where email = 'p4@mail.com'", UUID.class);
+        jdbcTemplate.update("delete from patient where id = ?", deleted);
+        ExportWatermark second = exporter.watermark();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, exporter.export(first, second, out));
+        Map<UUID, String> names = new HashMap<>();
+        Map<UUID, Boolean> deletions = new HashMap<>();
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            while (reader.loadNextBatch()) {
+                FixedSizeBinaryVector ids = (FixedSizeBinaryVector) root.getVector("id");
+                BitVector deletedFlags = (BitVector) root.getVector("deleted");
+                FieldVector encoded = root.getVector("name");
+                try (VarCharVector decoded = (VarCharVector) DictionaryEncoder.decode(encoded,
+                        reader.getDictionaryVectors().get(encoded.getField().getDictionary().getId()))) {
+                    for (int i = 0; i < root.getRowCount(); i++) {
+                        ByteBuffer id = ByteBuffer.wrap(ids.get(i));
+                        UUID uuid = new UUID(id.getLong(), id.getLong());
+                        names.put(uuid, decoded.isNull(i) ? null : decoded.getObject(i).toString());
+                        deletions.put(uuid, deletedFlags.get(i) == 1);
+                    }
+                }
+            }
+        }
+
+        assertEquals("Carl", names.get(backdated));
+        assertEquals("Bob Smith", names.get(updated));
+        assertNull(names.get(deleted));
+        assertEquals(Map.of(backdated, false, updated, false, deleted, true), deletions);
+        assertEquals(0, exporter.export(second, exporter.watermark(), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    @DisplayName("Watermarks are the comma separated version of every shard")
+    void shouldParseWatermarks() {
+        ExportWatermark watermark = ExportWatermark.parse("17,9,30");
+
+        assertEquals(List.of(17L, 9L, 30L), watermark.versions());
+        assertEquals("17,9,30", watermark.toString());
+        assertTrue(ExportWatermark.parse("17,10,30").isAfter(watermark));
+        assertFalse(watermark.isAfter(watermark));
+        assertThrows(IllegalArgumentException.class, () -> ExportWatermark.parse("2024-01-04"));
+    }
+
+    private void insert(UUID id, String name, String email, LocalDate registeredDate) {
+        jdbcTemplate.update("insert into patient (id, name, email, address, date_of_birth, registered_date) "
+                + "values (?, ?, ?, 'Main Street 1', date '1990-01-01', ?)", id, name, email, registeredDate);
+    }
+}
@@ -0,0 +1,117 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.model.PatientEmail;
+import com.pm.patientservice.repository.PatientEmailRepository;
+import com.pm.patientservice.repository.PatientRepository;
+import com.pm.patientservice.shard.PatientEmailIndex;
+import com.pm.patientservice.shard.PatientShards;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientEmailIndexUnitTest {
+
+    private static final String EMAIL = "jane@example.com";
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+
+    @Mock
+    private PatientEmailRepository emailRepository;
+    @Mock
+    private PatientRepository patientRepository;
+
+    private final UUID patientId = UUID.randomUUID();
+    private final UUID otherId = UUID.randomUUID();
+    private PatientEmailIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new PatientEmailIndex(PatientShards.unsharded(), emailRepository, patientRepository,
+                Duration.ofSeconds(30), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    @DisplayName("An unclaimed email is claimed with an insert")
+    void shouldClaimFreeEmail() {
+        assertTrue(index.claim(EMAIL, patientId));
+        verify(emailRepository).saveAndFlush(any(PatientEmail.class));
+        verifyNoInteractions(patientRepository);
+    }
+
+    @Test
+    @DisplayName("Emails differing only in case share one claim")
+    void shouldClaimRegardlessOfCase() {
+        alreadyClaimedBy(otherId, NOW.minusSeconds(5));
+
+        assertFalse(index.claim("Jane@Example.COM", patientId));
+        verify(emailRepository).findById(EMAIL);
+    }
+
+    @Test
+    @DisplayName("An email claimed by the same patient stays claimed")
+    void shouldKeepOwnClaim() {
+        alreadyClaimedBy(patientId, NOW.minusSeconds(3600));
+
+        assertTrue(index.claim(EMAIL, patientId));
+    }
+
+    @Test
+    @DisplayName("A recent claim of another patient counts as taken, its write may still be running")
+    void shouldRejectRecentClaim() {
+        alreadyClaimedBy(otherId, NOW.minusSeconds(5));
+
+        assertFalse(index.claim(EMAIL, patientId));
+        verify(emailRepository, never()).takeOver(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("An old claim whose patient still has the email counts as taken")
+    void shouldRejectLiveOwner() {
+        alreadyClaimedBy(otherId, NOW.minusSeconds(3600));
+        when(patientRepository.existsByIdAndEmail(otherId, EMAIL)).thenReturn(true);
+
+        assertFalse(index.claim(EMAIL, patientId));
+        verify(emailRepository, never()).takeOver(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("An old claim of a deleted or renamed patient is taken over")
+    void shouldTakeOverStaleClaim() {
+        alreadyClaimedBy(otherId, NOW.minusSeconds(3600));
+        when(patientRepository.existsByIdAndEmail(otherId, EMAIL)).thenReturn(false);
+        when(emailRepository.takeOver(EMAIL, otherId, patientId, NOW)).thenReturn(1);
+
+        assertTrue(index.claim(EMAIL, patientId));
+    }
+
+    @Test
+    @DisplayName("A takeover that lost the race to another claim fails")
+    void shouldFailLostTakeOver() {
+        alreadyClaimedBy(otherId, NOW.minusSeconds(3600));
+        when(patientRepository.existsByIdAndEmail(otherId, EMAIL)).thenReturn(false);
+        when(emailRepository.takeOver(EMAIL, otherId, patientId, NOW)).thenReturn(0);
+
+        assertFalse(index.claim(EMAIL, patientId));
+    }
+
+    private void alreadyClaimedBy(UUID owner, Instant claimedAt) {
+        when(emailRepository.saveAndFlush(any(PatientEmail.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(emailRepository.findById(EMAIL)).thenReturn(Optional.of(new PatientEmail(EMAIL, owner, claimedAt)));
+    }
+}
@@ -0,0 +1,324 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.kafka.EventRingBuffer;
+import com.pm.patientservice.kafka.OverflowPolicy;
+import com.pm.patientservice.kafka.PatientEventBuffer;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import patient.events.PatientEvent;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientEventBufferUnitTest {
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Ring buffer rounds capacity up and rejects offers when full")
+    void ringBufferShouldBeBounded() {
+        EventRingBuffer<Integer> ring = new EventRingBuffer<>(3);
+
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, ring.drainTo(drained, 10));
+        assertEquals(List.of(0, 1, 2, 3), drained);
+        assertEquals(0, ring.size());
+        assertTrue(ring.offer(5));
+    }
+
+    @Test
+    @DisplayName("Ring buffer does not lose events published by concurrent producers")
+    void ringBufferShouldAcceptConcurrentProducers() throws Exception {
+        EventRingBuffer<Integer> ring = new EventRingBuffer<>(1 << 14);
+        int producers = 4;
+        int perProducer = 2_000;
+        CountDownLatch done = new CountDownLatch(producers);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            for (int p = 0; p < producers; p++) {
+                int offset = p * perProducer;
+                executor.submit(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        ring.offer(offset + i);
+                    }
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Integer> drained = new ArrayList<>();
+        ring.drainTo(drained, Integer.MAX_VALUE);
+        Set<Integer> unique = new HashSet<>(drained);
+        assertEquals(producers * perProducer, unique.size());
+    }
+
+    @Test
+    @DisplayName("Drainer hands published events to the Kafka producer")
+    void shouldSendPublishedEvents() {
+        acknowledgeSends();
+        PatientEventBuffer buffer = buffer(16, OverflowPolicy.DROP, new SimpleMeterRegistry());
+        buffer.start();
+        try {
+            buffer.publish(event("1"));
+            buffer.publish(event("2"));
+
+            verify(kafkaTemplate, timeout(2000).times(2)).send(eq("patient"), anyString(), any(byte[].class));
+        } finally {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("DROP policy counts events that do not fit")
+    void shouldDropWhenFull() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PatientEventBuffer buffer = buffer(2, OverflowPolicy.DROP, registry);
+
+        buffer.publish(event("1"));
+        buffer.publish(event("2"));
+        buffer.publish(event("3"));
+
+        assertEquals(2, buffer.depth());
+        assertEquals(2.0, registry.get("patient.events.buffer.depth").gauge().value());
+        assertEquals(1.0, registry.get("patient.events.buffer.dropped").counter().count());
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    @DisplayName("SPILL policy writes overflow to disk and replays it once the buffer drains")
+    void shouldSpillAndReplay() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PatientEventBuffer buffer = buffer(2, OverflowPolicy.SPILL, registry);
+
+        for (int i = 0; i < 5; i++) {
+            buffer.publish(event(String.valueOf(i)));
+        }
+        assertEquals(3.0, registry.get("patient.events.buffer.spilled").counter().count());
+        assertTrue(Files.size(tempDir.resolve("events.spill")) > 0);
+
+        acknowledgeSends();
+        buffer.start();
+        try {
+            verify(kafkaTemplate, timeout(2000).times(5)).send(eq("patient"), anyString(), any(byte[].class));
+        } finally {
+            buffer.stop();
+        }
+        assertFalse(Files.exists(tempDir.resolve("events.spill")));
+    }
+
+    @Test
+    @DisplayName("Events stay buffered while the Kafka circuit breaker is open")
+    void shouldHoldEventsWhileBreakerIsOpen() {
+        acknowledgeSends();
+        CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("kafka");
+        circuitBreaker.transitionToOpenState();
+        PatientEventBuffer buffer = new PatientEventBuffer(kafkaTemplate, new SimpleMeterRegistry(), circuitBreaker,
+                Bulkhead.ofDefaults("kafka"), 16, 64, OverflowPolicy.DROP, 10, tempDir.resolve("events.spill"));
+        buffer.start();
+        try {
+            buffer.publish(event("1"));
+            buffer.publish(event("2"));
+            verify(kafkaTemplate, after(200).never()).send(anyString(), anyString(), any(byte[].class));
+
+            circuitBreaker.transitionToClosedState();
+            verify(kafkaTemplate, timeout(2000).times(2)).send(eq("patient"), anyString(), any(byte[].class));
+        } finally {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Events Kafka did not acknowledge are buffered and sent again")
+    void shouldResendUnacknowledgedEvents() {
+        when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker gone")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PatientEventBuffer buffer = buffer(16, OverflowPolicy.DROP, registry);
+        buffer.start();
+        try {
+            buffer.publish(event("1"));
+
+            verify(kafkaTemplate, timeout(2000).times(2)).send(eq("patient"), eq("1"), any(byte[].class));
+        } finally {
+            buffer.stop();
+        }
+        assertEquals(1.0, registry.get("patient.events.send.failures").counter().count());
+        assertEquals(1.0, registry.get("patient.events.sent").counter().count());
+    }
+
+    @Test
+    @DisplayName("While spilled events wait, newer ones go to disk behind them instead of overtaking them")
+    void shouldKeepOrderWhileSpillIsPending() throws Exception {
+        List<String> sent = recordSends();
+        CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("kafka");
+        circuitBreaker.transitionToOpenState();
+        PatientEventBuffer buffer = new PatientEventBuffer(kafkaTemplate, new SimpleMeterRegistry(), circuitBreaker,
+                Bulkhead.ofDefaults("kafka"), 2, 64, OverflowPolicy.SPILL, 10, tempDir.resolve("events.spill"));
+        buffer.start();
+        try {
+            buffer.publish(event("1", "v0"));
+            buffer.publish(event("1", "v1"));
+            buffer.publish(event("1", "v2"));
+            // the drainer holds v0 and v1 while the breaker is open, the ring has room again
+            awaitUntil(() -> buffer.depth() == 0);
+            buffer.publish(event("1", "v3"));
+
+            circuitBreaker.transitionToClosedState();
+            awaitUntil(() -> sent.size() == 4);
+            assertEquals(List.of("v0", "v1", "v2", "v3"), sent);
+        } finally {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("A replay file left behind is sent before the spill file and newer events, and never overwritten")
+    void shouldReplayLeftoverReplayFileFirst() throws Exception {
+        List<String> sent = recordSends();
+        Path spillFile = tempDir.resolve("events.spill");
+        write(tempDir.resolve("events.spill.replay"), event("1", "v0"), event("1", "v1"));
+        write(spillFile, event("1", "v2"));
+        PatientEventBuffer buffer = buffer(16, OverflowPolicy.SPILL, new SimpleMeterRegistry());
+
+        buffer.publish(event("1", "v3"));
+        buffer.start();
+        try {
+            awaitUntil(() -> sent.size() == 4);
+            assertEquals(List.of("v0", "v1", "v2", "v3"), sent);
+        } finally {
+            buffer.stop();
+        }
+        assertFalse(Files.exists(spillFile));
+        assertFalse(Files.exists(tempDir.resolve("events.spill.replay")));
+    }
+
+    @Test
+    @DisplayName("Events whose acknowledgement failed go out again in their order, ahead of newer events")
+    void shouldResendUnacknowledgedInOrder() throws Exception {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        CompletableFuture<SendResult<String, byte[]>> first = new CompletableFuture<>();
+        CompletableFuture<SendResult<String, byte[]>> second = new CompletableFuture<>();
+        when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class))).thenAnswer(call -> {
+            sent.add(PatientEvent.parseFrom(call.getArgument(2, byte[].class)).getName());
+            return switch (sent.size()) {
+                case 1 -> first;
+                case 2 -> second;
+                default -> CompletableFuture.completedFuture(null);
+            };
+        });
+        // two sends in flight at most, v2 waits for a permit
+        Bulkhead bulkhead = Bulkhead.of("kafka", BulkheadConfig.custom()
+                .maxConcurrentCalls(2).maxWaitDuration(Duration.ZERO).build());
+        PatientEventBuffer buffer = new PatientEventBuffer(kafkaTemplate, new SimpleMeterRegistry(),
+                CircuitBreaker.ofDefaults("kafka"), bulkhead, 16, 64, OverflowPolicy.DROP, 10,
+                tempDir.resolve("events.spill"));
+        buffer.start();
+        try {
+            buffer.publish(event("1", "v0"));
+            buffer.publish(event("1", "v1"));
+            buffer.publish(event("1", "v2"));
+            awaitUntil(() -> sent.size() == 2);
+
+            first.completeExceptionally(new IllegalStateException("broker gone"));
+            Thread.sleep(50);
+            second.completeExceptionally(new IllegalStateException("broker gone"));
+
+            awaitUntil(() -> sent.size() == 5);
+            assertEquals(List.of("v0", "v1", "v0", "v1", "v2"), sent);
+        } finally {
+            buffer.stop();
+        }
+    }
+
+    private List<String> recordSends() {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class))).thenAnswer(call -> {
+            sent.add(PatientEvent.parseFrom(call.getArgument(2, byte[].class)).getName());
+            return CompletableFuture.completedFuture(null);
+        });
+        return sent;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void write(Path file, PatientEvent... events) throws Exception {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (PatientEvent event : events) {
+                event.writeDelimitedTo(out);
+            }
+        }
+    }
+
+    private void acknowledgeSends() {
+        when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    private PatientEventBuffer buffer(int capacity, OverflowPolicy policy, SimpleMeterRegistry registry) {
+        return new PatientEventBuffer(kafkaTemplate, registry, capacity, 64, policy, 10,
+                tempDir.resolve("events.spill"));
+    }
+
+    private static PatientEvent event(String id, String name) {
+        return event(id).toBuilder().setName(name).build();
+    }
+
+    private static PatientEvent event(String id) {
+        return PatientEvent.newBuilder()
+                .setPatientId(id)
+                .setName("name" + id)
+                .setEmail(id + "@mail.com")
+                .setEventType("PATIENT_CREATED")
+                .build();
+    }
+}
@@ -0,0 +1,261 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.dto.PatientRequestDTO;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.exception.EmailAlreadyExistsException;
+import com.pm.patientservice.exception.PatientNotFoundException;
+import com.pm.patientservice.grpc.PatientGrpcService;
+import com.pm.patientservice.lookup.PatientLookup;
+import com.pm.patientservice.lookup.PatientRecordStore.PatientRecord;
+import com.pm.patientservice.mapper.PatientProtoMapper;
+import com.pm.patientservice.service.PatientService;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import patient.api.BatchGetPatientsRequest;
+import patient.api.CreatePatientRequest;
+import patient.api.CreatePatientsResponse;
+import patient.api.ListPatientsRequest;
+import patient.api.LookupPatientsResponse;
+import patient.api.Patient;
+import patient.api.PatientId;
+import patient.api.PatientRequest;
+import patient.api.PatientServiceGrpc;
+import patient.api.SearchPatientsRequest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientGrpcServiceUnitTest {
+
+    @Mock
+    private PatientService patientService;
+    @Mock
+    private PatientLookup patientLookup;
+
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .directExecutor()
+                .addService(new PatientGrpcService(patientService,
+                        Validation.buildDefaultValidatorFactory().getValidator(), patientLookup))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        channel.shutdownNow();
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    @DisplayName("GetPatient returns the patient or NOT_FOUND")
+    void shouldGetPatient() {
+        UUID id = UUID.randomUUID();
+        when(patientService.getPatient(id)).thenReturn(dto(id, "name"));
+        UUID missing = UUID.randomUUID();
+        when(patientService.getPatient(missing)).thenThrow(new PatientNotFoundException("missing"));
+        PatientServiceGrpc.PatientServiceBlockingStub stub = PatientServiceGrpc.newBlockingStub(channel);
+
+        Patient patient = stub.getPatient(id(id));
+        assertEquals(id, PatientProtoMapper.toUuid(patient));
+        assertEquals("name", patient.getName());
+
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () -> stub.getPatient(id(missing)));
+        assertEquals(Status.Code.NOT_FOUND, e.getStatus().getCode());
+    }
+
+    @Test
+    @DisplayName("LookupPatients answers from the lookup store and reads only unknown ids from the database")
+    void shouldLookupPatients() {
+        UUID stored = UUID.randomUUID();
+        when(patientLookup.get(stored.getMostSignificantBits(), stored.getLeastSignificantBits()))
+                .thenReturn(new PatientRecord("stored", "stored@mail.com"));
+        com.pm.patientservice.model.Patient unloaded = model("unloaded");
+        UUID unknown = UUID.randomUUID();
+        when(patientService.getPatients(List.of(unloaded.getId(), unknown))).thenReturn(List.of(unloaded));
+
+        LookupPatientsResponse response = PatientServiceGrpc.newBlockingStub(channel)
+                .lookupPatients(BatchGetPatientsRequest.newBuilder()
+                        .addIds(id(stored))
+                        .addIds(id(unloaded.getId()))
+                        .addIds(id(unknown))
+                        .build());
+
+        assertEquals(2, response.getPatientsCount());
+        assertEquals(stored.getLeastSignificantBits(), response.getPatients(0).getIdLsb());
+        assertEquals("stored@mail.com", response.getPatients(0).getEmail());
+        assertEquals(unloaded.getId().getLeastSignificantBits(), response.getPatients(1).getIdLsb());
+        assertEquals("unloaded", response.getPatients(1).getName());
+    }
+
+    @Test
+    @DisplayName("ListPatients streams every patient of the service iterator")
+    void shouldStreamPatients() {
+        List<com.pm.patientservice.model.Patient> patients = IntStream.range(0, 1200)
+                .mapToObj(i -> model("name" + i)).toList();
+        when(patientService.streamPatients(null)).thenReturn(patients.iterator());
+
+        Iterator<Patient> received = PatientServiceGrpc.newBlockingStub(channel)
+                .listPatients(ListPatientsRequest.getDefaultInstance());
+        List<String> names = new ArrayList<>();
+        received.forEachRemaining(p -> names.add(p.getName()));
+
+        assertEquals(1200, names.size());
+        assertEquals("name1199", names.get(1199));
+    }
+
+    @Test
+    @DisplayName("SearchPatients stops at the requested limit")
+    void shouldLimitSearch() {
+        List<com.pm.patientservice.model.Patient> patients = IntStream.range(0, 10)
+                .mapToObj(i -> model("anna" + i)).toList();
+        when(patientService.searchPatients("anna")).thenReturn(patients.iterator());
+
+        Iterator<Patient> received = PatientServiceGrpc.newBlockingStub(channel)
+                .searchPatients(SearchPatientsRequest.newBuilder().setQuery("anna").setLimit(3).build());
+        int count = 0;
+        while (received.hasNext()) {
+            received.next();
+            count++;
+        }
+
+        assertEquals(3, count);
+    }
+
+    @Test
+    @DisplayName("CreatePatients answers every streamed request in order")
+    void shouldCreatePatientsFromClientStream() throws Exception {
+        UUID id = UUID.randomUUID();
+        when(patientService.createPatient(any(PatientRequestDTO.class)))
+                .thenReturn(dto(id, "valid"))
+                .thenThrow(new EmailAlreadyExistsException("taken"));
+
+        CompletableFuture<CreatePatientsResponse> result = new CompletableFuture<>();
+        StreamObserver<CreatePatientRequest> requests = PatientServiceGrpc.newStub(channel)
+                .createPatients(new StreamObserver<>() {
+                    @Override
+                    public void onNext(CreatePatientsResponse value) {
+                        result.complete(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        result.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                });
+        requests.onNext(create("valid", "valid@mail.com"));
+        requests.onNext(create("", "invalid@mail.com"));
+        requests.onNext(create("taken", "taken@mail.com"));
+        requests.onCompleted();
+
+        CreatePatientsResponse response = result.get(5, TimeUnit.SECONDS);
+        assertEquals(3, response.getResultsCount());
+        assertEquals(id, PatientProtoMapper.toUuid(response.getResults(0).getPatient()));
+        assertTrue(response.getResults(1).getError().containsErrors("name"));
+        assertTrue(response.getResults(2).getError().containsErrors("email"));
+        verify(patientService, times(2)).createPatient(any(PatientRequestDTO.class));
+    }
+
+    @Test
+    @DisplayName("CreatePatients answers an unexpected failure of one patient with an error result and goes on")
+    void shouldReportFailingPatientAndContinue() throws Exception {
+        UUID id = UUID.randomUUID();
+        when(patientService.createPatient(any(PatientRequestDTO.class)))
+                .thenThrow(new IllegalStateException("database unavailable"))
+                .thenReturn(dto(id, "second"));
+
+        CompletableFuture<CreatePatientsResponse> result = new CompletableFuture<>();
+        StreamObserver<CreatePatientRequest> requests = PatientServiceGrpc.newStub(channel)
+                .createPatients(new StreamObserver<>() {
+                    @Override
+                    public void onNext(CreatePatientsResponse value) {
+                        result.complete(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        result.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                });
+        requests.onNext(create("first", "first@mail.com"));
+        requests.onNext(create("second", "second@mail.com"));
+        requests.onCompleted();
+
+        CreatePatientsResponse response = result.get(5, TimeUnit.SECONDS);
+        assertEquals(2, response.getResultsCount());
+        assertTrue(response.getResults(0).getError().containsErrors("message"));
+        assertFalse(response.getResults(0).getError().getErrorsOrThrow("message").contains("database"));
+        assertEquals(id, PatientProtoMapper.toUuid(response.getResults(1).getPatient()));
+    }
+
+    private static CreatePatientRequest create(String name, String email) {
+        return CreatePatientRequest.newBuilder()
+                .setPatient(PatientRequest.newBuilder()
+                        .setName(name)
+                        .setEmail(email)
+                        .setAddress("address")
+                        .setDateOfBirthEpochDay((int) LocalDate.of(1999, 10, 10).toEpochDay())
+                        .setRegisteredDateEpochDay((int) LocalDate.of(2024, 1, 1).toEpochDay()))
+                .build();
+    }
+
+    private static PatientResponseDTO dto(UUID id, String name) {
+        return new PatientResponseDTO(id.toString(), name, name + "@mail.com", "address", "1999-10-10");
+    }
+
+    private static com.pm.patientservice.model.Patient model(String name) {
+        return new com.pm.patientservice.model.Patient.Builder()
+                .id(UUID.randomUUID())
+                .name(name)
+                .email(name + "@mail.com")
+                .address("address")
+                .dateOfBirth(LocalDate.of(1999, 10, 10))
+                .registeredDate(LocalDate.of(2024, 1, 1))
+                .build();
+    }
+
+    private static PatientId id(UUID id) {
+        return PatientId.newBuilder()
+                .setMsb(id.getMostSignificantBits())
+                .setLsb(id.getLeastSignificantBits())
+                .build();
+    }
+}
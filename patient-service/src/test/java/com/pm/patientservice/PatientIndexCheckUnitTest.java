@@ -0,0 +1,92 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.schema.PatientIndexCheck;
+import com.pm.patientservice.shard.PatientShards;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientIndexCheckUnitTest {
+
+    private DataSource database;
+    private JdbcTemplate jdbcTemplate;
+    private PatientIndexCheck check;
+
+    @BeforeEach
+    void setUp() {
+        database = new DriverManagerDataSource("jdbc:h2:mem:index-check-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(database);
+        check = new PatientIndexCheck(database, PatientShards.unsharded());
+    }
+
+    private void migrate(String... locations) {
+        Flyway.configure().dataSource(database).locations(locations).load().migrate();
+    }
+
+    @Test
+    @DisplayName("The H2 migrations create every required index and the sample patients")
+    void shouldAcceptMigratedSchema() {
+        migrate("classpath:db/migration/h2", "classpath:db/seed");
+
+        assertDoesNotThrow(check::afterSingletonsInstantiated);
+        assertEquals(15, jdbcTemplate.queryForObject("select count(*) from patient", Integer.class));
+        // every insert takes a change number through the patient_change_record trigger
+        assertEquals(15, jdbcTemplate.queryForObject("select max(version) from patient_change", Integer.class));
+        assertEquals(15, jdbcTemplate.queryForObject("select count(*) from patient_change", Integer.class));
+    }
+
+    @Test
+    @DisplayName("Every write to the patient table takes the next change number, also one bypassing the service")
+    void shouldNumberEveryWrite() {
+        migrate("classpath:db/migration/h2");
+        UUID id = UUID.randomUUID();
+        jdbcTemplate.update("insert into patient (id, name, email, address, date_of_birth, registered_date) "
+                + "values (?, 'Jane', 'jane@example.com', 'address', date '1990-01-01', date '2024-01-01')", id);
+        jdbcTemplate.update("update patient set name = 'Jane Doe' where id = ?", id);
+        jdbcTemplate.update("delete from patient where id = ?", id);
+
+        assertEquals(3, jdbcTemplate.queryForObject(
+                "select version from patient_change where patient_id = ?", Integer.class, id));
+        assertEquals(4, jdbcTemplate.queryForObject("values next value for patient_change_seq", Integer.class));
+    }
+
+    @Test
+    @DisplayName("Emails are unique regardless of case")
+    void shouldRejectEmailDifferingInCase() {
+        migrate("classpath:db/migration/h2");
+        String insert = "insert into patient (id, name, email, address, date_of_birth, registered_date) "
+                + "values (?, 'Jane', ?, 'address', date '1990-01-01', date '2024-01-01')";
+        jdbcTemplate.update(insert, UUID.randomUUID(), "jane@example.com");
+
+        assertThrows(RuntimeException.class, () -> jdbcTemplate.update(insert, UUID.randomUUID(), "Jane@Example.com"));
+    }
+
+    @Test
+    @DisplayName("Startup fails on a schema that lacks a required index")
+    void shouldRejectMissingIndex() {
+        migrate("classpath:db/migration/h2");
+        jdbcTemplate.execute("drop index patient_date_of_birth_idx");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, check::afterSingletonsInstantiated);
+        assertTrue(e.getMessage().contains("patient_date_of_birth_idx"));
+        assertFalse(e.getMessage().contains("patient_registered_date_idx"));
+    }
+
+    @Test
+    @DisplayName("Startup fails on a patient table created without the migrations")
+    void shouldRejectUnmigratedTable() {
+        jdbcTemplate.execute("create table patient (id uuid primary key, email varchar(255) unique)");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, check::afterSingletonsInstantiated);
+        assertTrue(e.getMessage().contains("patient_email_lower_idx"));
+        assertTrue(e.getMessage().contains("patient_registered_date_idx"));
+    }
+}
@@ -0,0 +1,81 @@
+package com.pm.patientservice;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.mapper.IsoFormat;
+import com.pm.patientservice.mapper.PatientJsonSerializer;
+import com.pm.patientservice.mapper.PatientMapper;
+import com.pm.patientservice.model.Patient;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientJsonSerializerUnitTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new SimpleModule().addSerializer(new PatientJsonSerializer()));
+
+    @Test
+    @DisplayName("UUIDs and dates are formatted exactly like toString")
+    void shouldFormatLikeToString() {
+        Random random = new Random(42);
+        char[] buffer = new char[40];
+        for (int i = 0; i < 10_000; i++) {
+            UUID id = new UUID(random.nextLong(), random.nextLong());
+            assertEquals(id.toString(), new String(buffer, 0, IsoFormat.formatUuid(id, buffer, 0)));
+
+            LocalDate date = LocalDate.ofEpochDay(random.nextInt(-800_000, 3_000_000));
+            assertEquals(date.toString(), new String(buffer, 0, IsoFormat.formatDate(date, buffer, 0)));
+            assertEquals(date, IsoFormat.parseDate(date.toString()));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2023-02-30", "2023-13-01", "2023-1-01", "20x3-01-01", "2023/01/01", ""})
+    @DisplayName("Dates LocalDate.parse rejects are rejected the same way")
+    void shouldRejectInvalidDates(String text) {
+        assertThrows(DateTimeParseException.class, () -> LocalDate.parse(text));
+        assertThrows(DateTimeParseException.class, () -> IsoFormat.parseDate(text));
+    }
+
+    @Test
+    @DisplayName("Patients are written in the PatientResponseDTO shape")
+    void shouldSerializeLikeResponseDTO() throws Exception {
+        Patient patient = new Patient.Builder()
+                .id(UUID.randomUUID())
+                .name("John \"Doe\"")
+                .email("john@mail.com")
+                .address("Main street 1")
+                .dateOfBirth(LocalDate.of(1999, 1, 9))
+                .registeredDate(LocalDate.of(2024, 1, 1))
+                .build();
+        PatientResponseDTO dto = PatientMapper.toDTO(patient);
+
+        JsonNode direct = objectMapper.readTree(objectMapper.writeValueAsString(patient));
+        JsonNode viaDto = objectMapper.readTree(objectMapper.writeValueAsString(dto));
+
+        assertEquals(viaDto, direct);
+        assertFalse(direct.has("registeredDate"));
+    }
+
+    @Test
+    @DisplayName("Missing id and date of birth are written as null")
+    void shouldWriteNulls() throws Exception {
+        Patient patient = new Patient.Builder().name("name").email("e@mail.com").address("a").build();
+
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(patient));
+
+        assertTrue(json.get("id").isNull());
+        assertTrue(json.get("dateOfBirth").isNull());
+    }
+}
@@ -0,0 +1,222 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.lookup.PatientLookup;
+import com.pm.patientservice.lookup.PatientLookupSnapshot;
+import com.pm.patientservice.lookup.PatientRecordStore;
+import com.pm.patientservice.lookup.PatientRecordStore.PatientRecord;
+import com.pm.patientservice.mapper.PatientEventMapper;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.repository.PatientRepository;
+import com.pm.patientservice.shard.PatientShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.util.unit.DataSize;
+import patient.events.PatientEventType;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientLookupUnitTest {
+
+    @Mock
+    private PatientRepository repository;
+
+    @TempDir
+    private Path directory;
+
+    private PatientLookup lookup;
+
+    @BeforeEach
+    void setUp() {
+        lookup = lookup("");
+    }
+
+    private PatientLookup lookup(String snapshotFile) {
+        return new PatientLookup(repository, PatientShards.unsharded(),
+                new SimpleMeterRegistry(), true, 100, DataSize.ofKilobytes(64), snapshotFile, Duration.ofSeconds(5));
+    }
+
+    private Path snapshot(long tableVersion, Map<Integer, Long> topicPositions, Patient... patients) throws Exception {
+        PatientRecordStore store = new PatientRecordStore(16, 1024);
+        for (Patient patient : patients) {
+            store.put(patient.getId(), patient.getName(), patient.getEmail());
+        }
+        Path file = directory.resolve("lookup.snapshot");
+        PatientLookupSnapshot.write(file, tableVersion, topicPositions, store);
+        return file;
+    }
+
+    private void tableVersion(long version) {
+        when(repository.findTableVersion()).thenReturn(version);
+    }
+
+    private void table(Patient... patients) {
+        when(repository.findAllBy(any(ScrollPosition.class), any(Limit.class), any(Sort.class)))
+                .thenReturn(Window.from(List.of(patients), i -> ScrollPosition.keyset(), false));
+    }
+
+    private static void awaitPresent(PatientLookup lookup, UUID id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (get(lookup, id) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        lookup.stop();
+    }
+
+    private static Patient patient(String name) {
+        return new Patient.Builder()
+                .id(UUID.randomUUID())
+                .name(name)
+                .email(name + "@mail.com")
+                .address("address")
+                .dateOfBirth(LocalDate.of(1990, 1, 1))
+                .registeredDate(LocalDate.of(2024, 1, 1))
+                .build();
+    }
+
+    private static PatientRecord get(PatientLookup lookup, UUID id) {
+        return lookup.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    @Test
+    @DisplayName("Events of other instances create, update and delete entries")
+    void shouldApplyEvents() {
+        Patient patient = patient("jane");
+
+        lookup.apply(PatientEventMapper.toEvent(patient, PatientEventType.PATIENT_CREATED, Instant.now()));
+        assertEquals(new PatientRecord("jane", "jane@mail.com"), get(lookup, patient.getId()));
+
+        patient.setEmail("jane.doe@mail.com");
+        lookup.apply(PatientEventMapper.toUpdatedEvent(patient, List.of("email"), Instant.now()));
+        assertEquals(new PatientRecord("jane", "jane.doe@mail.com"), get(lookup, patient.getId()));
+
+        lookup.apply(PatientEventMapper.toDeletedEvent(patient.getId(), Instant.now()));
+        assertNull(get(lookup, patient.getId()));
+    }
+
+    @Test
+    @DisplayName("The startup load does not put rows it read before a concurrent write over that write")
+    void shouldKeepWritesMadeDuringLoad() throws InterruptedException {
+        Patient renamed = patient("old");
+        Patient deleted = patient("deleted");
+        Patient untouched = patient("untouched");
+        when(repository.findAllBy(any(ScrollPosition.class), any(Limit.class), any(Sort.class))).thenAnswer(call -> {
+            // the page is read, then these writes land before the load gets to apply it
+            Window<Patient> page = Window.from(List.of(copy(renamed), deleted, untouched),
+                    i -> ScrollPosition.keyset(), false);
+            renamed.setName("new");
+            lookup.saved(renamed);
+            lookup.deleted(deleted.getId());
+            return page;
+        });
+
+        lookup.start();
+        awaitPresent(lookup, untouched.getId());
+
+        assertEquals(new PatientRecord("untouched", "untouched@mail.com"), get(lookup, untouched.getId()));
+        assertEquals(new PatientRecord("new", "old@mail.com"), get(lookup, renamed.getId()));
+        assertNull(get(lookup, deleted.getId()));
+    }
+
+    @Test
+    @DisplayName("A snapshot the topic can be replayed from replaces the load, the next one has the newer events")
+    void shouldResumeFromSnapshot() throws Exception {
+        Patient jane = patient("jane");
+        Patient john = patient("john");
+        Path file = snapshot(3, Map.of(0, 42L), jane);
+        tableVersion(3);
+        lookup = lookup(file.toString());
+
+        lookup.start();
+        assertEquals(Map.of(0, 42L), lookup.resumePositions());
+        // not served until the listener has seeked to the snapshot positions
+        assertNull(get(lookup, jane.getId()));
+        lookup.positioned(Map.of(0, 42L), true);
+        assertEquals(new PatientRecord("jane", "jane@mail.com"), get(lookup, jane.getId()));
+
+        lookup.apply(PatientEventMapper.toEvent(john, PatientEventType.PATIENT_CREATED, Instant.now()), 0, 50);
+        lookup.stop();
+        verify(repository, never()).findAllBy(any(ScrollPosition.class), any(Limit.class), any(Sort.class));
+
+        PatientLookupSnapshot written = PatientLookupSnapshot.read(file);
+        assertEquals(Map.of(0, 51L), written.topicPositions());
+        assertEquals(3, written.tableVersion());
+        assertEquals(new PatientRecord("jane", "jane@mail.com"), written.store().get(jane.getId()));
+        assertEquals(new PatientRecord("john", "john@mail.com"), written.store().get(john.getId()));
+    }
+
+    @Test
+    @DisplayName("A snapshot the topic cannot be replayed from is dropped and the table loaded")
+    void shouldLoadTableWhenSnapshotCannotResume() throws Exception {
+        Patient stale = patient("stale");
+        Patient current = patient("current");
+        Path file = snapshot(3, Map.of(0, 42L), stale);
+        tableVersion(3);
+        table(current);
+        lookup = lookup(file.toString());
+
+        lookup.start();
+        lookup.positioned(Map.of(0, 100L), false);
+        awaitPresent(lookup, current.getId());
+
+        assertEquals(new PatientRecord("current", "current@mail.com"), get(lookup, current.getId()));
+        assertNull(get(lookup, stale.getId()));
+        assertEquals(Map.of(), lookup.resumePositions());
+    }
+
+    @Test
+    @DisplayName("A snapshot newer than the database is ignored")
+    void shouldIgnoreSnapshotNewerThanDatabase() throws Exception {
+        Patient stale = patient("stale");
+        Patient current = patient("current");
+        Path file = snapshot(3, Map.of(0, 42L), stale);
+        tableVersion(1);
+        table(current);
+        lookup = lookup(file.toString());
+
+        lookup.start();
+        assertEquals(Map.of(), lookup.resumePositions());
+        lookup.positioned(Map.of(0, 100L), false);
+        awaitPresent(lookup, current.getId());
+
+        assertNull(get(lookup, stale.getId()));
+    }
+
+    private static Patient copy(Patient patient) {
+        return new Patient.Builder()
+                .id(patient.getId())
+                .name(patient.getName())
+                .email(patient.getEmail())
+                .address(patient.getAddress())
+                .dateOfBirth(patient.getDateOfBirth())
+                .registeredDate(patient.getRegisteredDate())
+                .build();
+    }
+}
@@ -0,0 +1,346 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.lookup.PatientRecordStore;
+import com.pm.patientservice.lookup.PatientRecordStore.PatientRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientRecordStoreUnitTest {
+
+    @Test
+    @DisplayName("Put, update and remove are visible to get, unknown ids are null")
+    void shouldStoreRecords() {
+        PatientRecordStore store = new PatientRecordStore(16, 1024);
+        UUID id = UUID.randomUUID();
+
+        store.put(id, "Zoë Łukasiewicz", "zoe@example.com");
+        assertEquals(new PatientRecord("Zoë Łukasiewicz", "zoe@example.com"), store.get(id));
+
+        store.put(id, "Zoë Smith", "zoe.smith@example.com");
+        assertEquals(new PatientRecord("Zoë Smith", "zoe.smith@example.com"), store.get(id));
+        assertEquals(1, store.size());
+
+        assertTrue(store.remove(id));
+        assertNull(store.get(id));
+        assertFalse(store.remove(id));
+        assertNull(store.get(UUID.randomUUID()));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    @DisplayName("The index grows and replaced records are compacted away, every id stays readable")
+    void shouldGrowAndCompact() {
+        PatientRecordStore store = new PatientRecordStore(16, 4096);
+        List<UUID> ids = IntStream.range(0, 5000).mapToObj(i -> UUID.randomUUID()).toList();
+        for (int i = 0; i < ids.size(); i++) {
+            store.put(ids.get(i), "Patient " + i, "patient" + i + "@mail.com");
+        }
+        long afterInsert = store.offHeapBytes();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < ids.size(); i++) {
+                store.put(ids.get(i), "Patient " + i + " r" + round, "patient" + i + "@mail.com");
+            }
+        }
+        for (int i = 0; i < ids.size(); i += 2) {
+            store.remove(ids.get(i));
+        }
+
+        assertEquals(2500, store.size());
+        for (int i = 0; i < ids.size(); i++) {
+            PatientRecord record = store.get(ids.get(i));
+            if (i % 2 == 0) {
+                assertNull(record);
+            } else {
+                assertEquals(new PatientRecord("Patient " + i + " r9", "patient" + i + "@mail.com"), record);
+            }
+        }
+        assertTrue(store.offHeapBytes() <= 2 * afterInsert, "replaced records were not compacted");
+    }
+
+    @Test
+    @DisplayName("Putting an unchanged record appends nothing")
+    void shouldIgnoreUnchangedRecord() {
+        PatientRecordStore store = new PatientRecordStore(16, 64);
+        UUID id = UUID.randomUUID();
+        store.put(id, "Jane", "jane@example.com");
+        long bytes = store.offHeapBytes();
+
+        for (int i = 0; i < 100; i++) {
+            store.put(id, "Jane", "jane@example.com");
+        }
+
+        assertEquals(bytes, store.offHeapBytes());
+    }
+
+    @Test
+    @DisplayName("Fields too long for the record format are rejected")
+    void shouldRejectOversizedField() {
+        PatientRecordStore store = new PatientRecordStore(16, 1 << 20);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> store.put(UUID.randomUUID(), "x".repeat(70_000), "x@example.com"));
+    }
+
+    @Test
+    @DisplayName("A mapped image has the records of the store, changes to it do not reach the file")
+    void shouldMapImage(@TempDir Path directory) throws Exception {
+        PatientRecordStore store = new PatientRecordStore(16, 256);
+        List<UUID> ids = IntStream.range(0, 50).mapToObj(i -> UUID.randomUUID()).toList();
+        for (int i = 0; i < ids.size(); i++) {
+            store.put(ids.get(i), "Patient " + i, "patient" + i + "@mail.com");
+        }
+        store.remove(ids.get(0));
+        Path file = directory.resolve("store.image");
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            store.writeTo(out);
+        }
+
+        PatientRecordStore mapped;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            mapped = PatientRecordStore.map(in, 0);
+        }
+        assertEquals(49, mapped.size());
+        assertNull(mapped.get(ids.get(0)));
+        assertEquals(new PatientRecord("Patient 7", "patient7@mail.com"), mapped.get(ids.get(7)));
+
+        UUID added = UUID.randomUUID();
+        mapped.put(added, "Added", "added@mail.com");
+        mapped.put(ids.get(7), "Renamed", "patient7@mail.com");
+        mapped.remove(ids.get(8));
+        assertEquals(new PatientRecord("Added", "added@mail.com"), mapped.get(added));
+        assertEquals(new PatientRecord("Renamed", "patient7@mail.com"), mapped.get(ids.get(7)));
+        assertNull(mapped.get(ids.get(8)));
+
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            PatientRecordStore again = PatientRecordStore.map(in, 0);
+            assertEquals(new PatientRecord("Patient 7", "patient7@mail.com"), again.get(ids.get(7)));
+            assertNotNull(again.get(ids.get(8)));
+            assertNull(again.get(added));
+        }
+    }
+
+    @Test
+    @DisplayName("Writers go on while an image is written, the image holds the store as it was when writing began")
+    void shouldNotBlockWritersWhileWritingImage(@TempDir Path directory) throws Exception {
+        PatientRecordStore store = new PatientRecordStore(16, 256);
+        List<UUID> ids = IntStream.range(0, 50).mapToObj(i -> UUID.randomUUID()).toList();
+        for (int i = 0; i < ids.size(); i++) {
+            store.put(ids.get(i), "Patient " + i, "patient" + i + "@mail.com");
+        }
+        Path file = directory.resolve("store.image");
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (FileChannel out = new BlockingFileChannel(
+                FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), writing, release)) {
+            Future<?> image = executor.submit(() -> {
+                store.writeTo(out);
+                return null;
+            });
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+            // updates, removals, growth and compaction while the image is half written
+            Future<?> writes = executor.submit(() -> {
+                for (int i = 0; i < ids.size(); i++) {
+                    store.put(ids.get(i), "Renamed " + i, "patient" + i + "@mail.com");
+                }
+                store.remove(ids.get(0));
+                for (int i = 0; i < 100; i++) {
+                    store.put(UUID.randomUUID(), "Added " + i, "added" + i + "@mail.com");
+                }
+            });
+            try {
+                writes.get(10, TimeUnit.SECONDS);
+            } finally {
+                release.countDown();
+            }
+            image.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            PatientRecordStore mapped = PatientRecordStore.map(in, 0);
+            assertEquals(50, mapped.size());
+            for (int i = 0; i < ids.size(); i++) {
+                assertEquals(new PatientRecord("Patient " + i, "patient" + i + "@mail.com"), mapped.get(ids.get(i)));
+            }
+        }
+        assertEquals(149, store.size());
+    }
+
+    // blocks its first write until released
+    private static final class BlockingFileChannel extends FileChannel {
+
+        private final FileChannel delegate;
+        private final CountDownLatch writing;
+        private final CountDownLatch release;
+
+        BlockingFileChannel(FileChannel delegate, CountDownLatch writing, CountDownLatch release) {
+            this.delegate = delegate;
+            this.writing = writing;
+            this.release = release;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            return delegate.write(src);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Readers never see a torn or mixed record while the writer updates, grows and compacts")
+    void shouldReadConsistentlyDuringWrites() throws Exception {
+        PatientRecordStore store = new PatientRecordStore(16, 4096);
+        List<UUID> ids = IntStream.range(0, 200).mapToObj(i -> UUID.randomUUID()).toList();
+        ids.forEach(id -> store.put(id, "name-0", "email-0@mail.com"));
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> reads = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                reads.add(readers.submit(() -> {
+                    long count = 0;
+                    while (writing.get()) {
+                        for (UUID id : ids) {
+                            PatientRecord record = store.get(id);
+                            assertNotNull(record);
+                            String version = record.name().substring("name-".length());
+                            assertEquals("email-" + version + "@mail.com", record.email());
+                            count++;
+                        }
+                    }
+                    return count;
+                }));
+            }
+            for (int version = 1; version <= 2000; version++) {
+                for (UUID id : ids) {
+                    store.put(id, "name-" + version, "email-" + version + "@mail.com");
+                }
+                // new ids in between make the index grow while readers are in it
+                store.put(UUID.randomUUID(), "other", "other@mail.com");
+            }
+            writing.set(false);
+            for (Future<Long> read : reads) {
+                assertTrue(read.get(10, TimeUnit.SECONDS) > 0);
+            }
+        } finally {
+            writing.set(false);
+            readers.shutdownNow();
+        }
+        assertEquals(new PatientRecord("name-2000", "email-2000@mail.com"), store.get(ids.get(0)));
+    }
+}
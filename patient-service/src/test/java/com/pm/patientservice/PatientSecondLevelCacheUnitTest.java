@@ -0,0 +1,161 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.kafka.PatientCacheInvalidationConsumer;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.replica.ReplicaReadJpaDialect;
+import jakarta.persistence.EntityManager;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientSecondLevelCacheUnitTest {
+
+    private static final String JPA_PROPERTIES = "spring.jpa.properties.";
+
+    private SessionFactory sessionFactory;
+    private PatientCacheInvalidationConsumer consumer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StandardServiceRegistryBuilder registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.JAKARTA_JDBC_URL,
+                        "jdbc:h2:mem:l2-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1")
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop");
+        // the cache settings of the service itself
+        Properties application = new Properties();
+        try (InputStream in = getClass().getResourceAsStream("/application.properties")) {
+            application.load(in);
+        }
+        application.stringPropertyNames().stream()
+                .filter(name -> name.startsWith(JPA_PROPERTIES + "hibernate.cache.")
+                        || name.startsWith(JPA_PROPERTIES + "hibernate.javax.cache.")
+                        || name.equals(JPA_PROPERTIES + "hibernate.generate_statistics"))
+                .forEach(name -> registry.applySetting(
+                        name.substring(JPA_PROPERTIES.length()), application.getProperty(name)));
+
+        sessionFactory = new MetadataSources(registry.build())
+                .addAnnotatedClass(Patient.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        consumer = new PatientCacheInvalidationConsumer(sessionFactory.getCache());
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    private UUID persist(String email) {
+        Patient patient = new Patient.Builder()
+                .name("Jane Smith")
+                .email(email)
+                .address("456 Elm St")
+                .dateOfBirth(LocalDate.of(1990, 9, 23))
+                .registeredDate(LocalDate.of(2024, 1, 10))
+                .build();
+        sessionFactory.inTransaction(session -> session.persist(patient));
+        return patient.getId();
+    }
+
+    private Patient load(UUID id) {
+        return sessionFactory.fromSession(session -> session.find(Patient.class, id));
+    }
+
+    private CacheRegionStatistics regionStatistics(String region) {
+        return sessionFactory.getStatistics().getCacheRegionStatistics(region);
+    }
+
+    @Test
+    @DisplayName("A patient is read from the database once, later loads hit the entity cache")
+    void shouldServeRepeatedLoadsFromCache() {
+        UUID id = persist("jane@example.com");
+        sessionFactory.getCache().evictAllRegions();
+        sessionFactory.getStatistics().clear();
+
+        assertEquals("jane@example.com", load(id).getEmail());
+        assertEquals("jane@example.com", load(id).getEmail());
+        assertEquals("jane@example.com", load(id).getEmail());
+
+        assertEquals(1, regionStatistics(Patient.CACHE_REGION).getMissCount());
+        assertEquals(2, regionStatistics(Patient.CACHE_REGION).getHitCount());
+        assertEquals(1, sessionFactory.getStatistics().getEntityLoadCount());
+    }
+
+    @Test
+    @DisplayName("Read-only transactions, which may run on a replica, read the entity cache but never fill it")
+    void shouldNotFillCacheFromReadOnlyTransactions() {
+        UUID cached = persist("jane@example.com");
+        UUID evicted = persist("john@example.com");
+        sessionFactory.getCache().evictEntityData(Patient.class, evicted);
+        sessionFactory.getStatistics().clear();
+
+        EntityManager entityManager = sessionFactory.createEntityManager();
+        ReplicaReadJpaDialect dialect = new ReplicaReadJpaDialect();
+        DefaultTransactionDefinition readOnly = new DefaultTransactionDefinition();
+        readOnly.setReadOnly(true);
+        try {
+            Object transaction = dialect.beginTransaction(entityManager, readOnly);
+            assertEquals("jane@example.com", entityManager.find(Patient.class, cached).getEmail());
+            assertEquals("john@example.com", entityManager.find(Patient.class, evicted).getEmail());
+            entityManager.getTransaction().commit();
+            dialect.cleanupTransaction(transaction);
+
+            assertEquals(CacheMode.NORMAL, entityManager.unwrap(Session.class).getCacheMode());
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            entityManager.close();
+        }
+
+        assertEquals(1, regionStatistics(Patient.CACHE_REGION).getHitCount());
+        assertEquals(0, regionStatistics(Patient.CACHE_REGION).getPutCount());
+        assertFalse(sessionFactory.getCache().containsEntity(Patient.class, evicted));
+
+        load(evicted);
+        assertTrue(sessionFactory.getCache().containsEntity(Patient.class, evicted));
+    }
+
+    @Test
+    @DisplayName("An event of another instance evicts that patient")
+    void shouldEvictChangedPatient() {
+        UUID changed = persist("jane@example.com");
+        UUID unchanged = persist("john@example.com");
+        load(changed);
+        load(unchanged);
+
+        consumer.consumeEvent(new ConsumerRecord<>("patient", 0, 0, changed.toString(), new byte[0]));
+
+        assertFalse(sessionFactory.getCache().containsEntity(Patient.class, changed));
+        assertTrue(sessionFactory.getCache().containsEntity(Patient.class, unchanged));
+    }
+
+    @Test
+    @DisplayName("An event without a usable key evicts every patient")
+    void shouldEvictAllWithoutKey() {
+        UUID id = persist("jane@example.com");
+        load(id);
+
+        consumer.consumeEvent(new ConsumerRecord<>("patient", 0, 0, "not-an-id", new byte[0]));
+
+        assertFalse(sessionFactory.getCache().containsEntity(Patient.class, id));
+    }
+}
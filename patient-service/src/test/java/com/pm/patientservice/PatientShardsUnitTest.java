@@ -0,0 +1,141 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.model.UuidV7Generator;
+import com.pm.patientservice.shard.PatientShards;
+import com.pm.patientservice.shard.ShardRoutingDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientShardsUnitTest {
+
+    private static final int SHARDS = 3;
+
+    private final List<DataSource> databases = new ArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+    private PatientShards shards;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < SHARDS; i++) {
+            DataSource database = new DriverManagerDataSource(
+                    "jdbc:h2:mem:shard-" + i + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+            JdbcTemplate shard = new JdbcTemplate(database);
+            shard.execute("create table shard_name (name varchar(20))");
+            shard.update("insert into shard_name values (?)", "shard-" + i);
+            shard.execute("create table patient (id uuid primary key)");
+            databases.add(database);
+        }
+        ShardRoutingDataSource routing = new ShardRoutingDataSource(databases);
+        routing.afterPropertiesSet();
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        shards = new PatientShards(routing, transactionManager, 64);
+    }
+
+    @Test
+    @DisplayName("Every id always maps to the same shard and ids spread evenly")
+    void shouldSpreadIdsEvenly() {
+        int[] counts = new int[SHARDS];
+        for (int i = 0; i < 30_000; i++) {
+            UUID id = UuidV7Generator.next();
+            assertEquals(shards.shardOf(id), shards.shardOf(new UUID(id.getMostSignificantBits(), id.getLeastSignificantBits())));
+            counts[shards.shardOf(id)]++;
+        }
+        for (int count : counts) {
+            assertEquals(10_000, count, 1_000);
+        }
+    }
+
+    @Test
+    @DisplayName("Work runs on the chosen shard, also inside a transaction that is already open")
+    void shouldRunOnChosenShard() {
+        for (int shard = 0; shard < SHARDS; shard++) {
+            assertEquals("shard-" + shard, shards.onShard(shard, this::shardName));
+        }
+
+        TransactionTemplate outer = new TransactionTemplate(transactionManager);
+        outer.setReadOnly(true);
+        assertEquals(List.of("shard-0", "shard-2"), outer.execute(status ->
+                List.of(shardName(), shards.onShard(2, this::shardName))));
+    }
+
+    @Test
+    @DisplayName("Scatter returns one result per shard in shard order")
+    void shouldGatherFromEveryShard() {
+        assertEquals(List.of("shard-0", "shard-1", "shard-2"), shards.onEachShard(this::shardName));
+    }
+
+    @Test
+    @DisplayName("Ids are only sent to the shards that own them")
+    void shouldSplitIdsByShard() {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            UUID id = UuidV7Generator.next();
+            ids.add(id);
+            new JdbcTemplate(databases.get(shards.shardOf(id))).update("insert into patient values (?)", id);
+        }
+
+        List<UUID> found = shards.onShardsOf(ids, batch -> batch.stream()
+                .filter(id -> jdbcTemplate.queryForObject(
+                        "select count(*) from patient where id = ?", Integer.class, id) == 1)
+                .toList());
+
+        assertEquals(50, found.size());
+    }
+
+    @Test
+    @DisplayName("Keyset pages of all shards are merged into one id ordered stream")
+    void shouldMergeShardsInIdOrder() {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            // both signs in both halves, the order has to be the database's unsigned one
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            new JdbcTemplate(databases.get(shards.shardOf(id))).update("insert into patient values (?)", id);
+        }
+
+        Iterator<Patient> merged = shards.scroll(this::page);
+        List<UUID> scrolled = new ArrayList<>();
+        merged.forEachRemaining(patient -> scrolled.add(patient.getId()));
+
+        ids.sort(Comparator.comparing((UUID id) -> id.getMostSignificantBits(), Long::compareUnsigned)
+                .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned));
+        assertEquals(ids, scrolled);
+    }
+
+    private String shardName() {
+        return jdbcTemplate.queryForObject("select name from shard_name", String.class);
+    }
+
+    private Window<Patient> page(ScrollPosition position) {
+        Object after = ((KeysetScrollPosition) position).getKeys().get("id");
+        List<Patient> patients = (after == null
+                ? jdbcTemplate.queryForList("select id from patient order by id limit 3", UUID.class)
+                : jdbcTemplate.queryForList("select id from patient where id > ? order by id limit 3", UUID.class, after))
+                .stream().map(id -> new Patient.Builder().id(id).build()).toList();
+        return Window.from(patients,
+                index -> ScrollPosition.forward(Map.of("id", patients.get(index).getId())), patients.size() == 3);
+    }
+}
@@ -0,0 +1,181 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.cdc.PatientChangeDataCapture;
+import com.pm.patientservice.cdc.PgOutputDecoder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PgOutputDecoderUnitTest {
+
+    private static final List<String> COLUMNS =
+            List.of("id", "address", "date_of_birth", "email", "name", "registered_date");
+    private static final String ID = "123e4567-e89b-12d3-a456-426614174000";
+
+    private PgOutputDecoder decoder;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        decoder = new PgOutputDecoder();
+        PgOutputDecoder.Message relation = decoder.decode(relationMessage());
+        assertInstanceOf(PgOutputDecoder.Relation.class, relation);
+    }
+
+    @Test
+    @DisplayName("Insert is decoded into a created event")
+    void shouldDecodeInsert() throws IOException {
+        PgOutputDecoder.Message message = decoder.decode(rowMessage('I', null, row("John Doe", "john@mail.com")));
+
+        PgOutputDecoder.RowChange change = assertInstanceOf(PgOutputDecoder.RowChange.class, message);
+        assertEquals(PgOutputDecoder.RowChange.Kind.INSERT, change.kind());
+        assertEquals("john@mail.com", change.newValues().get("email"));
+
+        PatientEvent event = PatientChangeDataCapture.toEvent(change, Instant.EPOCH);
+        assertEquals(PatientEventType.PATIENT_CREATED, event.getType());
+        assertEquals(ID, event.getPatientId());
+        assertEquals(LocalDate.of(1985, 6, 15), LocalDate.ofEpochDay(event.getDateOfBirthEpochDay()));
+    }
+
+    @Test
+    @DisplayName("Update with the old row computes the changed field mask")
+    void shouldDecodeUpdateWithOldRow() throws IOException {
+        PgOutputDecoder.Message message = decoder.decode(
+                rowMessage('U', row("John Doe", "john@mail.com"), row("John Smith", "john@mail.com")));
+
+        PgOutputDecoder.RowChange change = assertInstanceOf(PgOutputDecoder.RowChange.class, message);
+        PatientEvent event = PatientChangeDataCapture.toEvent(change, Instant.EPOCH);
+        assertEquals(PatientEventType.PATIENT_UPDATED, event.getType());
+        assertEquals("John Smith", event.getName());
+        assertEquals(List.of("name"), event.getChangedFields().getPathsList());
+    }
+
+    @Test
+    @DisplayName("Delete is decoded from the key tuple")
+    void shouldDecodeDelete() throws IOException {
+        String[] key = {ID, null, null, null, null, null};
+        PgOutputDecoder.Message message = decoder.decode(rowMessage('D', key, null));
+
+        PgOutputDecoder.RowChange change = assertInstanceOf(PgOutputDecoder.RowChange.class, message);
+        PatientEvent event = PatientChangeDataCapture.toEvent(change, Instant.EPOCH);
+        assertEquals(PatientEventType.PATIENT_DELETED, event.getType());
+        assertEquals(ID, event.getPatientId());
+    }
+
+    @Test
+    @DisplayName("Commit exposes the end LSN")
+    void shouldDecodeCommit() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte('C');
+        out.writeByte(0);
+        out.writeLong(100);
+        out.writeLong(200);
+        out.writeLong(300);
+
+        PgOutputDecoder.Message message = decoder.decode(ByteBuffer.wrap(bytes.toByteArray()));
+
+        PgOutputDecoder.Commit commit = assertInstanceOf(PgOutputDecoder.Commit.class, message);
+        assertEquals(200, commit.endLsn());
+        assertEquals(300, commit.commitTimestampMicros());
+    }
+
+    @Test
+    @DisplayName("Only the patient table of the configured schema is captured")
+    void shouldMatchPatientTableBySchema() {
+        List<String> columns = List.of("id");
+
+        assertTrue(PatientChangeDataCapture.isPatientTable(
+                new PgOutputDecoder.Relation(1, "public", "patient", columns), "public"));
+        assertFalse(PatientChangeDataCapture.isPatientTable(
+                new PgOutputDecoder.Relation(2, "archive", "patient", columns), "public"));
+        assertFalse(PatientChangeDataCapture.isPatientTable(
+                new PgOutputDecoder.Relation(3, "public", "patient_email", columns), "public"));
+    }
+
+    @Test
+    @DisplayName("Slot, publication and schema names that are not plain identifiers are rejected")
+    void shouldRejectUnsafeIdentifiers() {
+        DataSourceProperties dataSource = new DataSourceProperties();
+        dataSource.setUrl("jdbc:postgresql://localhost:5432/db");
+
+        assertThrows(IllegalArgumentException.class, () -> new PatientChangeDataCapture(null, dataSource,
+                "patient_cdc; drop table patient", "patient_cdc", "public", 500, 5000));
+        assertThrows(IllegalArgumentException.class, () -> new PatientChangeDataCapture(null, dataSource,
+                "patient_cdc", "Patient-CDC", "public", 500, 5000));
+        assertThrows(IllegalArgumentException.class, () -> new PatientChangeDataCapture(null, dataSource,
+                "patient_cdc", "patient_cdc", "public\".patient", 500, 5000));
+        assertDoesNotThrow(() -> new PatientChangeDataCapture(null, dataSource,
+                "patient_cdc", "patient_cdc", "public", 500, 5000));
+    }
+
+    private static String[] row(String name, String email) {
+        return new String[]{ID, "123 Main St", "1985-06-15", email, name, "2024-01-10"};
+    }
+
+    private static ByteBuffer relationMessage() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte('R');
+        out.writeInt(16384);
+        writeString(out, "public");
+        writeString(out, "patient");
+        out.writeByte('d');
+        out.writeShort(COLUMNS.size());
+        for (String column : COLUMNS) {
+            out.writeByte(column.equals("id") ? 1 : 0);
+            writeString(out, column);
+            out.writeInt(25);
+            out.writeInt(-1);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static ByteBuffer rowMessage(char type, String[] oldRow, String[] newRow) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeInt(16384);
+        if (oldRow != null) {
+            out.writeByte(type == 'D' ? 'K' : 'O');
+            writeTuple(out, oldRow);
+        }
+        if (newRow != null) {
+            out.writeByte('N');
+            writeTuple(out, newRow);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static void writeTuple(DataOutputStream out, String[] values) throws IOException {
+        out.writeShort(values.length);
+        for (String value : values) {
+            if (value == null) {
+                out.writeByte('n');
+            } else {
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                out.writeByte('t');
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.write(value.getBytes(StandardCharsets.UTF_8));
+        out.writeByte(0);
+    }
+}
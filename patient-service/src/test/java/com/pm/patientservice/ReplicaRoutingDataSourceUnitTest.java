@@ -0,0 +1,148 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.replica.ReplicaRoutingDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ReplicaRoutingDataSourceUnitTest {
+
+    private final Connection primaryConnection = mock(Connection.class);
+    private final DataSource primary = dataSource(primaryConnection);
+
+    @AfterEach
+    void clearTransactionState() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    @DisplayName("Read-write work goes to the primary even with healthy replicas")
+    void shouldSendWritesToPrimary() throws Exception {
+        ReplicaRoutingDataSource routing = routing(Map.of("replica-0", replica(0)));
+        routing.checkReplicas();
+
+        assertSame(primaryConnection, routing.getConnection());
+    }
+
+    @Test
+    @DisplayName("Read-only transactions are spread round robin over the replicas")
+    void shouldBalanceReadsOverReplicas() throws Exception {
+        Connection first = mock(Connection.class);
+        Connection second = mock(Connection.class);
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-0", replicaWithLag(first, 0));
+        replicas.put("replica-1", replicaWithLag(second, 100));
+        ReplicaRoutingDataSource routing = routing(replicas);
+        routing.checkReplicas();
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertEquals(Set.of(first, second), Set.of(routing.getConnection(), routing.getConnection()));
+    }
+
+    @Test
+    @DisplayName("Replicas behind the allowed lag or unreachable are skipped, reads fall back to the primary")
+    void shouldSkipLaggingAndUnreachableReplicas() throws Exception {
+        DataSource unreachable = mock(DataSource.class);
+        when(unreachable.getConnection()).thenThrow(new SQLException("connection refused"));
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-0", replicaWithLag(mock(Connection.class), 60_000));
+        replicas.put("replica-1", unreachable);
+        ReplicaRoutingDataSource routing = routing(replicas);
+        routing.checkReplicas();
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(primaryConnection, routing.getConnection());
+        assertEquals(60_000, routing.replicas().get(0).lagMillis());
+        assertTrue(Double.isNaN(routing.replicas().get(1).lagMillis()));
+    }
+
+    @Test
+    @DisplayName("A replica that caught up again is put back into rotation")
+    void shouldReturnReplicaAfterItCatchesUp() throws Exception {
+        Connection connection = mock(Connection.class);
+        ResultSet lag = lagResult(connection);
+        when(lag.getDouble(1)).thenReturn(60_000.0, 0.0);
+        ReplicaRoutingDataSource routing = routing(Map.of("replica-0", dataSource(connection)));
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        routing.checkReplicas();
+        assertSame(primaryConnection, routing.getConnection());
+
+        routing.checkReplicas();
+        assertSame(connection, routing.getConnection());
+    }
+
+    @Test
+    @DisplayName("A replica whose WAL receiver stopped streaming has no known lag and leaves the rotation")
+    void shouldSkipDisconnectedReplica() throws Exception {
+        Connection connection = mock(Connection.class);
+        ResultSet lag = lagResult(connection);
+        // streaming and caught up, then disconnected: the lag query answers NULL instead of 0
+        when(lag.getDouble(1)).thenReturn(0.0);
+        when(lag.wasNull()).thenReturn(false, true);
+        ReplicaRoutingDataSource routing = routing(Map.of("replica-0", dataSource(connection)));
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        routing.checkReplicas();
+        assertSame(connection, routing.getConnection());
+
+        routing.checkReplicas();
+        assertSame(primaryConnection, routing.getConnection());
+        assertTrue(Double.isNaN(routing.replicas().get(0).lagMillis()));
+
+        ArgumentCaptor<String> query = ArgumentCaptor.forClass(String.class);
+        verify(connection.createStatement(), atLeastOnce()).executeQuery(query.capture());
+        assertTrue(query.getValue().contains("FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN NULL"));
+    }
+
+    private ReplicaRoutingDataSource routing(Map<String, DataSource> replicas) {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas, Duration.ofSeconds(5));
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+    private static DataSource replica(int lagMillis) throws SQLException {
+        return replicaWithLag(mock(Connection.class), lagMillis);
+    }
+
+    private static DataSource replicaWithLag(Connection connection, double lagMillis) throws SQLException {
+        when(lagResult(connection).getDouble(1)).thenReturn(lagMillis);
+        return dataSource(connection);
+    }
+
+    private static ResultSet lagResult(Connection connection) throws SQLException {
+        Statement statement = mock(Statement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        return resultSet;
+    }
+
+    private static DataSource dataSource(Connection connection) {
+        DataSource dataSource = mock(DataSource.class);
+        try {
+            when(dataSource.getConnection()).thenReturn(connection);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        return dataSource;
+    }
+}
@@ -5,11 +5,15 @@ import com.pm.patientservice.dto.PatientResponseDTO;
 import com.pm.patientservice.exception.EmailAlreadyExistsException;
 import com.pm.patientservice.exception.PatientNotFoundException;
 import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import com.pm.patientservice.idempotency.IdempotencyStore;
 import com.pm.patientservice.kafka.KafkaProducer;
+import com.pm.patientservice.lookup.PatientLookup;
 import com.pm.patientservice.mapper.PatientMapper;
 import com.pm.patientservice.model.Patient;
 import com.pm.patientservice.repository.PatientRepository;
 import com.pm.patientservice.service.PatientService;
+import com.pm.patientservice.shard.PatientEmailIndex;
+import com.pm.patientservice.shard.PatientShards;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -20,8 +24,10 @@ import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
@@ -47,6 +53,12 @@ public class ServiceUnitTests {
     private BillingServiceGrpcClient billingServiceGrpcClient;
     @Mock
     private KafkaProducer kafkaProducer;
+    @Spy
+    private PatientShards shards = PatientShards.unsharded();
+    @Mock
+    private PatientEmailIndex emailIndex;
+    @Mock
+    private PatientLookup patientLookup;
 
     @BeforeEach
     void setUp() {
@@ -102,6 +114,7 @@ public class ServiceUnitTests {
         );
         verify(repository).save(any(Patient.class));
         verify(kafkaProducer).sendEvent(patient1);
+        verify(patientLookup).saved(patient1);
     }
 
     @ParameterizedTest
@@ -137,6 +150,26 @@ public class ServiceUnitTests {
         verify(kafkaProducer).sendEvent(patient);
     }
 
+    @Test
+    @DisplayName("Retried create with the same idempotency key is served from the store")
+    void shouldCreatePatientOnceForSameIdempotencyKey() {
+        PatientService idempotentService = new PatientService(repository, billingServiceGrpcClient,
+                kafkaProducer, new IdempotencyStore<>(100, Duration.ofMinutes(5)),
+                shards, emailIndex, patientLookup);
+        PatientRequestDTO request = new PatientRequestDTO();
+        when(repository.existsByEmail(request.getEmail())).thenReturn(false);
+        when(repository.save(any(Patient.class))).thenReturn(patient1);
+
+        PatientResponseDTO first = idempotentService.createPatient(request, "retry-key");
+        PatientResponseDTO second = idempotentService.createPatient(request, "retry-key");
+
+        assertSame(first, second);
+        verify(repository, times(1)).save(any(Patient.class));
+        verify(billingServiceGrpcClient, times(1)).createBillingAccount(
+                String.valueOf(patient1.getId()), patient1.getName(), patient1.getEmail());
+        verify(kafkaProducer, times(1)).sendEvent(patient1);
+    }
+
     @Test
     @DisplayName("Shouldn't create a patient because of email unique Constraint")
     void shouldCreatePatientWithEmailUniqueConstraint() {
@@ -169,6 +202,23 @@ public class ServiceUnitTests {
         verify(repository).save(any(Patient.class));
     }
 
+    @Test
+    @DisplayName("Update publishes the changed fields")
+    void shouldPublishUpdatedEventWithChangedFields() {
+        Patient patient = new Patient.Builder().id(UUID.randomUUID()).name("Old Name")
+                .email("same@mail.com").address("address").dateOfBirth(LocalDate.of(1995, 11, 11))
+                .build();
+        PatientRequestDTO request = new PatientRequestDTO("New Name", "same@mail.com", "new address", "1995-11-11");
+        when(repository.findById(patient.getId())).thenReturn(Optional.of(patient));
+        when(repository.existsByEmailAndIdNot(request.getEmail(), patient.getId())).thenReturn(false);
+        when(repository.save(any(Patient.class))).thenReturn(patient);
+
+        patientService.updatePatient(patient.getId(), request);
+
+        verify(kafkaProducer).sendUpdatedEvent(patient, List.of("name", "address"));
+        verify(patientLookup).saved(patient);
+    }
+
     @Test
     void shouldNotUpdatePersonWhenSameEmailExists() {
         PatientRequestDTO request = new PatientRequestDTO();
@@ -209,17 +259,41 @@ public class ServiceUnitTests {
     @DisplayName("Should delete patient")
     void shouldDeletePatientById(){
         UUID id = UUID.randomUUID();
+        when(repository.findById(id)).thenReturn(Optional.of(patient1));
         doNothing().when(repository).deleteById(id);
 
         patientService.deletePatient(id);
 
         verify(repository, times(1)).deleteById(eq(id));
+        verify(kafkaProducer).sendDeletedEvent(id);
+        verify(patientLookup).deleted(id);
+    }
+
+    @Test
+    @DisplayName("Deleting a patient that does not exist sends no event")
+    void shouldNotSendDeletedEventForMissingPatient() {
+        UUID id = UUID.randomUUID();
+        when(repository.findById(id)).thenReturn(Optional.empty());
+
+        patientService.deletePatient(id);
+
+        verify(repository, never()).deleteById(any());
+        verifyNoInteractions(kafkaProducer, patientLookup);
+    }
+
+    @Test
+    @DisplayName("The table version is the highest change number of the patient table")
+    void shouldReadTableVersionFromChangeSequence() {
+        when(repository.findTableVersion()).thenReturn(42L);
+
+        assertEquals(42, patientService.getTableVersion());
     }
 
     @Test
     @DisplayName("Should propagate exception when repository throws")
     void shouldThrowExceptionWhenRepositoryFails() {
         UUID id = UUID.randomUUID();
+        when(repository.findById(id)).thenReturn(Optional.of(patient1));
         doThrow(new IllegalArgumentException("Invalid id"))
                 .when(repository).deleteById(id);
 
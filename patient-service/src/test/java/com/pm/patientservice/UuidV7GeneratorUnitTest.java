@@ -0,0 +1,50 @@
+package com.pm.patientservice;
+
+import com.pm.patientservice.model.UuidV7Generator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UuidV7GeneratorUnitTest {
+
+    @Test
+    @DisplayName("Ids are version 7 with the RFC 9562 variant")
+    void shouldGenerateVersion7Ids() {
+        UUID id = UuidV7Generator.next();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+    }
+
+    @Test
+    @DisplayName("Ids carry the current Unix milliseconds in their first 48 bits")
+    void shouldEncodeCreationTime() {
+        long before = System.currentTimeMillis();
+        UUID id = UuidV7Generator.next();
+        long after = System.currentTimeMillis();
+
+        long millis = id.getMostSignificantBits() >>> 16;
+        // the counter may borrow a millisecond or two from the future under load
+        assertTrue(millis >= before && millis <= after + 2, "timestamp " + millis);
+    }
+
+    @Test
+    @DisplayName("Ids generated in a row sort in creation order, also within one millisecond")
+    void shouldBeStrictlyIncreasing() {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(UuidV7Generator.next());
+        }
+
+        for (int i = 1; i < ids.size(); i++) {
+            // unsigned order of the string form is the order of the index
+            assertTrue(ids.get(i - 1).toString().compareTo(ids.get(i).toString()) < 0,
+                    ids.get(i - 1) + " before " + ids.get(i));
+        }
+    }
+}
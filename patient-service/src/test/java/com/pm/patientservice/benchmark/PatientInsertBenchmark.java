@@ -0,0 +1,126 @@
+package com.pm.patientservice.benchmark;
+
+import com.pm.patientservice.model.UuidV7Generator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Patient inserts per second as Hibernate issues them: random (v4) against time-ordered (v7) ids, one
+ * statement per row against JDBC batches of 50. The table keeps growing over an iteration, so random ids
+ * pay for scattered index page writes. Runs against an in-memory H2 by default; point
+ * {@code -Dbench.jdbc.url} (plus {@code bench.jdbc.user}/{@code bench.jdbc.password}) at a Postgres to
+ * measure the real thing, with {@code ?reWriteBatchedInserts=true} for the pgtuning profile's driver settings.
+ * Not part of the test run, start it from main with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class PatientInsertBenchmark {
+
+    private static final int ROWS = 1000;
+
+    @Param({"RANDOM", "V7"})
+    public String ids;
+
+    @Param({"1", "50"})
+    public int batchSize;
+
+    private Connection connection;
+    private PreparedStatement insert;
+    private Supplier<UUID> idGenerator;
+    private long sequence;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("bench.jdbc.url", "jdbc:h2:mem:insert-bench;DB_CLOSE_DELAY=-1"),
+                System.getProperty("bench.jdbc.user", "sa"),
+                System.getProperty("bench.jdbc.password", ""));
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS patient_insert_bench");
+            statement.execute("""
+                    CREATE TABLE patient_insert_bench (
+                        id UUID PRIMARY KEY,
+                        name VARCHAR(255) NOT NULL,
+                        email VARCHAR(255) UNIQUE NOT NULL,
+                        address VARCHAR(255) NOT NULL,
+                        date_of_birth DATE NOT NULL,
+                        registered_date DATE NOT NULL)""");
+        }
+        connection.commit();
+        insert = connection.prepareStatement("insert into patient_insert_bench "
+                + "(address,date_of_birth,email,name,registered_date,id) values (?,?,?,?,?,?)");
+        idGenerator = ids.equals("V7") ? UuidV7Generator::next : UUID::randomUUID;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws SQLException {
+        insert.close();
+        connection.close();
+    }
+
+    // one transaction of ROWS inserts, like a bulk import through PatientRepository.saveAll
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void insert() throws SQLException {
+        Date dateOfBirth = Date.valueOf(LocalDate.of(1985, 6, 15));
+        Date registered = Date.valueOf(LocalDate.of(2024, 1, 10));
+        for (int i = 1; i <= ROWS; i++) {
+            long n = sequence++;
+            insert.setString(1, n + " Main St, Springfield");
+            insert.setDate(2, dateOfBirth);
+            insert.setString(3, "patient" + n + "@example.com");
+            insert.setString(4, "Patient " + n);
+            insert.setDate(5, registered);
+            insert.setObject(6, idGenerator.get());
+            if (batchSize == 1) {
+                insert.executeUpdate();
+            } else {
+                insert.addBatch();
+                if (i % batchSize == 0) {
+                    insert.executeBatch();
+                }
+            }
+        }
+        if (batchSize > 1) {
+            insert.executeBatch();
+        }
+        connection.commit();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PatientInsertBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,86 @@
+package com.pm.patientservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.mapper.PatientJsonSerializer;
+import com.pm.patientservice.mapper.PatientMapper;
+import com.pm.patientservice.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * GET /patients serialization: mapping to PatientResponseDTO and writing it with Jackson against writing
+ * the entities through PatientJsonSerializer. Not part of the test run, start it from main with the test
+ * classpath and compare gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientJsonBenchmark {
+
+    @Param({"1000"})
+    public int patients;
+
+    private final ObjectMapper dtoMapper = new ObjectMapper();
+    private final ObjectMapper entityMapper = new ObjectMapper()
+            .registerModule(new SimpleModule().addSerializer(new PatientJsonSerializer()));
+
+    private List<Patient> entities;
+
+    @Setup
+    public void setUp() {
+        entities = IntStream.range(0, patients)
+                .mapToObj(i -> new Patient.Builder()
+                        .id(UUID.randomUUID())
+                        .name("Patient " + i)
+                        .email("patient" + i + "@mail.com")
+                        .address(i + " Main street")
+                        .dateOfBirth(LocalDate.of(1950, 1, 1).plusDays(i * 7L))
+                        .registeredDate(LocalDate.of(2024, 1, 1))
+                        .build())
+                .toList();
+    }
+
+    @Benchmark
+    public void viaResponseDTO() throws IOException {
+        List<PatientResponseDTO> dtos = entities.stream().map(PatientMapper::toDTO).toList();
+        dtoMapper.writeValue(OutputStream.nullOutputStream(), dtos);
+    }
+
+    @Benchmark
+    public void direct() throws IOException {
+        entityMapper.writeValue(OutputStream.nullOutputStream(), entities);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PatientJsonBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
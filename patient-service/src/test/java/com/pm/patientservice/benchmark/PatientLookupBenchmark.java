@@ -0,0 +1,96 @@
+package com.pm.patientservice.benchmark;
+
+import com.pm.patientservice.lookup.PatientRecordStore;
+import com.pm.patientservice.lookup.PatientRecordStore.PatientRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * id → name/email lookups from the off-heap PatientRecordStore against a ConcurrentHashMap of records on the heap.
+ * Sampled, so the output has the p0.99 of a lookup; the setup prints the heap and off-heap bytes each variant
+ * holds. Not part of the test run, start it from main with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class PatientLookupBenchmark {
+
+    @Param({"1000000"})
+    public int patients;
+
+    @Param({"offHeap", "onHeap"})
+    public String store;
+
+    private UUID[] ids;
+    private PatientRecordStore offHeap;
+    private Map<UUID, PatientRecord> onHeap;
+
+    @Setup
+    public void setUp() {
+        ids = new UUID[patients];
+        for (int i = 0; i < patients; i++) {
+            ids[i] = UUID.randomUUID();
+        }
+        long heapBefore = usedHeap();
+        if (store.equals("offHeap")) {
+            offHeap = new PatientRecordStore(patients, 1 << 20);
+            for (int i = 0; i < patients; i++) {
+                offHeap.put(ids[i], "Patient " + i, "patient" + i + "@mail.com");
+            }
+        } else {
+            onHeap = new ConcurrentHashMap<>(patients);
+            for (int i = 0; i < patients; i++) {
+                // the map keeps its own key objects, as it would with ids parsed from requests
+                onHeap.put(new UUID(ids[i].getMostSignificantBits(), ids[i].getLeastSignificantBits()),
+                        new PatientRecord("Patient " + i, "patient" + i + "@mail.com"));
+            }
+        }
+        System.out.printf("%n%s: %d MB heap, %d MB off-heap for %d patients%n", store,
+                (usedHeap() - heapBefore) >> 20, offHeap == null ? 0 : offHeap.offHeapBytes() >> 20, patients);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public PatientRecord lookup() {
+        UUID id = ids[ThreadLocalRandom.current().nextInt(patients)];
+        return offHeap != null
+                ? offHeap.get(id.getMostSignificantBits(), id.getLeastSignificantBits())
+                : onHeap.get(id);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PatientLookupBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
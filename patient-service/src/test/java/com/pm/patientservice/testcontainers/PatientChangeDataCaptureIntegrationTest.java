@@ -0,0 +1,97 @@
+package com.pm.patientservice.testcontainers;
+
+import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Testcontainers
+@SpringBootTest
+public class PatientChangeDataCaptureIntegrationTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:latest")
+                    .withCommand("postgres", "-c", "wal_level=logical");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @MockitoBean
+    private BillingServiceGrpcClient billingServiceGrpcClient;
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("patient.events.source", () -> "CDC");
+        registry.add("patient.cdc.retry-backoff-ms", () -> "500");
+    }
+
+    @BeforeEach
+    void setUp() {
+        when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    @DisplayName("Writes made directly in the database are published as patient events")
+    void shouldPublishChangesWrittenOutsideTheService() throws Exception {
+        UUID id = UUID.randomUUID();
+        // give the capture thread time to create the publication and slot
+        Thread.sleep(2000);
+
+        jdbcTemplate.update("""
+                INSERT INTO patient (id, name, email, address, date_of_birth, registered_date)
+                VALUES (?, 'Admin Fix', 'admin.fix@example.com', 'Somewhere', '1980-01-01', '2024-01-01')
+                """, id);
+        jdbcTemplate.update("UPDATE patient SET name = 'Admin Fixed' WHERE id = ?", id);
+        jdbcTemplate.update("DELETE FROM patient WHERE id = ?", id);
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(kafkaTemplate, timeout(15000).times(3))
+                .send(eq("patient"), eq(id.toString()), captor.capture());
+
+        List<PatientEventType> types = captor.getAllValues().stream()
+                .map(PatientChangeDataCaptureIntegrationTest::parse)
+                .map(PatientEvent::getType)
+                .toList();
+        assertEquals(List.of(PatientEventType.PATIENT_CREATED, PatientEventType.PATIENT_UPDATED,
+                PatientEventType.PATIENT_DELETED), types);
+    }
+
+    private static PatientEvent parse(byte[] bytes) {
+        try {
+            return PatientEvent.parseFrom(bytes);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
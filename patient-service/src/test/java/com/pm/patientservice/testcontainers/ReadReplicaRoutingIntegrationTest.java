@@ -0,0 +1,176 @@
+package com.pm.patientservice.testcontainers;
+
+import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.replica.ReplicaRoutingDataSource;
+import com.pm.patientservice.repository.PatientRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.Network;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.images.builder.Transferable;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A primary and a streaming replica cloned from it with pg_basebackup. Read-only transactions have to land on
+ * the replica (pg_is_in_recovery() is true there), writes on the primary, and a replica whose replay is paused
+ * has to drop out of rotation once it falls behind.
+ */
+@Testcontainers
+@SpringBootTest
+public class ReadReplicaRoutingIntegrationTest {
+
+    private static final Network network = Network.newNetwork();
+
+    @Container
+    private static final PostgreSQLContainer<?> primary = new PostgreSQLContainer<>("postgres:latest")
+            .withNetwork(network)
+            .withNetworkAliases("primary")
+            .withCommand("postgres", "-c", "wal_level=replica", "-c", "max_wal_senders=4", "-c", "hot_standby=on")
+            .withCopyToContainer(Transferable.of(
+                    "echo 'host replication all all scram-sha-256' >> \"$PGDATA/pg_hba.conf\"", 0755),
+                    "/docker-entrypoint-initdb.d/replication.sh");
+
+    @Container
+    private static final GenericContainer<?> replica = new GenericContainer<>("postgres:latest")
+            .withNetwork(network)
+            .dependsOn(primary)
+            .withEnv("PGPASSWORD", "test")
+            .withExposedPorts(5432)
+            .withCommand("bash", "-c", """
+                    until pg_basebackup -h primary -U test -D /tmp/replica -R -X stream; do sleep 1; done
+                    chown -R postgres /tmp/replica && chmod 700 /tmp/replica
+                    exec gosu postgres postgres -D /tmp/replica -c listen_addresses='*'
+                    """)
+            .waitingFor(Wait.forLogMessage(".*ready to accept read-only connections.*", 1)
+                    .withStartupTimeout(Duration.ofMinutes(2)));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @MockitoBean
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @MockitoBean
+    private BillingServiceGrpcClient billingServiceGrpcClient;
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", primary::getJdbcUrl);
+        registry.add("spring.datasource.username", primary::getUsername);
+        registry.add("spring.datasource.password", primary::getPassword);
+        registry.add("patient.replicas.urls", ReadReplicaRoutingIntegrationTest::replicaUrl);
+        registry.add("patient.replicas.max-lag", () -> "1s");
+        registry.add("patient.replicas.lag-check-interval-ms", () -> "200");
+    }
+
+    private static String replicaUrl() {
+        return "jdbc:postgresql://" + replica.getHost() + ":" + replica.getMappedPort(5432) + "/test";
+    }
+
+    @AfterEach
+    void resumeReplay() throws SQLException {
+        onReplica("SELECT pg_wal_replay_resume()");
+    }
+
+    @Test
+    @DisplayName("Read-only transactions run on the replica, read-write ones on the primary")
+    void shouldRouteByTransactionType() {
+        await(this::readsOnReplica);
+
+        assertTrue(inRecovery(true));
+        assertFalse(inRecovery(false));
+        assertEquals(Boolean.FALSE, jdbcTemplate.queryForObject("SELECT pg_is_in_recovery()", Boolean.class));
+    }
+
+    @Test
+    @DisplayName("A replica that stops replaying is taken out of rotation and comes back once it catches up")
+    void shouldSkipLaggingReplica() throws Exception {
+        await(this::readsOnReplica);
+        onReplica("SELECT pg_wal_replay_pause()");
+
+        patientRepository.save(new Patient.Builder()
+                .name("Lagging Replica")
+                .email("lagging.replica@example.com")
+                .address("Somewhere")
+                .dateOfBirth(LocalDate.of(1980, 1, 1))
+                .registeredDate(LocalDate.of(2024, 1, 1))
+                .build());
+        await(() -> !readsOnReplica());
+        assertTrue(patientRepository.existsByEmail("lagging.replica@example.com"));
+
+        onReplica("SELECT pg_wal_replay_resume()");
+        await(this::readsOnReplica);
+        assertEquals(Boolean.TRUE, new TransactionTemplate(transactionManager, readOnly()).execute(status ->
+                patientRepository.existsByEmail("lagging.replica@example.com")));
+    }
+
+    private boolean readsOnReplica() {
+        return inRecovery(true);
+    }
+
+    private boolean inRecovery(boolean readOnly) {
+        TransactionTemplate template = readOnly
+                ? new TransactionTemplate(transactionManager, readOnly())
+                : new TransactionTemplate(transactionManager);
+        return template.execute(status -> jdbcTemplate.queryForObject("SELECT pg_is_in_recovery()", Boolean.class));
+    }
+
+    private static TransactionTemplate readOnly() {
+        TransactionTemplate template = new TransactionTemplate();
+        template.setReadOnly(true);
+        return template;
+    }
+
+    private static void onReplica(String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(replicaUrl(), "test", "test");
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 30s");
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}